@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.benchmark.server.FakeLibrary;
+import org.a0z.mpd.benchmark.server.FakeMPDServer;
+import org.a0z.mpd.exception.MPDException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a volume change sent to every server of a {@link MPDCluster}, one server after the
+ * other, then to every server in parallel. Each {@link FakeMPDServer} simulates the latency of a
+ * network link. The latency metrics of the first server are printed after each iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClusterBenchmark {
+
+    private static final String[] IDLE_SUBSYSTEMS = {MPDStatusMonitor.IDLE_MIXER,
+            MPDStatusMonitor.IDLE_PLAYER, MPDStatusMonitor.IDLE_PLAYLIST};
+
+    private final List<FakeMPDServer> mServers = new ArrayList<>();
+
+    private MPDCluster mCluster;
+
+    @Param("5")
+    private long mLatency;
+
+    @Param("20")
+    private int mServerCount;
+
+    /** The volume set by the last volume change, always different from the previous one. */
+    private int mVolume;
+
+    @TearDown(Level.Iteration)
+    public void printMetrics() {
+        System.out.printf("%n%s%n", mCluster.getMetrics(mCluster.getNames().iterator().next()));
+    }
+
+    @Benchmark
+    public int setVolumeParallel() throws InterruptedException {
+        final Map<String, Exception> failures;
+
+        mVolume = (mVolume + 1) % 100;
+        failures = mCluster.setVolume(mVolume);
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Failed to set the volume: " + failures);
+        }
+
+        return mVolume;
+    }
+
+    @Benchmark
+    public int setVolumeSequential() throws IOException, MPDException {
+        mVolume = (mVolume + 1) % 100;
+        for (final String name : mCluster.getNames()) {
+            mCluster.get(name).setVolume(mVolume);
+        }
+
+        return mVolume;
+    }
+
+    @Setup
+    public void setUp() throws IOException, MPDException {
+        mCluster = new MPDCluster(IDLE_SUBSYSTEMS);
+
+        for (int i = 0; i < mServerCount; i++) {
+            final FakeMPDServer server = new FakeMPDServer(new FakeLibrary(10));
+
+            server.setLatency(mLatency);
+            server.start();
+            mServers.add(server);
+            mCluster.add("room" + i, InetAddress.getByName(null), server.getPort(), null);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mCluster.close();
+
+        for (final FakeMPDServer server : mServers) {
+            server.close();
+        }
+    }
+}
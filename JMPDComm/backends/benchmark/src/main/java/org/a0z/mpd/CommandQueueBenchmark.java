@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.benchmark.ResponseCorpus;
+import org.a0z.mpd.item.Music;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building command lists and separating command list results. The result separation
+ * is benchmarked directly, as it is the client side cost of {@link CommandQueue#sendSeparated}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandQueueBenchmark {
+
+    private static final String MPD_CMD_BULK_SEP = "list_OK";
+
+    private CommandQueue mCommandQueue;
+
+    /** A separated command list response, one song for each command. */
+    private List<String> mSeparatedResponse;
+
+    @Param({"1000", "10000", "100000"})
+    private int mSongCount;
+
+    @Setup
+    public void setUp() {
+        final List<Music> playlist = ResponseCorpus.getPlaylist(mSongCount);
+        final List<String> response = ResponseCorpus.getDatabaseResponse(mSongCount);
+
+        mCommandQueue = new CommandQueue(mSongCount);
+        for (final Music music : playlist) {
+            mCommandQueue.add(MPDPlaylist.addCommand(music.getFullPath()));
+        }
+
+        mSeparatedResponse = new ArrayList<>(response.size() + mSongCount);
+        for (final String line : response) {
+            if (line.startsWith("file: ") && !mSeparatedResponse.isEmpty()) {
+                mSeparatedResponse.add(MPD_CMD_BULK_SEP);
+            }
+            mSeparatedResponse.add(line);
+        }
+        mSeparatedResponse.add(MPD_CMD_BULK_SEP);
+    }
+
+    @Benchmark
+    public List<String[]> separatedQueueResults() {
+        return CommandQueue.separatedQueueResults(mSeparatedResponse);
+    }
+
+    @Benchmark
+    public String toStringQueue() {
+        return mCommandQueue.toString();
+    }
+
+    @Benchmark
+    public void buildQueue(final Blackhole blackhole) {
+        final CommandQueue commandQueue = new CommandQueue(mSongCount);
+
+        for (final MPDCommand command : mCommandQueue) {
+            commandQueue.add(command);
+        }
+
+        blackhole.consume(commandQueue);
+    }
+}
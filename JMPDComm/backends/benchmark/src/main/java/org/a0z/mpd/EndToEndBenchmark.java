@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.benchmark.server.FakeLibrary;
+import org.a0z.mpd.benchmark.server.FakeMPDServer;
+import org.a0z.mpd.connection.CommandCallback;
+import org.a0z.mpd.connection.MPDConnectionNio;
+import org.a0z.mpd.connection.ResponseCache;
+import org.a0z.mpd.event.StatusChangeListener;
+import org.a0z.mpd.exception.MPDException;
+import org.a0z.mpd.item.Album;
+import org.a0z.mpd.item.Genre;
+import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks {@link MPD} and {@link MPDStatusMonitor} end to end, against a {@link
+ * FakeMPDServer} simulating the latency of a network link. The number of requests per operation
+ * is printed after each iteration, each request is a round trip unless pipelined.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    /** The number of albums queried at once, as an album list would. */
+    private static final int ALBUM_BATCH_SIZE = 20;
+
+    /** The protocol version of the server supporting a sorted {@code find}. */
+    private static final String SORTED_FIND_PROTOCOL_VERSION = "0.21.0";
+
+    private static final String TRANSPORT_NIO = "nio";
+
+    private static final String[] IDLE_SUBSYSTEMS = {MPDStatusMonitor.IDLE_DATABASE,
+            MPDStatusMonitor.IDLE_MIXER, MPDStatusMonitor.IDLE_PLAYER,
+            MPDStatusMonitor.IDLE_PLAYLIST};
+
+    /** The memory bound of the responses cached by the monitored connection. */
+    private static final long RESPONSE_CACHE_SIZE = 4L * 1024L * 1024L;
+
+    private Album mAlbum;
+
+    private List<Album> mAlbums;
+
+    /** Another client, changing the server state for the monitor. */
+    private MPD mController;
+
+    private Genre mGenre;
+
+    @Param({"0", "20"})
+    private long mLatency;
+
+    private MPD mMPD;
+
+    private MPDStatusMonitor mMonitor;
+
+    /** A connection caching its responses until the monitor sees their subsystem change. */
+    private MPD mMonitorMPD;
+
+    private long mOperationCount;
+
+    private long mRequestCount;
+
+    private FakeMPDServer mServer;
+
+    /** A connection to the server announcing a protocol version with a sorted {@code find}. */
+    private MPD mSortedFindMPD;
+
+    @Param({"1000", "10000"})
+    private int mSongCount;
+
+    /** The transport of the connections, blocking sockets or a non-blocking event loop. */
+    @Param({"socket", TRANSPORT_NIO})
+    private String mTransport;
+
+    /** The volume set by the last volume change, always different from the previous one. */
+    private int mVolume;
+
+    private volatile CountDownLatch mVolumeChanged;
+
+    private MPD connect() throws IOException, MPDException {
+        final MPD mpd;
+
+        if (TRANSPORT_NIO.equals(mTransport)) {
+            mpd = new MPD(new MPDConnectionNio(5000), new MPDConnectionNio(0));
+        } else {
+            mpd = new MPD();
+        }
+
+        mpd.connect(InetAddress.getByName(null), mServer.getPort(), null);
+        return mpd;
+    }
+
+    @Benchmark
+    public MPD connectAndDisconnect() throws IOException, MPDException {
+        final MPD mpd = connect();
+
+        mpd.disconnect();
+        mOperationCount++;
+        return mpd;
+    }
+
+    /** Filters albums by genre, with a round trip for each album. */
+    @Benchmark
+    public int filterAlbumsByGenre() throws IOException, MPDException {
+        int albumCount = 0;
+
+        for (final Album album : mAlbums) {
+            if (mMPD.isAlbumInGenre(album, mGenre)) {
+                albumCount++;
+            }
+        }
+
+        mOperationCount++;
+        return albumCount;
+    }
+
+    /** Filters albums by genre, with a single command list. */
+    @Benchmark
+    public List<Album> filterAlbumsByGenreBatched() throws IOException, MPDException {
+        mOperationCount++;
+        return mMPD.filterAlbums(mAlbums, mGenre);
+    }
+
+    /** Retrieves the albums of an artist with their details, including the year. */
+    @Benchmark
+    public List<Album> getAlbumsWithDetails() throws IOException, MPDException {
+        mOperationCount++;
+        return mMPD.getAlbums(mAlbum.getArtist(), true, true);
+    }
+
+    /** Retrieves the albums of an artist with their details, using a sorted {@code find}. */
+    @Benchmark
+    public List<Album> getAlbumsWithDetailsSortedFind() throws IOException, MPDException {
+        mOperationCount++;
+        return mSortedFindMPD.getAlbums(mAlbum.getArtist(), true, true);
+    }
+
+    @Benchmark
+    public List<Music> getSongs() throws IOException, MPDException {
+        mOperationCount++;
+        return mMPD.getSongs(mAlbum);
+    }
+
+    /** Retrieves the songs of an album again, answered by the response cache. */
+    @Benchmark
+    public List<Music> getSongsCached() throws IOException, MPDException {
+        mOperationCount++;
+        return mMonitorMPD.getSongs(mAlbum);
+    }
+
+    /** Retrieves the songs of several albums, one round trip after another. */
+    @Benchmark
+    public int getSongsOfAlbums() throws IOException, MPDException {
+        int songCount = 0;
+
+        for (final Album album : mAlbums) {
+            songCount += mMPD.getSongs(album).size();
+        }
+
+        mOperationCount++;
+        return songCount;
+    }
+
+    @Benchmark
+    public List<Music> getSongsOfArtist() throws IOException, MPDException {
+        mOperationCount++;
+        return mMPD.getSongs(mAlbum.getArtist());
+    }
+
+    /** Retrieves the songs of several albums, with the queries pipelined. */
+    @Benchmark
+    public int getSongsOfAlbumsPipelined() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(mAlbums.size());
+        final AtomicInteger songCount = new AtomicInteger();
+
+        for (final Album album : mAlbums) {
+            mMPD.getSongs(album, new CommandCallback<List<Music>>() {
+                @Override
+                public void onCompleted(final List<Music> result) {
+                    songCount.addAndGet(result.size());
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailed(final Exception exception) {
+                    throw new IllegalStateException(exception);
+                }
+            });
+        }
+
+        if (!latch.await(10L, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Pipelined queries did not complete.");
+        }
+
+        mOperationCount++;
+        return songCount.get();
+    }
+
+    @Benchmark
+    public List<Album> listAllAlbumsGrouped() throws IOException, MPDException {
+        mOperationCount++;
+        return mMPD.listAllAlbumsGrouped(false);
+    }
+
+    @Benchmark
+    public List<Music> listAllInfo() throws IOException, MPDException {
+        mOperationCount++;
+        return mMPD.listAllInfo();
+    }
+
+    /** Retrieves the whole database a top level directory at a time, song by song. */
+    @Benchmark
+    public int listAllInfoStreamed() throws IOException, MPDException {
+        mOperationCount++;
+        return listAllInfoStreamed(mMPD);
+    }
+
+    /** Retrieves the whole database a window of songs at a time, song by song. */
+    @Benchmark
+    public int listAllInfoStreamedSortedFind() throws IOException, MPDException {
+        mOperationCount++;
+        return listAllInfoStreamed(mSortedFindMPD);
+    }
+
+    private static int listAllInfoStreamed(final MPD mpd) throws IOException, MPDException {
+        final int[] songCount = new int[1];
+
+        mpd.listAllInfo(new MusicConsumer() {
+            @Override
+            public void onMusic(final Music music) {
+                songCount[0]++;
+            }
+        });
+
+        return songCount[0];
+    }
+
+    /**
+     * Measures the time from a change made by another client to the status monitor listener
+     * notification.
+     */
+    @Benchmark
+    public int monitorVolumeChange() throws IOException, InterruptedException, MPDException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mVolume = (mVolume + 1) % 100;
+        mVolumeChanged = latch;
+        mController.setVolume(mVolume);
+        if (!latch.await(10L, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("No volume change notification.");
+        }
+
+        mOperationCount++;
+        return mVolume;
+    }
+
+    /** Measures the refresh of the queue after another client replaced every entry. */
+    @Benchmark
+    public MPDPlaylist playlistRefresh() throws IOException, MPDException {
+        final MPDPlaylist playlist = mMPD.getPlaylist();
+
+        mServer.notifyChanged(MPDStatusMonitor.IDLE_PLAYLIST);
+        mMPD.updateStatus();
+        playlist.refresh(mMPD.getStatus());
+        mOperationCount++;
+        return playlist;
+    }
+
+    /**
+     * Measures the refresh of the queue after another client shuffled it, every entry moved but
+     * none has to be retrieved again.
+     */
+    @Benchmark
+    public MPDPlaylist playlistShuffleRefresh() throws IOException, MPDException {
+        final MPDPlaylist playlist = mMPD.getPlaylist();
+
+        mController.getPlaylist().shuffle();
+        mMPD.updateStatus();
+        playlist.refresh(mMPD.getStatus());
+        mOperationCount++;
+        return playlist;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printRoundTrips() {
+        if (mOperationCount != 0L) {
+            System.out.printf("%n%.1f requests/op%n",
+                    (double) (mServer.getRequestCount() - mRequestCount) /
+                            (double) mOperationCount);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounts() {
+        mOperationCount = 0L;
+        mRequestCount = mServer.getRequestCount();
+    }
+
+    @Setup
+    public void setUp() throws IOException, MPDException {
+        final CommandQueue commandQueue = new CommandQueue();
+
+        mServer = new FakeMPDServer(new FakeLibrary(mSongCount));
+        mServer.start();
+
+        mMPD = connect();
+        mController = connect();
+
+        commandQueue.add(MPDPlaylist.MPD_CMD_PLAYLIST_ADD, "");
+        mController.add(commandQueue, true, false);
+        mAlbums = mMPD.listAllAlbumsGrouped(false);
+        mAlbum = mAlbums.get(0);
+        mAlbums = mAlbums.subList(0, Math.min(ALBUM_BATCH_SIZE, mAlbums.size()));
+        mGenre = mMPD.getGenres().get(0);
+
+        mServer.setProtocolVersion(SORTED_FIND_PROTOCOL_VERSION);
+        mSortedFindMPD = connect();
+        mServer.setProtocolVersion(FakeMPDServer.DEFAULT_PROTOCOL_VERSION);
+
+        mMonitorMPD = connect();
+        mMonitorMPD.setResponseCache(new ResponseCache(RESPONSE_CACHE_SIZE));
+        mMonitor = new MPDStatusMonitor(mMonitorMPD, 1000L, IDLE_SUBSYSTEMS);
+        mMonitor.addStatusChangeListener(new VolumeListener());
+        mMonitor.start();
+
+        mServer.setLatency(mLatency);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mMonitor.giveup();
+        mMonitorMPD.disconnect();
+        mSortedFindMPD.disconnect();
+        mMPD.disconnect();
+        mController.disconnect();
+        mServer.close();
+    }
+
+    /** Counts down the current latch on volume changes. */
+    private final class VolumeListener implements StatusChangeListener {
+
+        @Override
+        public void connectionStateChanged(final boolean connected,
+                final boolean connectionLost) {
+        }
+
+        @Override
+        public void libraryStateChanged(final boolean updating, final boolean dbChanged) {
+        }
+
+        @Override
+        public void playlistChanged(final MPDStatus mpdStatus, final int oldPlaylistVersion) {
+        }
+
+        @Override
+        public void randomChanged(final boolean random) {
+        }
+
+        @Override
+        public void repeatChanged(final boolean repeating) {
+        }
+
+        @Override
+        public void stateChanged(final MPDStatus mpdStatus, final int oldState) {
+        }
+
+        @Override
+        public void stickerChanged(final MPDStatus mpdStatus) {
+        }
+
+        @Override
+        public void trackChanged(final MPDStatus mpdStatus, final int oldTrack) {
+        }
+
+        @Override
+        public void volumeChanged(final MPDStatus mpdStatus, final int oldVolume) {
+            final CountDownLatch latch = mVolumeChanged;
+
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.item.Album;
+import org.a0z.mpd.item.Artist;
+import org.a0z.mpd.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks merging the albums and artists found by artist with those found by album artist, as
+ * {@link MPD#listAllAlbumsGrouped(boolean)}, {@link MPD#getArtists()} and {@link
+ * MPD#getAlbums(Artist, boolean, boolean)} do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemMergeBenchmark {
+
+    /** The number of albums of each artist. */
+    private static final int ARTIST_ALBUMS = 8;
+
+    /** One album in this many is a compilation, with an album artist other than its artist. */
+    private static final int COMPILATION_INTERVAL = 5;
+
+    @Param({"1000", "10000"})
+    private int mAlbumCount;
+
+    private List<Album> mAlbumArtistAlbums;
+
+    private List<Artist> mAlbumArtists;
+
+    private List<Album> mArtistAlbums;
+
+    private List<Artist> mArtists;
+
+    @Setup
+    public void setUp() {
+        final int artistCount = mAlbumCount / ARTIST_ALBUMS;
+        final Artist compilationArtist = new Artist("Various Artists");
+
+        mAlbumArtistAlbums = new ArrayList<>(mAlbumCount);
+        mArtistAlbums = new ArrayList<>(mAlbumCount);
+        mAlbumArtists = new ArrayList<>(artistCount);
+        mArtists = new ArrayList<>(artistCount);
+
+        for (int i = 0; i < artistCount; i++) {
+            mArtists.add(new Artist("Artist " + i));
+
+            /** Artists with a compilation album only are not album artists. */
+            if (i % COMPILATION_INTERVAL != 0) {
+                mAlbumArtists.add(new Artist("Artist " + i));
+            }
+        }
+        mAlbumArtists.add(compilationArtist);
+
+        for (int i = 0; i < mAlbumCount; i++) {
+            final String name = "Album " + i;
+            final Artist artist = mArtists.get(i % artistCount);
+
+            mArtistAlbums.add(new Album(name, artist, false));
+            if (i % COMPILATION_INTERVAL == 0) {
+                mAlbumArtistAlbums.add(new Album(name, compilationArtist, true));
+            } else {
+                mAlbumArtistAlbums.add(new Album(name, new Artist(artist.getName()), true));
+            }
+        }
+
+        Collections.sort(mAlbumArtistAlbums);
+        Collections.sort(mAlbumArtists);
+        Collections.sort(mArtistAlbums);
+        Collections.sort(mArtists);
+    }
+
+    @Benchmark
+    public List<Album> markArtistAlbums() {
+        MPD.markArtistAlbums(mArtistAlbums, mAlbumArtistAlbums);
+        return mAlbumArtistAlbums;
+    }
+
+    /** Merges album lists, as {@link MPD#getAlbums(Artist, boolean, boolean)} does. */
+    @Benchmark
+    public List<Album> mergeAlbums() {
+        return Item.merged(new ArrayList<>(mAlbumArtistAlbums), new ArrayList<>(mArtistAlbums));
+    }
+
+    @Benchmark
+    public List<Artist> mergeArtists() {
+        return Item.merged(new ArrayList<>(mAlbumArtists), new ArrayList<>(mArtists));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.benchmark.server.FakeLibrary;
+import org.a0z.mpd.benchmark.server.FakeMPDServer;
+import org.a0z.mpd.connection.MPDConnectionNio;
+import org.a0z.mpd.event.StatusChangeListener;
+import org.a0z.mpd.exception.MPDException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks many media servers monitored at once, as a controller of many zones would. The
+ * operation changes the volume of every server, then waits for every status monitor to be
+ * notified. The platform threads and the heap used by the clients are printed after each
+ * iteration, the threads of the fake servers are not counted.
+ *
+ * <p>The {@code thread} mode uses the default connections, with their own threads, and a thread
+ * per status monitor. The {@code virtual} mode runs the commands and the status monitors on a
+ * virtual thread per task executor, and the {@code nio} mode also uses non-blocking connections.
+ * Without virtual threads, prior to Java 21, both fall back to a shared cached thread pool.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MonitoredServersBenchmark {
+
+    private static final String[] IDLE_SUBSYSTEMS = {MPDStatusMonitor.IDLE_MIXER,
+            MPDStatusMonitor.IDLE_PLAYER, MPDStatusMonitor.IDLE_PLAYLIST};
+
+    private static final String MODE_NIO = "nio";
+
+    private static final String MODE_THREAD = "thread";
+
+    private static final String SERVER_THREAD_PREFIX = "FakeMPDServer";
+
+    private final List<MPD> mClients = new ArrayList<>();
+
+    private final List<MPDStatusMonitor> mMonitors = new ArrayList<>();
+
+    private final List<FakeMPDServer> mServers = new ArrayList<>();
+
+    /** The heap used prior to connecting the clients. */
+    private long mBaseHeap;
+
+    /** The platform threads, other than the server threads, prior to connecting the clients. */
+    private int mBaseThreads;
+
+    private ExecutorService mExecutor;
+
+    @Param({MODE_THREAD, "virtual", MODE_NIO})
+    private String mMode;
+
+    @Param("100")
+    private int mServerCount;
+
+    /** The volume set by the last volume change, always different from the previous one. */
+    private int mVolume;
+
+    private volatile CountDownLatch mVolumeChanged;
+
+    private static int countClientThreads() {
+        int count = 0;
+
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().startsWith(SERVER_THREAD_PREFIX)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static long getUsedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public int changeVolumes() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(mServerCount);
+
+        mVolume = (mVolume + 1) % 100;
+        mVolumeChanged = latch;
+        for (final FakeMPDServer server : mServers) {
+            server.setVolume(mVolume);
+        }
+
+        if (!latch.await(10L, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Missing volume change notifications.");
+        }
+
+        return mVolume;
+    }
+
+    private MPD createClient() {
+        final MPD mpd;
+
+        if (MODE_THREAD.equals(mMode)) {
+            mpd = new MPD();
+        } else if (MODE_NIO.equals(mMode)) {
+            mpd = new MPD(new MPDConnectionNio(5000), new MPDConnectionNio(0));
+        } else {
+            mpd = new MPD(mExecutor);
+        }
+
+        return mpd;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCost() {
+        System.out.printf("%n%d client threads, %.1f MB heap for %d monitored servers%n",
+                countClientThreads() - mBaseThreads,
+                (double) (getUsedHeap() - mBaseHeap) / (1024.0 * 1024.0), mServerCount);
+    }
+
+    @Setup
+    public void setUp() throws IOException, MPDException {
+        for (int i = 0; i < mServerCount; i++) {
+            final FakeMPDServer server = new FakeMPDServer(new FakeLibrary(10));
+
+            server.start();
+            mServers.add(server);
+        }
+
+        if (VirtualThreads.isSupported()) {
+            mExecutor = VirtualThreads.newExecutor();
+        } else {
+            System.out.println("Virtual threads not supported, using a cached thread pool.");
+            mExecutor = Executors.newCachedThreadPool();
+        }
+
+        mBaseThreads = countClientThreads();
+        mBaseHeap = getUsedHeap();
+
+        for (final FakeMPDServer server : mServers) {
+            final MPD mpd = createClient();
+            final MPDStatusMonitor monitor = new MPDStatusMonitor(mpd, 1000L, IDLE_SUBSYSTEMS);
+
+            mpd.connect(InetAddress.getByName(null), server.getPort(), null);
+            monitor.addStatusChangeListener(new VolumeListener());
+            if (MODE_THREAD.equals(mMode)) {
+                monitor.start();
+            } else {
+                monitor.start(mExecutor);
+            }
+
+            mClients.add(mpd);
+            mMonitors.add(monitor);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        for (final MPDStatusMonitor monitor : mMonitors) {
+            monitor.giveup();
+        }
+
+        for (final MPD mpd : mClients) {
+            mpd.disconnect();
+        }
+
+        for (final FakeMPDServer server : mServers) {
+            server.close();
+        }
+
+        /** So the threads of this trial are not counted by the next one. */
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(10L, TimeUnit.SECONDS);
+    }
+
+    /** Counts down the current latch on volume changes. */
+    private final class VolumeListener implements StatusChangeListener {
+
+        @Override
+        public void connectionStateChanged(final boolean connected,
+                final boolean connectionLost) {
+        }
+
+        @Override
+        public void libraryStateChanged(final boolean updating, final boolean dbChanged) {
+        }
+
+        @Override
+        public void playlistChanged(final MPDStatus mpdStatus, final int oldPlaylistVersion) {
+        }
+
+        @Override
+        public void randomChanged(final boolean random) {
+        }
+
+        @Override
+        public void repeatChanged(final boolean repeating) {
+        }
+
+        @Override
+        public void stateChanged(final MPDStatus mpdStatus, final int oldState) {
+        }
+
+        @Override
+        public void stickerChanged(final MPDStatus mpdStatus) {
+        }
+
+        @Override
+        public void trackChanged(final MPDStatus mpdStatus, final int oldTrack) {
+        }
+
+        @Override
+        public void volumeChanged(final MPDStatus mpdStatus, final int oldVolume) {
+            final CountDownLatch latch = mVolumeChanged;
+
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.benchmark.ResponseCorpus;
+import org.a0z.mpd.item.Music;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks applying {@code plchanges} style changes to the {@link MusicList}. The same changes
+ * are applied on every invocation, which leaves the list in the same state each time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MusicListBenchmark {
+
+    /** One song in this many is changed for each manipulation. */
+    private static final int CHANGE_INTERVAL = 100;
+
+    private List<Music> mChanges;
+
+    private MusicList mMusicList;
+
+    private List<Music> mPlaylist;
+
+    @Param({"1000", "10000", "100000"})
+    private int mSongCount;
+
+    @Setup
+    public void setUp() {
+        mPlaylist = ResponseCorpus.getPlaylist(mSongCount);
+        mChanges = new ArrayList<>(mSongCount / CHANGE_INTERVAL);
+
+        for (int i = 0; i < mPlaylist.size(); i += CHANGE_INTERVAL) {
+            mChanges.add(mPlaylist.get(i));
+        }
+
+        mMusicList = new MusicList();
+        mMusicList.replace(mPlaylist);
+    }
+
+    @Benchmark
+    public MusicList manipulate() {
+        synchronized (mMusicList) {
+            mMusicList.manipulate(mChanges, mSongCount);
+        }
+
+        return mMusicList;
+    }
+
+    @Benchmark
+    public MusicList replace() {
+        mMusicList.replace(mPlaylist);
+
+        return mMusicList;
+    }
+
+    @Benchmark
+    public Music getById() {
+        return mMusicList.getById(mSongCount / 2);
+    }
+}
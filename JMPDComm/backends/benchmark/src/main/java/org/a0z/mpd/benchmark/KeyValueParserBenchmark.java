@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.benchmark;
+
+import org.a0z.mpd.KeyValueParser;
+import org.a0z.mpd.Tools;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.a0z.mpd.Tools.KEY;
+import static org.a0z.mpd.Tools.VALUE;
+
+/**
+ * Compares {@link Tools#splitResponse(String)} with the {@link KeyValueParser} over a song list
+ * response. Both benchmarks consume the same fields in the same way a music builder does;
+ * numeric fields are parsed, and string fields are kept.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyValueParserBenchmark {
+
+    @Param("100000")
+    private int mSongCount;
+
+    private List<String> mResponse;
+
+    @Setup
+    public void setUp() {
+        mResponse = ResponseCorpus.getPlaylistResponse(mSongCount);
+    }
+
+    @Benchmark
+    public void keyValueParser(final Blackhole blackhole) {
+        final KeyValueParser parser = new KeyValueParser();
+
+        for (final String line : mResponse) {
+            parser.setLine(line);
+
+            switch (parser.getKey()) {
+                case "Id":
+                case "Pos":
+                case "Time":
+                    blackhole.consume(parser.getIntValue());
+                    break;
+                case "Disc":
+                case "Track":
+                    final int index = parser.indexOfValue('/');
+
+                    blackhole.consume(parser.getIntValue(0, index));
+                    blackhole.consume(parser.getIntValue(index + 1, parser.getValueLength()));
+                    break;
+                case "Date":
+                    blackhole.consume(parser.getDigitsAsLong());
+                    break;
+                case "Last-Modified":
+                    blackhole.consume(parser.getValueSequence());
+                    break;
+                default:
+                    blackhole.consume(parser.getValue());
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void splitResponse(final Blackhole blackhole) {
+        for (final String line : mResponse) {
+            final String[] pair = Tools.splitResponse(line);
+
+            switch (pair[KEY]) {
+                case "Id":
+                case "Pos":
+                case "Time":
+                    blackhole.consume(Integer.parseInt(pair[VALUE]));
+                    break;
+                case "Disc":
+                case "Track":
+                    final int index = pair[VALUE].indexOf('/');
+
+                    blackhole.consume(Integer.parseInt(pair[VALUE].substring(0, index)));
+                    blackhole.consume(Integer.parseInt(pair[VALUE].substring(index + 1)));
+                    break;
+                case "Date":
+                    blackhole.consume(Long.parseLong(pair[VALUE].replaceAll("\\D+", "")));
+                    break;
+                default:
+                    blackhole.consume(pair[VALUE]);
+                    break;
+            }
+        }
+    }
+}
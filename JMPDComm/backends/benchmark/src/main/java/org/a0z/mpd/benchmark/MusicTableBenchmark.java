@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd.benchmark;
+
+import org.a0z.mpd.TagPool;
+import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicResponseHandler;
+import org.a0z.mpd.item.MusicStreamHandler;
+import org.a0z.mpd.item.MusicTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks holding a library as {@link Music} objects, with and without a {@link TagPool},
+ * against holding it in a {@link MusicTable}: building it from a {@code listallinfo} response,
+ * then finding and sorting songs by artist. Run with {@code -prof gc} for the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MusicTableBenchmark {
+
+    private static final Comparator<Music> ARTIST_ORDER = new Comparator<Music>() {
+        @Override
+        public int compare(final Music lhs, final Music rhs) {
+            return String.CASE_INSENSITIVE_ORDER.compare(lhs.getArtist(), rhs.getArtist());
+        }
+    };
+
+    private String mArtist;
+
+    private List<Music> mMusic;
+
+    private List<String> mResponse;
+
+    @Param({"10000", "100000"})
+    private int mSongCount;
+
+    private MusicTable mTable;
+
+    private static List<Music> parse(final List<String> response, final TagPool pool) {
+        final MusicResponseHandler handler = new MusicResponseHandler(0, pool);
+
+        handler.onResponseStart();
+        for (final String line : response) {
+            handler.onResponseLine(line);
+        }
+
+        return handler.getMusic(false);
+    }
+
+    @Benchmark
+    public List<Music> findArtist() {
+        final List<Music> songs = new ArrayList<>();
+
+        for (final Music music : mMusic) {
+            if (mArtist.equals(music.getArtist())) {
+                songs.add(music);
+            }
+        }
+
+        return songs;
+    }
+
+    @Benchmark
+    public int[] findArtistTable() {
+        return mTable.find(MusicTable.ARTIST, mArtist);
+    }
+
+    @Benchmark
+    public List<Music> parseMusic() {
+        return parse(mResponse, null);
+    }
+
+    @Benchmark
+    public List<Music> parseMusicPooled() {
+        return parse(mResponse, new TagPool());
+    }
+
+    @Benchmark
+    public MusicTable parseTable() {
+        final MusicTable table = new MusicTable();
+        final MusicStreamHandler handler = new MusicStreamHandler(table, new TagPool());
+
+        handler.onResponseStart();
+        for (final String line : mResponse) {
+            handler.onResponseLine(line);
+        }
+        handler.finish();
+
+        return table;
+    }
+
+    @Setup
+    public void setUp() {
+        mResponse = ResponseCorpus.getDatabaseResponse(mSongCount);
+        mMusic = parse(mResponse, null);
+        mArtist = mMusic.get(mMusic.size() / 2).getArtist();
+        mTable = new MusicTable(mMusic.size());
+        for (final Music music : mMusic) {
+            mTable.add(music);
+        }
+    }
+
+    @Benchmark
+    public List<Music> sortByArtist() {
+        final List<Music> sorted = new ArrayList<>(mMusic);
+
+        Collections.sort(sorted, ARTIST_ORDER);
+        return sorted;
+    }
+
+    @Benchmark
+    public int[] sortByArtistTable() {
+        return mTable.sort(MusicTable.ARTIST, String.CASE_INSENSITIVE_ORDER);
+    }
+}
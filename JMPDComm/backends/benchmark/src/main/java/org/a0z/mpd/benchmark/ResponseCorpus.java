@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.benchmark;
+
+import org.a0z.mpd.item.Music;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic, but realistic, media server responses for benchmarking. The same seed and
+ * size always generate the same response, so results are comparable between runs.
+ */
+public final class ResponseCorpus {
+
+    /** The number of songs on each generated album. */
+    private static final int ALBUM_TRACKS = 12;
+
+    /** The number of albums of each generated artist. */
+    private static final int ARTIST_ALBUMS = 8;
+
+    private static final String[] GENRES = {
+            "Rock", "Pop", "Jazz", "Classical", "Electronic", "Hip-Hop", "Folk", "Metal",
+            "Blues", "Soundtrack", "Reggae", "Ambient"
+    };
+
+    /** Common words used to generate names, including some requiring the multibyte path. */
+    private static final String[] WORDS = {
+            "the", "night", "blue", "river", "electric", "song", "of", "love", "dream", "fire",
+            "black", "city", "heart", "light", "wild", "golden", "stone", "summer", "ghost",
+            "\u00e9chos", "M\u00e4rchen", "sue\u00f1o", "\u591c", "moon", "silver", "road",
+            "home", "north", "rain"
+    };
+
+    /** The seed used for every corpus. */
+    private static final long SEED = 0x4D5044L;
+
+    private ResponseCorpus() {
+        super();
+    }
+
+    private static String capitalize(final String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /**
+     * Generates a {@code listallinfo} style response, song blocks only.
+     *
+     * @param songCount The number of songs in the response.
+     * @return The response lines.
+     */
+    public static List<String> getDatabaseResponse(final int songCount) {
+        return generate(songCount, false);
+    }
+
+    /**
+     * Generates a {@code playlistinfo} style response, which includes positions and song IDs.
+     *
+     * @param songCount The number of songs in the response.
+     * @return The response lines.
+     */
+    public static List<String> getPlaylistResponse(final int songCount) {
+        return generate(songCount, true);
+    }
+
+    /**
+     * Generates a {@code playlistinfo} style response and builds the music from it.
+     *
+     * @param songCount The number of songs to build.
+     * @return The music built from the generated response.
+     */
+    public static List<Music> getPlaylist(final int songCount) {
+        return Music.getMusicFromList(getPlaylistResponse(songCount), false);
+    }
+
+    private static List<String> generate(final int songCount, final boolean isPlaylist) {
+        final Random random = new Random(SEED);
+        final List<String> response = new ArrayList<>(songCount * 13);
+        String artist = null;
+        String album = null;
+        String genre = null;
+        int year = 0;
+        int albumTracks = 0;
+
+        for (int song = 0; song < songCount; song++) {
+            final int track = song % ALBUM_TRACKS + 1;
+
+            if (track == 1) {
+                if (song % (ALBUM_TRACKS * ARTIST_ALBUMS) == 0) {
+                    artist = getName(random, 1 + random.nextInt(3));
+                    if (random.nextInt(5) == 0) {
+                        artist = "The " + artist;
+                    }
+                }
+
+                album = getName(random, 1 + random.nextInt(4));
+                genre = GENRES[random.nextInt(GENRES.length)];
+                year = 1960 + random.nextInt(56);
+                albumTracks = Math.min(ALBUM_TRACKS, songCount - song);
+            }
+
+            final String title = getName(random, 1 + random.nextInt(5));
+
+            response.add("file: " + artist + '/' + album + '/' + String.format("%02d", track) +
+                    " - " + title + ".flac");
+            /** Albums may be older than the epoch, their files are not. */
+            response.add("Last-Modified: " + Math.max(year, 1970) + "-0" +
+                    (1 + random.nextInt(9)) + "-1" + random.nextInt(10) + "T12:" +
+                    (10 + random.nextInt(50)) + ":00Z");
+            response.add("Time: " + (90 + random.nextInt(400)));
+            response.add("Artist: " + artist);
+            response.add("AlbumArtist: " + artist);
+            response.add("Title: " + title);
+            response.add("Album: " + album);
+            response.add("Track: " + track + '/' + albumTracks);
+            response.add("Date: " + year + "-0" + (1 + random.nextInt(9)) + "-2" +
+                    random.nextInt(9));
+            response.add("Genre: " + genre);
+            response.add("Disc: 1/1");
+
+            if (isPlaylist) {
+                response.add("Pos: " + song);
+                response.add("Id: " + (song + 1));
+            }
+        }
+
+        return Collections.unmodifiableList(response);
+    }
+
+    private static String getName(final Random random, final int wordCount) {
+        final StringBuilder name = new StringBuilder();
+
+        for (int i = 0; i < wordCount; i++) {
+            if (i != 0) {
+                name.append(' ');
+            }
+            name.append(capitalize(WORDS[random.nextInt(WORDS.length)]));
+        }
+
+        return name.toString();
+    }
+}
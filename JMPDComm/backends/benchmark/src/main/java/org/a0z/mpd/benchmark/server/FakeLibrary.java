@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.benchmark.server;
+
+import org.a0z.mpd.benchmark.ResponseCorpus;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An immutable, in-memory, media server database generated by the {@link ResponseCorpus}. This
+ * implements the database queries of the {@link FakeMPDServer}.
+ */
+public final class FakeLibrary {
+
+    /** Matches any tag, as the {@code any} find and search type does. */
+    private static final String TYPE_ANY = "any";
+
+    /** Matches a path prefix, as the {@code base} find and search type does. */
+    private static final String TYPE_BASE = "base";
+
+    /** Matches the song path. */
+    private static final String TYPE_FILE = "file";
+
+    /** Matches songs modified since a time, as the {@code modified-since} type does. */
+    private static final String TYPE_MODIFIED_SINCE = "modified-since";
+
+    /** The last modification time of each directory, by directory path. */
+    private final Map<String, String> mLastModified = new HashMap<>();
+
+    /** Sub-directories of each directory, by directory path. The root directory is "". */
+    private final Map<String, Collection<String>> mDirectories = new HashMap<>();
+
+    /** Songs by path. */
+    private final Map<String, Song> mSongsByPath = new HashMap<>();
+
+    /** Songs directly within each directory, by directory path. */
+    private final Map<String, List<Song>> mSongsByDirectory = new HashMap<>();
+
+    /** All songs, in database order. */
+    private final List<Song> mSongs;
+
+    /** The total duration of all songs, in seconds. */
+    private final long mPlaytime;
+
+    /**
+     * Generates a library.
+     *
+     * @param songCount The number of songs in the library.
+     */
+    public FakeLibrary(final int songCount) {
+        super();
+
+        final List<String> response = ResponseCorpus.getDatabaseResponse(songCount);
+        final List<String> songLines = new ArrayList<>();
+        final List<Song> songs = new ArrayList<>(songCount);
+        long playtime = 0L;
+
+        for (final String line : response) {
+            if (line.startsWith("file: ") && !songLines.isEmpty()) {
+                songs.add(new Song(songLines));
+                songLines.clear();
+            }
+            songLines.add(line);
+        }
+
+        if (!songLines.isEmpty()) {
+            songs.add(new Song(songLines));
+        }
+
+        mDirectories.put("", new TreeSet<String>());
+        for (final Song song : songs) {
+            final String directory = getParent(song.getPath());
+
+            mSongsByPath.put(song.getPath(), song);
+            if (!mSongsByDirectory.containsKey(directory)) {
+                mSongsByDirectory.put(directory, new ArrayList<Song>());
+            }
+            mSongsByDirectory.get(directory).add(song);
+            addDirectory(directory);
+            playtime += song.getTime();
+
+            /** A directory is as recent as the most recent song within. */
+            final String lastModified = song.getTag("Last-Modified");
+            for (String parent = directory; !parent.isEmpty(); parent = getParent(parent)) {
+                final String previous = mLastModified.get(parent);
+
+                if (previous == null || previous.compareTo(lastModified) < 0) {
+                    mLastModified.put(parent, lastModified);
+                }
+            }
+        }
+
+        mSongs = Collections.unmodifiableList(songs);
+        mPlaytime = playtime;
+    }
+
+    private static String getParent(final String path) {
+        final int index = path.lastIndexOf('/');
+        final String parent;
+
+        if (index == -1) {
+            parent = "";
+        } else {
+            parent = path.substring(0, index);
+        }
+
+        return parent;
+    }
+
+    /**
+     * Returns the protocol tag name, as it is in a response, for a tag type.
+     *
+     * @param type The tag type, case-insensitive, as it would be in a command.
+     * @return The tag name as it would be sent in a response.
+     */
+    static String getTagName(final String type) {
+        final String tagName;
+
+        switch (type.toLowerCase(Locale.US)) {
+            case "album":
+                tagName = "Album";
+                break;
+            case "albumartist":
+                tagName = "AlbumArtist";
+                break;
+            case "artist":
+                tagName = "Artist";
+                break;
+            case "composer":
+                tagName = "Composer";
+                break;
+            case "date":
+                tagName = "Date";
+                break;
+            case "disc":
+                tagName = "Disc";
+                break;
+            case TYPE_FILE:
+                tagName = TYPE_FILE;
+                break;
+            case "genre":
+                tagName = "Genre";
+                break;
+            case "title":
+                tagName = "Title";
+                break;
+            case "track":
+                tagName = "Track";
+                break;
+            default:
+                tagName = null;
+                break;
+        }
+
+        return tagName;
+    }
+
+    private void addDirectory(final String directory) {
+        if (!directory.isEmpty() && !mDirectories.containsKey(directory)) {
+            final String parent = getParent(directory);
+
+            mDirectories.put(directory, new TreeSet<String>());
+            addDirectory(parent);
+            mDirectories.get(parent).add(directory);
+        }
+    }
+
+    /**
+     * Finds songs matching all filters.
+     *
+     * @param filters       Type and value pairs, as they would be sent to the find command.
+     * @param caseSensitive True for exact matches ({@code find}), false for case-insensitive
+     *                      substring matches ({@code search}).
+     * @return The matching songs, in database order.
+     * @throws IllegalArgumentException If a filter is incomplete or a type is unknown.
+     */
+    public List<Song> find(final List<String> filters, final boolean caseSensitive) {
+        final List<Song> result = new ArrayList<>();
+
+        if (filters.size() % 2 != 0) {
+            throw new IllegalArgumentException("incorrect arguments");
+        }
+
+        /** Types are lower cased and times converted once, rather than for every song. */
+        final List<String> parsedFilters = new ArrayList<>(filters.size());
+        for (int i = 0; i < filters.size(); i += 2) {
+            final String type = filters.get(i).toLowerCase(Locale.US);
+
+            if (!TYPE_ANY.equals(type) && !TYPE_BASE.equals(type) &&
+                    !TYPE_MODIFIED_SINCE.equals(type) && getTagName(type) == null) {
+                throw new IllegalArgumentException("Unknown filter type: " + filters.get(i));
+            }
+
+            parsedFilters.add(type);
+            if (TYPE_MODIFIED_SINCE.equals(type)) {
+                parsedFilters.add(toTimestamp(filters.get(i + 1)));
+            } else {
+                parsedFilters.add(filters.get(i + 1));
+            }
+        }
+
+        for (final Song song : mSongs) {
+            boolean matches = true;
+
+            for (int i = 0; i < parsedFilters.size() && matches; i += 2) {
+                matches = song.matches(parsedFilters.get(i), parsedFilters.get(i + 1),
+                        caseSensitive);
+            }
+
+            if (matches) {
+                result.add(song);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the sub-directories of a directory.
+     *
+     * @param directory The directory path, "" for the root directory.
+     * @return The sub-directories, sorted, or null if the directory does not exist.
+     */
+    public Collection<String> getDirectories(final String directory) {
+        return mDirectories.get(directory);
+    }
+
+    /**
+     * Returns the last modification time of a directory.
+     *
+     * @param directory The directory path.
+     * @return The last modification time, in ISO 8601 format, null if the directory does not
+     * exist.
+     */
+    public String getLastModified(final String directory) {
+        return mLastModified.get(directory);
+    }
+
+    /**
+     * Returns the total duration of all songs in the library.
+     *
+     * @return The total duration of all songs in the library, in seconds.
+     */
+    public long getPlaytime() {
+        return mPlaytime;
+    }
+
+    /**
+     * Returns a song by path.
+     *
+     * @param path The path of the song.
+     * @return The song, or null if not found.
+     */
+    public Song getSong(final String path) {
+        return mSongsByPath.get(path);
+    }
+
+    /**
+     * Returns all songs.
+     *
+     * @return All songs in database order.
+     */
+    public List<Song> getSongs() {
+        return mSongs;
+    }
+
+    /**
+     * Returns all songs within a directory, recursively, or the song with the path.
+     *
+     * @param path The directory path, "" for the root directory, or the path of a song.
+     * @return The songs, or an empty list if nothing exists at the path.
+     */
+    public List<Song> getSongs(final String path) {
+        final List<Song> result;
+        final Song song = mSongsByPath.get(path);
+
+        if (song != null) {
+            result = Collections.singletonList(song);
+        } else if (path.isEmpty()) {
+            result = mSongs;
+        } else {
+            final String prefix = path + '/';
+            result = new ArrayList<>();
+
+            for (final Song candidate : mSongs) {
+                if (candidate.getPath().startsWith(prefix)) {
+                    result.add(candidate);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the songs directly within a directory.
+     *
+     * @param directory The directory path, "" for the root directory.
+     * @return The songs directly within the directory.
+     */
+    public List<Song> getSongsInDirectory(final String directory) {
+        final List<Song> songs = mSongsByDirectory.get(directory);
+        final List<Song> result;
+
+        if (songs == null) {
+            result = Collections.emptyList();
+        } else {
+            result = songs;
+        }
+
+        return result;
+    }
+
+    /**
+     * Lists unique tag values, optionally grouped by other tags, in the order of the
+     * {@code list} command of MPD 0.19; the tag, followed by each of the group tags.
+     *
+     * @param songs     The songs to list the tags of.
+     * @param tagName   The tag name to list.
+     * @param groupTags The tag names to group by.
+     * @return The unique tag combinations, as response lines.
+     */
+    public static List<String> list(final Iterable<Song> songs, final String tagName,
+            final List<String> groupTags) {
+        final Map<String, List<String>> unique = new TreeMap<>();
+
+        for (final Song song : songs) {
+            final String value = song.getTag(tagName);
+            final StringBuilder key = new StringBuilder();
+            final List<String> lines = new ArrayList<>(groupTags.size() + 1);
+
+            if (value == null && groupTags.isEmpty()) {
+                continue;
+            }
+
+            lines.add(tagName + ": " + emptyIfNull(value));
+            key.append(emptyIfNull(value));
+            for (final String groupTag : groupTags) {
+                final String groupValue = song.getTag(groupTag);
+
+                lines.add(groupTag + ": " + emptyIfNull(groupValue));
+                key.append('\0').append(emptyIfNull(groupValue));
+            }
+
+            unique.put(key.toString(), lines);
+        }
+
+        final List<String> result = new ArrayList<>(unique.size() * (groupTags.size() + 1));
+        for (final List<String> lines : unique.values()) {
+            result.addAll(lines);
+        }
+
+        return result;
+    }
+
+    /**
+     * Sorts songs by a tag, as the {@code sort} argument of the {@code find} command of MPD 0.21
+     * does; {@code Track} and {@code Disc} are compared by their number, songs without the tag
+     * come first.
+     *
+     * @param songs   The songs to sort.
+     * @param tagName The tag name to sort by.
+     */
+    public static void sort(final List<Song> songs, final String tagName) {
+        final boolean numeric = "Track".equals(tagName) || "Disc".equals(tagName);
+
+        Collections.sort(songs, new Comparator<Song>() {
+            @Override
+            public int compare(final Song lhs, final Song rhs) {
+                final String lhsValue = emptyIfNull(lhs.getTag(tagName));
+                final String rhsValue = emptyIfNull(rhs.getTag(tagName));
+                final int result;
+
+                if (numeric) {
+                    result = Integer.compare(parseNumber(lhsValue), parseNumber(rhsValue));
+                } else {
+                    result = lhsValue.compareTo(rhsValue);
+                }
+
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Parses the leading number of a tag value, such as {@code 3} of {@code 3/12}.
+     *
+     * @param value The tag value.
+     * @return The leading number, -1 if there is none.
+     */
+    private static int parseNumber(final String value) {
+        int number = -1;
+
+        for (int i = 0; i < value.length() && Character.isDigit(value.charAt(i)); i++) {
+            number = Math.max(number, 0) * 10 + value.charAt(i) - '0';
+        }
+
+        return number;
+    }
+
+    /**
+     * Converts a {@code modified-since} value, seconds since the epoch or an ISO 8601 time, to
+     * an ISO 8601 time, as the songs Last-Modified tag is.
+     *
+     * @param value The {@code modified-since} value.
+     * @return The time in ISO 8601 format.
+     */
+    private static String toTimestamp(final String value) {
+        final String timestamp;
+
+        if (value.matches("\\d+")) {
+            final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            timestamp = format.format(new Date(Long.parseLong(value) * 1000L));
+        } else {
+            timestamp = value;
+        }
+
+        return timestamp;
+    }
+
+    private static String emptyIfNull(final String value) {
+        final String result;
+
+        if (value == null) {
+            result = "";
+        } else {
+            result = value;
+        }
+
+        return result;
+    }
+
+    /** A song in the library. */
+    public static final class Song {
+
+        /** The database response lines of this song. */
+        private final List<String> mLines;
+
+        private final String mPath;
+
+        /** Tags by response tag name. */
+        private final Map<String, String> mTags = new HashMap<>();
+
+        private final long mTime;
+
+        Song(final List<String> lines) {
+            super();
+
+            long time = 0L;
+
+            mLines = Collections.unmodifiableList(new ArrayList<>(lines));
+            for (final String line : lines) {
+                final int index = line.indexOf(':');
+                final String key = line.substring(0, index);
+                final String value = line.substring(index + 2);
+
+                mTags.put(key, value);
+                if ("Time".equals(key)) {
+                    time = Long.parseLong(value);
+                }
+            }
+
+            mPath = mTags.get(TYPE_FILE);
+            mTime = time;
+        }
+
+        /**
+         * Returns the database response lines of this song.
+         *
+         * @return The database response lines of this song.
+         */
+        public List<String> getLines() {
+            return mLines;
+        }
+
+        public String getPath() {
+            return mPath;
+        }
+
+        /**
+         * Returns a tag value.
+         *
+         * @param tagName The tag name as sent in a response, for instance {@code AlbumArtist}.
+         * @return The tag value, null if this song does not have the tag.
+         */
+        public String getTag(final String tagName) {
+            return mTags.get(tagName);
+        }
+
+        public long getTime() {
+            return mTime;
+        }
+
+        private boolean matches(final String type, final String value,
+                final boolean caseSensitive) {
+            final boolean matches;
+
+            if (TYPE_BASE.equals(type)) {
+                matches = mPath.startsWith(value + '/');
+            } else if (TYPE_MODIFIED_SINCE.equals(type)) {
+                matches = mTags.get("Last-Modified").compareTo(value) >= 0;
+            } else if (TYPE_ANY.equals(type)) {
+                boolean anyMatches = false;
+
+                for (final String tag : mTags.values()) {
+                    if (matchesTag(tag, value, caseSensitive)) {
+                        anyMatches = true;
+                        break;
+                    }
+                }
+                matches = anyMatches;
+            } else {
+                matches = matchesTag(mTags.get(getTagName(type)), value, caseSensitive);
+            }
+
+            return matches;
+        }
+
+        private static boolean matchesTag(final String tag, final String value,
+                final boolean caseSensitive) {
+            final boolean matches;
+
+            if (tag == null) {
+                matches = value.isEmpty();
+            } else if (caseSensitive) {
+                matches = tag.equals(value);
+            } else {
+                matches = tag.toLowerCase(Locale.US).contains(value.toLowerCase(Locale.US));
+            }
+
+            return matches;
+        }
+    }
+}
@@ -0,0 +1,1441 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.benchmark.server;
+
+import org.a0z.mpd.benchmark.server.FakeLibrary.Song;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for a media server, speaking the MPD text protocol over a socket, backed by a
+ * generated {@link FakeLibrary}. It supports the commands used by this library: status and
+ * playback control, the queue (including {@code plchanges}), database queries ({@code lsinfo},
+ * {@code find} and {@code search} with {@code sort} and {@code window}, {@code count},
+ * {@code list ... group}), stickers, command lists, {@code idle}/{@code noidle} and {@code ACK}
+ * errors.
+ *
+ * <p>The latency and bandwidth of a network link can be simulated. Each response is sent once the
+ * latency has elapsed since its request (a command, or a command list) was received, so
+ * pipelined requests wait for the latency once, as they would on a network. The number of
+ * requests and commands processed are counted, to measure the round trips used by the
+ * client.</p>
+ */
+public class FakeMPDServer implements Closeable {
+
+    /** The default MPD protocol version announced by the server. */
+    public static final String DEFAULT_PROTOCOL_VERSION = "0.19.0";
+
+    private static final String CMD_COMMAND_LIST_BEGIN = "command_list_begin";
+
+    private static final String CMD_COMMAND_LIST_END = "command_list_end";
+
+    private static final String CMD_COMMAND_LIST_OK_BEGIN = "command_list_ok_begin";
+
+    private static final String CMD_IDLE = "idle";
+
+    private static final String CMD_NOIDLE = "noidle";
+
+    /** The commands this server supports, as sent in response to the {@code commands} command. */
+    private static final List<String> COMMANDS = Arrays.asList("add", "addid", "clear",
+            "clearerror", "close", "commands", "consume", "count", "crossfade", "currentsong",
+            "delete", "deleteid", "disableoutput", "enableoutput", "find", "idle", "list",
+            "listall", "listallinfo", "listplaylists", "lsinfo", "move", "next", "noidle",
+            "notcommands", "outputs", "password", "pause", "ping", "play", "playid",
+            "playlistid", "playlistinfo", "plchanges", "plchangesposid", "previous", "random",
+            "repeat", "search", "seek", "seekcur", "seekid", "setvol", "shuffle", "single",
+            "stats",
+            "status", "sticker", "stop", "tagtypes", "update");
+
+    private static final String IDLE_DATABASE = "database";
+
+    private static final String IDLE_MIXER = "mixer";
+
+    private static final String IDLE_OPTIONS = "options";
+
+    private static final String IDLE_OUTPUT = "output";
+
+    private static final String IDLE_PLAYER = "player";
+
+    private static final String IDLE_PLAYLIST = "playlist";
+
+    private static final String IDLE_STICKER = "sticker";
+
+    private static final String IDLE_UPDATE = "update";
+
+    private static final String STATE_PAUSE = "pause";
+
+    private static final String STATE_PLAY = "play";
+
+    private static final String STATE_STOP = "stop";
+
+    private final AtomicLong mCommandCount = new AtomicLong();
+
+    private final FakeLibrary mLibrary;
+
+    /** Guards all server state below, commands are processed one at a time. */
+    private final Object mLock = new Object();
+
+    private final List<QueueEntry> mQueue = new ArrayList<>();
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    private final Collection<Session> mSessions = new CopyOnWriteArrayList<>();
+
+    /** A fixed seed, so that shuffles are the same from one run to another. */
+    private final Random mShuffleRandom = new Random(0L);
+
+    /** Stickers by song path. */
+    private final Map<String, Map<String, String>> mStickers = new HashMap<>();
+
+    private volatile long mBandwidth;
+
+    private boolean mConsume;
+
+    /** The position of the current song in the queue, -1 if none. */
+    private int mCurrent = -1;
+
+    /** The elapsed time of the current song when playback was last started or paused. */
+    private long mElapsedMillis;
+
+    private volatile long mLatency;
+
+    private int mNextSongId = 1;
+
+    private boolean mOutputEnabled = true;
+
+    private long mPlayStartNanos;
+
+    private int mPlaylistVersion = 1;
+
+    private volatile String mProtocolVersion = DEFAULT_PROTOCOL_VERSION;
+
+    private boolean mRandom;
+
+    private boolean mRepeat;
+
+    private ServerSocket mServerSocket;
+
+    private boolean mSingle;
+
+    private String mState = STATE_STOP;
+
+    private int mVolume = 50;
+
+    /**
+     * Constructor, the server is not started until {@link #start()} is called.
+     *
+     * @param library The database of this server.
+     */
+    public FakeMPDServer(final FakeLibrary library) {
+        super();
+
+        mLibrary = library;
+    }
+
+    /**
+     * Runs a server until the process is killed, for manual testing with MPD clients.
+     *
+     * @param args The song count, the port, and, optionally, the request latency in
+     *             milliseconds and the bandwidth in bytes per second.
+     * @throws IOException If the server could not be started.
+     */
+    public static void main(final String[] args) throws IOException {
+        final int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int port = args.length > 1 ? Integer.parseInt(args[1]) : 6600;
+        final FakeMPDServer server = new FakeMPDServer(new FakeLibrary(songCount));
+
+        if (args.length > 2) {
+            server.setLatency(Long.parseLong(args[2]));
+        }
+        if (args.length > 3) {
+            server.setBandwidth(Long.parseLong(args[3]));
+        }
+
+        server.start(new InetSocketAddress(port));
+        System.out.println("Fake MPD server listening on port " + server.getPort() + " with " +
+                songCount + " songs.");
+    }
+
+    private static void appendSong(final StringBuilder response, final Song song) {
+        for (final String line : song.getLines()) {
+            response.append(line).append('\n');
+        }
+    }
+
+    private static void checkArguments(final List<String> args, final int min, final int max)
+            throws AckException {
+        if (args.size() < min || args.size() > max) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "wrong number of arguments");
+        }
+    }
+
+    private static String getArgument(final List<String> args, final int index) {
+        final String result;
+
+        if (index < args.size()) {
+            result = args.get(index);
+        } else {
+            result = null;
+        }
+
+        return result;
+    }
+
+    private static boolean parseBoolean(final String value) throws AckException {
+        final boolean result;
+
+        if ("1".equals(value)) {
+            result = true;
+        } else if ("0".equals(value)) {
+            result = false;
+        } else {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "Boolean (0/1) expected: " + value);
+        }
+
+        return result;
+    }
+
+    private static int parseInt(final String value) throws AckException {
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException ignored) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "Integer expected: " + value);
+        }
+    }
+
+    /**
+     * Parses a {@code START:END} or {@code POSITION} range argument.
+     *
+     * @param value The argument.
+     * @param size  The size of the list the range is within, the default end of the range.
+     * @return A two element array, the start (inclusive) and end (exclusive) of the range.
+     * @throws AckException If the argument is not a valid range.
+     */
+    private static int[] parseRange(final String value, final int size) throws AckException {
+        final int index = value.indexOf(':');
+        final int[] range = new int[2];
+
+        if (index == -1) {
+            range[0] = parseInt(value);
+            range[1] = range[0] + 1;
+        } else {
+            range[0] = parseInt(value.substring(0, index));
+            if (index == value.length() - 1) {
+                range[1] = size;
+            } else {
+                range[1] = parseInt(value.substring(index + 1));
+            }
+        }
+
+        if (range[0] < 0 || range[0] > range[1]) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "Bad range: " + value);
+        }
+
+        return range;
+    }
+
+    /**
+     * Splits a command line into the command and arguments, as the media server does.
+     *
+     * @param line The command line.
+     * @return The command and the arguments, unquoted and unescaped.
+     * @throws AckException If a quoted argument is not terminated.
+     */
+    static List<String> tokenize(final String line) throws AckException {
+        final List<String> tokens = new ArrayList<>();
+        final int length = line.length();
+        int i = 0;
+
+        while (i < length) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                i++;
+            } else if (line.charAt(i) == '"') {
+                final StringBuilder token = new StringBuilder();
+
+                for (i++; i < length && line.charAt(i) != '"'; i++) {
+                    if (line.charAt(i) == '\\' && i + 1 < length) {
+                        i++;
+                    }
+                    token.append(line.charAt(i));
+                }
+
+                if (i >= length) {
+                    throw new AckException(MPDException.ACK_ERROR_ARG, "Missing closing '\"'");
+                }
+
+                tokens.add(token.toString());
+                i++;
+            } else {
+                final int start = i;
+
+                while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+
+                tokens.add(line.substring(start, i));
+            }
+        }
+
+        return tokens;
+    }
+
+    private void appendQueueEntry(final StringBuilder response, final int position) {
+        final QueueEntry entry = mQueue.get(position);
+
+        appendSong(response, entry.mSong);
+        response.append("Pos: ").append(position).append('\n');
+        response.append("Id: ").append(entry.mId).append('\n');
+    }
+
+    private void appendStatus(final StringBuilder response) {
+        response.append("volume: ").append(mVolume).append('\n');
+        response.append("repeat: ").append(mRepeat ? 1 : 0).append('\n');
+        response.append("random: ").append(mRandom ? 1 : 0).append('\n');
+        response.append("single: ").append(mSingle ? 1 : 0).append('\n');
+        response.append("consume: ").append(mConsume ? 1 : 0).append('\n');
+        response.append("playlist: ").append(mPlaylistVersion).append('\n');
+        response.append("playlistlength: ").append(mQueue.size()).append('\n');
+        response.append("mixrampdb: 0.000000\n");
+        response.append("state: ").append(mState).append('\n');
+
+        if (mCurrent != -1) {
+            final QueueEntry entry = mQueue.get(mCurrent);
+
+            response.append("song: ").append(mCurrent).append('\n');
+            response.append("songid: ").append(entry.mId).append('\n');
+
+            if (!STATE_STOP.equals(mState)) {
+                final long elapsed = getElapsedMillis();
+
+                response.append("time: ").append(elapsed / 1000L).append(':')
+                        .append(entry.mSong.getTime()).append('\n');
+                response.append("elapsed: ").append(String.format(Locale.US, "%.3f",
+                        (double) elapsed / 1000.0)).append('\n');
+                response.append("bitrate: 320\n");
+                response.append("audio: 44100:24:2\n");
+            }
+
+            if (mCurrent + 1 < mQueue.size()) {
+                response.append("nextsong: ").append(mCurrent + 1).append('\n');
+                response.append("nextsongid: ").append(mQueue.get(mCurrent + 1).mId)
+                        .append('\n');
+            }
+        }
+    }
+
+    private void checkPosition(final int position, final int size) throws AckException {
+        if (position < 0 || position >= size) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "Bad song index");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+
+        for (final Session session : mSessions) {
+            session.close();
+        }
+    }
+
+    /**
+     * Executes one command, with the server state locked.
+     *
+     * @param tokens   The command and arguments.
+     * @param response The response to append to.
+     * @param events   The idle subsystems changed by the command.
+     * @throws AckException If the command failed.
+     */
+    private void execute(final List<String> tokens, final StringBuilder response,
+            final Set<String> events) throws AckException {
+        final String command = tokens.get(0);
+        final List<String> args = tokens.subList(1, tokens.size());
+
+        mCommandCount.incrementAndGet();
+
+        switch (command) {
+            case "add":
+            case "addid":
+                checkArguments(args, 1, 2);
+                final List<Song> songs = mLibrary.getSongs(args.get(0));
+                if (songs.isEmpty()) {
+                    throw new AckException(MPDException.ACK_ERROR_NO_EXIST, "No such directory");
+                }
+
+                int position = mQueue.size();
+                if (args.size() == 2) {
+                    position = parseInt(args.get(1));
+                    checkPosition(position, mQueue.size() + 1);
+                }
+
+                for (int i = 0; i < songs.size(); i++) {
+                    final QueueEntry entry = new QueueEntry(songs.get(i), mNextSongId);
+
+                    mNextSongId++;
+                    mQueue.add(position + i, entry);
+                    if ("addid".equals(command)) {
+                        response.append("Id: ").append(entry.mId).append('\n');
+                    }
+                }
+
+                if (mCurrent >= position) {
+                    mCurrent += songs.size();
+                }
+                touchQueue(position, events);
+                break;
+            case "clear":
+                mQueue.clear();
+                mCurrent = -1;
+                mState = STATE_STOP;
+                touchQueue(0, events);
+                events.add(IDLE_PLAYER);
+                break;
+            case "clearerror":
+            case "password":
+            case "ping":
+                break;
+            case "close":
+                throw new AckException(-1, "close");
+            case "commands":
+                for (final String name : COMMANDS) {
+                    response.append("command: ").append(name).append('\n');
+                }
+                break;
+            case "consume":
+                checkArguments(args, 1, 1);
+                mConsume = parseBoolean(args.get(0));
+                events.add(IDLE_OPTIONS);
+                break;
+            case "count":
+                executeCount(args, response);
+                break;
+            case "crossfade":
+                checkArguments(args, 1, 1);
+                events.add(IDLE_OPTIONS);
+                break;
+            case "currentsong":
+                if (mCurrent != -1) {
+                    appendQueueEntry(response, mCurrent);
+                }
+                break;
+            case "delete":
+                checkArguments(args, 1, 1);
+                final int[] range = parseRange(args.get(0), mQueue.size());
+                checkPosition(range[1] - 1, mQueue.size());
+                removeFromQueue(range[0], range[1], events);
+                break;
+            case "deleteid":
+                checkArguments(args, 1, 1);
+                final int deletePosition = getPositionById(parseInt(args.get(0)));
+                removeFromQueue(deletePosition, deletePosition + 1, events);
+                break;
+            case "disableoutput":
+            case "enableoutput":
+                checkArguments(args, 1, 1);
+                if (parseInt(args.get(0)) != 0) {
+                    throw new AckException(MPDException.ACK_ERROR_NO_EXIST, "No such audio output");
+                }
+                mOutputEnabled = "enableoutput".equals(command);
+                events.add(IDLE_OUTPUT);
+                break;
+            case "find":
+            case "search":
+                executeFind(args, "find".equals(command), response);
+                break;
+            case "list":
+                executeList(args, response);
+                break;
+            case "listall":
+            case "listallinfo":
+                checkArguments(args, 0, 1);
+                final String listPath = args.isEmpty() ? "" : args.get(0);
+                for (final Song song : mLibrary.getSongs(listPath)) {
+                    if ("listall".equals(command)) {
+                        response.append("file: ").append(song.getPath()).append('\n');
+                    } else {
+                        appendSong(response, song);
+                    }
+                }
+                break;
+            case "listplaylists":
+            case "notcommands":
+                break;
+            case "lsinfo":
+                checkArguments(args, 0, 1);
+                final String directory = args.isEmpty() ? "" : args.get(0);
+                final Collection<String> directories = mLibrary.getDirectories(directory);
+                if (directories == null) {
+                    throw new AckException(MPDException.ACK_ERROR_NO_EXIST, "No such directory");
+                }
+
+                for (final String child : directories) {
+                    response.append("directory: ").append(child).append('\n');
+                    response.append("Last-Modified: ").append(mLibrary.getLastModified(child))
+                            .append('\n');
+                }
+                for (final Song song : mLibrary.getSongsInDirectory(directory)) {
+                    appendSong(response, song);
+                }
+                break;
+            case "move":
+                checkArguments(args, 2, 2);
+                final int from = parseInt(args.get(0));
+                final int to = parseInt(args.get(1));
+                checkPosition(from, mQueue.size());
+                checkPosition(to, mQueue.size());
+                final QueueEntry moved = mQueue.remove(from);
+                mQueue.add(to, moved);
+                touchQueue(Math.min(from, to), Math.max(from, to) + 1, events);
+                break;
+            case "next":
+            case "previous":
+                if (mCurrent != -1) {
+                    final int next = mCurrent + ("next".equals(command) ? 1 : -1);
+
+                    if (next < 0 || next >= mQueue.size()) {
+                        stop();
+                    } else {
+                        play(next);
+                    }
+                    events.add(IDLE_PLAYER);
+                }
+                break;
+            case "outputs":
+                response.append("outputid: 0\n");
+                response.append("outputname: Fake output\n");
+                response.append("outputenabled: ").append(mOutputEnabled ? 1 : 0).append('\n');
+                break;
+            case "pause":
+                checkArguments(args, 0, 1);
+                if (!STATE_STOP.equals(mState)) {
+                    final boolean pause;
+
+                    if (args.isEmpty()) {
+                        pause = STATE_PLAY.equals(mState);
+                    } else {
+                        pause = parseBoolean(args.get(0));
+                    }
+
+                    if (pause && STATE_PLAY.equals(mState)) {
+                        mElapsedMillis = getElapsedMillis();
+                        mState = STATE_PAUSE;
+                    } else if (!pause && STATE_PAUSE.equals(mState)) {
+                        mPlayStartNanos = System.nanoTime();
+                        mState = STATE_PLAY;
+                    }
+                    events.add(IDLE_PLAYER);
+                }
+                break;
+            case "play":
+            case "playid":
+                checkArguments(args, 0, 1);
+                int playPosition = Math.max(mCurrent, 0);
+                if (!args.isEmpty()) {
+                    if ("play".equals(command)) {
+                        playPosition = parseInt(args.get(0));
+                    } else {
+                        playPosition = getPositionById(parseInt(args.get(0)));
+                    }
+                }
+                checkPosition(playPosition, mQueue.size());
+                play(playPosition);
+                events.add(IDLE_PLAYER);
+                break;
+            case "playlistid":
+                checkArguments(args, 0, 1);
+                if (args.isEmpty()) {
+                    for (int i = 0; i < mQueue.size(); i++) {
+                        appendQueueEntry(response, i);
+                    }
+                } else {
+                    appendQueueEntry(response, getPositionById(parseInt(args.get(0))));
+                }
+                break;
+            case "playlistinfo":
+                checkArguments(args, 0, 1);
+                int[] infoRange = {0, mQueue.size()};
+                if (!args.isEmpty()) {
+                    infoRange = parseRange(args.get(0), mQueue.size());
+                    checkPosition(infoRange[0], mQueue.size());
+                }
+                for (int i = infoRange[0]; i < Math.min(infoRange[1], mQueue.size()); i++) {
+                    appendQueueEntry(response, i);
+                }
+                break;
+            case "plchanges":
+            case "plchangesposid":
+                checkArguments(args, 1, 1);
+                final int version = parseInt(args.get(0));
+                for (int i = 0; i < mQueue.size(); i++) {
+                    final QueueEntry entry = mQueue.get(i);
+
+                    if (entry.mVersion > version) {
+                        if ("plchanges".equals(command)) {
+                            appendQueueEntry(response, i);
+                        } else {
+                            response.append("cpos: ").append(i).append('\n');
+                            response.append("Id: ").append(entry.mId).append('\n');
+                        }
+                    }
+                }
+                break;
+            case "random":
+            case "repeat":
+            case "single":
+                checkArguments(args, 1, 1);
+                final boolean enabled = parseBoolean(args.get(0));
+                if ("random".equals(command)) {
+                    mRandom = enabled;
+                } else if ("repeat".equals(command)) {
+                    mRepeat = enabled;
+                } else {
+                    mSingle = enabled;
+                }
+                events.add(IDLE_OPTIONS);
+                break;
+            case "seek":
+            case "seekcur":
+            case "seekid":
+                checkArguments(args, 1, 2);
+                if (mCurrent == -1) {
+                    throw new AckException(MPDException.ACK_ERROR_PLAYER_SYNC, "Not playing");
+                }
+                mElapsedMillis = (long) (Double.parseDouble(args.get(args.size() - 1)) * 1000.0);
+                mPlayStartNanos = System.nanoTime();
+                events.add(IDLE_PLAYER);
+                break;
+            case "setvol":
+                checkArguments(args, 1, 1);
+                final int volume = parseInt(args.get(0));
+                if (volume < 0 || volume > 100) {
+                    throw new AckException(MPDException.ACK_ERROR_ARG, "Invalid volume value");
+                }
+                mVolume = volume;
+                events.add(IDLE_MIXER);
+                break;
+            case "shuffle":
+                checkArguments(args, 0, 0);
+                final QueueEntry current = mCurrent >= 0 ? mQueue.get(mCurrent) : null;
+                Collections.shuffle(mQueue, mShuffleRandom);
+                if (current != null) {
+                    mCurrent = mQueue.indexOf(current);
+                }
+                touchQueue(0, events);
+                break;
+            case "stats":
+                final long songCount = (long) mLibrary.getSongs().size();
+
+                response.append("artists: ").append(songCount / 96L + 1L).append('\n');
+                response.append("albums: ").append(songCount / 12L + 1L).append('\n');
+                response.append("songs: ").append(songCount).append('\n');
+                response.append("uptime: 1000\n");
+                response.append("db_playtime: ").append(mLibrary.getPlaytime()).append('\n');
+                response.append("db_update: 1400000000\n");
+                response.append("playtime: 0\n");
+                break;
+            case "status":
+                appendStatus(response);
+                break;
+            case "sticker":
+                executeSticker(args, response, events);
+                break;
+            case "stop":
+                stop();
+                events.add(IDLE_PLAYER);
+                break;
+            case "tagtypes":
+                for (final String tagType : Arrays.asList("Artist", "Album", "AlbumArtist",
+                        "Title", "Track", "Genre", "Date", "Composer", "Disc")) {
+                    response.append("tagtype: ").append(tagType).append('\n');
+                }
+                break;
+            case "update":
+                response.append("updating_db: 1\n");
+                events.add(IDLE_UPDATE);
+                events.add(IDLE_DATABASE);
+                break;
+            default:
+                throw new AckException(MPDException.ACK_ERROR_UNKNOWN,
+                        "unknown command \"" + command + '"');
+        }
+    }
+
+    private void executeCount(final List<String> args, final StringBuilder response)
+            throws AckException {
+        final int groupIndex = args.indexOf("group");
+        final List<String> filters;
+        String groupTag = null;
+
+        if (groupIndex == -1) {
+            filters = args;
+        } else {
+            checkArguments(args, groupIndex + 2, groupIndex + 2);
+            filters = args.subList(0, groupIndex);
+            groupTag = FakeLibrary.getTagName(args.get(groupIndex + 1));
+        }
+
+        final List<Song> songs = find(filters, true);
+        if (groupTag == null) {
+            long playtime = 0L;
+
+            for (final Song song : songs) {
+                playtime += song.getTime();
+            }
+
+            response.append("songs: ").append(songs.size()).append('\n');
+            response.append("playtime: ").append(playtime).append('\n');
+        } else {
+            final Map<String, long[]> groups = new java.util.TreeMap<>();
+
+            for (final Song song : songs) {
+                String value = song.getTag(groupTag);
+                if (value == null) {
+                    value = "";
+                }
+
+                long[] totals = groups.get(value);
+                if (totals == null) {
+                    totals = new long[2];
+                    groups.put(value, totals);
+                }
+                totals[0]++;
+                totals[1] += song.getTime();
+            }
+
+            for (final Map.Entry<String, long[]> entry : groups.entrySet()) {
+                response.append(groupTag).append(": ").append(entry.getKey()).append('\n');
+                response.append("songs: ").append(entry.getValue()[0]).append('\n');
+                response.append("playtime: ").append(entry.getValue()[1]).append('\n');
+            }
+        }
+    }
+
+    private void executeFind(final List<String> args, final boolean caseSensitive,
+            final StringBuilder response) throws AckException {
+        final int windowIndex = args.indexOf("window");
+        List<String> filters = args;
+        List<Song> songs;
+        String sortTag = null;
+        int[] window = null;
+
+        if (windowIndex != -1) {
+            checkArguments(args, windowIndex + 2, windowIndex + 2);
+            filters = args.subList(0, windowIndex);
+            window = parseRange(args.get(windowIndex + 1), Integer.MAX_VALUE);
+        }
+
+        final int sortIndex = filters.indexOf("sort");
+        if (sortIndex != -1) {
+            checkArguments(filters, sortIndex + 2, sortIndex + 2);
+            sortTag = FakeLibrary.getTagName(filters.get(sortIndex + 1));
+            if (sortTag == null) {
+                throw new AckException(MPDException.ACK_ERROR_ARG, "Unknown sort tag: " +
+                        filters.get(sortIndex + 1));
+            }
+            filters = filters.subList(0, sortIndex);
+        }
+
+        songs = find(filters, caseSensitive);
+        if (sortTag != null) {
+            FakeLibrary.sort(songs, sortTag);
+        }
+        if (window != null) {
+            songs = songs.subList(Math.min(window[0], songs.size()),
+                    Math.min(window[1], songs.size()));
+        }
+
+        for (final Song song : songs) {
+            appendSong(response, song);
+        }
+    }
+
+    private void executeList(final List<String> args, final StringBuilder response)
+            throws AckException {
+        if (args.isEmpty()) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "too few arguments for \"list\"");
+        }
+
+        final String tagName = FakeLibrary.getTagName(args.get(0));
+        final List<String> groupTags = new ArrayList<>();
+        List<String> filters = args.subList(1, args.size());
+
+        if (tagName == null) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "Unknown tag type: " +
+                    args.get(0));
+        }
+
+        final int groupIndex = filters.indexOf("group");
+        if (groupIndex != -1) {
+            final List<String> groups = filters.subList(groupIndex, filters.size());
+
+            for (int i = 0; i < groups.size(); i += 2) {
+                if (!"group".equals(groups.get(i)) || i + 1 >= groups.size() ||
+                        FakeLibrary.getTagName(groups.get(i + 1)) == null) {
+                    throw new AckException(MPDException.ACK_ERROR_ARG, "Bad group");
+                }
+
+                groupTags.add(FakeLibrary.getTagName(groups.get(i + 1)));
+            }
+
+            filters = filters.subList(0, groupIndex);
+        }
+
+        /** The pre-0.19 form, "list album ARTIST". */
+        if (filters.size() == 1 && "Album".equals(tagName)) {
+            filters = Arrays.asList("artist", filters.get(0));
+        }
+
+        for (final String line : FakeLibrary.list(find(filters, true), tagName, groupTags)) {
+            response.append(line).append('\n');
+        }
+    }
+
+    private void executeSticker(final List<String> args, final StringBuilder response,
+            final Set<String> events) throws AckException {
+        checkArguments(args, 3, 5);
+
+        final String action = args.get(0);
+        final String path = args.get(2);
+        final String name = getArgument(args, 3);
+
+        if (!"song".equals(args.get(1))) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, "unknown sticker domain");
+        }
+
+        if ("find".equals(action)) {
+            for (final Song song : mLibrary.getSongs(path)) {
+                final Map<String, String> stickers = mStickers.get(song.getPath());
+
+                if (stickers != null && stickers.containsKey(name)) {
+                    response.append("file: ").append(song.getPath()).append('\n');
+                    response.append("sticker: ").append(name).append('=')
+                            .append(stickers.get(name)).append('\n');
+                }
+            }
+        } else {
+            if (mLibrary.getSong(path) == null) {
+                throw new AckException(MPDException.ACK_ERROR_NO_EXIST, "No such song");
+            }
+
+            Map<String, String> stickers = mStickers.get(path);
+            if (stickers == null) {
+                stickers = new HashMap<>();
+                mStickers.put(path, stickers);
+            }
+
+            switch (action) {
+                case "delete":
+                    if (name == null) {
+                        stickers.clear();
+                    } else if (stickers.remove(name) == null) {
+                        throw new AckException(MPDException.ACK_ERROR_NO_EXIST,
+                                "no such sticker");
+                    }
+                    events.add(IDLE_STICKER);
+                    break;
+                case "get":
+                    if (!stickers.containsKey(name)) {
+                        throw new AckException(MPDException.ACK_ERROR_NO_EXIST,
+                                "no such sticker");
+                    }
+                    response.append("sticker: ").append(name).append('=')
+                            .append(stickers.get(name)).append('\n');
+                    break;
+                case "list":
+                    for (final Map.Entry<String, String> entry : stickers.entrySet()) {
+                        response.append("sticker: ").append(entry.getKey()).append('=')
+                                .append(entry.getValue()).append('\n');
+                    }
+                    break;
+                case "set":
+                    checkArguments(args, 5, 5);
+                    stickers.put(name, args.get(4));
+                    events.add(IDLE_STICKER);
+                    break;
+                default:
+                    throw new AckException(MPDException.ACK_ERROR_ARG, "bad request");
+            }
+        }
+    }
+
+    private List<Song> find(final List<String> filters, final boolean caseSensitive)
+            throws AckException {
+        try {
+            return mLibrary.find(filters, caseSensitive);
+        } catch (final IllegalArgumentException e) {
+            throw new AckException(MPDException.ACK_ERROR_ARG, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of commands processed, including those within command lists.
+     *
+     * @return The number of commands processed.
+     */
+    public long getCommandCount() {
+        return mCommandCount.get();
+    }
+
+    private long getElapsedMillis() {
+        long elapsed = mElapsedMillis;
+
+        if (STATE_PLAY.equals(mState)) {
+            elapsed += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mPlayStartNanos);
+        }
+
+        return elapsed;
+    }
+
+    public FakeLibrary getLibrary() {
+        return mLibrary;
+    }
+
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    private int getPositionById(final int songId) throws AckException {
+        for (int i = 0; i < mQueue.size(); i++) {
+            if (mQueue.get(i).mId == songId) {
+                return i;
+            }
+        }
+
+        throw new AckException(MPDException.ACK_ERROR_NO_EXIST, "No such song");
+    }
+
+    /**
+     * Returns the number of requests processed, a command or a command list, each of which is a
+     * round trip for the client.
+     *
+     * @return The number of requests processed.
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Notifies every client of a change in a subsystem, as if it was made by another client.
+     *
+     * @param subsystems The changed idle subsystems.
+     */
+    public void notifyChanged(final String... subsystems) {
+        final Set<String> events = new HashSet<>(Arrays.asList(subsystems));
+
+        synchronized (mLock) {
+            if (events.contains(IDLE_PLAYLIST)) {
+                touchQueue(0, events);
+            }
+        }
+
+        for (final Session session : mSessions) {
+            session.onEvents(events);
+        }
+    }
+
+    private void play(final int position) {
+        mCurrent = position;
+        mElapsedMillis = 0L;
+        mPlayStartNanos = System.nanoTime();
+        mState = STATE_PLAY;
+    }
+
+    /**
+     * Processes a request, a single command or a command list.
+     *
+     * @param commands The commands of the request.
+     * @param isListOK True if {@code list_OK} should separate the command responses.
+     * @param response The response to append to.
+     * @return False if the client asked to close the connection.
+     */
+    private boolean process(final List<String> commands, final boolean isListOK,
+            final StringBuilder response) {
+        final Set<String> events = new LinkedHashSet<>();
+        boolean keepAlive = true;
+
+        mRequestCount.incrementAndGet();
+        synchronized (mLock) {
+            int index = 0;
+            String command = null;
+
+            try {
+                for (final String line : commands) {
+                    final List<String> tokens = tokenize(line);
+
+                    if (tokens.isEmpty()) {
+                        throw new AckException(MPDException.ACK_ERROR_UNKNOWN, "No command given");
+                    }
+
+                    command = tokens.get(0);
+                    execute(tokens, response, events);
+                    if (isListOK) {
+                        response.append("list_OK\n");
+                    }
+                    index++;
+                }
+
+                response.append("OK\n");
+            } catch (final AckException e) {
+                if (e.mCode == -1) {
+                    keepAlive = false;
+                } else {
+                    response.append("ACK [").append(e.mCode).append('@').append(index)
+                            .append("] {").append(command == null ? "" : command).append("} ")
+                            .append(e.getMessage()).append('\n');
+                }
+            }
+        }
+
+        if (!events.isEmpty()) {
+            for (final Session session : mSessions) {
+                session.onEvents(events);
+            }
+        }
+
+        return keepAlive;
+    }
+
+    private void removeFromQueue(final int start, final int end, final Set<String> events) {
+        mQueue.subList(start, end).clear();
+
+        if (mCurrent >= end) {
+            mCurrent -= end - start;
+        } else if (mCurrent >= start) {
+            stop();
+            mCurrent = -1;
+            events.add(IDLE_PLAYER);
+        }
+
+        touchQueue(start, events);
+    }
+
+    /**
+     * Sets the bandwidth of connections accepted after this call.
+     *
+     * @param bytesPerSecond The bandwidth, in bytes per second, zero for unlimited.
+     */
+    public void setBandwidth(final long bytesPerSecond) {
+        mBandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Sets the delay between receiving each request and sending its response, which simulates
+     * the round trip latency of a network link.
+     *
+     * @param millis The latency in milliseconds.
+     */
+    public void setLatency(final long millis) {
+        mLatency = millis;
+    }
+
+    /**
+     * Sets the protocol version announced to connections accepted after this call.
+     *
+     * @param version The protocol version, for instance {@code 0.19.0}.
+     */
+    public void setProtocolVersion(final String version) {
+        mProtocolVersion = version;
+    }
+
+    /**
+     * Sets the volume, then notifies every client, as if the change was made by another client.
+     *
+     * @param volume The volume, from 0 to 100.
+     */
+    public void setVolume(final int volume) {
+        synchronized (mLock) {
+            mVolume = volume;
+        }
+
+        notifyChanged(IDLE_MIXER);
+    }
+
+    /**
+     * Starts the server on an ephemeral port of the loopback interface.
+     *
+     * @throws IOException If the server could not be started.
+     */
+    public void start() throws IOException {
+        start(new InetSocketAddress(InetAddress.getByName(null), 0));
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param address The address to listen on.
+     * @throws IOException If the server could not be started.
+     */
+    public void start(final InetSocketAddress address) throws IOException {
+        mServerSocket = new ServerSocket();
+        mServerSocket.bind(address);
+
+        final Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "FakeMPDServer-accept");
+
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Session session = new Session(mServerSocket.accept());
+                final Thread thread = new Thread(session, "FakeMPDServer-session");
+
+                mSessions.add(session);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (final IOException ignored) {
+                // Closed.
+            }
+        }
+    }
+
+    private void stop() {
+        if (!STATE_STOP.equals(mState)) {
+            mState = STATE_STOP;
+            mElapsedMillis = 0L;
+        }
+    }
+
+    /**
+     * Marks the queue as changed from a position, as the media server does for {@code
+     * plchanges}.
+     *
+     * @param position The first changed position.
+     * @param events   The idle subsystems changed by the current command.
+     */
+    private void touchQueue(final int position, final Set<String> events) {
+        touchQueue(position, mQueue.size(), events);
+    }
+
+    /**
+     * Marks a range of the queue as changed, as the media server does for the entries of the
+     * range moved by {@code move}.
+     *
+     * @param start  The first changed position.
+     * @param end    The position following the last changed position.
+     * @param events The idle subsystems changed by the current command.
+     */
+    private void touchQueue(final int start, final int end, final Set<String> events) {
+        mPlaylistVersion++;
+
+        for (int i = start; i < end; i++) {
+            mQueue.get(i).mVersion = mPlaylistVersion;
+        }
+
+        events.add(IDLE_PLAYLIST);
+    }
+
+    /** A media server error, sent to the client as an {@code ACK}. */
+    static final class AckException extends Exception {
+
+        private static final long serialVersionUID = 6237426378049375744L;
+
+        private final int mCode;
+
+        AckException(final int code, final String message) {
+            super(message);
+
+            mCode = code;
+        }
+    }
+
+    /** An entry in the queue. */
+    private final class QueueEntry {
+
+        private final int mId;
+
+        private final Song mSong;
+
+        /** The playlist version this entry was last changed in. */
+        private int mVersion;
+
+        QueueEntry(final Song song, final int id) {
+            super();
+
+            mSong = song;
+            mId = id;
+            mVersion = mPlaylistVersion;
+        }
+    }
+
+    /** A response, and the time it is due to be sent to the client. */
+    private static final class Response {
+
+        /** Marks the end of a session, once the previous responses have been sent. */
+        private static final Response END = new Response("", 0L);
+
+        private final long mDueNanos;
+
+        private final CharSequence mText;
+
+        Response(final CharSequence text, final long dueNanos) {
+            super();
+
+            mText = text;
+            mDueNanos = dueNanos;
+        }
+    }
+
+    /** A client connection. */
+    private final class Session implements Runnable {
+
+        /** Subsystems changed since the last idle response. */
+        private final Set<String> mPendingEvents = new LinkedHashSet<>();
+
+        /** Responses awaiting their delivery time, in order. */
+        private final BlockingQueue<Response> mResponses = new LinkedBlockingQueue<>();
+
+        private final Socket mSocket;
+
+        /** The subsystems the client is idle on, null if the client is not idle. */
+        private Set<String> mIdleSubsystems;
+
+        Session(final Socket socket) {
+            super();
+
+            mSocket = socket;
+        }
+
+        private void close() {
+            mSessions.remove(this);
+
+            try {
+                mSocket.close();
+            } catch (final IOException ignored) {
+                // Closing anyway.
+            }
+        }
+
+        /**
+         * Responds to the client idle command if any pending event is within the idle
+         * subsystems. Call with this session locked.
+         *
+         * @param force If true, respond even with no event, as for {@code noidle}.
+         */
+        private void flushIdle(final boolean force) {
+            if (mIdleSubsystems != null) {
+                final StringBuilder response = new StringBuilder();
+
+                for (final String event : new ArrayList<>(mPendingEvents)) {
+                    if (mIdleSubsystems.isEmpty() || mIdleSubsystems.contains(event)) {
+                        response.append("changed: ").append(event).append('\n');
+                        mPendingEvents.remove(event);
+                    }
+                }
+
+                if (force || response.length() != 0) {
+                    response.append("OK\n");
+                    mIdleSubsystems = null;
+                    mResponses.add(new Response(response, System.nanoTime()));
+                }
+            }
+        }
+
+        private void onEvents(final Collection<String> events) {
+            synchronized (this) {
+                mPendingEvents.addAll(events);
+                flushIdle(false);
+            }
+        }
+
+        private List<String> readCommandList(final BufferedReader reader) throws IOException {
+            final List<String> commands = new ArrayList<>();
+
+            for (String line = reader.readLine(); line != null && !CMD_COMMAND_LIST_END
+                    .equals(line); line = reader.readLine()) {
+                commands.add(line);
+            }
+
+            return commands;
+        }
+
+        @Override
+        public void run() {
+            final Thread writerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeResponses();
+                }
+            }, "FakeMPDServer-writer");
+
+            try {
+                final BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(mSocket.getInputStream(), "UTF-8"));
+                boolean keepAlive = true;
+
+                mSocket.setTcpNoDelay(true);
+                writerThread.setDaemon(true);
+                writerThread.start();
+                mResponses.add(new Response("OK MPD " + mProtocolVersion + '\n',
+                        System.nanoTime()));
+
+                for (String line = reader.readLine(); line != null && keepAlive;
+                        line = reader.readLine()) {
+                    keepAlive = runCommand(reader, line, System.nanoTime());
+                }
+
+            } catch (final IOException ignored) {
+                close();
+            } finally {
+                mResponses.add(Response.END);
+            }
+        }
+
+        private boolean isIdle() {
+            synchronized (this) {
+                return mIdleSubsystems != null;
+            }
+        }
+
+        private boolean runCommand(final BufferedReader reader, final String line,
+                final long receivedNanos) throws IOException {
+            final long dueNanos = receivedNanos + TimeUnit.MILLISECONDS.toNanos(mLatency);
+            final String trimmed = line.trim();
+            final int space = trimmed.indexOf(' ');
+            final String command = space == -1 ? trimmed : trimmed.substring(0, space);
+            final StringBuilder response = new StringBuilder();
+            final boolean keepAlive;
+
+            if (CMD_IDLE.equals(command) || CMD_NOIDLE.equals(command) || isIdle()) {
+                keepAlive = runIdleCommand(line, command);
+            } else if (CMD_COMMAND_LIST_BEGIN.equals(command) ||
+                    CMD_COMMAND_LIST_OK_BEGIN.equals(command)) {
+                keepAlive = process(readCommandList(reader),
+                        CMD_COMMAND_LIST_OK_BEGIN.equals(command), response);
+            } else {
+                keepAlive = process(Collections.singletonList(line), false, response);
+            }
+
+            if (response.length() != 0) {
+                mResponses.add(new Response(response, dueNanos));
+            }
+
+            return keepAlive;
+        }
+
+        /**
+         * Runs the idle and noidle commands, and any command received while idle, which ends the
+         * session as the media server does.
+         *
+         * @param line    The command line.
+         * @param command The command name.
+         * @return False if the session should end.
+         */
+        private boolean runIdleCommand(final String line, final String command) {
+            boolean keepAlive = true;
+
+            synchronized (this) {
+                if (mIdleSubsystems != null) {
+                    if (CMD_NOIDLE.equals(command)) {
+                        flushIdle(true);
+                    } else {
+                        keepAlive = false;
+                    }
+                } else if (CMD_IDLE.equals(command)) {
+                    mRequestCount.incrementAndGet();
+                    try {
+                        final List<String> tokens = tokenize(line);
+
+                        mIdleSubsystems = new HashSet<>(tokens.subList(1, tokens.size()));
+                        flushIdle(false);
+                    } catch (final AckException ignored) {
+                        keepAlive = false;
+                    }
+                }
+                /** A noidle received while not idle is ignored. */
+            }
+
+            return keepAlive;
+        }
+
+        /** Writes the responses to the client as they become due, until the session ends. */
+        private void writeResponses() {
+            try {
+                final Writer writer = new OutputStreamWriter(new ThrottledOutputStream(
+                        new BufferedOutputStream(mSocket.getOutputStream()), mBandwidth),
+                        "UTF-8");
+
+                for (Response response = mResponses.take(); response != Response.END;
+                        response = mResponses.take()) {
+                    final long delay = response.mDueNanos - System.nanoTime();
+
+                    if (delay > 0L) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+
+                    writer.append(response.mText);
+                    if (mResponses.isEmpty()) {
+                        writer.flush();
+                    }
+                }
+
+                writer.flush();
+            } catch (final IOException | InterruptedException ignored) {
+                // Connection closed.
+            } finally {
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.benchmark.server;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An output stream which limits the rate data is written to the underlying stream, to simulate
+ * a slow network link.
+ */
+final class ThrottledOutputStream extends FilterOutputStream {
+
+    /** The largest amount of time worth of data to write at once. */
+    private static final long CHUNK_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    /** The rate to write at, zero or less for unlimited. */
+    private final long mBytesPerSecond;
+
+    /** The time the current burst of writes started. */
+    private long mBurstStart;
+
+    /** The bytes written in the current burst of writes. */
+    private long mBurstBytes;
+
+    ThrottledOutputStream(final OutputStream out, final long bytesPerSecond) {
+        super(out);
+
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Sleeps until the bytes written in this burst are due, at the throttled rate.
+     *
+     * @throws InterruptedIOException If interrupted while sleeping.
+     */
+    private void throttle() throws InterruptedIOException {
+        final long due = mBurstStart + mBurstBytes * TimeUnit.SECONDS.toNanos(1L) /
+                mBytesPerSecond;
+        final long wait = due - System.nanoTime();
+
+        if (wait > 0L) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (final InterruptedException e) {
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (mBytesPerSecond <= 0L) {
+            out.write(b, off, len);
+        } else {
+            final int chunkSize = (int) Math.max(1L, mBytesPerSecond * CHUNK_NANOS /
+                    TimeUnit.SECONDS.toNanos(1L));
+            final long now = System.nanoTime();
+
+            /** If the link has been idle, start a new burst. */
+            if (mBurstBytes == 0L || now > mBurstStart + mBurstBytes *
+                    TimeUnit.SECONDS.toNanos(1L) / mBytesPerSecond) {
+                mBurstStart = now;
+                mBurstBytes = 0L;
+            }
+
+            for (int written = 0; written < len; written += chunkSize) {
+                final int length = Math.min(chunkSize, len - written);
+
+                out.write(b, off + written, length);
+                out.flush();
+                mBurstBytes += (long) length;
+                throttle();
+            }
+        }
+    }
+}
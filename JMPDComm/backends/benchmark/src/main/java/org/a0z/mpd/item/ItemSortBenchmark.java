@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.benchmark.ResponseCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the sorting of library items; {@link Item#compareTo(Item)} for artists and albums
+ * and {@link StringComparators#compareNatural(String, String)} for file paths. The items keep
+ * their sort keys across invocations, the {@code sortNew} benchmarks sort new items, as after
+ * retrieving them from the server, including the computation of their sort keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemSortBenchmark {
+
+    /**
+     * The order of {@link Item#compareTo(Item)} without sort keys, collating the sort texts of
+     * both items on every comparison.
+     */
+    private static final Comparator<Item> COLLATOR_ORDER = new Comparator<Item>() {
+        @Override
+        public int compare(final Item lhs, final Item rhs) {
+            final int comparisonResult;
+            final String sorted = lhs.sortText();
+            final String anotherSorted = rhs.sortText();
+
+            if (sorted == null || sorted.isEmpty()) {
+                if (anotherSorted == null || anotherSorted.isEmpty()) {
+                    comparisonResult = 0;
+                } else {
+                    comparisonResult = 1;
+                }
+            } else if (anotherSorted == null || anotherSorted.isEmpty()) {
+                comparisonResult = -1;
+            } else {
+                comparisonResult = Collator.getInstance().compare(sorted, anotherSorted);
+            }
+
+            return comparisonResult;
+        }
+    };
+
+    private List<Album> mAlbums;
+
+    private List<Artist> mArtists;
+
+    private List<String> mPaths;
+
+    @Param({"1000", "10000", "100000"})
+    private int mSongCount;
+
+    private List<Artist> newArtists() {
+        final List<Artist> artists = new ArrayList<>(mArtists.size());
+
+        for (final Artist artist : mArtists) {
+            artists.add(new Artist(artist.getName()));
+        }
+
+        return artists;
+    }
+
+    @Setup
+    public void setUp() {
+        final List<Music> playlist = ResponseCorpus.getPlaylist(mSongCount);
+
+        mAlbums = new ArrayList<>(playlist.size());
+        mArtists = new ArrayList<>(playlist.size());
+        mPaths = new ArrayList<>(playlist.size());
+
+        /** Use one item per song, the artist and album names alone are too few to matter. */
+        for (final Music music : playlist) {
+            final Artist artist = new Artist(music.getTitle());
+
+            mArtists.add(artist);
+            mAlbums.add(new Album(music.getAlbum(), artist));
+            mPaths.add(music.getFullPath());
+        }
+
+        Collections.shuffle(mAlbums);
+        Collections.shuffle(mArtists);
+        Collections.shuffle(mPaths);
+    }
+
+    @Benchmark
+    public List<Album> sortAlbums() {
+        final List<Album> albums = new ArrayList<>(mAlbums);
+
+        Collections.sort(albums);
+        return albums;
+    }
+
+    @Benchmark
+    public List<Artist> sortArtists() {
+        final List<Artist> artists = new ArrayList<>(mArtists);
+
+        Collections.sort(artists);
+        return artists;
+    }
+
+    @Benchmark
+    public List<Artist> sortArtistsByCollator() {
+        final List<Artist> artists = new ArrayList<>(mArtists);
+
+        Collections.sort(artists, COLLATOR_ORDER);
+        return artists;
+    }
+
+    @Benchmark
+    public List<Artist> sortNewArtists() {
+        final List<Artist> artists = newArtists();
+
+        Collections.sort(artists);
+        return artists;
+    }
+
+    @Benchmark
+    public List<Artist> sortNewArtistsByName() {
+        final List<Artist> artists = newArtists();
+
+        Item.sortByName(artists);
+        return artists;
+    }
+
+    @Benchmark
+    public List<String> sortPathsNatural() {
+        final List<String> paths = new ArrayList<>(mPaths);
+
+        Collections.sort(paths, StringComparators.getNaturalComparator());
+        return paths;
+    }
+}
@@ -28,6 +28,7 @@
 package org.a0z.mpd;
 
 import org.a0z.mpd.connection.MPDConnection;
+import org.a0z.mpd.connection.ResponseHandler;
 import org.a0z.mpd.exception.MPDException;
 
 import java.io.IOException;
@@ -79,7 +80,7 @@ public class CommandQueue implements Iterable<MPDCommand> {
      * @param lines The raw results of a command queue from the media server.
      * @return A list of results from the command queue.
      */
-    private static List<String[]> separatedQueueResults(final Iterable<String> lines) {
+    static List<String[]> separatedQueueResults(final Iterable<String> lines) {
         final List<String[]> result = new ArrayList<>();
         final ArrayList<String> lineCache = new ArrayList<>();
 
@@ -99,6 +100,41 @@ public class CommandQueue implements Iterable<MPDCommand> {
         return result;
     }
 
+    /**
+     * Processes the raw results from a command queue and returns the result of each command,
+     * including empty results, so the results are in the same order as the commands.
+     *
+     * @param lines        The raw results of a command queue from the media server.
+     * @param commandCount The number of commands in the command queue.
+     * @return A list of results from the command queue, one for each command.
+     */
+    static List<String[]> separatedCommandResults(final Iterable<String> lines,
+            final int commandCount) {
+        final List<String[]> result = new ArrayList<>(commandCount);
+        final ArrayList<String> lineCache = new ArrayList<>();
+
+        for (final String line : lines) {
+            if (line.equals(MPD_CMD_BULK_SEP)) {
+                result.add(lineCache.toArray(new String[lineCache.size()]));
+                lineCache.clear();
+            } else {
+                lineCache.add(line);
+            }
+        }
+
+        /** A single command is not sent as a command list, there is no separator. */
+        if (commandCount == 1 && result.isEmpty()) {
+            result.add(lineCache.toArray(new String[lineCache.size()]));
+        }
+
+        if (result.size() != commandCount) {
+            throw new IllegalStateException("Media server protocol error: " + result.size() +
+                    " results for " + commandCount + " commands.");
+        }
+
+        return result;
+    }
+
     /**
      * Add a command queue to the end of this command queue.
      *
@@ -197,24 +233,21 @@ public class CommandQueue implements Iterable<MPDCommand> {
      */
     private List<String> send(final MPDConnection mpdConnection, final boolean separated)
             throws IOException, MPDException {
-        final MPDCommand mpdCommand;
-
-        if (mCommandQueue.isEmpty()) {
-            throw new IllegalStateException("Cannot send an empty command queue.");
-        }
-
-        if (mCommandQueue.size() == 1) {
-            /** OK, it's not really a command queue. Send it anyhow. */
-            mpdCommand = mCommandQueue.get(0);
-        } else {
-            mpdCommand = new MPDCommand(toString(separated));
-        }
-
-        if (DEBUG) {
-            Log.debug(TAG, toString(separated));
-        }
+        return mpdConnection.sendCommand(toCommand(separated));
+    }
 
-        return mpdConnection.sendCommand(mpdCommand);
+    /**
+     * Sends the commands (without separated results) which were {@code add}ed to the queue,
+     * streaming the results to a {@code ResponseHandler} as they are read.
+     *
+     * @param mpdConnection The connection to send the queued commands to.
+     * @param handler       The handler to receive the results, line by line.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public void send(final MPDConnection mpdConnection, final ResponseHandler handler)
+            throws IOException, MPDException {
+        mpdConnection.sendCommand(toCommand(false), handler);
     }
 
     /**
@@ -230,10 +263,52 @@ public class CommandQueue implements Iterable<MPDCommand> {
         return separatedQueueResults(send(mpdConnection, true));
     }
 
+    /**
+     * Sends the commands (with separated results) which were {@code add}ed to the queue. Unlike
+     * {@link #sendSeparated(MPDConnection)}, empty results are kept, the result at an index is
+     * the result of the command at the same index.
+     *
+     * @param mpdConnection The connection to send the queued commands to.
+     * @return The results of from the media server, one for each command.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public List<String[]> sendSeparatedByCommand(final MPDConnection mpdConnection)
+            throws IOException, MPDException {
+        return separatedCommandResults(send(mpdConnection, true), mCommandQueue.size());
+    }
+
     public int size() {
         return mCommandQueue.size();
     }
 
+    /**
+     * Builds the command sent for this queue.
+     *
+     * @param separated Whether the results should be separated.
+     * @return The single command of this queue, or a command list.
+     */
+    private MPDCommand toCommand(final boolean separated) {
+        final MPDCommand mpdCommand;
+
+        if (mCommandQueue.isEmpty()) {
+            throw new IllegalStateException("Cannot send an empty command queue.");
+        }
+
+        if (mCommandQueue.size() == 1) {
+            /** OK, it's not really a command queue. Send it anyhow. */
+            mpdCommand = mCommandQueue.get(0);
+        } else {
+            mpdCommand = new MPDCommand(toString(separated));
+        }
+
+        if (DEBUG) {
+            Log.debug(TAG, toString(separated));
+        }
+
+        return mpdCommand;
+    }
+
     /**
      * Returns the command queue in {@code String} format.
      *
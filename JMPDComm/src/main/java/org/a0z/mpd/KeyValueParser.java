@@ -0,0 +1,555 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.exception.InvalidResponseException;
+
+/**
+ * A reusable cursor over media server {@code key: value} response lines. This is an allocation
+ * free alternative to {@link Tools#splitResponse(String)}; once a line has been set, the key is
+ * available as a canonical constant and the value can be read as a {@link CharSequence} view or
+ * parsed directly to a primitive without creating any substrings.
+ *
+ * <p>Keys known to the media server protocol are returned as the same constant {@code String}
+ * instance every time, so they are cheap to {@code switch} upon. Unknown keys are returned as a
+ * new {@code String}.</p>
+ *
+ * <p>This class is not thread-safe, each response should be parsed with it's own instance.</p>
+ */
+public final class KeyValueParser {
+
+    /** The largest float mantissa which can be converted without loss. */
+    private static final long FLOAT_EXACT_MAX = 1L << 24;
+
+    /** Powers of ten which are exactly representable as a float. */
+    private static final float[] FLOAT_POWERS = {
+            1.0e0f, 1.0e1f, 1.0e2f, 1.0e3f, 1.0e4f, 1.0e5f, 1.0e6f, 1.0e7f, 1.0e8f, 1.0e9f, 1.0e10f
+    };
+
+    /**
+     * Keys sent by the media server in responses to the commands used in this library. These are
+     * literals, and, as such, are the same instances used in {@code switch} statements.
+     */
+    private static final String[] KNOWN_KEYS = {
+            /** Song and database responses. */
+            "file", "directory", "playlist", "Last-Modified", "Album", "AlbumArtist", "Artist",
+            "Composer", "Date", "Disc", "Genre", "Id", "Name", "Performer", "Pos", "Time", "Title",
+            "Track", "Comment", "prio",
+            /** Status responses. */
+            "audio", "bitrate", "consume", "duration", "elapsed", "error", "mixrampdb",
+            "mixrampdelay", "nextsong", "nextsongid", "playlistlength", "random", "repeat",
+            "single", "song", "songid", "state", "time", "updating_db", "volume", "xfade",
+            /** Statistics responses. */
+            "albums", "artists", "db_playtime", "db_update", "playtime", "songs", "uptime",
+            /** Miscellaneous responses. */
+            "changed", "command", "cpos", "outputenabled", "outputid", "outputname", "sticker"
+    };
+
+    private static final String[] KEY_TABLE;
+
+    private static final int KEY_TABLE_MASK;
+
+    static {
+        int tableSize = Integer.highestOneBit(KNOWN_KEYS.length) << 2;
+
+        KEY_TABLE = new String[tableSize];
+        KEY_TABLE_MASK = tableSize - 1;
+
+        for (final String key : KNOWN_KEYS) {
+            int index = spread(key.hashCode()) & KEY_TABLE_MASK;
+
+            while (KEY_TABLE[index] != null) {
+                index = index + 1 & KEY_TABLE_MASK;
+            }
+
+            KEY_TABLE[index] = key;
+        }
+    }
+
+    /** The key of the current line. */
+    private String mKey;
+
+    /** The current line. */
+    private String mLine;
+
+    /** The index of the first character of the value in the current line. */
+    private int mValueIndex;
+
+    /** The reusable view of the current value. */
+    private final CharSequence mValueSequence = new ValueSequence();
+
+    public KeyValueParser() {
+        super();
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * Returns the key of the current line.
+     *
+     * @return The key of the current line, a constant instance if the key is a known key.
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Returns the current line, as it was received from the media server.
+     *
+     * @return The current line.
+     */
+    public String getLine() {
+        return mLine;
+    }
+
+    /**
+     * Parses the current value, ignoring any character other than ASCII digits, as a long. This
+     * is equivalent to {@code Long.parseLong(value.replaceAll("\\D+", ""))}.
+     *
+     * @return The digits of the current value as a long.
+     * @throws NumberFormatException If the value contains no digits or the digits overflow.
+     */
+    public long getDigitsAsLong() {
+        final int length = mLine.length();
+        final long multiplyLimit = Long.MAX_VALUE / 10L;
+        long result = 0L;
+        boolean hasDigits = false;
+
+        for (int i = mValueIndex; i < length; i++) {
+            final char c = mLine.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                final int digit = c - '0';
+
+                if (result > multiplyLimit || result * 10L > Long.MAX_VALUE - digit) {
+                    throw numberFormatException(0, getValueLength());
+                }
+
+                result = result * 10L + digit;
+                hasDigits = true;
+            }
+        }
+
+        if (!hasDigits) {
+            throw numberFormatException(0, getValueLength());
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses the current value as a float, with the same semantics as
+     * {@link Float#parseFloat(String)}. Plain decimal values, the common case, are converted
+     * without allocation.
+     *
+     * @return The current value as a float.
+     * @throws NumberFormatException If the value is not a parsable float.
+     */
+    public float getFloatValue() {
+        final int length = mLine.length();
+        int index = mValueIndex;
+        boolean isNegative = false;
+        boolean hasDigits = false;
+        boolean hasDecimalPoint = false;
+        int pendingZeros = 0;
+        int scale = 0;
+        long mantissa = 0L;
+        boolean isExact = index < length;
+
+        if (isExact) {
+            final char first = mLine.charAt(index);
+
+            if (first == '-') {
+                isNegative = true;
+                index++;
+            } else if (first == '+') {
+                index++;
+            }
+        }
+
+        for (; isExact && index < length; index++) {
+            final char c = mLine.charAt(index);
+
+            if (c == '.' && !hasDecimalPoint) {
+                hasDecimalPoint = true;
+            } else if (c < '0' || c > '9') {
+                isExact = false;
+            } else if (hasDecimalPoint && c == '0') {
+                /** Trailing fractional zeros do not change the value, defer them. */
+                hasDigits = true;
+                pendingZeros++;
+            } else {
+                hasDigits = true;
+
+                for (; pendingZeros > 0 && mantissa <= FLOAT_EXACT_MAX; pendingZeros--) {
+                    mantissa *= 10L;
+                    scale++;
+                }
+
+                mantissa = mantissa * 10L + (long) (c - '0');
+                if (hasDecimalPoint) {
+                    scale++;
+                }
+
+                if (mantissa > FLOAT_EXACT_MAX || scale >= FLOAT_POWERS.length) {
+                    isExact = false;
+                }
+            }
+        }
+
+        final float result;
+        if (isExact && hasDigits) {
+            /**
+             * Both operands are exactly representable, so this single division is correctly
+             * rounded, just as Float.parseFloat() is.
+             */
+            final float value = (float) mantissa / FLOAT_POWERS[scale];
+
+            if (isNegative) {
+                result = -value;
+            } else {
+                result = value;
+            }
+        } else {
+            result = Float.parseFloat(getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses the current value as a signed decimal integer, with the same semantics as
+     * {@link Integer#parseInt(String)}.
+     *
+     * @return The current value as an integer.
+     * @throws NumberFormatException If the value is not a parsable integer.
+     */
+    public int getIntValue() {
+        return getIntValue(0, getValueLength());
+    }
+
+    /**
+     * Parses part of the current value as a signed decimal integer, with the same semantics as
+     * {@link Integer#parseInt(String)}.
+     *
+     * @param beginIndex The beginning index in the value, inclusive.
+     * @param endIndex   The ending index in the value, exclusive.
+     * @return The part of the current value as an integer.
+     * @throws NumberFormatException If the part of the value is not a parsable integer.
+     */
+    public int getIntValue(final int beginIndex, final int endIndex) {
+        return (int) parseLong(beginIndex, endIndex, (long) Integer.MIN_VALUE,
+                (long) Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses the current value as a signed decimal long, with the same semantics as
+     * {@link Long#parseLong(String)}.
+     *
+     * @return The current value as a long.
+     * @throws NumberFormatException If the value is not a parsable long.
+     */
+    public long getLongValue() {
+        return getLongValue(0, getValueLength());
+    }
+
+    /**
+     * Parses part of the current value as a signed decimal long, with the same semantics as
+     * {@link Long#parseLong(String)}.
+     *
+     * @param beginIndex The beginning index in the value, inclusive.
+     * @param endIndex   The ending index in the value, exclusive.
+     * @return The part of the current value as a long.
+     * @throws NumberFormatException If the part of the value is not a parsable long.
+     */
+    public long getLongValue(final int beginIndex, final int endIndex) {
+        return parseLong(beginIndex, endIndex, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the current value as a new {@code String}. Use this only when the value is to be
+     * retained.
+     *
+     * @return The current value.
+     */
+    public String getValue() {
+        return mLine.substring(mValueIndex);
+    }
+
+    /**
+     * Returns the current value from a pool, for a value likely shared by many responses such as
+     * a tag. A new {@code String} is only created if the value is not pooled.
+     *
+     * @param pool The pool of values.
+     * @return The pooled instance of the current value.
+     */
+    public String getValue(final TagPool pool) {
+        return pool.intern(mLine, mValueIndex, mLine.length());
+    }
+
+    /**
+     * Returns part of the current value as a new {@code String}.
+     *
+     * @param beginIndex The beginning index in the value, inclusive.
+     * @param endIndex   The ending index in the value, exclusive.
+     * @return The part of the current value.
+     */
+    public String getValue(final int beginIndex, final int endIndex) {
+        return mLine.substring(mValueIndex + beginIndex, mValueIndex + endIndex);
+    }
+
+    /**
+     * Returns the length of the current value.
+     *
+     * @return The length of the current value.
+     */
+    public int getValueLength() {
+        return mLine.length() - mValueIndex;
+    }
+
+    /**
+     * Returns a view of the current value. The view is reused, and changes with every call to
+     * {@link #setLine(String)}.
+     *
+     * @return A view of the current value.
+     */
+    public CharSequence getValueSequence() {
+        return mValueSequence;
+    }
+
+    /**
+     * Returns the index of a character within the current value.
+     *
+     * @param c The character to find.
+     * @return The index of the first occurrence of the character in the value, -1 if not found.
+     */
+    public int indexOfValue(final char c) {
+        return indexOfValue(c, 0);
+    }
+
+    /**
+     * Returns the index of a character within the current value, starting at the specified
+     * index.
+     *
+     * @param c         The character to find.
+     * @param fromIndex The value index to start the search from.
+     * @return The index of the first occurrence of the character in the value, -1 if not found.
+     */
+    public int indexOfValue(final char c, final int fromIndex) {
+        final int index = mLine.indexOf(c, mValueIndex + fromIndex);
+        final int result;
+
+        if (index == -1) {
+            result = -1;
+        } else {
+            result = index - mValueIndex;
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks the key of the current line against a key, typically a constant.
+     *
+     * @param key The key to compare against.
+     * @return True if the current key equals the parameter.
+     */
+    public boolean isKey(final String key) {
+        //noinspection StringEquality
+        return mKey == key || mKey.equals(key);
+    }
+
+    /**
+     * Compares the current value to a {@code String} without allocation.
+     *
+     * @param value The value to compare against.
+     * @return True if the current value equals the parameter.
+     */
+    public boolean isValue(final String value) {
+        final int length = value.length();
+
+        return getValueLength() == length && mLine.regionMatches(mValueIndex, value, 0, length);
+    }
+
+    /**
+     * Looks up a key in the known key table.
+     *
+     * @param line           The line containing the key.
+     * @param delimiterIndex The index of the key delimiter in the line.
+     * @return The constant key if known, null otherwise.
+     */
+    private static String lookupKey(final String line, final int delimiterIndex) {
+        int hash = 0;
+        String result = null;
+
+        for (int i = 0; i < delimiterIndex; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+
+        for (int index = spread(hash) & KEY_TABLE_MASK; KEY_TABLE[index] != null;
+                index = index + 1 & KEY_TABLE_MASK) {
+            final String key = KEY_TABLE[index];
+
+            if (key.length() == delimiterIndex && line.regionMatches(0, key, 0, delimiterIndex)) {
+                result = key;
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    private NumberFormatException numberFormatException(final int beginIndex,
+            final int endIndex) {
+        return new NumberFormatException("For input string: \"" +
+                mLine.substring(mValueIndex + beginIndex, mValueIndex + endIndex) + '"');
+    }
+
+    /**
+     * Parses a decimal value using negative accumulation, as {@link Long#parseLong(String)}
+     * does, to allow the full range of the type.
+     *
+     * @param beginIndex The beginning index in the value, inclusive.
+     * @param endIndex   The ending index in the value, exclusive.
+     * @param min        The minimum value of the resulting type.
+     * @param max        The maximum value of the resulting type.
+     * @return The parsed value.
+     */
+    private long parseLong(final int beginIndex, final int endIndex, final long min,
+            final long max) {
+        if (beginIndex < 0 || endIndex > getValueLength() || beginIndex >= endIndex) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+
+        final int end = mValueIndex + endIndex;
+        int index = mValueIndex + beginIndex;
+        boolean isNegative = false;
+        final long limit;
+
+        final char first = mLine.charAt(index);
+        if (first == '-') {
+            isNegative = true;
+            limit = min;
+            index++;
+        } else {
+            limit = -max;
+            if (first == '+') {
+                index++;
+            }
+        }
+
+        if (index == end) {
+            throw numberFormatException(beginIndex, endIndex);
+        }
+
+        final long multiplyLimit = limit / 10L;
+        long result = 0L;
+        while (index < end) {
+            final int digit = Character.digit(mLine.charAt(index), 10);
+            index++;
+
+            if (digit < 0 || result < multiplyLimit) {
+                throw numberFormatException(beginIndex, endIndex);
+            }
+
+            result *= 10L;
+            if (result < limit + (long) digit) {
+                throw numberFormatException(beginIndex, endIndex);
+            }
+
+            result -= (long) digit;
+        }
+
+        if (!isNegative) {
+            result = -result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Moves the cursor to a new response line.
+     *
+     * @param line A {@code key: value} line from a media server response.
+     * @throws InvalidResponseException If the line has no key delimiter.
+     */
+    public void setLine(final String line) {
+        final int delimiterIndex = line.indexOf(':');
+
+        if (delimiterIndex == -1) {
+            throw new InvalidResponseException("Failed to parse server response key for line: " +
+                    line);
+        }
+
+        final String key = lookupKey(line, delimiterIndex);
+
+        mLine = line;
+        if (key == null) {
+            mKey = line.substring(0, delimiterIndex);
+        } else {
+            mKey = key;
+        }
+
+        /** Skip ': ' */
+        mValueIndex = Math.min(delimiterIndex + 2, line.length());
+    }
+
+    @Override
+    public String toString() {
+        return "KeyValueParser{" +
+                "key: " + mKey +
+                ", value: " + mValueSequence +
+                '}';
+    }
+
+    /** A view of the current value. */
+    private final class ValueSequence implements CharSequence {
+
+        @Override
+        public char charAt(final int index) {
+            return mLine.charAt(mValueIndex + index);
+        }
+
+        @Override
+        public int length() {
+            return getValueLength();
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return mLine.subSequence(mValueIndex + start, mValueIndex + end);
+        }
+
+        @Override
+        public String toString() {
+            return getValue();
+        }
+    }
+}
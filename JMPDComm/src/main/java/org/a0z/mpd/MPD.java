@@ -27,9 +27,11 @@
 
 package org.a0z.mpd;
 
+import org.a0z.mpd.connection.CommandCallback;
 import org.a0z.mpd.connection.MPDConnection;
 import org.a0z.mpd.connection.MPDConnectionMonoSocket;
 import org.a0z.mpd.connection.MPDConnectionMultiSocket;
+import org.a0z.mpd.connection.ResponseCache;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.Album;
 import org.a0z.mpd.item.Artist;
@@ -38,6 +40,9 @@ import org.a0z.mpd.item.FilesystemTreeEntry;
 import org.a0z.mpd.item.Genre;
 import org.a0z.mpd.item.Item;
 import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicConsumer;
+import org.a0z.mpd.item.MusicResponseHandler;
+import org.a0z.mpd.item.MusicStreamHandler;
 import org.a0z.mpd.item.PlaylistFile;
 import org.a0z.mpd.item.Stream;
 import org.a0z.mpd.subsystem.Sticker;
@@ -48,8 +53,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import static org.a0z.mpd.Tools.KEY;
 import static org.a0z.mpd.Tools.VALUE;
@@ -61,6 +72,24 @@ public class MPD {
 
     public static final String STREAMS_PLAYLIST = "[Radio Streams]";
 
+    /** The line which starts every directory entry in a media server response. */
+    private static final String DIRECTORY_PREFIX = "directory: ";
+
+    /** The number of queries used to find the first track of an album without a sorted find. */
+    private static final int FIRST_TRACK_QUERIES = 4;
+
+    /** The query finding the first track by a track number of {@code 01}. */
+    private static final int FIRST_TRACK_QUERY_PADDED = 1;
+
+    /** The query finding the first track by searching for a track number of {@code 1}. */
+    private static final int FIRST_TRACK_QUERY_SEARCH = 2;
+
+    /** The query finding the first track by a track number of {@code 1}, or a sorted find. */
+    private static final int FIRST_TRACK_QUERY_TRACK = 0;
+
+    /** The number of songs retrieved at once by {@link #listAllInfo(MusicConsumer)}. */
+    private static final int LIST_ALL_INFO_WINDOW = 1000;
+
     private static final String TAG = "MPD";
 
     protected final MPDPlaylist mPlaylist;
@@ -71,19 +100,64 @@ public class MPD {
 
     private final MPDStatistics mStatistics;
 
-    private final MPDStatus mStatus;
+    /** The latest status snapshot, replaced as a whole upon each status update. */
+    private volatile MPDStatus mStatus;
+
+    /** The pool of the tags of the songs retrieved through this controller. */
+    private final TagPool mTagPool;
 
     /**
      * Constructs a new MPD server controller without connection.
      */
     public MPD() {
+        this(new MPDConnectionMultiSocket(5000, 2), new MPDConnectionMonoSocket(0));
+    }
+
+    /**
+     * Constructs a new MPD server controller without connection, processing the commands of both
+     * of its connections on the given executor.
+     *
+     * @param executor The executor processing the commands, which may be shared by several
+     *                 controllers, such as a virtual thread per task executor.
+     * @see VirtualThreads#newExecutor()
+     */
+    public MPD(final ExecutorService executor) {
+        this(new MPDConnectionMultiSocket(5000, 2, executor),
+                new MPDConnectionMonoSocket(0, executor));
+    }
+
+    /**
+     * Constructs a new MPD server controller without connection, using the given connections.
+     * This allows the use of another transport, such as {@link
+     * org.a0z.mpd.connection.MPDConnectionNio}.
+     *
+     * @param connection     The connection used for commands.
+     * @param idleConnection The connection used for the {@code idle} command, which must not
+     *                       time out.
+     */
+    public MPD(final MPDConnection connection, final MPDConnection idleConnection) {
+        this(connection, idleConnection, new TagPool());
+    }
+
+    /**
+     * Constructs a new MPD server controller without connection, using the given connections and
+     * sharing the tags of its songs with other controllers, such as those of a {@link MPDCluster}.
+     *
+     * @param connection     The connection used for commands.
+     * @param idleConnection The connection used for the {@code idle} command, which must not
+     *                       time out.
+     * @param tagPool        The pool of the tags of the songs retrieved through this controller.
+     */
+    MPD(final MPDConnection connection, final MPDConnection idleConnection,
+            final TagPool tagPool) {
         super();
-        mConnection = new MPDConnectionMultiSocket(5000, 2);
-        mIdleConnection = new MPDConnectionMonoSocket(0);
+        mConnection = connection;
+        mIdleConnection = idleConnection;
         mStatistics = new MPDStatistics();
 
         mPlaylist = new MPDPlaylist(mConnection);
         mStatus = new MPDStatus();
+        mTagPool = tagPool;
     }
 
     /**
@@ -114,6 +188,78 @@ public class MPD {
         connect(server, port, password);
     }
 
+    /**
+     * Removes the songs of other album artists from an album song list, then sorts it.
+     *
+     * @param album The album the songs were retrieved for.
+     * @param songs The songs of the album.
+     * @return The {@code songs} list.
+     */
+    private static List<Music> filterAlbumSongs(final Album album, final List<Music> songs) {
+        if (album.hasAlbumArtist()) {
+            // remove songs that don't have this album artist (mpd >=0.18 puts them in)
+            final Artist artist = album.getArtist();
+            String artistName = null;
+
+            if (artist != null) {
+                artistName = artist.getName();
+            }
+
+            for (int i = songs.size() - 1; i >= 0; i--) {
+                final String albumArtist = songs.get(i).getAlbumArtist();
+                if (albumArtist != null && !albumArtist.isEmpty()
+                        && !albumArtist.equals(artistName)) {
+                    songs.remove(i);
+                }
+            }
+        }
+        if (null != songs) {
+            Collections.sort(songs);
+        }
+        return songs;
+    }
+
+    /**
+     * Groups songs by album, as {@link #getAlbums(Artist, boolean, boolean)} would list the
+     * albums; by album artist, or by artist for songs without an album artist.
+     *
+     * @param albumSongs The songs of each album, to add the songs to.
+     * @param paths      The paths of the songs already added, songs are only added once.
+     * @param artist     The artist the songs were retrieved for.
+     * @param songs      The songs to add.
+     */
+    private static void addAlbumSongs(final Map<Album, List<Music>> albumSongs,
+            final Set<String> paths, final Artist artist, final Iterable<Music> songs) {
+        for (final Music song : songs) {
+            if (paths.add(song.getFullPath())) {
+                final String albumArtist = song.getAlbumArtist();
+                String albumName = song.getAlbum();
+                final Album album;
+
+                if (albumName == null) {
+                    albumName = "";
+                }
+
+                if (albumArtist == null || albumArtist.isEmpty()) {
+                    if (song.getArtist() == null || song.getArtist().equals(artist.getName())) {
+                        album = new Album(albumName, artist, false);
+                    } else {
+                        album = new Album(albumName, new Artist(song.getArtist()), false);
+                    }
+                } else {
+                    album = new Album(albumName, new Artist(albumArtist), true);
+                }
+
+                List<Music> albumMusic = albumSongs.get(album);
+                if (albumMusic == null) {
+                    albumMusic = new ArrayList<>();
+                    albumSongs.put(album, albumMusic);
+                }
+                albumMusic.add(song);
+            }
+        }
+    }
+
     private static String[] getAlbumArtistPair(final Album album) {
         final Artist artist = album.getArtist();
         final String[] artistPair;
@@ -139,6 +285,27 @@ public class MPD {
                 artistPair[0], artistPair[1]);
     }
 
+    private static MPDCommand getAlbumInGenreCommand(final Album album, final Genre genre) {
+        final Artist artist = album.getArtist();
+        String artistName = null;
+        String artistType = null;
+
+        if (artist != null) {
+            artistName = artist.getName();
+
+            if (album.hasAlbumArtist()) {
+                artistType = MPDCommand.MPD_TAG_ALBUM_ARTIST;
+            } else {
+                artistType = MPDCommand.MPD_TAG_ARTIST;
+            }
+        }
+
+        return new MPDCommand(MPDCommand.MPD_CMD_LIST_TAG, MPDCommand.MPD_TAG_ALBUM,
+                MPDCommand.MPD_TAG_ALBUM, album.getName(),
+                artistType, artistName,
+                MPDCommand.MPD_TAG_GENRE, genre.getName());
+    }
+
     private static MPDCommand getSongsCommand(final Album album) {
         final String[] artistPair = getAlbumArtistPair(album);
 
@@ -164,7 +331,22 @@ public class MPD {
      * get raw command String for listAllAlbumsGrouped
      */
     private static MPDCommand listAllAlbumsGroupedCommand(final boolean useAlbumArtist) {
+        return listAllAlbumsGroupedCommand(useAlbumArtist, null);
+    }
+
+    /**
+     * Builds the command listing all albums grouped by artist or album artist, optionally only
+     * those in a genre.
+     *
+     * @param useAlbumArtist Whether to group by album artist rather than artist.
+     * @param genre          The genre to filter with, {@code null} to list all albums.
+     * @return The {@code list} command.
+     */
+    private static MPDCommand listAllAlbumsGroupedCommand(final boolean useAlbumArtist,
+            final Genre genre) {
         final String artistTag;
+        String genreTag = null;
+        String genreName = null;
 
         if (useAlbumArtist) {
             artistTag = MPDCommand.MPD_TAG_ALBUM_ARTIST;
@@ -172,14 +354,110 @@ public class MPD {
             artistTag = MPDCommand.MPD_TAG_ARTIST;
         }
 
+        if (genre != null) {
+            genreTag = MPDCommand.MPD_TAG_GENRE;
+            genreName = genre.getName();
+        }
+
         return new MPDCommand(MPDCommand.MPD_CMD_LIST_TAG, MPDCommand.MPD_TAG_ALBUM,
-                MPDCommand.MPD_CMD_GROUP, artistTag);
+                genreTag, genreName, MPDCommand.MPD_CMD_GROUP, artistTag);
+    }
+
+    /**
+     * Marks the albums found by album artist which are also found by artist as not having an
+     * album artist. The albums are matched by their name key in a hash set, rather than
+     * comparing every pair of albums.
+     *
+     * @param artistAlbums      The albums found by artist.
+     * @param albumArtistAlbums The albums found by album artist, to mark.
+     */
+    static void markArtistAlbums(final Collection<Album> artistAlbums,
+            final Iterable<Album> albumArtistAlbums) {
+        final Set<String> artistAlbumKeys = new HashSet<>(artistAlbums.size() * 2);
+
+        for (final Album artistAlbum : artistAlbums) {
+            final String key = artistAlbum.getNameKey();
+
+            if (key != null) {
+                artistAlbumKeys.add(key);
+            }
+        }
+
+        for (final Album albumArtistAlbum : albumArtistAlbums) {
+            if (artistAlbumKeys.contains(albumArtistAlbum.getNameKey())) {
+                albumArtistAlbum.setHasAlbumArtist(false);
+            }
+        }
     }
 
     private static MPDCommand nextCommand() {
         return new MPDCommand(MPDCommand.MPD_CMD_NEXT);
     }
 
+    /**
+     * Builds the albums of a {@code list album group} response.
+     *
+     * @param response            The response lines.
+     * @param useAlbumArtist      Whether the response is grouped by AlbumArtist, not Artist.
+     * @param includeUnknownAlbum include an entry for albums with no artists
+     * @return The albums of the response, in response order.
+     */
+    private static List<Album> parseAlbumsGrouped(final Collection<String> response,
+            final boolean useAlbumArtist, final boolean includeUnknownAlbum) {
+        final String albumResponse = "Album";
+        final String artistResponse;
+        final List<Album> result = new ArrayList<>(response.size() / 2);
+        String currentAlbum = null;
+
+        if (useAlbumArtist) {
+            artistResponse = "AlbumArtist";
+        } else {
+            artistResponse = "Artist";
+        }
+
+        for (final String[] pair : Tools.splitResponse(response)) {
+
+            if (artistResponse.equals(pair[KEY])) {
+                if (currentAlbum != null) {
+                    final Artist artist = new Artist(pair[VALUE]);
+                    result.add(new Album(currentAlbum, artist, useAlbumArtist));
+
+                    currentAlbum = null;
+                }
+            } else if (albumResponse.equals(pair[KEY])) {
+                if (currentAlbum != null) {
+                    /** There was no artist in this response, add the album alone */
+                    result.add(new Album(currentAlbum, null));
+                }
+
+                if (!pair[VALUE].isEmpty() || includeUnknownAlbum) {
+                    currentAlbum = pair[VALUE];
+                } else {
+                    currentAlbum = null;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds the music of a song list response.
+     *
+     * @param response The song list response, as separated from a command list response.
+     * @return The music of the response, sorted.
+     */
+    private static List<Music> parseMusic(final String[] response) {
+        final MusicResponseHandler handler = new MusicResponseHandler();
+
+        handler.onResponseStart();
+        for (final String line : response) {
+            handler.onResponseLine(line);
+        }
+
+        return handler.getMusic(true);
+    }
+
     private static MPDCommand skipToPositionCommand(final int position) {
         return new MPDCommand(MPDCommand.MPD_CMD_PLAY, Integer.toString(position));
     }
@@ -327,10 +605,11 @@ public class MPD {
     public void add(final CommandQueue commandQueue, final boolean replace,
             final boolean playAfterAdd) throws IOException, MPDException {
         int playPos = 0;
-        final boolean isPlaying = mStatus.isState(MPDStatus.STATE_PLAYING);
-        final boolean isConsume = mStatus.isConsume();
-        final boolean isRandom = mStatus.isRandom();
-        final int playlistLength = mStatus.getPlaylistLength();
+        final MPDStatus status = mStatus;
+        final boolean isPlaying = status.isState(MPDStatus.STATE_PLAYING);
+        final boolean isConsume = status.isConsume();
+        final boolean isRandom = status.isRandom();
+        final int playlistLength = status.getPlaylistLength();
 
         /** Replace */
         if (replace) {
@@ -410,10 +689,11 @@ public class MPD {
 
     protected void addAlbumPaths(final List<Album> albums) throws IOException, MPDException {
         if (albums != null && !albums.isEmpty()) {
-            for (final Album album : albums) {
-                final List<Music> songs = getFirstTrack(album);
-                if (!songs.isEmpty()) {
-                    album.setPath(songs.get(0).getPath());
+            final Music[] firstTracks = getFirstTracks(albums, null);
+
+            for (int i = 0; i < firstTracks.length; i++) {
+                if (firstTracks[i] != null) {
+                    albums.get(i).setPath(firstTracks[i].getPath());
                 }
             }
         }
@@ -602,6 +882,82 @@ public class MPD {
         mConnection.sendCommand(MPDCommand.MPD_CMD_OUTPUTENABLE, Integer.toString(id));
     }
 
+    /**
+     * Filters albums by genre, with a single command list for all albums rather than an
+     * {@link #isAlbumInGenre(Album, Genre)} round trip for each album. With MPD 0.19 and later,
+     * the albums of the genre are listed grouped by album artist and by artist, then the albums
+     * are looked up in a hash set. Older servers are sent the {@code isAlbumInGenre} commands of
+     * all albums in a command list.
+     *
+     * @param albums The albums to filter.
+     * @param genre  The genre to keep the albums of.
+     * @return The albums in the genre, in the order of {@code albums}.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public List<Album> filterAlbums(final List<Album> albums, final Genre genre)
+            throws IOException, MPDException {
+        final List<Album> result = new ArrayList<>(albums.size());
+
+        if (!albums.isEmpty()) {
+            if (mConnection.isProtocolVersionSupported(0, 19)) {
+                final CommandQueue commandQueue = new CommandQueue(2);
+                final Set<String> albumNames = new HashSet<>();
+                final Set<String> albumArtistKeys = new HashSet<>();
+                final Set<String> artistKeys = new HashSet<>();
+
+                commandQueue.add(listAllAlbumsGroupedCommand(true, genre));
+                commandQueue.add(listAllAlbumsGroupedCommand(false, genre));
+
+                final List<String[]> response = commandQueue.sendSeparatedByCommand(mConnection);
+                final Iterable<Album> albumArtistAlbums =
+                        parseAlbumsGrouped(Arrays.asList(response.get(0)), true, true);
+                final Iterable<Album> artistAlbums =
+                        parseAlbumsGrouped(Arrays.asList(response.get(1)), false, true);
+
+                for (final Album album : albumArtistAlbums) {
+                    albumNames.add(album.getName());
+                    albumArtistKeys.add(album.getNameKey());
+                }
+                for (final Album album : artistAlbums) {
+                    albumNames.add(album.getName());
+                    artistKeys.add(album.getNameKey());
+                }
+
+                for (final Album album : albums) {
+                    final boolean isInGenre;
+
+                    if (album.getArtist() == null) {
+                        isInGenre = albumNames.contains(album.getName());
+                    } else if (album.hasAlbumArtist()) {
+                        isInGenre = albumArtistKeys.contains(album.getNameKey());
+                    } else {
+                        isInGenre = artistKeys.contains(album.getNameKey());
+                    }
+
+                    if (isInGenre) {
+                        result.add(album);
+                    }
+                }
+            } else {
+                final CommandQueue commandQueue = new CommandQueue(albums.size());
+
+                for (final Album album : albums) {
+                    commandQueue.add(getAlbumInGenreCommand(album, genre));
+                }
+
+                final List<String[]> response = commandQueue.sendSeparatedByCommand(mConnection);
+                for (int i = 0; i < albums.size(); i++) {
+                    if (response.get(i).length != 0) {
+                        result.add(albums.get(i));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Similar to {@code search},{@code find} looks for exact matches
      * in the MPD database.
@@ -671,13 +1027,15 @@ public class MPD {
 
     protected List<Music> genericSearch(final String searchCommand, final String[] args,
             final boolean sort) throws IOException, MPDException {
-        return Music.getMusicFromList(mConnection.sendCommand(searchCommand, args), sort);
+        final MusicResponseHandler handler = new MusicResponseHandler(0, mTagPool);
+
+        mConnection.sendCommand(new MPDCommand(searchCommand, args), handler);
+        return handler.getMusic(sort);
     }
 
     protected List<Music> genericSearch(final String searchCommand, final String type,
             final String strToFind) throws IOException, MPDException {
-        final List<String> response = mConnection.sendCommand(searchCommand, type, strToFind);
-        return Music.getMusicFromList(response, true);
+        return genericSearch(searchCommand, new String[]{type, strToFind}, true);
     }
 
     public int getAlbumCount(final Artist artist, final boolean useAlbumArtistTag)
@@ -690,31 +1048,61 @@ public class MPD {
         return listAlbums(artist, useAlbumArtistTag).size();
     }
 
+    /**
+     * Retrieves the song count and duration of albums and, if requested, the year and path of
+     * their first track. The first query for the first tracks is sent in the same command list as
+     * the song counts, so it usually takes a single command list for all albums.
+     *
+     * @param albums   The albums to retrieve the details for.
+     * @param findYear Whether to retrieve the year and path of the albums.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
     protected void getAlbumDetails(final List<Album> albums, final boolean findYear)
             throws IOException, MPDException {
-        final CommandQueue commandQueue = new CommandQueue(albums.size());
-        for (final Album album : albums) {
-            commandQueue.add(getAlbumDetailsCommand(album));
-        }
-        final List<String[]> response = commandQueue.sendSeparated(mConnection);
+        final int albumCount = albums.size();
 
-        if (response.size() == albums.size()) {
-            for (int i = 0; i < response.size(); i++) {
-                final String[] list = response.get(i);
+        if (albumCount != 0) {
+            final CommandQueue commandQueue;
+
+            if (findYear) {
+                commandQueue = new CommandQueue(albumCount * 2);
+            } else {
+                commandQueue = new CommandQueue(albumCount);
+            }
+
+            for (final Album album : albums) {
+                commandQueue.add(getAlbumDetailsCommand(album));
+            }
+
+            if (findYear) {
+                for (final Album album : albums) {
+                    commandQueue.add(getFirstTrackCommand(album, FIRST_TRACK_QUERY_TRACK));
+                }
+            }
+
+            final List<String[]> response = commandQueue.sendSeparatedByCommand(mConnection);
+
+            for (int i = 0; i < albumCount; i++) {
                 final Album a = albums.get(i);
-                for (final String[] pair : Tools.splitResponse(list)) {
+
+                for (final String[] pair : Tools.splitResponse(response.get(i))) {
                     if ("songs".equals(pair[KEY])) {
                         a.setSongCount(Long.parseLong(pair[VALUE]));
                     } else if ("playtime".equals(pair[KEY])) {
                         a.setDuration(Long.parseLong(pair[VALUE]));
                     }
                 }
+            }
+
+            if (findYear) {
+                final Music[] firstTracks =
+                        getFirstTracks(albums, response.subList(albumCount, response.size()));
 
-                if (findYear) {
-                    final List<Music> songs = getFirstTrack(a);
-                    if (null != songs && !songs.isEmpty()) {
-                        a.setYear(songs.get(0).getDate());
-                        a.setPath(songs.get(0).getPath());
+                for (int i = 0; i < albumCount; i++) {
+                    if (firstTracks[i] != null) {
+                        albums.get(i).setYear(firstTracks[i].getDate());
+                        albums.get(i).setPath(firstTracks[i].getPath());
                     }
                 }
             }
@@ -763,7 +1151,7 @@ public class MPD {
                     addAlbumPaths(albums);
                 }
 
-                Collections.sort(albums);
+                Item.sortByName(albums);
             }
         }
 
@@ -796,7 +1184,7 @@ public class MPD {
             }
         }
 
-        Collections.sort(albums);
+        Item.sortByName(albums);
         return albums;
     }
 
@@ -820,7 +1208,7 @@ public class MPD {
                 artists.add(new Artist(artist));
             }
         }
-        Collections.sort(artists);
+        Item.sortByName(artists);
         return artists;
     }
 
@@ -845,7 +1233,7 @@ public class MPD {
                 artists.add(new Artist(artist));
             }
         }
-        Collections.sort(artists);
+        Item.sortByName(artists);
         return artists;
     }
 
@@ -886,6 +1274,107 @@ public class MPD {
         return songs;
     }
 
+    /**
+     * Builds a query for the first track of an album.
+     *
+     * @param album The album to find the first track of.
+     * @param query The query, one of the {@code FIRST_TRACK_QUERY} constants, or any other value
+     *              to find all tracks of the album.
+     * @return The query command.
+     */
+    private MPDCommand getFirstTrackCommand(final Album album, final int query) {
+        final String[] artistPair = getAlbumArtistPair(album);
+        final MPDCommand command;
+
+        switch (query) {
+            case FIRST_TRACK_QUERY_TRACK:
+                if (isSortedFindSupported()) {
+                    command = new MPDCommand(MPDCommand.MPD_CMD_FIND, artistPair[0],
+                            artistPair[1], MPDCommand.MPD_TAG_ALBUM, album.getName(),
+                            MPDCommand.MPD_CMD_SORT, MPDCommand.MPD_TAG_TRACK,
+                            MPDCommand.MPD_CMD_WINDOW, "0:1");
+                } else {
+                    command = new MPDCommand(MPDCommand.MPD_CMD_FIND, artistPair[0],
+                            artistPair[1], MPDCommand.MPD_TAG_ALBUM, album.getName(),
+                            MPDCommand.MPD_TAG_TRACK, "1");
+                }
+                break;
+            case FIRST_TRACK_QUERY_PADDED:
+                command = new MPDCommand(MPDCommand.MPD_CMD_FIND, artistPair[0], artistPair[1],
+                        MPDCommand.MPD_TAG_ALBUM, album.getName(), MPDCommand.MPD_TAG_TRACK,
+                        "01");
+                break;
+            case FIRST_TRACK_QUERY_SEARCH:
+                command = new MPDCommand(MPDCommand.MPD_CMD_SEARCH, artistPair[0],
+                        artistPair[1], MPDCommand.MPD_TAG_ALBUM, album.getName(),
+                        MPDCommand.MPD_TAG_TRACK, "1");
+                break;
+            default:
+                command = getSongsCommand(album);
+                break;
+        }
+
+        return command;
+    }
+
+    /**
+     * Retrieves the first track of each album, in a constant number of command lists. With a
+     * sorted {@code find}, a single query retrieves only the first track of each album.
+     * Otherwise the queries of {@link #getFirstTrack(Album)} are sent for all albums at once,
+     * each query only for the albums the previous queries found no track for.
+     *
+     * @param albums       The albums to retrieve the first track of.
+     * @param firstResults The results of the first query for each album, if it was already sent,
+     *                     {@code null} otherwise.
+     * @return The first track of each album, {@code null} for albums without any track found.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private Music[] getFirstTracks(final List<Album> albums, final List<String[]> firstResults)
+            throws IOException, MPDException {
+        final Music[] firstTracks = new Music[albums.size()];
+        final int[] pending = new int[albums.size()];
+        final int queries;
+        int pendingCount = pending.length;
+        List<String[]> response = firstResults;
+
+        if (isSortedFindSupported()) {
+            queries = 1;
+        } else {
+            queries = FIRST_TRACK_QUERIES;
+        }
+
+        for (int i = 0; i < pendingCount; i++) {
+            pending[i] = i;
+        }
+
+        for (int query = 0; query < queries && pendingCount != 0; query++) {
+            if (query != FIRST_TRACK_QUERY_TRACK || response == null) {
+                final CommandQueue commandQueue = new CommandQueue(pendingCount);
+
+                for (int i = 0; i < pendingCount; i++) {
+                    commandQueue.add(getFirstTrackCommand(albums.get(pending[i]), query));
+                }
+                response = commandQueue.sendSeparatedByCommand(mConnection);
+            }
+
+            int remaining = 0;
+            for (int i = 0; i < pendingCount; i++) {
+                final List<Music> songs = parseMusic(response.get(i));
+
+                if (songs.isEmpty()) {
+                    pending[remaining] = pending[i];
+                    remaining++;
+                } else {
+                    firstTracks[pending[i]] = songs.get(0);
+                }
+            }
+            pendingCount = remaining;
+        }
+
+        return firstTracks;
+    }
+
     public List<Genre> getGenres() throws IOException, MPDException {
         final List<String> genreNames = listGenres();
         List<Genre> genres = null;
@@ -897,7 +1386,7 @@ public class MPD {
             }
         }
         if (null != genres) {
-            Collections.sort(genres);
+            Item.sortByName(genres);
         }
         return genres;
     }
@@ -1012,6 +1501,16 @@ public class MPD {
         return result;
     }
 
+    /**
+     * Retrieves the cache of query responses of this server controller.
+     *
+     * @return The response cache, null if responses are not cached.
+     * @see #setResponseCache(ResponseCache)
+     */
+    public ResponseCache getResponseCache() {
+        return mConnection.getResponseCache();
+    }
+
     public List<Music> getSavedStreams() throws IOException, MPDException {
         final List<String> response = mConnection.sendCommand(MPDCommand.MPD_CMD_LISTPLAYLISTS);
         List<Music> savedStreams = null;
@@ -1031,40 +1530,130 @@ public class MPD {
     }
 
     public List<Music> getSongs(final Album album) throws IOException, MPDException {
-        final List<Music> songs = Music.getMusicFromList
-                (mConnection.sendCommand(getSongsCommand(album)), true);
-        if (album.hasAlbumArtist()) {
-            // remove songs that don't have this album artist (mpd >=0.18 puts them in)
-            final Artist artist = album.getArtist();
-            String artistName = null;
+        final MusicResponseHandler handler = new MusicResponseHandler(0, mTagPool);
 
-            if (artist != null) {
-                artistName = artist.getName();
-            }
+        mConnection.sendCommand(getSongsCommand(album), handler);
+        return filterAlbumSongs(album, handler.getMusic(true));
+    }
 
-            for (int i = songs.size() - 1; i >= 0; i--) {
-                final String albumArtist = songs.get(i).getAlbumArtist();
-                if (albumArtist != null && !albumArtist.isEmpty()
-                        && !albumArtist.equals(artistName)) {
-                    songs.remove(i);
-                }
+    /**
+     * Retrieves the songs of an album without waiting for the response, the query is pipelined
+     * with other asynchronous queries, which saves a round trip to the server for each.
+     *
+     * @param album    The album to retrieve the songs of.
+     * @param callback The callback to notify with the songs, called from the connection thread.
+     * @see MPDConnection#sendCommandAsync(MPDCommand, CommandCallback)
+     */
+    public void getSongs(final Album album, final CommandCallback<List<Music>> callback) {
+        mConnection.sendCommandAsync(getSongsCommand(album),
+                new MusicResponseHandler(0, mTagPool),
+                new CommandCallback<MusicResponseHandler>() {
+                    @Override
+                    public void onCompleted(final MusicResponseHandler result) {
+                        callback.onCompleted(filterAlbumSongs(album, result.getMusic(true)));
+                    }
+
+                    @Override
+                    public void onFailed(final Exception exception) {
+                        callback.onFailed(exception);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the songs of the albums of an artist, in the order {@link #getSongs(Album)} would
+     * retrieve them album by album. All songs by artist and by album artist are retrieved with a
+     * single command list, then, if the artist appears on albums of other album artists, those
+     * albums are retrieved whole with another command list.
+     *
+     * @param artist The artist to retrieve the songs of.
+     * @return The songs of the artist albums, sorted by album, then as each album is sorted.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public List<Music> getSongs(final Artist artist) throws IOException, MPDException {
+        final Map<Album, List<Music>> albumSongs = new LinkedHashMap<>();
+        final Set<String> paths = new HashSet<>();
+        final CommandQueue commandQueue = new CommandQueue(2);
+        final CommandQueue otherAlbumArtists = new CommandQueue();
+        MusicResponseHandler handler = new MusicResponseHandler(0, mTagPool);
+
+        commandQueue.add(MPDCommand.MPD_CMD_FIND, MPDCommand.MPD_TAG_ALBUM_ARTIST,
+                artist.getName());
+        commandQueue.add(MPDCommand.MPD_CMD_FIND, MPDCommand.MPD_TAG_ARTIST, artist.getName());
+        commandQueue.send(mConnection, handler);
+        addAlbumSongs(albumSongs, paths, artist, handler.getMusic(false));
+
+        for (final Album album : albumSongs.keySet()) {
+            if (album.hasAlbumArtist() && !artist.doesNameExist(album.getArtist())) {
+                otherAlbumArtists.add(getSongsCommand(album));
             }
         }
-        if (null != songs) {
-            Collections.sort(songs);
+
+        if (!otherAlbumArtists.isEmpty()) {
+            handler = new MusicResponseHandler(0, mTagPool);
+            otherAlbumArtists.send(mConnection, handler);
+            addAlbumSongs(albumSongs, paths, artist, handler.getMusic(false));
         }
-        return songs;
-    }
 
-    public List<Music> getSongs(final Artist artist) throws IOException, MPDException {
-        final List<Album> albums = getAlbums(artist, false, false);
-        final List<Music> songs = new ArrayList<>(albums.size());
+        final List<Album> albums = new ArrayList<>(albumSongs.keySet());
+        final List<Music> songs = new ArrayList<>(paths.size());
+
+        Item.sortByName(albums);
         for (final Album album : albums) {
-            songs.addAll(getSongs(album));
+            songs.addAll(filterAlbumSongs(album, albumSongs.get(album)));
         }
+
         return songs;
     }
 
+    /**
+     * Counts the songs of several directories, recursively, with a single command list. This
+     * requires the {@code base} filter of the {@code count} command, MPD protocol 0.19.0 and up.
+     *
+     * @param directories   The paths of the directories to count the songs of.
+     * @param modifiedSince If not null, only songs modified since this time are counted.
+     * @return For each directory, its number of songs, then the total duration of its songs, in
+     * seconds.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     * @see #isProtocolVersionSupported(int, int)
+     */
+    public List<long[]> getSongCounts(final List<String> directories, final Date modifiedSince)
+            throws IOException, MPDException {
+        final List<long[]> counts = new ArrayList<>(directories.size());
+
+        if (!directories.isEmpty()) {
+            final CommandQueue commandQueue = new CommandQueue(directories.size());
+
+            for (final String directory : directories) {
+                if (modifiedSince == null) {
+                    commandQueue.add(MPDCommand.MPD_CMD_COUNT, MPDCommand.MPD_SEARCH_BASE,
+                            directory);
+                } else {
+                    commandQueue.add(MPDCommand.MPD_CMD_COUNT, MPDCommand.MPD_SEARCH_BASE,
+                            directory, MPDCommand.MPD_SEARCH_MODIFIED_SINCE,
+                            Long.toString(modifiedSince.getTime() / 1000L));
+                }
+            }
+
+            for (final String[] response : commandQueue.sendSeparatedByCommand(mConnection)) {
+                final long[] count = new long[2];
+
+                for (final String[] pair : Tools.splitResponse(response)) {
+                    if ("songs".equals(pair[KEY])) {
+                        count[0] = Long.parseLong(pair[VALUE]);
+                    } else if ("playtime".equals(pair[KEY])) {
+                        count[1] = Long.parseLong(pair[VALUE]);
+                    }
+                }
+                counts.add(count);
+            }
+        }
+
+        return counts;
+    }
+
     /**
      * Retrieves the current statistics for the connected server.
      *
@@ -1075,7 +1664,7 @@ public class MPD {
     }
 
     /**
-     * Retrieves status of the connected server.
+     * Retrieves status of the connected server, an immutable snapshot of the last status update.
      *
      * @return status of the connected server.
      */
@@ -1087,31 +1676,23 @@ public class MPD {
         return new Sticker(mConnection);
     }
 
+    /**
+     * Retrieves the pool the album, artist, composer and genre tags of the songs retrieved
+     * through this controller are shared from.
+     *
+     * @return The pool of tags.
+     */
+    public TagPool getTagPool() {
+        return mTagPool;
+    }
+
     /*
      * test whether given album is in given genre
      */
     public boolean isAlbumInGenre(final Album album, final Genre genre)
             throws IOException, MPDException {
-        final List<String> response;
-        final Artist artist = album.getArtist();
-        String artistName = null;
-        String artistType = null;
-
-        if (artist != null) {
-            artistName = artist.getName();
-
-            if (album.hasAlbumArtist()) {
-                artistType = MPDCommand.MPD_TAG_ALBUM_ARTIST;
-            } else {
-                artistType = MPDCommand.MPD_TAG_ARTIST;
-            }
-        }
-
-        response = mConnection.sendCommand(new MPDCommand(
-                MPDCommand.MPD_CMD_LIST_TAG, MPDCommand.MPD_TAG_ALBUM,
-                MPDCommand.MPD_TAG_ALBUM, album.getName(),
-                artistType, artistName,
-                MPDCommand.MPD_TAG_GENRE, genre.getName()));
+        final List<String> response =
+                mConnection.sendCommand(getAlbumInGenreCommand(album, genre));
 
         return !response.isEmpty();
     }
@@ -1135,6 +1716,38 @@ public class MPD {
         return mIdleConnection.isConnected();
     }
 
+    /**
+     * Checks whether the media server supports a version of the MPD protocol.
+     *
+     * @param major The major version to inquire for support. (x in x.0.0)
+     * @param minor The minor version to inquire for support. (x in 0.x.0)
+     * @return True if the protocol version is supported, false otherwise.
+     */
+    public boolean isProtocolVersionSupported(final int major, final int minor) {
+        return mConnection.isProtocolVersionSupported(major, minor);
+    }
+
+    /**
+     * Checks whether the media server supports the {@code sort} and {@code window} arguments of
+     * the {@code find} command.
+     *
+     * @return True if {@code find} results can be sorted and windowed, false otherwise.
+     */
+    private boolean isSortedFindSupported() {
+        return mConnection.isProtocolVersionSupported(0, 21);
+    }
+
+    /**
+     * Checks whether the media server supports the {@code window} argument of the {@code find}
+     * command, which predates its {@code sort} argument.
+     *
+     * @return True if {@code find} results can be windowed, false otherwise.
+     * @see #isSortedFindSupported()
+     */
+    private boolean isWindowedFindSupported() {
+        return mConnection.isProtocolVersionSupported(0, 20);
+    }
+
     public List<String> listAlbumArtists() throws IOException, MPDException {
         return listAlbumArtists(true);
     }
@@ -1262,15 +1875,7 @@ public class MPD {
         final List<Album> artistAlbums = listAllAlbumsGrouped(false, includeUnknownAlbum);
         final List<Album> albumArtistAlbums = listAllAlbumsGrouped(true, includeUnknownAlbum);
 
-        for (final Album artistAlbum : artistAlbums) {
-            for (final Album albumArtistAlbum : albumArtistAlbums) {
-                if (artistAlbum.getArtist() != null && artistAlbum
-                        .doesNameExist(albumArtistAlbum)) {
-                    albumArtistAlbum.setHasAlbumArtist(false);
-                    break;
-                }
-            }
-        }
+        markArtistAlbums(artistAlbums, albumArtistAlbums);
 
         return albumArtistAlbums;
     }
@@ -1286,59 +1891,116 @@ public class MPD {
      */
     public List<Album> listAllAlbumsGrouped(final boolean useAlbumArtist,
             final boolean includeUnknownAlbum) throws IOException, MPDException {
-        final String albumResponse = "Album";
-        final String artistResponse;
         final List<String> response =
                 mConnection.sendCommand(listAllAlbumsGroupedCommand(useAlbumArtist));
-        final List<Album> result = new ArrayList<>(response.size() / 2);
-        String currentAlbum = null;
+        final List<Album> result = parseAlbumsGrouped(response, useAlbumArtist,
+                includeUnknownAlbum);
 
-        if (useAlbumArtist) {
-            artistResponse = "AlbumArtist";
-        } else {
-            artistResponse = "Artist";
-        }
+        Item.sortByName(result);
 
-        for (final String[] pair : Tools.splitResponse(response)) {
+        return result;
+    }
 
-            if (artistResponse.equals(pair[KEY])) {
-                if (currentAlbum != null) {
-                    final Artist artist = new Artist(pair[VALUE]);
-                    result.add(new Album(currentAlbum, artist, useAlbumArtist));
+    /**
+     * Returns a sorted listallinfo command from the media server. Use of this command is highly
+     * discouraged, as it can retrieve so much information the server max_output_buffer_size may
+     * be exceeded, which will, in turn, truncate the output to this method.
+     *
+     * @return List of all available music information.
+     * @see #listAllInfo(MusicConsumer)
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public List<Music> listAllInfo() throws IOException, MPDException {
+        final MusicResponseHandler handler = new MusicResponseHandler(0, mTagPool);
 
-                    currentAlbum = null;
-                }
-            } else if (albumResponse.equals(pair[KEY])) {
-                if (currentAlbum != null) {
-                    /** There was no artist in this response, add the album alone */
-                    result.add(new Album(currentAlbum, null));
-                }
+        mConnection.sendCommand(new MPDCommand(MPDCommand.MPD_CMD_LISTALLINFO), handler);
+        return handler.getMusic(false);
+    }
 
-                if (!pair[VALUE].isEmpty() || includeUnknownAlbum) {
-                    currentAlbum = pair[VALUE];
-                } else {
-                    currentAlbum = null;
+    /**
+     * Retrieves every song of the database, handing each to a consumer as soon as it is parsed,
+     * so memory use does not grow with the size of the library. Servers which support windowed
+     * {@code find} are queried {@link #LIST_ALL_INFO_WINDOW} songs at a time, others a top level
+     * directory at a time, so no response has to hold the whole database either, as with
+     * {@link #listAllInfo()}.
+     *
+     * <p>The consumer is called from the thread reading the responses, and the next chunk is
+     * only requested once the consumer has received the current one. If the database is
+     * updated meanwhile, songs may be missed or received twice.</p>
+     *
+     * @param consumer The consumer to hand each song to, in database order.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public void listAllInfo(final MusicConsumer consumer) throws IOException, MPDException {
+        if (isWindowedFindSupported()) {
+            int start = 0;
+            int count;
+
+            /** Every song was modified since the epoch, find requires a filter. */
+            do {
+                final MusicStreamHandler handler = new MusicStreamHandler(consumer, mTagPool);
+
+                mConnection.sendCommand(new MPDCommand(MPDCommand.MPD_CMD_FIND,
+                        MPDCommand.MPD_SEARCH_MODIFIED_SINCE, "0", MPDCommand.MPD_CMD_WINDOW,
+                        Integer.toString(start) + ':' + (start + LIST_ALL_INFO_WINDOW)), handler);
+                count = handler.finish();
+                start += count;
+            } while (count == LIST_ALL_INFO_WINDOW);
+        } else {
+            final List<String> response = mConnection.sendCommand(MPDCommand.MPD_CMD_LSDIR);
+            final MusicStreamHandler rootHandler = new MusicStreamHandler(consumer, mTagPool);
+            final List<String> directories = new ArrayList<>();
+
+            /** The songs of the root directory, then each top level directory, recursively. */
+            rootHandler.onResponseStart();
+            for (final String line : response) {
+                if (line.startsWith(DIRECTORY_PREFIX)) {
+                    directories.add(line.substring(DIRECTORY_PREFIX.length()));
                 }
+                rootHandler.onResponseLine(line);
             }
-        }
+            rootHandler.finish();
 
-        Collections.sort(result);
+            for (final String directory : directories) {
+                final MusicStreamHandler handler = new MusicStreamHandler(consumer, mTagPool);
 
-        return result;
+                mConnection.sendCommand(
+                        new MPDCommand(MPDCommand.MPD_CMD_LISTALLINFO, directory), handler);
+                handler.finish();
+            }
+        }
     }
 
     /**
-     * Returns a sorted listallinfo command from the media server. Use of this command is highly
-     * discouraged, as it can retrieve so much information the server max_output_buffer_size may
-     * be exceeded, which will, in turn, truncate the output to this method.
+     * Retrieves the songs of several directories, recursively, a directory at a time. Each
+     * response is limited to a directory, which keeps it below the server max_output_buffer_size
+     * where a single {@code listallinfo} would not, and the directories are listed in parallel,
+     * on as many sockets as this connection allows.
      *
-     * @return List of all available music information.
+     * @param directories The paths of the directories to list.
+     * @param consumers   The consumer of each directory, handed its songs in database order as
+     *                    they are parsed. Consumers of different directories may be called
+     *                    concurrently.
      * @throws IOException  Thrown upon a communication error with the server.
      * @throws MPDException Thrown if an error occurs as a result of command execution.
+     * @see MPDConnection#sendCommands(List, List)
      */
-    public List<Music> listAllInfo() throws IOException, MPDException {
-        final List<String> allInfo = mConnection.sendCommand(MPDCommand.MPD_CMD_LISTALLINFO);
-        return Music.getMusicFromList(allInfo, false);
+    public void listAllInfo(final List<String> directories,
+            final List<? extends MusicConsumer> consumers) throws IOException, MPDException {
+        final List<MPDCommand> commands = new ArrayList<>(directories.size());
+        final List<MusicStreamHandler> handlers = new ArrayList<>(directories.size());
+
+        for (int i = 0; i < directories.size(); i++) {
+            commands.add(new MPDCommand(MPDCommand.MPD_CMD_LISTALLINFO, directories.get(i)));
+            handlers.add(new MusicStreamHandler(consumers.get(i), mTagPool));
+        }
+
+        mConnection.sendCommands(commands, handlers);
+        for (final MusicStreamHandler handler : handlers) {
+            handler.finish();
+        }
     }
 
     /**
@@ -1712,6 +2374,18 @@ public class MPD {
         mConnection.sendCommand(MPDCommand.MPD_CMD_REPEAT, MPDCommand.booleanValue(repeat));
     }
 
+    /**
+     * Sets the cache of query responses, such as {@code list}, {@code find} or {@code lsinfo},
+     * of this server controller. Responses are only cached for the idle subsystems watched by a
+     * {@link MPDStatusMonitor} of this controller, which drops them as the subsystems change.
+     *
+     * @param responseCache The response cache, null to stop caching responses.
+     * @see ResponseCache
+     */
+    public void setResponseCache(final ResponseCache responseCache) {
+        mConnection.setResponseCache(responseCache);
+    }
+
     /**
      * Enabled or disable single mode.
      *
@@ -1809,7 +2483,7 @@ public class MPD {
         if (response == null) {
             Log.error(TAG, "No status response from the MPD server.");
         } else {
-            mStatus.updateStatus(response);
+            mStatus = new MPDStatus(response);
         }
     }
 }
@@ -0,0 +1,605 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.connection.MPDConnectionNio;
+import org.a0z.mpd.connection.NioEventLoop;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controls several MPD servers, such as one per room, sharing their resources: the servers'
+ * connections use one {@link NioEventLoop} rather than a socket thread each, their status
+ * monitors and the commands sent to several servers at once run on one executor, and the tags
+ * of the songs they return are pooled in one {@link TagPool}.
+ *
+ * <p>A command sent to a group of servers, such as {@link #pause(String...)} or {@link
+ * #setVolume(int, String...)}, is sent to every server in parallel, so it takes as long as the
+ * slowest server rather than the sum of their latencies. The latency of each server is recorded
+ * in its {@link Metrics}.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class MPDCluster implements Closeable {
+
+    /** The delay between retries of a status monitor which lost its connection. */
+    private static final long MONITOR_DELAY = 500L;
+
+    private static final String TAG = "MPDCluster";
+
+    private static final int TIMEOUT = 5000;
+
+    private final NioEventLoop mEventLoop;
+
+    private final ExecutorService mExecutor;
+
+    private final String[] mIdleSubsystems;
+
+    /** Whether the executor and the event loop were created by, and are closed with, this. */
+    private final boolean mIsOwner;
+
+    /** Guards the closing of this cluster against the addition of a server. */
+    private final Object mLock = new Object();
+
+    private final ConcurrentMap<String, Member> mMembers = new ConcurrentHashMap<>();
+
+    private final TagPool mTagPool = new TagPool();
+
+    /** Whether this cluster is closed, guarded by {@link #mLock}. */
+    private boolean mIsClosed;
+
+    /**
+     * Constructs a cluster owning its executor, a virtual thread per task executor if the JVM
+     * supports them, and its event loop.
+     *
+     * @param idleSubsystems The idle subsystems the status monitors of the servers support, see
+     *                       the IDLE fields of {@link MPDStatusMonitor}.
+     * @throws IOException Thrown if the selector of the event loop could not be opened.
+     */
+    public MPDCluster(final String[] idleSubsystems) throws IOException {
+        this(newExecutor(), new NioEventLoop(), idleSubsystems, true);
+    }
+
+    /**
+     * Constructs a cluster using the given executor and event loop, which it does not close.
+     *
+     * @param executor       The executor running the status monitors and the parallel commands,
+     *                       which must not bound its number of threads, as a status monitor
+     *                       occupies a thread for as long as its server is in the cluster.
+     * @param eventLoop      The event loop of the connections to the servers.
+     * @param idleSubsystems The idle subsystems the status monitors of the servers support, see
+     *                       the IDLE fields of {@link MPDStatusMonitor}.
+     */
+    public MPDCluster(final ExecutorService executor, final NioEventLoop eventLoop,
+            final String[] idleSubsystems) {
+        this(executor, eventLoop, idleSubsystems, false);
+    }
+
+    private MPDCluster(final ExecutorService executor, final NioEventLoop eventLoop,
+            final String[] idleSubsystems, final boolean isOwner) {
+        super();
+
+        mExecutor = executor;
+        mEventLoop = eventLoop;
+        mIdleSubsystems = idleSubsystems.clone();
+        mIsOwner = isOwner;
+    }
+
+    /**
+     * Creates the executor of a cluster, falling back to a cached thread pool prior to Java 21,
+     * where each status monitor costs a platform thread.
+     *
+     * @return A new executor.
+     */
+    private static ExecutorService newExecutor() {
+        final ExecutorService executor;
+
+        if (VirtualThreads.isSupported()) {
+            executor = VirtualThreads.newExecutor();
+        } else {
+            executor = Executors.newCachedThreadPool();
+        }
+
+        return executor;
+    }
+
+    /**
+     * Connects to a server, then starts monitoring it. The listeners of its status monitor
+     * should be added prior to the first idle change, which may be notified from the start.
+     *
+     * @param name     The name of the server in this cluster, such as its room.
+     * @param server   The address of the server.
+     * @param port     The port of the server.
+     * @param password The password of the server, null if none.
+     * @return The controller of the server.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public MPD add(final String name, final InetAddress server, final int port,
+            final String password) throws IOException, MPDException {
+        final MPD mpd = new MPD(new MPDConnectionNio(TIMEOUT, mEventLoop),
+                new MPDConnectionNio(0, mEventLoop), mTagPool);
+        final MPDStatusMonitor monitor =
+                new MPDStatusMonitor(mpd, MONITOR_DELAY, mIdleSubsystems);
+        final boolean isClosed;
+        final boolean isAdded;
+
+        if (mMembers.containsKey(name)) {
+            throw new IllegalArgumentException("Server already in the cluster: " + name);
+        }
+
+        /** Connecting may block, the server is only added if the cluster is still open. */
+        mpd.connect(server, port, password);
+        synchronized (mLock) {
+            isClosed = mIsClosed;
+            isAdded = !isClosed && mMembers.putIfAbsent(name, new Member(mpd, monitor)) == null;
+
+            if (isAdded) {
+                monitor.start(mExecutor);
+            }
+        }
+
+        if (!isAdded) {
+            mpd.disconnect();
+
+            if (isClosed) {
+                throw new IllegalStateException("Cluster closed.");
+            }
+            throw new IllegalArgumentException("Server already in the cluster: " + name);
+        }
+
+        return mpd;
+    }
+
+    /**
+     * Removes every server from this cluster, then closes the executor and the event loop if
+     * this cluster created them.
+     */
+    @Override
+    public void close() {
+        synchronized (mLock) {
+            mIsClosed = true;
+        }
+
+        /** No server is added from now on. */
+        for (final String name : mMembers.keySet()) {
+            remove(name);
+        }
+
+        if (mIsOwner) {
+            mExecutor.shutdown();
+            mEventLoop.close();
+        }
+    }
+
+    /**
+     * Sends a command to every server of this cluster, in parallel.
+     *
+     * @param command The command to send.
+     * @return The exception thrown for each server the command failed on, by server name.
+     * @throws InterruptedException Thrown if interrupted while waiting for the servers.
+     * @see #execute(Command, Collection)
+     */
+    public Map<String, Exception> execute(final Command command) throws InterruptedException {
+        return execute(command, mMembers.keySet());
+    }
+
+    /**
+     * Sends a command to a group of servers, in parallel, then waits for every server to
+     * complete it. A server missing from this cluster is reported as a failure, rather than
+     * failing the whole group.
+     *
+     * @param command The command to send.
+     * @param names   The names of the servers to send the command to.
+     * @return The exception thrown for each server the command failed on, by server name.
+     * @throws InterruptedException Thrown if interrupted while waiting for the servers.
+     */
+    public Map<String, Exception> execute(final Command command, final Collection<String> names)
+            throws InterruptedException {
+        final Map<String, Exception> failures = new HashMap<>();
+        final List<String> sent = new ArrayList<>(names.size());
+        final List<Callable<Void>> tasks = new ArrayList<>(names.size());
+
+        for (final String name : names) {
+            final Member member = mMembers.get(name);
+
+            if (member == null) {
+                failures.put(name, new IllegalArgumentException("Unknown server: " + name));
+            } else {
+                sent.add(name);
+                tasks.add(new Execution(member, command));
+            }
+        }
+
+        final List<Future<Void>> futures = mExecutor.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+
+                if (cause instanceof Exception) {
+                    failures.put(sent.get(i), (Exception) cause);
+                } else {
+                    failures.put(sent.get(i), e);
+                }
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Returns the controller of a server.
+     *
+     * @param name The name of the server.
+     * @return The controller of the server, null if not in this cluster.
+     */
+    public MPD get(final String name) {
+        final Member member = mMembers.get(name);
+        final MPD mpd;
+
+        if (member == null) {
+            mpd = null;
+        } else {
+            mpd = member.mMPD;
+        }
+
+        return mpd;
+    }
+
+    /**
+     * Returns the latency metrics of the commands sent to a server through this cluster.
+     *
+     * @param name The name of the server.
+     * @return The metrics of the server, null if not in this cluster.
+     */
+    public Metrics getMetrics(final String name) {
+        final Member member = mMembers.get(name);
+        final Metrics metrics;
+
+        if (member == null) {
+            metrics = null;
+        } else {
+            metrics = member.mMetrics;
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Returns the status monitor of a server, to add listeners to.
+     *
+     * @param name The name of the server.
+     * @return The status monitor of the server, null if not in this cluster.
+     */
+    public MPDStatusMonitor getMonitor(final String name) {
+        final Member member = mMembers.get(name);
+        final MPDStatusMonitor monitor;
+
+        if (member == null) {
+            monitor = null;
+        } else {
+            monitor = member.mMonitor;
+        }
+
+        return monitor;
+    }
+
+    /**
+     * Returns the names of the servers of this cluster.
+     *
+     * @return The names of the servers, sorted.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(mMembers.keySet()));
+    }
+
+    /**
+     * Returns the pool of the tags of the songs of every server of this cluster.
+     *
+     * @return The tag pool shared by the servers.
+     */
+    public TagPool getTagPool() {
+        return mTagPool;
+    }
+
+    /**
+     * Pauses a group of servers, in parallel.
+     *
+     * @param names The names of the servers to pause, every server if none.
+     * @return The exception thrown for each server which failed to pause, by server name.
+     * @throws InterruptedException Thrown if interrupted while waiting for the servers.
+     */
+    public Map<String, Exception> pause(final String... names) throws InterruptedException {
+        return execute(new Command() {
+            @Override
+            public void execute(final MPD mpd) throws IOException, MPDException {
+                mpd.pause();
+            }
+        }, getGroup(names));
+    }
+
+    /**
+     * Stops monitoring a server, then disconnects from it.
+     *
+     * @param name The name of the server.
+     * @return The controller of the server, null if not in this cluster.
+     */
+    public MPD remove(final String name) {
+        final Member member = mMembers.remove(name);
+        final MPD mpd;
+
+        if (member == null) {
+            mpd = null;
+        } else {
+            mpd = member.mMPD;
+            member.mMonitor.giveup();
+            try {
+                mpd.disconnect();
+            } catch (final IOException e) {
+                Log.warning(TAG, "Failed to disconnect from " + name + '.', e);
+            }
+        }
+
+        return mpd;
+    }
+
+    /**
+     * Sets the volume of a group of servers, in parallel.
+     *
+     * @param volume The volume, from 0 to 100.
+     * @param names  The names of the servers to set the volume of, every server if none.
+     * @return The exception thrown for each server which failed to set its volume, by server
+     * name.
+     * @throws InterruptedException Thrown if interrupted while waiting for the servers.
+     */
+    public Map<String, Exception> setVolume(final int volume, final String... names)
+            throws InterruptedException {
+        return execute(new Command() {
+            @Override
+            public void execute(final MPD mpd) throws IOException, MPDException {
+                mpd.setVolume(volume);
+            }
+        }, getGroup(names));
+    }
+
+    /**
+     * Returns the group of servers named, or every server if none was named.
+     *
+     * @param names The names of the servers of the group.
+     * @return The names of the servers of the group.
+     */
+    private Collection<String> getGroup(final String... names) {
+        final Collection<String> group;
+
+        if (names.length == 0) {
+            group = mMembers.keySet();
+        } else {
+            group = Arrays.asList(names);
+        }
+
+        return group;
+    }
+
+    /**
+     * A command sent to several servers at once, see {@link #execute(Command, Collection)}.
+     */
+    public interface Command {
+
+        /**
+         * Sends this command to a server. This is called on the executor of the cluster, once per
+         * server, concurrently.
+         *
+         * @param mpd The controller of the server.
+         * @throws IOException  Thrown upon a communication error with the server.
+         * @throws MPDException Thrown if an error occurs as a result of command execution.
+         */
+        void execute(MPD mpd) throws IOException, MPDException;
+    }
+
+    /**
+     * The latency of the commands sent to a server through its cluster, including the time the
+     * command waited for a connection.
+     */
+    public static final class Metrics {
+
+        private final AtomicLong mCommandCount = new AtomicLong();
+
+        private final AtomicLong mFailureCount = new AtomicLong();
+
+        private final AtomicLong mLastLatency = new AtomicLong();
+
+        private final AtomicLong mMaximumLatency = new AtomicLong();
+
+        private final AtomicLong mTotalLatency = new AtomicLong();
+
+        Metrics() {
+            super();
+        }
+
+        /**
+         * The average latency of the commands sent to the server, in microseconds.
+         *
+         * @return The average latency, 0 if no command was sent.
+         */
+        public long getAverageLatency() {
+            final long count = mCommandCount.get();
+            final long average;
+
+            if (count == 0L) {
+                average = 0L;
+            } else {
+                average = TimeUnit.NANOSECONDS.toMicros(mTotalLatency.get() / count);
+            }
+
+            return average;
+        }
+
+        /**
+         * The number of commands sent to the server.
+         *
+         * @return The number of commands sent, including those which failed.
+         */
+        public long getCommandCount() {
+            return mCommandCount.get();
+        }
+
+        /**
+         * The number of commands sent to the server which failed.
+         *
+         * @return The number of commands which failed.
+         */
+        public long getFailureCount() {
+            return mFailureCount.get();
+        }
+
+        /**
+         * The latency of the last command sent to the server, in microseconds.
+         *
+         * @return The latency of the last command, 0 if no command was sent.
+         */
+        public long getLastLatency() {
+            return TimeUnit.NANOSECONDS.toMicros(mLastLatency.get());
+        }
+
+        /**
+         * The highest latency of the commands sent to the server, in microseconds.
+         *
+         * @return The highest latency, 0 if no command was sent.
+         */
+        public long getMaximumLatency() {
+            return TimeUnit.NANOSECONDS.toMicros(mMaximumLatency.get());
+        }
+
+        /**
+         * Records the latency of a command.
+         *
+         * @param latency   The latency of the command, in nanoseconds.
+         * @param isFailure Whether the command failed.
+         */
+        void record(final long latency, final boolean isFailure) {
+            long maximum = mMaximumLatency.get();
+
+            while (latency > maximum && !mMaximumLatency.compareAndSet(maximum, latency)) {
+                maximum = mMaximumLatency.get();
+            }
+
+            mTotalLatency.addAndGet(latency);
+            mLastLatency.set(latency);
+            if (isFailure) {
+                mFailureCount.incrementAndGet();
+            }
+            mCommandCount.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "commandCount=" + mCommandCount +
+                    ", failureCount=" + mFailureCount +
+                    ", averageLatency=" + getAverageLatency() +
+                    ", maximumLatency=" + getMaximumLatency() +
+                    ", lastLatency=" + getLastLatency() +
+                    '}';
+        }
+    }
+
+    /**
+     * Sends a command to a server, recording its latency.
+     */
+    private static final class Execution implements Callable<Void> {
+
+        private final Command mCommand;
+
+        private final Member mMember;
+
+        Execution(final Member member, final Command command) {
+            super();
+
+            mMember = member;
+            mCommand = command;
+        }
+
+        @Override
+        public Void call() throws IOException, MPDException {
+            final long start = System.nanoTime();
+            boolean isFailure = true;
+
+            try {
+                mCommand.execute(mMember.mMPD);
+                isFailure = false;
+            } finally {
+                mMember.mMetrics.record(System.nanoTime() - start, isFailure);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * A server of the cluster.
+     */
+    private static final class Member {
+
+        private final MPD mMPD;
+
+        private final Metrics mMetrics = new Metrics();
+
+        private final MPDStatusMonitor mMonitor;
+
+        Member(final MPD mpd, final MPDStatusMonitor monitor) {
+            super();
+
+            mMPD = mpd;
+            mMonitor = monitor;
+        }
+    }
+}
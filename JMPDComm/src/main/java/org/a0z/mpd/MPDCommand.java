@@ -77,6 +77,8 @@ public class MPDCommand {
 
     public static final String MPD_CMD_NEXT = "next";
 
+    public static final String MPD_CMD_NOIDLE = "noidle";
+
     public static final String MPD_CMD_OUTPUTDISABLE = "disableoutput";
 
     public static final String MPD_CMD_OUTPUTENABLE = "enableoutput";
@@ -125,6 +127,9 @@ public class MPDCommand {
 
     public static final String MPD_CMD_SINGLE = "single";
 
+    /** The {@code find} and {@code search} sort argument, added in MPD protocol 0.21.0. */
+    public static final String MPD_CMD_SORT = "sort";
+
     public static final String MPD_CMD_STATISTICS = "stats";
 
     public static final String MPD_CMD_STATUS = "status";
@@ -134,16 +139,25 @@ public class MPDCommand {
     // deprecated commands
     public static final String MPD_CMD_VOLUME = "volume";
 
+    /** The {@code find} and {@code search} window argument, added in MPD protocol 0.20.0. */
+    public static final String MPD_CMD_WINDOW = "window";
+
     public static final String MPD_LIST_RESPONSE_ARTIST = "Artist";
 
     public static final String MPD_SEARCH_ALBUM = "album";
 
     public static final String MPD_SEARCH_ARTIST = "artist";
 
+    /** Restricts a database query to the songs of a directory, recursively. */
+    public static final String MPD_SEARCH_BASE = "base";
+
     public static final String MPD_SEARCH_FILENAME = "filename";
 
     public static final String MPD_SEARCH_GENRE = "genre";
 
+    /** Restricts a database query to songs modified since a time, added in MPD protocol 0.19.0. */
+    public static final String MPD_SEARCH_MODIFIED_SINCE = "modified-since";
+
     public static final String MPD_SEARCH_TITLE = "title";
 
     public static final String MPD_TAG_ALBUM = "album";
@@ -154,6 +168,8 @@ public class MPDCommand {
 
     public static final String MPD_TAG_GENRE = "genre";
 
+    public static final String MPD_TAG_TRACK = "track";
+
     private static final boolean DEBUG = false;
 
     private static final int[] EMPTY_INT_ARRAY = new int[0];
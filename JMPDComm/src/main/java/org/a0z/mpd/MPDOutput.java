@@ -31,9 +31,6 @@ import org.a0z.mpd.exception.InvalidResponseException;
 
 import java.util.Collection;
 
-import static org.a0z.mpd.Tools.KEY;
-import static org.a0z.mpd.Tools.VALUE;
-
 /*
  * Class representing one configured output
  */
@@ -66,21 +63,25 @@ public class MPDOutput {
         int id = -1;
         Boolean enabled = null;
 
-        for (final String[] pair : Tools.splitResponse(response)) {
-            switch (pair[KEY]) {
+        final KeyValueParser parser = new KeyValueParser();
+
+        for (final String line : response) {
+            parser.setLine(line);
+
+            switch (parser.getKey()) {
                 case CMD_ENABLED:
-                    enabled = Boolean.valueOf("1".equals(pair[VALUE]));
+                    enabled = Boolean.valueOf(parser.isValue("1"));
                     break;
                 case CMD_ID:
-                    id = Integer.parseInt(pair[VALUE]);
+                    id = parser.getIntValue();
                     break;
                 case CMD_NAME:
-                    name = pair[VALUE];
+                    name = parser.getValue();
                     break;
                 default:
                     Log.warning(TAG,
-                            "Non-standard line appeared in output response. Key: " + pair[KEY]
-                                    + " value: " + pair[VALUE]);
+                            "Non-standard line appeared in output response. Key: " +
+                                    parser.getKey() + " value: " + parser.getValueSequence());
                     break;
             }
         }
@@ -28,13 +28,16 @@
 package org.a0z.mpd;
 
 import org.a0z.mpd.connection.MPDConnection;
+import org.a0z.mpd.connection.ResponseHandler;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.FilesystemTreeEntry;
 import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicResponseHandler;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -46,6 +49,8 @@ public class MPDPlaylist {
 
     public static final String MPD_CMD_PLAYLIST_CHANGES = "plchanges";
 
+    public static final String MPD_CMD_PLAYLIST_CHANGES_POSITION_ID = "plchangesposid";
+
     public static final String MPD_CMD_PLAYLIST_CLEAR = "clear";
 
     public static final String MPD_CMD_PLAYLIST_DELETE = "rm";
@@ -72,6 +77,9 @@ public class MPDPlaylist {
 
     private static final boolean DEBUG = false;
 
+    /** The maximum number of songs retrieved by a single command list. */
+    private static final int FETCH_BATCH_SIZE = 500;
+
     private static final String TAG = "MPDPlaylist";
 
     private final MPDConnection mConnection;
@@ -110,9 +118,10 @@ public class MPDPlaylist {
 
     static CommandQueue cropCommand(final MPD mpd) {
         final CommandQueue commandQueue = new CommandQueue();
-        final int currentTrackID = mpd.getStatus().getSongId();
+        final MPDStatus status = mpd.getStatus();
+        final int currentTrackID = status.getSongId();
         /** Null range ends are broken in MPD-0.18 on 32-bit arch, see bug #4080. */
-        final int playlistLength = mpd.getStatus().getPlaylistLength();
+        final int playlistLength = status.getPlaylistLength();
 
         if (currentTrackID < 0) {
             throw new IllegalStateException("Cannot crop when media server is inactive.");
@@ -188,6 +197,37 @@ public class MPDPlaylist {
         mConnection.sendCommand(clearCommand());
     }
 
+    /**
+     * Retrieves music by songID, in command lists of at most {@link #FETCH_BATCH_SIZE} commands.
+     *
+     * @param commandQueue The {@code playlistid} commands of the music to retrieve.
+     * @param playlist     The playlist to store the music in, at their reported position.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private void fetchMusic(final CommandQueue commandQueue, final Music[] playlist)
+            throws IOException, MPDException {
+        final CommandQueue batch = new CommandQueue(FETCH_BATCH_SIZE);
+        final MusicResponseHandler handler = new MusicResponseHandler(FETCH_BATCH_SIZE);
+        final Iterator<MPDCommand> iterator = commandQueue.iterator();
+
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+
+            if (batch.size() == FETCH_BATCH_SIZE || !iterator.hasNext()) {
+                batch.send(mConnection, handler);
+                for (final Music music : handler.getMusic(false)) {
+                    final int songPos = music.getPos();
+
+                    if (songPos >= 0 && songPos < playlist.length) {
+                        playlist[songPos] = music;
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
     /**
      * Retrieves music at position index in playlist. Operates on local copy of
      * playlist, may not reflect server's current playlist.
@@ -207,12 +247,15 @@ public class MPDPlaylist {
      * @throws MPDException Thrown if an error occurs as a result of command execution.
      */
     private Collection<Music> getFullPlaylist() throws IOException, MPDException {
-        final List<String> response = mConnection.sendCommand(MPD_CMD_PLAYLIST_LIST);
-        return Music.getMusicFromList(response, false);
+        final MusicResponseHandler handler = new MusicResponseHandler(mList.size());
+
+        mConnection.sendCommand(new MPDCommand(MPD_CMD_PLAYLIST_LIST), handler);
+        return handler.getMusic(false);
     }
 
     /**
-     * Retrieves all songs as an {@code List} of {@code Music}.
+     * Retrieves all songs as an {@code List} of {@code Music}. The list is an immutable snapshot
+     * of the playlist, it can be iterated without locking or copying.
      *
      * @return all songs as an {@code List} of {@code Music}.
      * @see Music
@@ -297,16 +340,29 @@ public class MPDPlaylist {
             if (mLastPlaylistVersion == -1 || mList.size() == 0) {
                 mList.replace(getFullPlaylist());
             } else if (mLastPlaylistVersion != newPlaylistVersion) {
-                final List<String> response =
-                        mConnection.sendCommand(MPD_CMD_PLAYLIST_CHANGES,
-                                Integer.toString(mLastPlaylistVersion));
-                final Collection<Music> changes = Music.getMusicFromList(response, false);
-
                 try {
-                    mList.manipulate(changes, mpdStatus.getPlaylistLength());
+                    if (mConnection.isCommandAvailable(MPD_CMD_PLAYLIST_CHANGES_POSITION_ID)) {
+                        synchronizeChanges(mpdStatus.getPlaylistLength());
+                    } else {
+                        final MusicResponseHandler handler = new MusicResponseHandler();
+
+                        mConnection.sendCommand(new MPDCommand(MPD_CMD_PLAYLIST_CHANGES,
+                                Integer.toString(mLastPlaylistVersion)), handler);
+                        mList.manipulate(handler.getMusic(false),
+                                mpdStatus.getPlaylistLength());
+                    }
                 } catch (final IllegalStateException e) {
                     Log.error(TAG, "Partial update failed, running full update.", e);
                     mList.replace(getFullPlaylist());
+                } catch (final MPDException e) {
+                    /** A song removed since the changes were listed can no longer be fetched. */
+                    if (e.mErrorCode != MPDException.ACK_ERROR_NO_EXIST) {
+                        throw e;
+                    }
+
+                    Log.warning(TAG, "Playlist changed during partial update, running full " +
+                            "update.", e);
+                    mList.replace(getFullPlaylist());
                 }
             }
 
@@ -494,6 +550,70 @@ public class MPDPlaylist {
                 Integer.toString(song2));
     }
 
+    /**
+     * Updates the playlist from the songIDs which changed position since the last version. Music
+     * which moved is taken from the music known by songID, only music which is new, or which
+     * changed in place, is retrieved from the media server. If most of the playlist has to be
+     * retrieved, a full playlist response is cheaper than many single song responses.
+     *
+     * @param playlistLength The length of the current playlist version.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private void synchronizeChanges(final int playlistLength) throws IOException, MPDException {
+        final PositionIdResponseHandler changes = new PositionIdResponseHandler();
+        final Music[] playlist = new Music[playlistLength];
+        final CommandQueue commandQueue = new CommandQueue();
+        int fetchCount = 0;
+
+        mConnection.sendCommand(new MPDCommand(MPD_CMD_PLAYLIST_CHANGES_POSITION_ID,
+                Integer.toString(mLastPlaylistVersion)), changes);
+
+        for (int i = Math.min(playlistLength, mList.size()) - 1; i >= 0; i--) {
+            playlist[i] = mList.getByIndex(i);
+        }
+
+        for (int i = 0; i < changes.mCount; i++) {
+            final int songPos = changes.mPositions[i];
+            final int songId = changes.mSongIds[i];
+            final Music music = mList.getById(songId);
+
+            if (songPos >= playlistLength) {
+                throw new IllegalStateException("Position " + songPos +
+                        " beyond the playlist length: " + playlistLength);
+            }
+
+            /** Music reported at the same position changed in place, its tags may differ. */
+            if (music == null || music.getPos() == songPos) {
+                playlist[songPos] = null;
+                commandQueue.add(MPD_CMD_PLAYLIST_LIST, Integer.toString(songId));
+                fetchCount++;
+            } else {
+                playlist[songPos] = music.withSongPos(songPos);
+            }
+        }
+
+        if (DEBUG) {
+            Log.debug(TAG, changes.mCount + " changes, " + fetchCount + " songs to retrieve.");
+        }
+
+        if (fetchCount > playlistLength / 2) {
+            mList.replace(getFullPlaylist());
+        } else {
+            if (fetchCount != 0) {
+                fetchMusic(commandQueue, playlist);
+            }
+
+            for (int i = 0; i < playlistLength; i++) {
+                if (playlist[i] == null) {
+                    throw new IllegalStateException("Missing music at position " + i + '.');
+                }
+            }
+
+            mList.replace(Arrays.asList(playlist));
+        }
+    }
+
     /**
      * Retrieves a string representation of the object.
      *
@@ -510,4 +630,36 @@ public class MPDPlaylist {
         return stringBuilder.toString();
     }
 
+    /** Reads the positions and songIDs of a {@code plchangesposid} response. */
+    private static final class PositionIdResponseHandler implements ResponseHandler {
+
+        private final KeyValueParser mParser = new KeyValueParser();
+
+        private int mCount;
+
+        private int[] mPositions = new int[16];
+
+        private int[] mSongIds = new int[16];
+
+        @Override
+        public void onResponseLine(final String line) {
+            mParser.setLine(line);
+
+            if (mParser.isKey("cpos")) {
+                if (mCount == mPositions.length) {
+                    mPositions = Arrays.copyOf(mPositions, mCount << 1);
+                    mSongIds = Arrays.copyOf(mSongIds, mCount << 1);
+                }
+                mPositions[mCount] = mParser.getIntValue();
+            } else if (mParser.isKey("Id")) {
+                mSongIds[mCount] = mParser.getIntValue();
+                mCount++;
+            }
+        }
+
+        @Override
+        public void onResponseStart() {
+            mCount = 0;
+        }
+    }
 }
@@ -30,9 +30,6 @@ package org.a0z.mpd;
 import java.util.Collection;
 import java.util.Date;
 
-import static org.a0z.mpd.Tools.KEY;
-import static org.a0z.mpd.Tools.VALUE;
-
 /**
  * Class representing MPD Server statistics.
  *
@@ -154,33 +151,36 @@ public class MPDStatistics {
      * @param response The response from the server.
      */
     public final void update(final Collection<String> response) {
-        for (final String[] pair : Tools.splitResponse(response)) {
+        final KeyValueParser parser = new KeyValueParser();
+
+        for (final String line : response) {
+            parser.setLine(line);
 
-            switch (pair[KEY]) {
+            switch (parser.getKey()) {
                 case "albums":
-                    mAlbums = Long.parseLong(pair[VALUE]);
+                    mAlbums = parser.getLongValue();
                     break;
                 case "artists":
-                    mArtists = Long.parseLong(pair[VALUE]);
+                    mArtists = parser.getLongValue();
                     break;
                 case "db_playtime":
-                    mDBPlaytime = Long.parseLong(pair[VALUE]);
+                    mDBPlaytime = parser.getLongValue();
                     break;
                 case "db_update":
-                    mDbUpdate = new Date(Long.parseLong(pair[VALUE]) * MILLI_TO_SEC);
+                    mDbUpdate = new Date(parser.getLongValue() * MILLI_TO_SEC);
                     break;
                 case "playtime":
-                    mPlayTime = Long.parseLong(pair[VALUE]);
+                    mPlayTime = parser.getLongValue();
                     break;
                 case "songs":
-                    mSongs = Long.parseLong(pair[VALUE]);
+                    mSongs = parser.getLongValue();
                     break;
                 case "uptime":
-                    mUpTime = Long.parseLong(pair[VALUE]);
+                    mUpTime = parser.getLongValue();
                     break;
                 default:
-                    Log.warning(TAG,
-                            "Undocumented statistic: Key: " + pair[KEY] + " Value: " + pair[VALUE]);
+                    Log.warning(TAG, "Undocumented statistic: Key: " + parser.getKey() +
+                            " Value: " + parser.getValueSequence());
                     break;
             }
         }
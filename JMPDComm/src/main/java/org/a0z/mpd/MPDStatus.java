@@ -28,18 +28,80 @@
 package org.a0z.mpd;
 
 import java.util.Collection;
-import java.util.Date;
-
-import static org.a0z.mpd.Tools.KEY;
-import static org.a0z.mpd.Tools.VALUE;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class representing MPD Server status.
  *
+ * A status is an immutable snapshot of a {@code status} response, so it can be read from any
+ * thread without seeing a partially updated status. {@link #getChangedFields(MPDStatus)} compares
+ * two snapshots in a single pass.
+ *
  * @author Felipe Gustavo de Almeida
  */
 public class MPDStatus {
 
+    /** Status field: the sample rate, bits per sample and channels of the playing song. */
+    public static final int FIELD_AUDIO_FORMAT = 1;
+
+    /** Status field: the bitrate of the playing song. */
+    public static final int FIELD_BITRATE = 1 << 1;
+
+    /** Status field: the consume mode. */
+    public static final int FIELD_CONSUME = 1 << 2;
+
+    /** Status field: the cross-fade time. */
+    public static final int FIELD_CROSSFADE = 1 << 3;
+
+    /** Status field: the elapsed time, in seconds, once extrapolated. */
+    public static final int FIELD_ELAPSED_TIME = 1 << 4;
+
+    /** Status field: the error message. */
+    public static final int FIELD_ERROR = 1 << 5;
+
+    /** Status field: the MixRamp threshold and delay. */
+    public static final int FIELD_MIX_RAMP = 1 << 6;
+
+    /** Status field: the position and id of the next song. */
+    public static final int FIELD_NEXT_SONG = 1 << 7;
+
+    /** Status field: the length of the playlist. */
+    public static final int FIELD_PLAYLIST_LENGTH = 1 << 8;
+
+    /** Status field: the playlist version. */
+    public static final int FIELD_PLAYLIST_VERSION = 1 << 9;
+
+    /** Status field: the random mode. */
+    public static final int FIELD_RANDOM = 1 << 10;
+
+    /** Status field: the repeat mode. */
+    public static final int FIELD_REPEAT = 1 << 11;
+
+    /** Status field: the single mode. */
+    public static final int FIELD_SINGLE = 1 << 12;
+
+    /** Status field: the playlist id of the current song. */
+    public static final int FIELD_SONG_ID = 1 << 13;
+
+    /** Status field: the playlist position of the current song. */
+    public static final int FIELD_SONG_POSITION = 1 << 14;
+
+    /** Status field: the player state. */
+    public static final int FIELD_STATE = 1 << 15;
+
+    /** Status field: the total time of the current song. */
+    public static final int FIELD_TOTAL_TIME = 1 << 16;
+
+    /** Status field: whether the database is being updated. */
+    public static final int FIELD_UPDATING = 1 << 17;
+
+    /** Status field: the volume. */
+    public static final int FIELD_VOLUME = 1 << 18;
+
+    /** All the status fields. */
+    public static final int ALL_FIELDS = (FIELD_VOLUME << 1) - 1;
+
     /**
      * MPD State: paused.
      */
@@ -70,72 +132,244 @@ public class MPDStatus {
 
     private static final String TAG = "MPDStatus";
 
-    private long mBitRate;
+    private final long mBitRate;
 
-    private int mBitsPerSample;
+    private final int mBitsPerSample;
 
-    private int mChannels;
+    private final int mChannels;
 
-    private boolean mConsume;
+    private final boolean mConsume;
 
-    private int mCrossFade;
+    private final int mCrossFade;
 
-    private long mElapsedTime;
+    private final long mElapsedTime;
 
-    private float mElapsedTimeHighResolution;
+    private final float mElapsedTimeHighResolution;
 
-    private String mError = null;
+    private final String mError;
 
-    private float mMixRampDB;
+    private final float mMixRampDB;
 
-    private float mMixRampDelay;
+    private final float mMixRampDelay;
 
-    private boolean mMixRampDisabled;
+    private final boolean mMixRampDisabled;
 
-    private int mNextSong;
+    private final int mNextSong;
 
-    private int mNextSongId;
+    private final int mNextSongId;
 
-    private int mPlaylistLength;
+    private final int mPlaylistLength;
 
-    private int mPlaylistVersion;
+    private final int mPlaylistVersion;
 
-    private boolean mRandom;
+    private final boolean mRandom;
 
-    private boolean mRepeat;
+    private final boolean mRepeat;
 
-    private int mSampleRate;
+    private final int mSampleRate;
 
-    private boolean mSingle;
+    private final boolean mSingle;
 
-    private int mSong;
+    private final int mSong;
 
-    private int mSongId;
+    private final int mSongId;
 
-    private int mState;
+    private final int mState;
 
-    private long mTotalTime;
+    private final long mTotalTime;
 
-    private long mUpdateTime;
+    /** The {@link System#nanoTime()} at which the status was read. */
+    private final long mUpdateTime;
 
-    private boolean mUpdating;
+    private final boolean mUpdating;
 
-    private int mVolume;
+    private final int mVolume;
 
+    /**
+     * Constructs the status of a server which has not been queried yet.
+     */
     MPDStatus() {
+        this(Collections.<String>emptyList());
+    }
+
+    /**
+     * Constructs the status of the MPD Server from a {@code status} response.
+     *
+     * @param response The response from the server.
+     */
+    public MPDStatus(final Collection<String> response) {
         super();
-        resetValues();
 
-        /** These are in every status update. */
-        mConsume = false;
-        mMixRampDB = 0.0f;
-        mPlaylistLength = 0;
-        mPlaylistVersion = 0;
-        mRandom = false;
-        mRepeat = false;
-        mSingle = false;
-        mState = STATE_UNKNOWN;
-        mVolume = 0;
+        final KeyValueParser parser = new KeyValueParser();
+        long bitRate = 0L;
+        int bitsPerSample = 0;
+        int channels = 0;
+        boolean consume = false;
+        int crossFade = 0;
+        long elapsedTime = 0L;
+        float elapsedTimeHighResolution = 0.0f;
+        String error = null;
+        float mixRampDB = 0.0f;
+        float mixRampDelay = 0.0f;
+        boolean mixRampDisabled = false;
+        int nextSong = -1;
+        int nextSongId = 0;
+        int playlistLength = 0;
+        int playlistVersion = 0;
+        boolean random = false;
+        boolean repeat = false;
+        int sampleRate = 0;
+        boolean single = false;
+        int song = 0;
+        int songId = 0;
+        int state = STATE_UNKNOWN;
+        long totalTime = 0L;
+        boolean updating = false;
+        int volume = 0;
+
+        for (final String line : response) {
+            parser.setLine(line);
+
+            switch (parser.getKey()) {
+                case "audio":
+                    final int delimiterIndex = parser.indexOfValue(':');
+                    final int secondIndex = parser.indexOfValue(':', delimiterIndex + 1);
+
+                    try {
+                        sampleRate = parser.getIntValue(0, delimiterIndex);
+                        bitsPerSample = parser.getIntValue(delimiterIndex + 1, secondIndex);
+                        channels = parser.getIntValue(secondIndex + 1, parser.getValueLength());
+                    } catch (final NumberFormatException ignored) {
+                        // Sometimes mpd sends "?" as a sampleRate or
+                        // bitsPerSample, etc ... hotfix for a bugreport I had.
+                    }
+                    break;
+                case "bitrate":
+                    bitRate = parser.getLongValue();
+                    break;
+                case "consume":
+                    consume = parser.isValue("1");
+                    break;
+                case "elapsed":
+                    elapsedTimeHighResolution = parser.getFloatValue();
+                    break;
+                case "error":
+                    error = parser.getValue();
+                    break;
+                case "mixrampdb":
+                    try {
+                        mixRampDB = parser.getFloatValue();
+                    } catch (final NumberFormatException e) {
+                        if (parser.isValue("nan")) {
+                            mixRampDisabled = true;
+                        } else {
+                            Log.error(TAG, "Unexpected value from mixrampdb.", e);
+                        }
+                    }
+                    break;
+                case "mixrampdelay":
+                    try {
+                        mixRampDelay = parser.getFloatValue();
+                    } catch (final NumberFormatException e) {
+                        if (parser.isValue("nan")) {
+                            mixRampDisabled = true;
+                        } else {
+                            Log.error(TAG, "Unexpected value from mixrampdelay", e);
+                        }
+                    }
+                    break;
+                case "nextsong":
+                    nextSong = parser.getIntValue();
+                    break;
+                case "nextsongid":
+                    nextSongId = parser.getIntValue();
+                    break;
+                case "playlist":
+                    playlistVersion = parser.getIntValue();
+                    break;
+                case "playlistlength":
+                    playlistLength = parser.getIntValue();
+                    break;
+                case "random":
+                    random = parser.isValue("1");
+                    break;
+                case "repeat":
+                    repeat = parser.isValue("1");
+                    break;
+                case "single":
+                    single = parser.isValue("1");
+                    break;
+                case "song":
+                    song = parser.getIntValue();
+                    break;
+                case "songid":
+                    songId = parser.getIntValue();
+                    break;
+                case "state":
+                    switch (parser.getValue()) {
+                        case MPD_STATE_PLAYING:
+                            state = STATE_PLAYING;
+                            break;
+                        case MPD_STATE_PAUSED:
+                            state = STATE_PAUSED;
+                            break;
+                        case MPD_STATE_STOPPED:
+                            state = STATE_STOPPED;
+                            break;
+                        case MPD_STATE_UNKNOWN:
+                        default:
+                            state = STATE_UNKNOWN;
+                            break;
+                    }
+                    break;
+                case "time":
+                    final int timeIndex = parser.indexOfValue(':');
+
+                    elapsedTime = parser.getLongValue(0, timeIndex);
+                    totalTime = parser.getLongValue(timeIndex + 1, parser.getValueLength());
+                    break;
+                case "volume":
+                    volume = parser.getIntValue();
+                    break;
+                case "xfade":
+                    crossFade = parser.getIntValue();
+                    break;
+                case "updating_db":
+                    updating = true;
+                    break;
+                default:
+                    Log.debug(TAG,
+                            "Status was sent an unknown response: key: " + parser.getKey() +
+                                    " value: " + parser.getValueSequence());
+            }
+        }
+
+        mBitRate = bitRate;
+        mBitsPerSample = bitsPerSample;
+        mChannels = channels;
+        mConsume = consume;
+        mCrossFade = crossFade;
+        mElapsedTime = elapsedTime;
+        mElapsedTimeHighResolution = elapsedTimeHighResolution;
+        mError = error;
+        mMixRampDB = mixRampDB;
+        mMixRampDelay = mixRampDelay;
+        mMixRampDisabled = mixRampDisabled;
+        mNextSong = nextSong;
+        mNextSongId = nextSongId;
+        mPlaylistLength = playlistLength;
+        mPlaylistVersion = playlistVersion;
+        mRandom = random;
+        mRepeat = repeat;
+        mSampleRate = sampleRate;
+        mSingle = single;
+        mSong = song;
+        mSongId = songId;
+        mState = state;
+        mTotalTime = totalTime;
+        mUpdating = updating;
+        mVolume = volume;
+        mUpdateTime = System.nanoTime();
     }
 
     /**
@@ -156,6 +390,86 @@ public class MPDStatus {
         return mBitsPerSample;
     }
 
+    /**
+     * Compares this status with a previous one, in a single pass over the fields. The elapsed
+     * times are compared once extrapolated, so that only a seek, a pause or a track change
+     * changes it while playing.
+     *
+     * @param previous The previous status, may be null.
+     * @return The bit mask of the changed fields, see the FIELD constants in this class, all the
+     * fields if there is no previous status.
+     */
+    public final int getChangedFields(final MPDStatus previous) {
+        int changed = 0;
+
+        if (previous == null) {
+            changed = ALL_FIELDS;
+        } else {
+            if (mSampleRate != previous.mSampleRate || mBitsPerSample != previous.mBitsPerSample
+                    || mChannels != previous.mChannels) {
+                changed |= FIELD_AUDIO_FORMAT;
+            }
+            if (mBitRate != previous.mBitRate) {
+                changed |= FIELD_BITRATE;
+            }
+            if (mConsume != previous.mConsume) {
+                changed |= FIELD_CONSUME;
+            }
+            if (mCrossFade != previous.mCrossFade) {
+                changed |= FIELD_CROSSFADE;
+            }
+            if (getElapsedTime() != previous.getElapsedTime()) {
+                changed |= FIELD_ELAPSED_TIME;
+            }
+            if (mError == null ? previous.mError != null : !mError.equals(previous.mError)) {
+                changed |= FIELD_ERROR;
+            }
+            if (Float.compare(mMixRampDB, previous.mMixRampDB) != 0
+                    || Float.compare(mMixRampDelay, previous.mMixRampDelay) != 0
+                    || mMixRampDisabled != previous.mMixRampDisabled) {
+                changed |= FIELD_MIX_RAMP;
+            }
+            if (mNextSong != previous.mNextSong || mNextSongId != previous.mNextSongId) {
+                changed |= FIELD_NEXT_SONG;
+            }
+            if (mPlaylistLength != previous.mPlaylistLength) {
+                changed |= FIELD_PLAYLIST_LENGTH;
+            }
+            if (mPlaylistVersion != previous.mPlaylistVersion) {
+                changed |= FIELD_PLAYLIST_VERSION;
+            }
+            if (mRandom != previous.mRandom) {
+                changed |= FIELD_RANDOM;
+            }
+            if (mRepeat != previous.mRepeat) {
+                changed |= FIELD_REPEAT;
+            }
+            if (mSingle != previous.mSingle) {
+                changed |= FIELD_SINGLE;
+            }
+            if (mSongId != previous.mSongId) {
+                changed |= FIELD_SONG_ID;
+            }
+            if (mSong != previous.mSong) {
+                changed |= FIELD_SONG_POSITION;
+            }
+            if (mState != previous.mState) {
+                changed |= FIELD_STATE;
+            }
+            if (mTotalTime != previous.mTotalTime) {
+                changed |= FIELD_TOTAL_TIME;
+            }
+            if (mUpdating != previous.mUpdating) {
+                changed |= FIELD_UPDATING;
+            }
+            if (mVolume != previous.mVolume) {
+                changed |= FIELD_VOLUME;
+            }
+        }
+
+        return changed;
+    }
+
     /**
      * Retrieves number of channels from playing song.
      *
@@ -179,20 +493,10 @@ public class MPDStatus {
      * status is playing, this time is calculated.
      *
      * @return Elapsed time for the current track.
+     * @see #getElapsedTimeMillis()
      */
     public final long getElapsedTime() {
-        final long result;
-
-        if (isState(STATE_PLAYING)) {
-            /** We can't expect to always update right before this is called. */
-            final long sinceUpdated = (new Date().getTime() - mUpdateTime) / 1000;
-
-            result = sinceUpdated + mElapsedTime;
-        } else {
-            result = mElapsedTime;
-        }
-
-        return result;
+        return TimeUnit.MILLISECONDS.toSeconds(getElapsedTimeMillis());
     }
 
     /**
@@ -204,6 +508,31 @@ public class MPDStatus {
         return mElapsedTimeHighResolution;
     }
 
+    /**
+     * Retrieves current track elapsed time in milliseconds, from the high resolution elapsed time
+     * if the server sent it. If the server status is playing, this time is extrapolated with the
+     * monotonic clock from the time the status was read, so it is not affected by changes of the
+     * system time.
+     *
+     * @return Elapsed time for the current track, in milliseconds.
+     */
+    public final long getElapsedTimeMillis() {
+        long result;
+
+        if (mElapsedTimeHighResolution > 0.0f) {
+            result = (long) (mElapsedTimeHighResolution * 1000.0f);
+        } else {
+            result = TimeUnit.SECONDS.toMillis(mElapsedTime);
+        }
+
+        if (isState(STATE_PLAYING)) {
+            /** We can't expect to always update right before this is called. */
+            result += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mUpdateTime);
+        }
+
+        return result;
+    }
+
     /**
      * Retrieves error message.
      *
@@ -365,31 +694,6 @@ public class MPDStatus {
         return mState != STATE_UNKNOWN;
     }
 
-    /**
-     * These values are not necessarily reset by a response
-     * and must be reset prior to response parsing.
-     */
-    private void resetValues() {
-        mBitRate = 0L;
-        mBitsPerSample = 0;
-        mChannels = 0;
-        mCrossFade = 0;
-        mElapsedTime = 0L;
-        mElapsedTimeHighResolution = 0.0f;
-        //noinspection AssignmentToNull
-        mError = null;
-        mMixRampDelay = 0.0f;
-        mMixRampDisabled = false;
-        mNextSong = -1;
-        mNextSongId = 0;
-        mSampleRate = 0;
-        mSong = 0;
-        mSongId = 0;
-        mTotalTime = 0L;
-        mUpdating = false;
-        mVolume = 0;
-    }
-
     /**
      * Retrieves a string representation of the object.
      *
@@ -422,131 +726,4 @@ public class MPDStatus {
                 ", updating: " + mUpdating +
                 ", volume: " + mVolume;
     }
-
-    /**
-     * Updates the state of the MPD Server...
-     *
-     * @param response The response from the server.
-     */
-    public final void updateStatus(final Collection<String> response) {
-        resetValues();
-
-        for (final String[] pair : Tools.splitResponse(response)) {
-
-            switch (pair[KEY]) {
-                case "audio":
-                    final int delimiterIndex = pair[VALUE].indexOf(':');
-                    final String tmp = pair[VALUE].substring(delimiterIndex + 1);
-                    final int secondIndex = tmp.indexOf(':');
-
-                    try {
-                        mSampleRate = Integer.parseInt(pair[VALUE].substring(0, delimiterIndex));
-                        mBitsPerSample = Integer.parseInt(tmp.substring(0, secondIndex));
-                        mChannels = Integer.parseInt(tmp.substring(secondIndex + 1));
-                    } catch (final NumberFormatException ignored) {
-                        // Sometimes mpd sends "?" as a sampleRate or
-                        // bitsPerSample, etc ... hotfix for a bugreport I had.
-                    }
-                    break;
-                case "bitrate":
-                    mBitRate = Long.parseLong(pair[VALUE]);
-                    break;
-                case "consume":
-                    mConsume = "1".equals(pair[VALUE]);
-                    break;
-                case "elapsed":
-                    mElapsedTimeHighResolution = Float.parseFloat(pair[VALUE]);
-                    break;
-                case "error":
-                    mError = pair[VALUE];
-                    break;
-                case "mixrampdb":
-                    try {
-                        mMixRampDB = Float.parseFloat(pair[VALUE]);
-                    } catch (final NumberFormatException e) {
-                        if ("nan".equals(pair[VALUE])) {
-                            mMixRampDisabled = true;
-                        } else {
-                            Log.error(TAG, "Unexpected value from mixrampdb.", e);
-                        }
-                    }
-                    break;
-                case "mixrampdelay":
-                    try {
-                        mMixRampDelay = Float.parseFloat(pair[VALUE]);
-                    } catch (final NumberFormatException e) {
-                        if ("nan".equals(pair[VALUE])) {
-                            mMixRampDisabled = true;
-                        } else {
-                            Log.error(TAG, "Unexpected value from mixrampdelay", e);
-                        }
-                    }
-                    break;
-                case "nextsong":
-                    mNextSong = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "nextsongid":
-                    mNextSongId = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "playlist":
-                    mPlaylistVersion = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "playlistlength":
-                    mPlaylistLength = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "random":
-                    mRandom = "1".equals(pair[VALUE]);
-                    break;
-                case "repeat":
-                    mRepeat = "1".equals(pair[VALUE]);
-                    break;
-                case "single":
-                    mSingle = "1".equals(pair[VALUE]);
-                    break;
-                case "song":
-                    mSong = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "songid":
-                    mSongId = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "state":
-                    switch (pair[VALUE]) {
-                        case MPD_STATE_PLAYING:
-                            mState = STATE_PLAYING;
-                            break;
-                        case MPD_STATE_PAUSED:
-                            mState = STATE_PAUSED;
-                            break;
-                        case MPD_STATE_STOPPED:
-                            mState = STATE_STOPPED;
-                            break;
-                        case MPD_STATE_UNKNOWN:
-                        default:
-                            mState = STATE_UNKNOWN;
-                            break;
-                    }
-                    break;
-                case "time":
-                    final int timeIndex = pair[VALUE].indexOf(':');
-
-                    mElapsedTime = Long.parseLong(pair[VALUE].substring(0, timeIndex));
-                    mTotalTime = Long.parseLong(pair[VALUE].substring(timeIndex + 1));
-                    mUpdateTime = new Date().getTime();
-                    break;
-                case "volume":
-                    mVolume = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "xfade":
-                    mCrossFade = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "updating_db":
-                    mUpdating = true;
-                    break;
-                default:
-                    Log.debug(TAG,
-                            "Status was sent an unknown response: key: " + pair[KEY] + " value: "
-                                    + pair[VALUE]);
-            }
-        }
-    }
 }
@@ -28,17 +28,34 @@
 package org.a0z.mpd;
 
 import org.a0z.mpd.connection.MPDConnection;
+import org.a0z.mpd.connection.ResponseCache;
+import org.a0z.mpd.event.OutputChangeListener;
 import org.a0z.mpd.event.StatusChangeListener;
 import org.a0z.mpd.event.TrackPositionListener;
 import org.a0z.mpd.exception.MPDException;
 
 import java.io.IOException;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Monitors MPD Server and sends events on status changes.
+ *
+ * Each idle subsystem only costs the commands it needs, {@code status} for the player, mixer,
+ * options, playlist and database subsystems, {@code outputs} for the output subsystem. Each status
+ * read is compared with the status the listeners were last notified of in a single pass, see
+ * {@link MPDStatus#getChangedFields(MPDStatus)}. Listeners are only notified of the subsystems
+ * they subscribed to.
+ *
+ * Bursts of changes, such as a bulk queue edit by another client, may be merged into a single
+ * refresh, see {@link #setCoalescing(long, long)}, and listeners may be notified on a thread of
+ * their own, see {@link #setListenerQueueCapacity(int)}.
  */
 public class MPDStatusMonitor extends Thread {
 
@@ -75,15 +92,51 @@ public class MPDStatusMonitor extends Thread {
     /** Emitted after a database update has started or finished. See IDLE_DATABASE */
     public static final String IDLE_UPDATE = "update";
 
+    /** Bit masks of the idle subsystems, see {@link #getSubsystem(String)}. */
+    private static final int DATABASE = 1;
+
+    private static final int MESSAGE = 1 << 1;
+
+    private static final int MIXER = 1 << 2;
+
+    private static final int OPTIONS = 1 << 3;
+
+    private static final int OUTPUT = 1 << 4;
+
+    private static final int PLAYER = 1 << 5;
+
+    private static final int PLAYLIST = 1 << 6;
+
+    private static final int STICKER = 1 << 7;
+
+    private static final int STORED_PLAYLIST = 1 << 8;
+
+    private static final int SUBSCRIPTION = 1 << 9;
+
+    private static final int UPDATE = 1 << 10;
+
+    private static final int ALL_SUBSYSTEMS = (UPDATE << 1) - 1;
+
+    private static final String CHANGED_PREFIX = "changed: ";
+
     private static final boolean DEBUG = false;
 
+    /** The subsystems which require a {@code status} command to find what changed. */
+    private static final int STATUS_SUBSYSTEMS =
+            DATABASE | MIXER | OPTIONS | PLAYER | PLAYLIST | UPDATE;
+
     private static final String TAG = "MPDStatusMonitor";
 
+    /** The window of the idle changes to merge with a change, in milliseconds, 0 to merge none. */
+    private volatile long mCoalescingWindow;
+
     private final long mDelay;
 
     private final MPD mMPD;
 
-    private final Queue<StatusChangeListener> mStatusChangeListeners;
+    private final Queue<OutputChangeListener> mOutputChangeListeners;
+
+    private final Queue<Subscription> mStatusChangeListeners;
 
     private final String[] mSupportedSubsystems;
 
@@ -91,6 +144,17 @@ public class MPDStatusMonitor extends Thread {
 
     private volatile boolean mGiveup;
 
+    /** Whether the monitor loop is running, on this thread or on an executor. */
+    private volatile boolean mIsRunning;
+
+    /** The executor notifying the listeners, null if they are notified on the monitor thread. */
+    private ThreadPoolExecutor mListenerExecutor;
+
+    private volatile int mListenerQueueCapacity;
+
+    /** The longest a change may be held back while merging changes, in milliseconds. */
+    private volatile long mMaximumLatency;
+
     /**
      * Constructs a MPDStatusMonitor.
      *
@@ -104,18 +168,158 @@ public class MPDStatusMonitor extends Thread {
         mMPD = mpd;
         mDelay = delay;
         mGiveup = false;
-        mStatusChangeListeners = new LinkedList<>();
-        mTrackPositionListeners = new LinkedList<>();
+        mOutputChangeListeners = new ConcurrentLinkedQueue<>();
+        mStatusChangeListeners = new ConcurrentLinkedQueue<>();
+        mTrackPositionListeners = new ConcurrentLinkedQueue<>();
         mSupportedSubsystems = supportedSubsystems.clone();
     }
 
     /**
-     * Adds a {@code StatusChangeListener}.
+     * Returns the bit mask of the subsystems changed in an idle response.
+     *
+     * @param changes The {@code changed:} lines of the idle response.
+     * @return The bit mask of the changed subsystems.
+     */
+    private static int getChangedSubsystems(final List<String> changes) {
+        int changed = 0;
+
+        for (final String change : changes) {
+            if (change.startsWith(CHANGED_PREFIX)) {
+                changed |= getSubsystem(change.substring(CHANGED_PREFIX.length()));
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the bit mask of an idle subsystem.
+     *
+     * @param subsystem The idle subsystem, see IDLE fields in this class.
+     * @return The bit mask of the subsystem, 0 if unknown.
+     */
+    private static int getSubsystem(final String subsystem) {
+        final int mask;
+
+        switch (subsystem) {
+            case IDLE_DATABASE:
+                mask = DATABASE;
+                break;
+            case IDLE_MESSAGE:
+                mask = MESSAGE;
+                break;
+            case IDLE_MIXER:
+                mask = MIXER;
+                break;
+            case IDLE_OPTIONS:
+                mask = OPTIONS;
+                break;
+            case IDLE_OUTPUT:
+                mask = OUTPUT;
+                break;
+            case IDLE_PLAYER:
+                mask = PLAYER;
+                break;
+            case IDLE_PLAYLIST:
+                mask = PLAYLIST;
+                break;
+            case IDLE_STICKER:
+                mask = STICKER;
+                break;
+            case IDLE_STORED_PLAYLIST:
+                mask = STORED_PLAYLIST;
+                break;
+            case IDLE_SUBSCRIPTION:
+                mask = SUBSCRIPTION;
+                break;
+            case IDLE_UPDATE:
+                mask = UPDATE;
+                break;
+            default:
+                mask = 0;
+                break;
+        }
+
+        return mask;
+    }
+
+    /**
+     * Returns the bit mask of idle subsystems.
+     *
+     * @param subsystems The idle subsystems, see IDLE fields in this class.
+     * @return The bit mask of the subsystems.
+     */
+    private static int getSubsystems(final String... subsystems) {
+        int mask = 0;
+
+        for (final String subsystem : subsystems) {
+            mask |= getSubsystem(subsystem);
+        }
+
+        return mask;
+    }
+
+    /**
+     * Creates the executor which notifies the listeners through a bounded queue. Once the queue
+     * is full, the monitor waits for the listeners to catch up rather than dropping changes.
+     *
+     * @param capacity The capacity of the queue, 0 for no executor.
+     * @return The executor notifying the listeners, null if they are notified on the monitor
+     * thread.
+     */
+    private static ThreadPoolExecutor newListenerExecutor(final int capacity) {
+        final ThreadPoolExecutor executor;
+
+        if (capacity > 0) {
+            executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(capacity), new WaitPolicy());
+        } else {
+            executor = null;
+        }
+
+        return executor;
+    }
+
+    /**
+     * Adds a {@code OutputChangeListener}, the outputs are only queried while there is one.
+     *
+     * @param listener a {@code OutputChangeListener}.
+     */
+    public void addOutputChangeListener(final OutputChangeListener listener) {
+        mOutputChangeListeners.add(listener);
+    }
+
+    /**
+     * Adds a {@code StatusChangeListener} notified of changes of all subsystems.
      *
      * @param listener a {@code StatusChangeListener}.
      */
     public void addStatusChangeListener(final StatusChangeListener listener) {
-        mStatusChangeListeners.add(listener);
+        mStatusChangeListeners.add(new Subscription(listener, ALL_SUBSYSTEMS));
+    }
+
+    /**
+     * Adds a {@code StatusChangeListener} only notified of changes of the given subsystems:
+     * <ul>
+     * <li>{@link #IDLE_DATABASE}, {@link #IDLE_UPDATE}:
+     * {@link StatusChangeListener#libraryStateChanged(boolean, boolean)}</li>
+     * <li>{@link #IDLE_MIXER}: {@link StatusChangeListener#volumeChanged(MPDStatus, int)}</li>
+     * <li>{@link #IDLE_OPTIONS}: {@link StatusChangeListener#randomChanged(boolean)},
+     * {@link StatusChangeListener#repeatChanged(boolean)}</li>
+     * <li>{@link #IDLE_PLAYER}: {@link StatusChangeListener#stateChanged(MPDStatus, int)},
+     * {@link StatusChangeListener#trackChanged(MPDStatus, int)}</li>
+     * <li>{@link #IDLE_PLAYLIST}: {@link StatusChangeListener#playlistChanged(MPDStatus, int)},
+     * {@link StatusChangeListener#trackChanged(MPDStatus, int)}</li>
+     * <li>{@link #IDLE_STICKER}: {@link StatusChangeListener#stickerChanged(MPDStatus)}</li>
+     * </ul>
+     * Connection state changes are always notified.
+     *
+     * @param listener   a {@code StatusChangeListener}.
+     * @param subsystems The idle subsystems to notify of, see IDLE fields in this class.
+     */
+    public void addStatusChangeListener(final StatusChangeListener listener,
+            final String... subsystems) {
+        mStatusChangeListeners.add(new Subscription(listener, getSubsystems(subsystems)));
     }
 
     /**
@@ -127,6 +331,39 @@ public class MPDStatusMonitor extends Thread {
         mTrackPositionListeners.add(listener);
     }
 
+    /**
+     * Merges the changes following an idle change into a single refresh. Changes keep being
+     * merged while they follow each other within {@code window}, until no change is pending or
+     * {@code maximumLatency} has elapsed since the first change.
+     *
+     * The pending changes are polled with an {@code idle} immediately followed by a
+     * {@code noidle}, MPD itself merges the changes made while the monitor was not idling.
+     *
+     * @param window         The time to wait for more changes, in milliseconds, 0 to refresh
+     *                       upon each change.
+     * @param maximumLatency The longest a change may be held back, in milliseconds.
+     */
+    public void setCoalescing(final long window, final long maximumLatency) {
+        mCoalescingWindow = window;
+        mMaximumLatency = maximumLatency;
+    }
+
+    /**
+     * Notifies the listeners on a thread of their own rather than on the monitor thread, so slow
+     * listeners do not hold up the monitor. The changes of an idle wakeup are queued as one
+     * notification, once {@code capacity} notifications are pending the monitor waits for the
+     * listeners to catch up. The listeners are handed the status snapshot the changes were found
+     * in, even if a newer status has been read since.
+     *
+     * This takes effect when the monitor is started.
+     *
+     * @param capacity The maximum number of pending notifications, 0 to notify the listeners on
+     *                 the monitor thread.
+     */
+    public void setListenerQueueCapacity(final int capacity) {
+        mListenerQueueCapacity = capacity;
+    }
+
     /**
      * Gracefully terminate tread.
      */
@@ -138,42 +375,165 @@ public class MPDStatusMonitor extends Thread {
         return mGiveup;
     }
 
+    /**
+     * Whether the monitor loop is running, unlike {@link #isAlive()}, this includes a monitor
+     * started on an executor.
+     *
+     * @return True if the monitor loop is running, false otherwise.
+     */
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * Sends the commands the changed subsystems need to find what changed, {@code status} only if
+     * a subsystem which changes it changed and {@code stats} only if the database changed.
+     *
+     * @param changed The bit mask of the changed subsystems.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private void refresh(final int changed) throws IOException, MPDException {
+        if ((changed & STATUS_SUBSYSTEMS) != 0) {
+            mMPD.updateStatus();
+        }
+
+        if ((changed & DATABASE) != 0) {
+            mMPD.updateStatistics();
+        }
+    }
+
     /**
      * Main thread method
      */
     @Override
     public void run() {
-        // initialize value cache
-        int oldSong = -1;
-        int oldSongId = -1;
-        int oldPlaylistVersion = -1;
-        long oldElapsedTime = -1L;
-        int oldState = MPDStatus.STATE_UNKNOWN;
-        int oldVolume = -1;
-        boolean oldUpdating = false;
-        boolean oldRepeat = false;
-        boolean oldRandom = false;
+        mIsRunning = true;
+        try {
+            monitor();
+        } finally {
+            /** Also if a listener or a refresh failed, so its thread does not outlive the loop. */
+            watchSubsystems(false);
+
+            if (mListenerExecutor != null) {
+                /** Pending notifications are still delivered. */
+                mListenerExecutor.shutdown();
+                mListenerExecutor = null;
+            }
+
+            mIsRunning = false;
+        }
+    }
+
+    /**
+     * Runs the monitor loop on an executor rather than on this thread, such as a virtual thread
+     * per task executor, so monitoring many servers does not cost a platform thread each.
+     *
+     * @param executor The executor to run the monitor loop on.
+     * @see VirtualThreads
+     */
+    public void start(final Executor executor) {
+        executor.execute(this);
+    }
+
+    /**
+     * Merges the changes following an idle change, see {@link #setCoalescing(long, long)}.
+     *
+     * @return The bit mask of the subsystems changed since the idle change.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private int coalesceChanges() throws IOException, MPDException {
+        final long window = mCoalescingWindow;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mMaximumLatency);
+        boolean isQuiet = window <= 0L;
+        int changed = 0;
+
+        while (!isQuiet) {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            final List<String> changes;
+
+            try {
+                Thread.sleep(Math.max(0L, Math.min(window, remaining)));
+            } catch (final InterruptedException e) {
+                Log.error(TAG, "Interruption caught while merging changes.", e);
+            }
+
+            changes = pollChanges();
+            invalidateResponses(changes);
+            changed |= getChangedSubsystems(changes);
+            isQuiet = changes.isEmpty() || deadline - System.nanoTime() <= 0L || mGiveup;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Notifies the listeners of the changes of an idle wakeup, on the listener executor if any.
+     *
+     * @param notification The changes to notify the listeners of.
+     */
+    private void deliver(final Notification notification) {
+        final ThreadPoolExecutor executor = mListenerExecutor;
+
+        if (notification.isEmpty()) {
+            if (DEBUG) {
+                Log.debug(TAG, "Nothing to notify.");
+            }
+        } else if (executor == null) {
+            notification.run();
+        } else {
+            executor.execute(notification);
+        }
+    }
+
+    /**
+     * Drops the cached responses of the subsystems which changed on the server.
+     *
+     * @param changes The {@code changed:} lines of the idle response.
+     */
+    private void invalidateResponses(final List<String> changes) {
+        final ResponseCache responseCache = mMPD.getResponseCache();
+
+        if (responseCache != null) {
+            for (final String change : changes) {
+                responseCache.invalidate(change.substring(CHANGED_PREFIX.length()));
+            }
+        }
+    }
+
+    /**
+     * Waits for changes, then notifies the listeners, until {@link #giveup()} is called.
+     */
+    private void monitor() {
+        /** The status the listeners were last notified of. */
+        MPDStatus previous = new MPDStatus();
         boolean oldConnectionState = false;
         boolean connectionLost = false;
 
         /** Objects to keep cached in {@link MPD} */
-        final MPDStatus status = mMPD.getStatus();
         final MPDPlaylist playlist = mMPD.getPlaylist();
 
+        mListenerExecutor = newListenerExecutor(mListenerQueueCapacity);
+
         while (!mGiveup) {
             Boolean connectionState = Boolean.valueOf(mMPD.isConnected());
             boolean connectionStateChanged = false;
 
             if (connectionLost || oldConnectionState != connectionState) {
-                for (final StatusChangeListener listener : mStatusChangeListeners) {
-                    listener.connectionStateChanged(connectionState.booleanValue(), connectionLost);
-                }
+                final Notification notification = new Notification(mMPD.getStatus());
+
+                notification.setConnectionStateChanged(connectionState.booleanValue(),
+                        connectionLost);
+                deliver(notification);
+
+                watchSubsystems(connectionState.booleanValue());
 
                 if (mMPD.isConnected()) {
                     try {
                         mMPD.updateStatistics();
                         mMPD.updateStatus();
-                        playlist.refresh(status);
+                        playlist.refresh(mMPD.getStatus());
                     } catch (final IOException | MPDException e) {
                         Log.error(TAG, "Failed to force a status update.", e);
                     }
@@ -187,128 +547,100 @@ public class MPDStatusMonitor extends Thread {
             if (connectionState.equals(Boolean.TRUE)) {
                 // playlist
                 try {
-                    boolean dbChanged = false;
-                    boolean statusChanged = false;
-                    boolean stickerChanged = false;
+                    final int changed;
+                    final int changedFields;
+                    final MPDStatus status;
+                    final Notification notification;
 
                     if (connectionStateChanged) {
-                        dbChanged = statusChanged = true;
+                        changed = ALL_SUBSYSTEMS;
                     } else {
                         final List<String> changes = waitForChanges();
 
-                        mMPD.updateStatus();
+                        invalidateResponses(changes);
+                        changed = getChangedSubsystems(changes) | coalesceChanges();
+                        refresh(changed);
+                    }
 
-                        for (final String change : changes) {
-                            switch (change.substring("changed: ".length())) {
-                                case "database":
-                                    mMPD.updateStatistics();
-                                    dbChanged = true;
-                                    statusChanged = true;
-                                    break;
-                                case "playlist":
-                                    statusChanged = true;
-                                    break;
-                                case "sticker":
-                                    stickerChanged = true;
-                                    break;
-                                default:
-                                    statusChanged = true;
-                                    break;
-                            }
-
-                            if (dbChanged && statusChanged) {
-                                break;
-                            }
-                        }
+                    status = mMPD.getStatus();
+                    notification = new Notification(status);
+
+                    if (connectionStateChanged) {
+                        changedFields = MPDStatus.ALL_FIELDS;
+                    } else if (status == previous) {
+                        /** No status was read since the last notification. */
+                        changedFields = 0;
+                    } else {
+                        changedFields = status.getChangedFields(previous);
                     }
 
-                    if (statusChanged) {
-                        // playlist
-                        if (connectionStateChanged
-                                || (oldPlaylistVersion != status.getPlaylistVersion() && status
-                                .getPlaylistVersion() != -1)) {
-                            playlist.refresh(status);
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.playlistChanged(status, oldPlaylistVersion);
-                            }
-                            oldPlaylistVersion = status.getPlaylistVersion();
-                        }
+                    // playlist
+                    if ((changedFields & MPDStatus.FIELD_PLAYLIST_VERSION) != 0
+                            && status.getPlaylistVersion() != -1) {
+                        playlist.refresh(status);
+                        notification.setPlaylistChanged(previous.getPlaylistVersion());
+                    }
 
-                        // song
-                        /**
-                         * songId is used here, otherwise, once consume mode is enabled getSongPos
-                         * would never iterate without manual user playlist queue intervention and
-                         * trackChanged() would never be called.
-                         */
-                        if (connectionStateChanged || oldSongId != status.getSongId()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.trackChanged(status, oldSong);
-                            }
-                            oldSong = status.getSongPos();
-                            oldSongId = status.getSongId();
-                        }
+                    // song
+                    /**
+                     * songId is used here, otherwise, once consume mode is enabled getSongPos
+                     * would never iterate without manual user playlist queue intervention and
+                     * trackChanged() would never be called.
+                     */
+                    if ((changedFields & MPDStatus.FIELD_SONG_ID) != 0) {
+                        notification.setTrackChanged(previous.getSongPos());
+                    }
 
-                        // time
-                        if (connectionStateChanged || oldElapsedTime != status.getElapsedTime()) {
-                            for (final TrackPositionListener listener : mTrackPositionListeners) {
-                                listener.trackPositionChanged(status);
-                            }
-                            oldElapsedTime = status.getElapsedTime();
-                        }
+                    // time, a state change resynchronizes playback clocks too
+                    if ((changedFields & (MPDStatus.FIELD_ELAPSED_TIME | MPDStatus.FIELD_STATE))
+                            != 0) {
+                        notification.setTrackPositionChanged();
+                    }
 
-                        // state
-                        if (connectionStateChanged || !status.isState(oldState)) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.stateChanged(status, oldState);
-                            }
-                            oldState = status.getState();
-                        }
+                    // state
+                    if ((changedFields & MPDStatus.FIELD_STATE) != 0) {
+                        notification.setStateChanged(previous.getState());
+                    }
 
-                        // volume
-                        if (connectionStateChanged || oldVolume != status.getVolume()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.volumeChanged(status, oldVolume);
-                            }
-                            oldVolume = status.getVolume();
-                        }
+                    // volume
+                    if ((changedFields & MPDStatus.FIELD_VOLUME) != 0) {
+                        notification.setVolumeChanged(previous.getVolume());
+                    }
 
-                        // repeat
-                        if (connectionStateChanged || oldRepeat != status.isRepeat()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.repeatChanged(status.isRepeat());
-                            }
-                            oldRepeat = status.isRepeat();
-                        }
+                    // repeat
+                    if ((changedFields & MPDStatus.FIELD_REPEAT) != 0) {
+                        notification.setRepeatChanged(status.isRepeat());
+                    }
 
-                        // volume
-                        if (connectionStateChanged || oldRandom != status.isRandom()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.randomChanged(status.isRandom());
-                            }
-                            oldRandom = status.isRandom();
-                        }
+                    // random
+                    if ((changedFields & MPDStatus.FIELD_RANDOM) != 0) {
+                        notification.setRandomChanged(status.isRandom());
+                    }
 
-                        // update database
-                        if (connectionStateChanged || oldUpdating != status.isUpdating()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.libraryStateChanged(status.isUpdating(), dbChanged);
-                            }
-                            oldUpdating = status.isUpdating();
-                        }
+                    // update database
+                    if ((changedFields & MPDStatus.FIELD_UPDATING) != 0) {
+                        notification.setLibraryStateChanged(status.isUpdating(),
+                                (changed & DATABASE) != 0);
                     }
 
-                    if (stickerChanged) {
+                    if ((changed & STICKER) != 0 && !connectionStateChanged) {
                         if (DEBUG) {
                             Log.debug(TAG, "Sticker changed");
                         }
-                        for (final StatusChangeListener listener : mStatusChangeListeners) {
-                            listener.stickerChanged(status);
-                        }
+                        notification.setStickerChanged();
+                    }
+
+                    if ((changed & OUTPUT) != 0 && !mOutputChangeListeners.isEmpty()) {
+                        notification.setOutputsChanged(mMPD.getOutputs());
                     }
+
+                    previous = status;
+                    deliver(notification);
                 } catch (final IOException e) {
                     // connection lost
                     connectionState = Boolean.FALSE;
                     connectionLost = true;
+                    watchSubsystems(false);
                     if (mMPD.isConnected()) {
                         Log.error(TAG, "Exception caught while looping.", e);
                     }
@@ -318,10 +650,9 @@ public class MPDStatusMonitor extends Thread {
             }
 
             try {
-                synchronized (this) {
-                    if (!mMPD.isConnected()) {
-                        wait(mDelay);
-                    }
+                /** Not a monitor wait, which would pin a virtual thread to its carrier. */
+                if (!mMPD.isConnected()) {
+                    Thread.sleep(mDelay);
                 }
             } catch (final InterruptedException e) {
                 Log.error(TAG, "Interruption caught during disconnection and wait.", e);
@@ -330,6 +661,42 @@ public class MPDStatusMonitor extends Thread {
 
     }
 
+    /**
+     * Returns the changes pending on the server, without waiting for any.
+     *
+     * @return The {@code changed:} lines of the pending changes, empty if there are none.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private List<String> pollChanges() throws IOException, MPDException {
+        final MPDConnection mpdIdleConnection = mMPD.getIdleConnection();
+
+        if (mpdIdleConnection == null || !mpdIdleConnection.isConnected()) {
+            throw new IOException("IDLE connection lost");
+        }
+
+        return mpdIdleConnection.sendCommand(new IdlePollCommand(mSupportedSubsystems));
+    }
+
+    /**
+     * Lets the response cache hold the responses of the subsystems this monitor is idling on for
+     * as long as it is watching them. The cache is cleared either way, as changes may have been
+     * missed while the monitor was not idling.
+     *
+     * @param isWatching True if this monitor is now watching the server, false otherwise.
+     */
+    private void watchSubsystems(final boolean isWatching) {
+        final ResponseCache responseCache = mMPD.getResponseCache();
+
+        if (responseCache != null) {
+            if (isWatching) {
+                responseCache.setWatchedSubsystems(mSupportedSubsystems);
+            } else {
+                responseCache.setWatchedSubsystems(null);
+            }
+        }
+    }
+
     /**
      * Wait for server changes using "idle" command on the dedicated connection.
      *
@@ -353,4 +720,257 @@ public class MPDStatusMonitor extends Thread {
         }
         throw new IOException("IDLE connection lost");
     }
+
+    /**
+     * An {@code idle} command immediately followed by a {@code noidle}. MPD answers the
+     * {@code idle} at once if changes are pending and ignores the {@code noidle}, otherwise the
+     * {@code noidle} ends the {@code idle} with an empty response.
+     */
+    private static final class IdlePollCommand extends MPDCommand {
+
+        IdlePollCommand(final String... subsystems) {
+            super(MPD_CMD_IDLE, subsystems);
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + MPD_CMD_NOIDLE + MPD_CMD_NEWLINE;
+        }
+    }
+
+    /**
+     * The changes of an idle wakeup, with the values the listeners are to be notified of.
+     */
+    private final class Notification implements Runnable {
+
+        private static final int CONNECTION_STATE = 1;
+
+        private static final int LIBRARY_STATE = 1 << 1;
+
+        private static final int OUTPUTS = 1 << 2;
+
+        private static final int PLAYLIST_VERSION = 1 << 3;
+
+        private static final int RANDOM = 1 << 4;
+
+        private static final int REPEAT = 1 << 5;
+
+        private static final int STATE = 1 << 6;
+
+        private static final int STICKERS = 1 << 7;
+
+        private static final int TRACK = 1 << 8;
+
+        private static final int TRACK_POSITION = 1 << 9;
+
+        private static final int VOLUME = 1 << 10;
+
+        private final MPDStatus mStatus;
+
+        private boolean mIsConnected;
+
+        private boolean mIsConnectionLost;
+
+        private boolean mIsDatabaseChanged;
+
+        private boolean mIsRandom;
+
+        private boolean mIsRepeat;
+
+        private boolean mIsUpdating;
+
+        /** The bit mask of the changes to notify of. */
+        private int mChanges;
+
+        private int mOldPlaylistVersion;
+
+        private int mOldState;
+
+        private int mOldTrack;
+
+        private int mOldVolume;
+
+        private List<MPDOutput> mOutputs;
+
+        Notification(final MPDStatus status) {
+            super();
+
+            mStatus = status;
+        }
+
+        boolean isEmpty() {
+            return mChanges == 0;
+        }
+
+        @Override
+        public void run() {
+            if ((mChanges & CONNECTION_STATE) != 0) {
+                for (final Subscription subscription : mStatusChangeListeners) {
+                    subscription.mListener.connectionStateChanged(mIsConnected, mIsConnectionLost);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & PLAYLIST_VERSION) != 0 && subscription.isSubscribed(PLAYLIST)) {
+                    subscription.mListener.playlistChanged(mStatus, mOldPlaylistVersion);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & TRACK) != 0 && subscription.isSubscribed(PLAYER | PLAYLIST)) {
+                    subscription.mListener.trackChanged(mStatus, mOldTrack);
+                }
+            }
+
+            if ((mChanges & TRACK_POSITION) != 0) {
+                for (final TrackPositionListener listener : mTrackPositionListeners) {
+                    listener.trackPositionChanged(mStatus);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & STATE) != 0 && subscription.isSubscribed(PLAYER)) {
+                    subscription.mListener.stateChanged(mStatus, mOldState);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & VOLUME) != 0 && subscription.isSubscribed(MIXER)) {
+                    subscription.mListener.volumeChanged(mStatus, mOldVolume);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & REPEAT) != 0 && subscription.isSubscribed(OPTIONS)) {
+                    subscription.mListener.repeatChanged(mIsRepeat);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & RANDOM) != 0 && subscription.isSubscribed(OPTIONS)) {
+                    subscription.mListener.randomChanged(mIsRandom);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & LIBRARY_STATE) != 0
+                        && subscription.isSubscribed(DATABASE | UPDATE)) {
+                    subscription.mListener.libraryStateChanged(mIsUpdating, mIsDatabaseChanged);
+                }
+            }
+
+            for (final Subscription subscription : mStatusChangeListeners) {
+                if ((mChanges & STICKERS) != 0 && subscription.isSubscribed(STICKER)) {
+                    subscription.mListener.stickerChanged(mStatus);
+                }
+            }
+
+            if ((mChanges & OUTPUTS) != 0) {
+                for (final OutputChangeListener listener : mOutputChangeListeners) {
+                    listener.outputsChanged(mOutputs);
+                }
+            }
+        }
+
+        void setConnectionStateChanged(final boolean isConnected,
+                final boolean isConnectionLost) {
+            mChanges |= CONNECTION_STATE;
+            mIsConnected = isConnected;
+            mIsConnectionLost = isConnectionLost;
+        }
+
+        void setLibraryStateChanged(final boolean isUpdating, final boolean isDatabaseChanged) {
+            mChanges |= LIBRARY_STATE;
+            mIsUpdating = isUpdating;
+            mIsDatabaseChanged = isDatabaseChanged;
+        }
+
+        void setOutputsChanged(final List<MPDOutput> outputs) {
+            mChanges |= OUTPUTS;
+            mOutputs = outputs;
+        }
+
+        void setPlaylistChanged(final int oldPlaylistVersion) {
+            mChanges |= PLAYLIST_VERSION;
+            mOldPlaylistVersion = oldPlaylistVersion;
+        }
+
+        void setRandomChanged(final boolean isRandom) {
+            mChanges |= RANDOM;
+            mIsRandom = isRandom;
+        }
+
+        void setRepeatChanged(final boolean isRepeat) {
+            mChanges |= REPEAT;
+            mIsRepeat = isRepeat;
+        }
+
+        void setStateChanged(final int oldState) {
+            mChanges |= STATE;
+            mOldState = oldState;
+        }
+
+        void setStickerChanged() {
+            mChanges |= STICKERS;
+        }
+
+        void setTrackChanged(final int oldTrack) {
+            mChanges |= TRACK;
+            mOldTrack = oldTrack;
+        }
+
+        void setTrackPositionChanged() {
+            mChanges |= TRACK_POSITION;
+        }
+
+        void setVolumeChanged(final int oldVolume) {
+            mChanges |= VOLUME;
+            mOldVolume = oldVolume;
+        }
+    }
+
+    /**
+     * A {@code StatusChangeListener} along with the subsystems it is notified of.
+     */
+    private static final class Subscription {
+
+        private final StatusChangeListener mListener;
+
+        private final int mSubsystems;
+
+        Subscription(final StatusChangeListener listener, final int subsystems) {
+            super();
+
+            mListener = listener;
+            mSubsystems = subsystems;
+        }
+
+        /**
+         * Whether the listener is notified of any of the given subsystems.
+         *
+         * @param subsystems The bit mask of the subsystems.
+         * @return True if the listener subscribed to any of the subsystems, false otherwise.
+         */
+        boolean isSubscribed(final int subsystems) {
+            return (mSubsystems & subsystems) != 0;
+        }
+    }
+
+    /**
+     * Waits for room in the queue of a full executor rather than rejecting the task, which keeps
+     * the order of the notifications.
+     */
+    private static final class WaitPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            if (!executor.isShutdown()) {
+                try {
+                    executor.getQueue().put(r);
+                } catch (final InterruptedException e) {
+                    Log.error(TAG, "Interrupted while waiting for the listeners.", e);
+                }
+            }
+        }
+    }
 }
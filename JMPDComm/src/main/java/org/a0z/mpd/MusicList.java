@@ -24,12 +24,11 @@
  * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
  * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-
 package org.a0z.mpd;
 
 import org.a0z.mpd.item.Music;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -40,72 +39,92 @@ import java.util.List;
  */
 
 /**
- * These lists store the internal structure store of the playlist. All modifications are
- * synchronized, iterating over the list will still require manual locking.
+ * This stores the internal structure of the playlist. Music is kept in positional order alongside
+ * a primitive array of songIDs, and an open addressing index from songID to position, so a songID
+ * lookup doesn't need to scan the playlist. All modifications are synchronized on this object.
+ * Readers use an immutable snapshot, which is only copied once after each modification.
  */
 final class MusicList implements Iterable<Music> {
 
     /** The debug flag, change to true for debugging log output. */
     private static final boolean DEBUG = false;
 
+    /** The initial capacity of the backing stores. */
+    private static final int INITIAL_CAPACITY = 16;
+
     /** The debug log identifier. */
     private static final String TAG = "MusicList";
 
+    /** The songID to position index. */
+    private final SongIdIndex mIndex;
+
     /** The playlist store in positional order. */
-    private final List<Music> mList;
+    private Music[] mMusic;
+
+    /** The immutable copy of the playlist store, {@code null} if changed since the last copy. */
+    private volatile List<Music> mSnapshot;
 
-    /** A list of songIDs in songPos order. */
-    private final List<Integer> mSongID;
+    /** The songIDs in songPos order. */
+    private int[] mSongIds;
+
+    /** The size of the playlist stores. */
+    private int mSize;
 
     MusicList() {
         super();
 
-        mList = Collections.synchronizedList(new ArrayList<Music>());
-        mSongID = Collections.synchronizedList(new ArrayList<Integer>());
+        mIndex = new SongIdIndex(INITIAL_CAPACITY);
+        mMusic = new Music[INITIAL_CAPACITY];
+        mSongIds = new int[INITIAL_CAPACITY];
+        mSnapshot = Collections.emptyList();
     }
 
     /**
-     * Adds music to {@code MusicList}.
+     * Adds music to {@code MusicList}, at its position.
      *
      * @param music music to be added.
      */
     private void add(final Music music) {
-        synchronized (mList) {
-            final int songPos = music.getPos();
+        final int songPos = music.getPos();
 
-            if (DEBUG) {
-                Log.debug(TAG, "listSize: " + mList.size() + " songPos: " + songPos);
-            }
-            if (mList.size() == songPos) {
-                if (DEBUG) {
-                    Log.debug(TAG, "Adding music to the end");
-                }
-                mList.add(music);
-                mSongID.add(music.getSongId());
-            } else {
-                if (DEBUG) {
-                    Log.debug(TAG,
-                            "Adding beyond the end, or setting within the current playlist.");
-                }
-                /**
-                 * Grow the list to the size of the songPos, THEN set it to the position necessary.
-                 * The while loop shouldn't be necessary at all, unless, the result response is out
-                 * of positional order.
-                 */
-                while (mList.size() <= songPos) {
-                    mList.add(null);
-                    mSongID.add(null);
-                }
+        if (DEBUG) {
+            Log.debug(TAG, "listSize: " + mSize + " songPos: " + songPos);
+        }
 
-                if (songPos == -1) {
-                    throw new IllegalStateException("Media server protocol error: songPos not " +
-                            "included with the playlist changes included with the following " +
-                            "music. Path:" + music.getFullPath() + " Name: " + music.getName());
-                }
+        if (songPos == -1) {
+            throw new IllegalStateException("Media server protocol error: songPos not " +
+                    "included with the playlist changes included with the following " +
+                    "music. Path:" + music.getFullPath() + " Name: " + music.getName());
+        }
 
-                mList.set(songPos, music);
-                mSongID.set(songPos, music.getSongId());
-            }
+        if (songPos >= mSize) {
+            /**
+             * Grow the stores to the size of the songPos. The gap shouldn't exist at all, unless,
+             * the result response is out of positional order.
+             */
+            ensureCapacity(songPos + 1);
+            Arrays.fill(mSongIds, mSize, songPos, SongIdIndex.NO_SONG_ID);
+            mSize = songPos + 1;
+        } else {
+            unindex(songPos);
+        }
+
+        mMusic[songPos] = music;
+        mSongIds[songPos] = music.getSongId();
+        mIndex.put(music.getSongId(), songPos);
+    }
+
+    /**
+     * Grows the backing stores to hold at least {@code capacity} music.
+     *
+     * @param capacity The minimum capacity.
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity > mMusic.length) {
+            final int newCapacity = Math.max(capacity, mMusic.length + (mMusic.length >> 1));
+
+            mMusic = Arrays.copyOf(mMusic, newCapacity);
+            mSongIds = Arrays.copyOf(mSongIds, newCapacity);
         }
     }
 
@@ -116,10 +135,15 @@ final class MusicList implements Iterable<Music> {
      * @return a Music with given songId or {@code null} if it is not
      * present on this {@code MusicList}.
      */
-    Music getById(final int songId) {
-        final int songPos = Integer.valueOf(mSongID.indexOf(songId));
+    synchronized Music getById(final int songId) {
+        final int songPos = mIndex.get(songId);
+        Music result = null;
+
+        if (songPos != -1 && mSongIds[songPos] == songId) {
+            result = mMusic[songPos];
+        }
 
-        return mList.get(songPos);
+        return result;
     }
 
     /**
@@ -130,45 +154,72 @@ final class MusicList implements Iterable<Music> {
      * present on this {@code MusicList}.
      */
     Music getByIndex(final int index) {
+        final List<Music> snapshot = mSnapshot;
         Music result = null;
 
-        if (index >= 0 && mList.size() > index) {
-            result = mList.get(index);
+        if (snapshot == null) {
+            synchronized (this) {
+                if (index >= 0 && mSize > index) {
+                    result = mMusic[index];
+                }
+            }
+        } else if (index >= 0 && snapshot.size() > index) {
+            result = snapshot.get(index);
         }
 
         return result;
     }
 
     /**
-     * Retrieves a List containing all {@code Music} objects from this {@code MusicList}.
+     * Retrieves an immutable List containing all {@code Music} objects from this
+     * {@code MusicList}. The list doesn't change with this {@code MusicList}, so it can be
+     * iterated without locking or copying.
      *
      * @return Retrieves a List containing all {@code Music} objects from this {@code MusicList}.
      */
     List<Music> getMusic() {
-        return Collections.unmodifiableList(mList);
+        List<Music> snapshot = mSnapshot;
+
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = mSnapshot;
+
+                if (snapshot == null) {
+                    snapshot = Collections.unmodifiableList(
+                            Arrays.asList(Arrays.copyOf(mMusic, mSize)));
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+
+        return snapshot;
     }
 
     /**
-     * Returns an {@link java.util.Iterator} for the music list.
+     * Returns an {@link java.util.Iterator} for the music list. The iterator walks the current
+     * snapshot, changes made while iterating are not reflected.
      *
      * @return An {@code Iterator} instance.
      */
     @Override
     public Iterator<Music> iterator() {
-        return mList.iterator();
+        return getMusic().iterator();
     }
 
     /**
-     * Modifies the list to reflect the changes coming in from the {@code playlist}. Lock to an
-     * object prior to running this method.
+     * Modifies the list to reflect the changes coming in from the {@code playlist}. Only the
+     * changed positions, and the positions removed from the end, are touched.
      *
      * @param musicList    The changes to make to the backing stores.
      * @param listCapacity The size of the resulting list.
      */
-    void manipulate(final Iterable<Music> musicList, final int listCapacity) {
+    synchronized void manipulate(final Iterable<Music> musicList, final int listCapacity) {
+        final int oldSize = mSize;
+
+        mSnapshot = null;
         for (final Music music : musicList) {
             /**
-             * Do not remove from either list. it will be removed by range.
+             * Do not remove from either store. it will be removed by range.
              */
             add(music);
         }
@@ -176,21 +227,17 @@ final class MusicList implements Iterable<Music> {
         /**
          * Consistency checks and cleanups.
          */
-        synchronized (mList) {
-            final int listSize = mList.size();
-            final int songIDSize = mSongID.size();
-            if (listSize < listCapacity) {
-                throw new IllegalStateException(
-                        "List store: " + listSize + " and playlistLength: " + listCapacity +
-                                " size differs.");
-            }
+        if (mSize < listCapacity) {
+            throw new IllegalStateException(
+                    "List store: " + mSize + " and playlistLength: " + listCapacity +
+                            " size differs.");
+        }
 
-            mList.subList(listCapacity, listSize).clear();
-            mSongID.subList(listCapacity, songIDSize).clear();
+        truncate(listCapacity);
 
-            if (songIDSize != listSize) {
-                throw new IllegalStateException("List store: " + listSize +
-                        " and SongID: " + songIDSize + " size differs.");
+        for (int i = oldSize; i < mSize; i++) {
+            if (mMusic[i] == null) {
+                throw new IllegalStateException("Missing music at position " + i + '.');
             }
         }
     }
@@ -200,16 +247,20 @@ final class MusicList implements Iterable<Music> {
      *
      * @param collection The {@code Music} collection to replace the {@code MusicList} with.
      */
-    void replace(final Collection<Music> collection) {
+    synchronized void replace(final Collection<Music> collection) {
+        final Music[] music = collection.toArray(new Music[collection.size()]);
 
-        synchronized (mList) {
-            mList.clear();
-            mList.addAll(collection);
+        mSnapshot = null;
+        mIndex.clear(music.length);
+        mMusic = music.length < INITIAL_CAPACITY ? Arrays.copyOf(music, INITIAL_CAPACITY) : music;
+        mSongIds = new int[mMusic.length];
+        mSize = music.length;
 
-            mSongID.clear();
-            for (final Music track : collection) {
-                mSongID.add(track.getSongId());
-            }
+        for (int i = 0; i < mSize; i++) {
+            final int songId = music[i] == null ? SongIdIndex.NO_SONG_ID : music[i].getSongId();
+
+            mSongIds[i] = songId;
+            mIndex.put(songId, i);
         }
     }
 
@@ -218,7 +269,190 @@ final class MusicList implements Iterable<Music> {
      *
      * @return {@code MusicList} size.
      */
-    int size() {
-        return mList.size();
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Removes the music from {@code size}, inclusive, to the end of the list.
+     *
+     * @param size The resulting size of the list.
+     */
+    private void truncate(final int size) {
+        for (int i = size; i < mSize; i++) {
+            unindex(i);
+            mMusic[i] = null;
+        }
+
+        mSize = size;
+    }
+
+    /**
+     * Removes the songID at a position from the index, unless the songID has since been indexed
+     * at another position, which is the case for music moved within the playlist.
+     *
+     * @param songPos The position being replaced or removed.
+     */
+    private void unindex(final int songPos) {
+        final int songId = mSongIds[songPos];
+
+        if (mIndex.get(songId) == songPos) {
+            mIndex.remove(songId);
+        }
+        mSongIds[songPos] = SongIdIndex.NO_SONG_ID;
+    }
+
+    /**
+     * An open addressing, linear probing hash table from songID to position. SongIDs are never
+     * negative, so negative keys mark empty slots and are never stored.
+     */
+    private static final class SongIdIndex {
+
+        /** The songID of music without one, and the key of an empty slot. */
+        static final int NO_SONG_ID = -1;
+
+        /** The maximum load factor before the table is grown, in eighths. */
+        private static final int MAX_LOAD = 5;
+
+        private int[] mKeys;
+
+        private int mMask;
+
+        private int mSize;
+
+        private int[] mValues;
+
+        SongIdIndex(final int expectedSize) {
+            super();
+
+            allocate(expectedSize);
+        }
+
+        /**
+         * Spreads the songID bits, as songIDs are mostly sequential.
+         *
+         * @param key The songID.
+         * @return The hash of the songID.
+         */
+        private static int hash(final int key) {
+            final int hash = key * 0x9E3779B9;
+
+            return hash ^ hash >>> 16;
+        }
+
+        private void allocate(final int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 8 / MAX_LOAD) << 1;
+
+            mKeys = new int[capacity];
+            mValues = new int[capacity];
+            mMask = capacity - 1;
+            mSize = 0;
+            Arrays.fill(mKeys, NO_SONG_ID);
+        }
+
+        /**
+         * Removes all songIDs, sizing the table for {@code expectedSize} songIDs.
+         *
+         * @param expectedSize The number of songIDs expected.
+         */
+        void clear(final int expectedSize) {
+            allocate(expectedSize);
+        }
+
+        /**
+         * Retrieves the position of a songID.
+         *
+         * @param key The songID.
+         * @return The position, {@code -1} if the songID isn't indexed.
+         */
+        int get(final int key) {
+            int result = -1;
+
+            if (key >= 0) {
+                int slot = hash(key) & mMask;
+
+                while (mKeys[slot] != NO_SONG_ID) {
+                    if (mKeys[slot] == key) {
+                        result = mValues[slot];
+                        break;
+                    }
+                    slot = slot + 1 & mMask;
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Indexes a songID at a position, replacing its previous position.
+         *
+         * @param key   The songID, ignored if negative.
+         * @param value The position.
+         */
+        void put(final int key, final int value) {
+            if (key >= 0) {
+                int slot = hash(key) & mMask;
+
+                while (mKeys[slot] != NO_SONG_ID && mKeys[slot] != key) {
+                    slot = slot + 1 & mMask;
+                }
+
+                if (mKeys[slot] == NO_SONG_ID) {
+                    mKeys[slot] = key;
+                    mSize++;
+                }
+                mValues[slot] = value;
+
+                if (mSize * 8 > mKeys.length * MAX_LOAD) {
+                    rehash();
+                }
+            }
+        }
+
+        private void rehash() {
+            final int[] keys = mKeys;
+            final int[] values = mValues;
+
+            allocate(mSize * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != NO_SONG_ID) {
+                    put(keys[i], values[i]);
+                }
+            }
+        }
+
+        /**
+         * Removes a songID, shifting back the following entries of its probe sequence so no
+         * tombstones are needed.
+         *
+         * @param key The songID.
+         */
+        void remove(final int key) {
+            if (key >= 0) {
+                int slot = hash(key) & mMask;
+
+                while (mKeys[slot] != NO_SONG_ID && mKeys[slot] != key) {
+                    slot = slot + 1 & mMask;
+                }
+
+                if (mKeys[slot] != NO_SONG_ID) {
+                    int next = slot + 1 & mMask;
+
+                    mSize--;
+                    while (mKeys[next] != NO_SONG_ID) {
+                        final int home = hash(mKeys[next]) & mMask;
+
+                        /** Move the entry back unless its home lies within (slot, next]. */
+                        if ((next - home & mMask) >= (next - slot & mMask)) {
+                            mKeys[slot] = mKeys[next];
+                            mValues[slot] = mValues[next];
+                            slot = next;
+                        }
+                        next = next + 1 & mMask;
+                    }
+                    mKeys[slot] = NO_SONG_ID;
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.event.TrackPositionListener;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A playback clock, which notifies its {@code TrackPositionListener}s of the position of the
+ * current track at a regular rate while playing, without any traffic with the server.
+ *
+ * The position is extrapolated with the monotonic clock from the last status read, see
+ * {@link MPDStatus#getElapsedTimeMillis()}. The clock is synchronized by adding it as a
+ * {@code TrackPositionListener} to a {@link MPDStatusMonitor}, which only notifies it upon player
+ * changes on the server, such as a seek, a pause or a track change.
+ */
+public class PlaybackClock implements TrackPositionListener {
+
+    private static final boolean DEBUG = false;
+
+    /**
+     * Ticks due sooner than this after a tick, in milliseconds, are skipped, as they would only
+     * be the result of rounding.
+     */
+    private static final long MINIMUM_TICK_DELAY = 10L;
+
+    private static final String TAG = "PlaybackClock";
+
+    private final ScheduledExecutorService mExecutor;
+
+    /** Whether the executor was created by this clock, and is to be shut down with it. */
+    private final boolean mIsExecutorOwned;
+
+    private final Runnable mTick;
+
+    /** The interval of the ticks, in milliseconds of playback. */
+    private final long mTickInterval;
+
+    private final Queue<TrackPositionListener> mTrackPositionListeners;
+
+    private ScheduledFuture<?> mNextTick;
+
+    private volatile MPDStatus mStatus;
+
+    /**
+     * Constructs a playback clock ticking on a thread of its own.
+     *
+     * @param tickInterval The interval of the ticks, in milliseconds.
+     */
+    public PlaybackClock(final long tickInterval) {
+        this(Executors.newSingleThreadScheduledExecutor(), tickInterval, true);
+    }
+
+    /**
+     * Constructs a playback clock ticking on an executor shared with other tasks.
+     *
+     * @param executor     The executor to tick on.
+     * @param tickInterval The interval of the ticks, in milliseconds.
+     */
+    public PlaybackClock(final ScheduledExecutorService executor, final long tickInterval) {
+        this(executor, tickInterval, false);
+    }
+
+    private PlaybackClock(final ScheduledExecutorService executor, final long tickInterval,
+            final boolean isExecutorOwned) {
+        super();
+
+        mExecutor = executor;
+        mIsExecutorOwned = isExecutorOwned;
+        mTickInterval = tickInterval;
+        mTick = new Tick();
+        mTrackPositionListeners = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Adds a {@code TrackPositionListener}, notified upon each tick and each synchronization.
+     *
+     * @param listener a {@code TrackPositionListener}.
+     */
+    public void addTrackPositionListener(final TrackPositionListener listener) {
+        mTrackPositionListeners.add(listener);
+    }
+
+    /**
+     * Returns the extrapolated position of the current track.
+     *
+     * @return The elapsed time of the current track in milliseconds, -1 if the clock has not
+     * been synchronized yet.
+     */
+    public long getElapsedTimeMillis() {
+        final MPDStatus status = mStatus;
+        final long elapsedTime;
+
+        if (status == null) {
+            elapsedTime = -1L;
+        } else {
+            elapsedTime = status.getElapsedTimeMillis();
+        }
+
+        return elapsedTime;
+    }
+
+    /**
+     * Notifies the listeners of the current track position.
+     *
+     * @param status The status to notify the listeners of.
+     */
+    private void notifyListeners(final MPDStatus status) {
+        for (final TrackPositionListener listener : mTrackPositionListeners) {
+            listener.trackPositionChanged(status);
+        }
+    }
+
+    /**
+     * Removes a {@code TrackPositionListener}.
+     *
+     * @param listener a {@code TrackPositionListener}.
+     */
+    public void removeTrackPositionListener(final TrackPositionListener listener) {
+        mTrackPositionListeners.remove(listener);
+    }
+
+    /**
+     * Schedules the next tick when the elapsed time reaches the next multiple of the tick
+     * interval, so a position displayed in whole ticks changes right on time. No tick is
+     * scheduled unless playing, nor past the end of the track, which the next player change
+     * takes care of.
+     *
+     * @param status The status the clock is synchronized with.
+     */
+    private synchronized void scheduleTick(final MPDStatus status) {
+        if (mNextTick != null) {
+            mNextTick.cancel(false);
+            mNextTick = null;
+        }
+
+        if (status.isState(MPDStatus.STATE_PLAYING) && !mExecutor.isShutdown()) {
+            final long elapsedTime = status.getElapsedTimeMillis();
+            final long totalTime = TimeUnit.SECONDS.toMillis(status.getTotalTime());
+            long delay = mTickInterval - elapsedTime % mTickInterval;
+
+            if (delay < MINIMUM_TICK_DELAY) {
+                delay += mTickInterval;
+            }
+
+            if (totalTime == 0L || elapsedTime + delay <= totalTime) {
+                mNextTick = mExecutor.schedule(mTick, delay, TimeUnit.MILLISECONDS);
+            } else if (DEBUG) {
+                Log.debug(TAG, "End of track reached, waiting for the next player change.");
+            }
+        }
+    }
+
+    /**
+     * Stops ticking. The executor is shut down if it was created by this clock.
+     */
+    public synchronized void shutdown() {
+        if (mNextTick != null) {
+            mNextTick.cancel(false);
+            mNextTick = null;
+        }
+
+        if (mIsExecutorOwned) {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Synchronizes the clock with the server, then notifies the listeners of the new position.
+     *
+     * @param status New MPD status, containing current track position
+     */
+    @Override
+    public void trackPositionChanged(final MPDStatus status) {
+        mStatus = status;
+        scheduleTick(status);
+        notifyListeners(status);
+    }
+
+    /** Notifies the listeners of the extrapolated position, then schedules the next tick. */
+    private final class Tick implements Runnable {
+
+        @Override
+        public void run() {
+            notifyListeners(mStatus);
+            /** Read again, the clock may have been synchronized meanwhile. */
+            scheduleTick(mStatus);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd;
+
+/**
+ * A bounded pool of tag values, so songs sharing an album, artist or genre share the same
+ * {@code String} instance instead of holding a copy each. Values are looked up from the response
+ * line they are read from, a {@code String} is only created for a value not in the pool.
+ *
+ * <p>The pool is a fixed size, two way associative table: a value colliding with two others
+ * replaces the least recently added one, so the pool never grows and follows the library as it
+ * changes. A value missing from the pool is merely duplicated.</p>
+ *
+ * <p>This class is thread-safe. Lookups are not synchronized, a value added concurrently with
+ * another may be lost, which only costs a duplicate; {@code String} being immutable, a value is
+ * never seen partially constructed.</p>
+ */
+public final class TagPool {
+
+    /** The default number of values held, enough for the tags of a large library. */
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final int mMask;
+
+    private final String[] mValues;
+
+    public TagPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor with a maximum number of values held.
+     *
+     * @param capacity The maximum number of values held, rounded up to a power of two.
+     */
+    public TagPool(final int capacity) {
+        super();
+
+        final int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+        mValues = new String[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Computes the hash code the {@code String} of a part of a line would have.
+     *
+     * @param line       The line.
+     * @param beginIndex The beginning index in the line, inclusive.
+     * @param endIndex   The ending index in the line, exclusive.
+     * @return The hash code of the part of the line.
+     */
+    private static int hashCode(final String line, final int beginIndex, final int endIndex) {
+        int hash = 0;
+
+        for (int i = beginIndex; i < endIndex; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+
+        return hash;
+    }
+
+    private static boolean isValue(final String value, final int hash, final String line,
+            final int beginIndex, final int length) {
+        return value != null && value.length() == length && value.hashCode() == hash &&
+                line.regionMatches(beginIndex, value, 0, length);
+    }
+
+    /**
+     * Removes every value from the pool.
+     */
+    public void clear() {
+        for (int i = 0; i < mValues.length; i++) {
+            mValues[i] = null;
+        }
+    }
+
+    /**
+     * Returns the pooled instance of a value, adding it to the pool if absent.
+     *
+     * @param value The value.
+     * @return The pooled instance equal to {@code value}, {@code value} itself if absent.
+     */
+    public String intern(final String value) {
+        return intern(value, 0, value.length(), value);
+    }
+
+    /**
+     * Returns the pooled instance of a value read from part of a line, adding it to the pool if
+     * absent.
+     *
+     * @param line       The line the value is read from.
+     * @param beginIndex The beginning index of the value in the line, inclusive.
+     * @param endIndex   The ending index of the value in the line, exclusive.
+     * @return The pooled instance equal to the value.
+     */
+    public String intern(final String line, final int beginIndex, final int endIndex) {
+        return intern(line, beginIndex, endIndex, null);
+    }
+
+    /**
+     * Returns the pooled instance of a value, adding it to the pool if absent.
+     *
+     * @param line       The line the value is read from.
+     * @param beginIndex The beginning index of the value in the line, inclusive.
+     * @param endIndex   The ending index of the value in the line, exclusive.
+     * @param value      The value as a {@code String}, null to create it if absent.
+     * @return The pooled instance equal to the value.
+     */
+    private String intern(final String line, final int beginIndex, final int endIndex,
+            final String value) {
+        final int length = endIndex - beginIndex;
+        final int hash;
+
+        if (value == null) {
+            hash = hashCode(line, beginIndex, endIndex);
+        } else {
+            hash = value.hashCode();
+        }
+
+        final int index = (hash ^ hash >>> 16) & mMask;
+        String pooled = mValues[index];
+
+        if (!isValue(pooled, hash, line, beginIndex, length)) {
+            pooled = mValues[index ^ 1];
+
+            if (!isValue(pooled, hash, line, beginIndex, length)) {
+                if (value == null) {
+                    pooled = line.substring(beginIndex, endIndex);
+                } else {
+                    pooled = value;
+                }
+
+                /** The previous value of the slot becomes the one to be replaced next. */
+                mValues[index ^ 1] = mValues[index];
+                mValues[index] = pooled;
+            }
+        }
+
+        return pooled;
+    }
+}
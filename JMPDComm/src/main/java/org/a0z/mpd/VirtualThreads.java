@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual threads of Java 21 and later, which this library cannot reference
+ * directly, as it targets Java 7 and Android. A virtual thread costs a few hundred bytes of heap
+ * rather than a native thread and its stack, so the connections and status monitors of many
+ * servers may block on their sockets without a platform thread each.
+ *
+ * <p>Blocking while holding a monitor pins the virtual thread to its carrier thread prior to
+ * Java 24. The library only waits within {@code synchronized} blocks briefly, for a pooled
+ * socket.</p>
+ *
+ * @see org.a0z.mpd.connection.MPDConnectionMultiSocket
+ * @see MPDStatusMonitor#start(java.util.concurrent.Executor)
+ */
+public final class VirtualThreads {
+
+    private static final String TAG = "VirtualThreads";
+
+    /** {@code Executors.newVirtualThreadPerTaskExecutor()}, null if not available. */
+    private static final Method NEW_EXECUTOR;
+
+    static {
+        Method method = null;
+
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (final NoSuchMethodException ignored) {
+        }
+
+        NEW_EXECUTOR = method;
+    }
+
+    private VirtualThreads() {
+        super();
+    }
+
+    /**
+     * Whether the running JVM supports virtual threads.
+     *
+     * @return True if virtual threads are available, false otherwise.
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task.
+     *
+     * @return A virtual thread per task executor.
+     * @throws UnsupportedOperationException Thrown if virtual threads are not available.
+     * @see #isSupported()
+     */
+    public static ExecutorService newExecutor() {
+        final ExecutorService executor;
+
+        if (NEW_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21.");
+        }
+
+        try {
+            executor = (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            Log.error(TAG, "Failed to create a virtual thread executor.", e);
+            throw new UnsupportedOperationException(e);
+        }
+
+        return executor;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+/**
+ * A callback for commands sent asynchronously, such as through
+ * {@link MPDConnection#sendCommandAsync(org.a0z.mpd.MPDCommand, CommandCallback)}.
+ *
+ * <p>Callbacks are called from the thread reading the responses of the connection, any lengthy
+ * work should be handed off to another thread. Waiting on the result of another asynchronous
+ * command from within a callback will never return.</p>
+ *
+ * @param <T> The type of the command result.
+ */
+public interface CommandCallback<T> {
+
+    /**
+     * Called once the full response to the command has been read.
+     *
+     * @param result The command result.
+     */
+    void onCompleted(T result);
+
+    /**
+     * Called if the command failed.
+     *
+     * @param exception The failure, an {@link java.io.IOException} upon a communication error with
+     *                  the server, or a {@link org.a0z.mpd.exception.MPDException} if an error
+     *                  occurred as a result of command execution.
+     */
+    void onFailed(Exception exception);
+}
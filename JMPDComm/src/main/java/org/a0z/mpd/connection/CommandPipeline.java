@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.Log;
+import org.a0z.mpd.MPDCommand;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends commands back to back on a dedicated socket, without waiting for the response to a
+ * command prior to sending the next one. The media server processes the commands of a connection
+ * in order, so responses are matched to the commands in the order they were sent. Over a high
+ * latency link, this costs a single round trip for many independent commands.
+ *
+ * <p>The socket is opened upon the first command and reopened after a communication error.
+ * Retryable commands which had no complete response are then resent.</p>
+ */
+final class CommandPipeline {
+
+    private static final int CONNECTION_TIMEOUT = 10000;
+
+    /** Maximum number of times to attempt command processing. */
+    private static final int MAX_REQUEST_RETRY = 3;
+
+    private static final String MPD_RESPONSE_ERR = "ACK";
+
+    private static final String TAG = "CommandPipeline";
+
+    /** Guards the link creation and the writing of commands, which must be queued in order. */
+    private final Object mLock = new Object();
+
+    private final String mPassword;
+
+    private final int mReadWriteTimeout;
+
+    private final InetSocketAddress mSocketAddress;
+
+    private volatile boolean mIsClosed;
+
+    /** The current socket, null prior to the first command. */
+    private volatile Link mLink;
+
+    /**
+     * The constructor method. This method does not connect to the server.
+     *
+     * @param socketAddress    The host/port pair of the media server.
+     * @param password         The MPD protocol password to pass upon connection, may be null.
+     * @param readWriteTimeout The read write timeout for the socket.
+     */
+    CommandPipeline(final InetSocketAddress socketAddress, final String password,
+            final int readWriteTimeout) {
+        super();
+
+        mSocketAddress = socketAddress;
+        mPassword = password;
+        mReadWriteTimeout = readWriteTimeout;
+    }
+
+    /**
+     * Closes the socket, any command without a response fails and any further command is
+     * rejected.
+     */
+    void close() {
+        final Link link = mLink;
+
+        mIsClosed = true;
+        if (link != null) {
+            link.fail(null, new IOException("Connection closed."));
+        }
+    }
+
+    /**
+     * Sends a command. The result is set once the response has been read, or if the command
+     * fails.
+     *
+     * @param command The command to send.
+     */
+    void submit(final PipelinedCommand<?> command) {
+        if (MPDCommand.MPD_CMD_IDLE.equals(command.mCommand.getCommand())) {
+            throw new IllegalArgumentException("The idle command cannot be pipelined.");
+        }
+
+        synchronized (mLock) {
+            Link link = mLink;
+
+            try {
+                if (mIsClosed) {
+                    throw new IOException("Connection closed.");
+                }
+
+                if (link == null || link.mIsFailed) {
+                    link = new Link();
+                    link.connect();
+                    mLink = link;
+                }
+            } catch (final IOException e) {
+                link = null;
+                command.setFailure(e);
+            }
+
+            if (link != null) {
+                try {
+                    link.write(command);
+                } catch (final IOException e) {
+                    link.fail(null, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A command sent through the pipeline, which also serves as the {@code Future} of its result.
+     * The result is set by whoever reads the response, this command is never run itself.
+     *
+     * @param <T> The type of the command result.
+     */
+    static final class PipelinedCommand<T> implements Future<T> {
+
+        private final CommandCallback<? super T> mCallback;
+
+        private final MPDCommand mCommand;
+
+        private final ResponseHandler mHandler;
+
+        /** Whether this command completed, the first completion wins. */
+        private final AtomicBoolean mIsDone = new AtomicBoolean();
+
+        /** Released once this command completed, its outcome is then visible. */
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+
+        private final T mResult;
+
+        /** The number of times this command has been sent. */
+        private int mAttempts;
+
+        /** The cause of the failure of this command, null if none. */
+        private Exception mException;
+
+        private boolean mIsCancelled;
+
+        /**
+         * Sole constructor.
+         *
+         * @param command  The command to send.
+         * @param handler  The handler which will receive the response lines as they are read.
+         * @param result   The result of the command, set once the response has been read.
+         * @param callback The callback to notify upon completion, may be null.
+         */
+        PipelinedCommand(final MPDCommand command, final ResponseHandler handler,
+                final T result, final CommandCallback<? super T> callback) {
+            super();
+
+            mCommand = command;
+            mHandler = handler;
+            mResult = result;
+            mCallback = callback;
+        }
+
+        /**
+         * Cancels this command. Its response is still read, as it must be consumed prior to the
+         * response to the next command, but it is dropped.
+         *
+         * @param mayInterruptIfRunning Ignored, this command does not run on a thread of its
+         *                              own.
+         * @return True if this command was cancelled, false if it already completed.
+         */
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            return complete(null, true);
+        }
+
+        /**
+         * Completes this command, unless it completed already, then notifies the callback.
+         *
+         * @param exception   The cause of the failure, null upon success.
+         * @param isCancelled Whether this command is cancelled.
+         * @return True if this call completed this command, false if it completed already.
+         */
+        private boolean complete(final Exception exception, final boolean isCancelled) {
+            final boolean isCompleted = mIsDone.compareAndSet(false, true);
+
+            if (isCompleted) {
+                mException = exception;
+                mIsCancelled = isCancelled;
+                mLatch.countDown();
+                done();
+            }
+
+            return isCompleted;
+        }
+
+        /**
+         * Notifies the callback. A callback failure is logged, rather than reaching the reader
+         * thread, which would take it for a failure of the socket.
+         */
+        private void done() {
+            if (mCallback != null && !mIsCancelled) {
+                try {
+                    notifyCallback();
+                } catch (final RuntimeException e) {
+                    Log.error(TAG, "Callback failed for command " + mCommand.getCommand(), e);
+                }
+            }
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            mLatch.await();
+
+            return getOutcome();
+        }
+
+        @Override
+        public T get(final long timeout, final TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!mLatch.await(timeout, unit)) {
+                throw new TimeoutException("No response to " + mCommand.getCommand());
+            }
+
+            return getOutcome();
+        }
+
+        MPDCommand getCommand() {
+            return mCommand;
+        }
+
+        ResponseHandler getHandler() {
+            return mHandler;
+        }
+
+        /**
+         * Returns the result of this command, once completed.
+         *
+         * @return The result of this command.
+         * @throws ExecutionException Thrown if this command failed, its cause is an {@code
+         *                            IOException} or a {@code MPDException}.
+         */
+        private T getOutcome() throws ExecutionException {
+            if (mIsCancelled) {
+                throw new CancellationException();
+            }
+
+            if (mException != null) {
+                throw new ExecutionException(mException);
+            }
+
+            return mResult;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mLatch.getCount() == 0L && mIsCancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mLatch.getCount() == 0L;
+        }
+
+        private void notifyCallback() {
+            try {
+                mCallback.onCompleted(get());
+            } catch (final ExecutionException e) {
+                mCallback.onFailed((Exception) e.getCause());
+            } catch (final InterruptedException ignored) {
+                /** Not possible, this command is done. */
+            }
+        }
+
+        /**
+         * Reads the response to this command, even if it has been cancelled, as it must be
+         * consumed prior to the response to the next command.
+         *
+         * @param in The reader of the socket this command was sent on.
+         * @throws IOException Thrown if there was a problem reading from the media server.
+         */
+        private void read(final BufferedReader in) throws IOException {
+            mHandler.onResponseStart();
+
+            for (String line = in.readLine(); ; line = in.readLine()) {
+                if (line == null) {
+                    throw new EOFException("Connection lost");
+                }
+
+                if (line.startsWith(MPDConnection.MPD_RESPONSE_OK)) {
+                    setResult();
+                    break;
+                }
+
+                if (line.startsWith(MPD_RESPONSE_ERR)) {
+                    if (mCommand.isErrorNonfatal(MPDException.getAckErrorCode(line))) {
+                        setResult();
+                    } else {
+                        setFailure(new MPDException(line));
+                    }
+                    break;
+                }
+
+                mHandler.onResponseLine(line);
+            }
+        }
+
+        void setFailure(final Exception exception) {
+            complete(exception, false);
+        }
+
+        /** Sets the result of this command, once its response has been read entirely. */
+        void setResult() {
+            complete(null, false);
+        }
+    }
+
+    /** A socket and the thread reading the responses of the commands sent on it, in order. */
+    private final class Link implements Runnable {
+
+        /** Commands sent, awaiting their response. */
+        private final BlockingQueue<PipelinedCommand<?>> mPending = new LinkedBlockingQueue<>();
+
+        private final Socket mSocket = new Socket();
+
+        private volatile boolean mIsFailed;
+
+        private BufferedReader mReader;
+
+        private Thread mThread;
+
+        private Writer mWriter;
+
+        /**
+         * Connects the socket, reads the server greeting and starts the reader thread.
+         *
+         * @throws IOException Thrown upon a communication error with the server.
+         */
+        private void connect() throws IOException {
+            final String line;
+
+            mSocket.setSoTimeout(mReadWriteTimeout);
+            mSocket.connect(mSocketAddress, CONNECTION_TIMEOUT);
+
+            mReader = new BufferedReader(
+                    new InputStreamReader(mSocket.getInputStream(), "UTF-8"));
+            mWriter = new OutputStreamWriter(mSocket.getOutputStream(), "UTF-8");
+            line = mReader.readLine();
+
+            if (line == null || !line.startsWith(MPDConnection.MPD_RESPONSE_OK)) {
+                mSocket.close();
+                throw new IOException("Bogus response from server.");
+            }
+
+            mThread = new Thread(this, TAG);
+            mThread.setDaemon(true);
+            mThread.start();
+
+            if (mPassword != null) {
+                final ResponseCollector collector = new ResponseCollector();
+
+                write(new PipelinedCommand<>(new MPDCommand(MPDCommand.MPD_CMD_PASSWORD,
+                        mPassword), collector, collector.getLines(), null));
+            }
+        }
+
+        /**
+         * Closes the socket, then resends or fails every command awaiting a response.
+         *
+         * @param current   The command being read when the failure occurred, if any.
+         * @param exception The cause of the failure.
+         */
+        private void fail(final PipelinedCommand<?> current, final IOException exception) {
+            final Collection<PipelinedCommand<?>> pending = new ArrayList<>();
+
+            mIsFailed = true;
+            try {
+                mSocket.close();
+            } catch (final IOException ignored) {
+            }
+
+            if (mThread != null && !Thread.currentThread().equals(mThread)) {
+                mThread.interrupt();
+            }
+
+            if (current != null) {
+                pending.add(current);
+            }
+            mPending.drainTo(pending);
+
+            for (final PipelinedCommand<?> command : pending) {
+                if (command.isDone()) {
+                    /** Its response was read entirely, the failure occurred afterwards. */
+                    Log.debug(TAG, "Not resending completed command " +
+                            command.mCommand.getCommand());
+                } else if (!mIsClosed && command.mAttempts < MAX_REQUEST_RETRY &&
+                        MPDCommand.isRetryable(command.mCommand.getCommand())) {
+                    submit(command);
+                } else {
+                    command.setFailure(exception);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            PipelinedCommand<?> current = null;
+
+            try {
+                while (!mIsFailed) {
+                    current = mPending.take();
+                    current.read(mReader);
+                    current = null;
+                }
+            } catch (final IOException e) {
+                if (!mIsFailed) {
+                    Log.warning(TAG, "Pipeline connection failed.", e);
+                }
+                fail(current, e);
+            } catch (final InterruptedException e) {
+                fail(current, new IOException(e));
+            } catch (final RuntimeException e) {
+                Log.error(TAG, "Failed to handle a response.", e);
+                fail(current, new IOException(e));
+            }
+        }
+
+        /**
+         * Queues a command for its response, then sends it to the server.
+         *
+         * @param command The command to send.
+         * @throws IOException Thrown upon error transferring command to media server.
+         */
+        private void write(final PipelinedCommand<?> command) throws IOException {
+            command.mAttempts++;
+            mPending.add(command);
+            mWriter.write(command.mCommand.toString());
+            mWriter.flush();
+        }
+    }
+}
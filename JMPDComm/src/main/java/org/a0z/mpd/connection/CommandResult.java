@@ -30,8 +30,6 @@ package org.a0z.mpd.connection;
 import org.a0z.mpd.exception.MPDException;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
 import java.util.StringTokenizer;
 
 /** This class stores the result for MPDCallable. */
@@ -39,14 +37,16 @@ class CommandResult {
 
     private Boolean isIOExceptionLast = null;
 
+    private boolean mIsCommandSent;
+
+    private boolean mIsCompleted;
+
     private String mConnectionResult;
 
     private IOException mIOException;
 
     private MPDException mMPDException;
 
-    private List<String> mResult;
-
     /**
      * Returns the first string response from the media server after connection. This method is
      * mainly for debugging.
@@ -88,10 +88,22 @@ class CommandResult {
         return version;
     }
 
-    final List<String> getResult() {
-        /** No need, we already made the collection immutable on the way in. */
-        //noinspection ReturnOfCollectionOrArrayField
-        return mResult;
+    /**
+     * Whether the command has been written to the server by any attempt.
+     *
+     * @return True if the command was sent, false otherwise.
+     */
+    final boolean isCommandSent() {
+        return mIsCommandSent;
+    }
+
+    /**
+     * Whether the command response has been entirely read by the {@code ResponseHandler}.
+     *
+     * @return True if the command completed, false otherwise.
+     */
+    final boolean isCompleted() {
+        return mIsCompleted;
     }
 
     public boolean isHeaderValid() {
@@ -110,6 +122,14 @@ class CommandResult {
         return isIOExceptionLast;
     }
 
+    final void setCommandSent() {
+        mIsCommandSent = true;
+    }
+
+    final void setCompleted() {
+        mIsCompleted = true;
+    }
+
     final void setConnectionResult(final String result) {
         mConnectionResult = result;
     }
@@ -123,12 +143,4 @@ class CommandResult {
         isIOExceptionLast = Boolean.FALSE;
         mMPDException = exception;
     }
-
-    final void setResult(final List<String> result) {
-        if (result == null) {
-            mResult = null;
-        } else {
-            mResult = Collections.unmodifiableList(result);
-        }
-    }
 }
@@ -31,17 +31,15 @@ import org.a0z.mpd.Log;
 import org.a0z.mpd.MPDCommand;
 import org.a0z.mpd.MPDStatusMonitor;
 import org.a0z.mpd.Tools;
+import org.a0z.mpd.connection.CommandPipeline.PipelinedCommand;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.subsystem.Reflection;
 
 import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -49,6 +47,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -60,30 +60,29 @@ public abstract class MPDConnection {
 
     static final String MPD_RESPONSE_OK = "OK";
 
-    private static final int CONNECTION_TIMEOUT = 10000;
-
     /** The debug flag to enable or disable debug logging output. */
     private static final boolean DEBUG = false;
 
-    /** Default buffer size for the socket. */
-    private static final int DEFAULT_BUFFER_SIZE = 1024;
-
     /** Maximum number of times to attempt command processing. */
     private static final int MAX_REQUEST_RETRY = 3;
 
-    private static final String MPD_RESPONSE_ERR = "ACK";
+    static final String MPD_RESPONSE_ERR = "ACK";
 
-    private static final String POOL_THREAD_NAME_PREFIX = "pool";
+    /** The number of sockets kept open, even if idle. */
+    private static final int MIN_SOCKETS = 1;
 
     /** A set containing all available commands, populated on connection. */
     private final Collection<String> mAvailableCommands = new HashSet<>();
 
-    /** The {@code ExecutorService} used to process commands. */
-    private final ThreadPoolExecutor mExecutor;
+    /** The {@code ExecutorService} used to process commands, null if there is none. */
+    private final ExecutorService mExecutor;
 
     /** The lock for this connection. */
     private final Object mLock = new Object();
 
+    /** Maximum number of sockets to allow running at one time. */
+    private final int mMaxConnections;
+
     /** The command communication timeout. */
     private final int mReadWriteTimeout;
 
@@ -101,9 +100,18 @@ public abstract class MPDConnection {
     /** Current media server password. */
     private String mPassword = null;
 
+    /** The pipeline for commands sent asynchronously, null if not connected. */
+    private volatile CommandPipeline mPipeline;
+
+    /** The cache of query responses, null if responses are not cached. */
+    private volatile ResponseCache mResponseCache;
+
     /** The host/port pair used to connect to the media server. */
     private InetSocketAddress mSocketAddress;
 
+    /** The sockets shared by all commands, null if not connected. */
+    private volatile SocketPool mSocketPool;
+
     /**
      * The constructor method. This method does not connect to the server.
      *
@@ -112,17 +120,59 @@ public abstract class MPDConnection {
      * @see #connect(java.net.InetAddress, int, String)
      */
     MPDConnection(final int readWriteTimeout, final int maxConnections) {
+        this(readWriteTimeout, maxConnections, null);
+    }
+
+    /**
+     * The constructor of a connection which processes its commands without an executor, it
+     * must override {@link #submitCommand(CommandProcessor)} and {@link
+     * #submitConcurrently(MPDCommand, ResponseHandler)}. This method does not connect to the
+     * server.
+     *
+     * @param readWriteTimeout The read write timeout for this connection.
+     * @see #connect(java.net.InetAddress, int, String)
+     */
+    MPDConnection(final int readWriteTimeout) {
         super();
 
         mReadWriteTimeout = readWriteTimeout;
-        mExecutor = new ThreadPoolExecutor(1, maxConnections, (long) mReadWriteTimeout,
-                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-        mExecutor.prestartCoreThread();
-        if (maxConnections > 1) {
-            mTag = "MPDConnectionMultiSocket";
-            mExecutor.allowCoreThreadTimeOut(true);
+        mMaxConnections = 1;
+        mTag = getClass().getSimpleName();
+        mExecutor = null;
+    }
+
+    /**
+     * The constructor method. This method does not connect to the server.
+     *
+     * @param readWriteTimeout The read write timeout for this connection.
+     * @param maxConnections   Maximum number of sockets to allow running at one time.
+     * @param executor         The executor processing the commands, which may be shared by
+     *                         several connections, null for a pool of {@code maxConnections}
+     *                         threads owned by this connection.
+     * @see #connect(java.net.InetAddress, int, String)
+     * @see org.a0z.mpd.VirtualThreads
+     */
+    MPDConnection(final int readWriteTimeout, final int maxConnections,
+            final ExecutorService executor) {
+        super();
+
+        mReadWriteTimeout = readWriteTimeout;
+        mMaxConnections = maxConnections;
+        mTag = getClass().getSimpleName();
+
+        if (executor == null) {
+            /** The queue is unbounded, so the executor never grows beyond its core size. */
+            final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxConnections,
+                    maxConnections, (long) mReadWriteTimeout, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+
+            if (maxConnections > 1) {
+                threadPoolExecutor.allowCoreThreadTimeOut(true);
+            }
+            mExecutor = threadPoolExecutor;
         } else {
-            mTag = "MPDConnectionMonoSocket";
+            /** The socket pool bounds the number of commands processed at once. */
+            mExecutor = executor;
         }
     }
 
@@ -143,13 +193,15 @@ public abstract class MPDConnection {
         mCancelled = false;
         mPassword = password;
         mSocketAddress = new InetSocketAddress(host, port);
+        openTransport(mSocketAddress, password);
 
         final MPDCommand mpdCommand = new MPDCommand(Reflection.CMD_ACTION_COMMANDS);
-        final CommandResult commandResult = processCommand(mpdCommand);
+        final ResponseCollector collector = new ResponseCollector();
+        final CommandResult commandResult = processCommand(mpdCommand, collector);
 
         synchronized (mAvailableCommands) {
             final Collection<String> response = Tools.
-                    parseResponse(commandResult.getResult(), Reflection.CMD_RESPONSE_COMMANDS);
+                    parseResponse(collector.getLines(), Reflection.CMD_RESPONSE_COMMANDS);
             mAvailableCommands.clear();
             mAvailableCommands.addAll(response);
         }
@@ -196,8 +248,6 @@ public abstract class MPDConnection {
         return mSocketAddress.getPort();
     }
 
-    protected abstract InputStreamReader getInputStream();
-
     /**
      * The current MPD protocol version.
      */
@@ -205,9 +255,42 @@ public abstract class MPDConnection {
         return mMPDVersion.clone();
     }
 
-    protected abstract OutputStreamWriter getOutputStream();
+    /**
+     * Retrieves the cache of query responses of this connection.
+     *
+     * @return The response cache, null if responses are not cached.
+     * @see #setResponseCache(ResponseCache)
+     */
+    public ResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
+    /**
+     * Returns the usage metrics of each open socket of this connection.
+     *
+     * @return A list of socket metrics, empty if not connected.
+     */
+    public List<SocketMetrics> getSocketMetrics() {
+        final SocketPool socketPool = mSocketPool;
+        final List<SocketMetrics> metrics;
+
+        if (socketPool == null) {
+            metrics = Collections.emptyList();
+        } else {
+            metrics = socketPool.getMetrics();
+        }
+
+        return metrics;
+    }
 
-    protected abstract Socket getSocket();
+    /**
+     * The read write timeout for this connection.
+     *
+     * @return The read write timeout, in milliseconds, zero for none.
+     */
+    final int getReadWriteTimeout() {
+        return mReadWriteTimeout;
+    }
 
     /**
      * A low level disconnect method for the socket(s).
@@ -216,14 +299,48 @@ public abstract class MPDConnection {
      */
     private void innerDisconnect() throws IOException {
         mIsConnected = false;
+        closeTransport();
+    }
+
+    /**
+     * Closes the sockets opened by {@link #openTransport(InetSocketAddress, String)}, failing any
+     * command awaiting its response.
+     *
+     * @throws IOException Thrown if there is a problem closing the socket.
+     */
+    void closeTransport() throws IOException {
+        final CommandPipeline pipeline = mPipeline;
+
+        if (pipeline != null) {
+            pipeline.close();
+            mPipeline = null;
+        }
+
         synchronized (mLock) {
-            if (getSocket() != null) {
-                getSocket().close();
-                setSocket(null);
+            if (mSocketPool != null) {
+                mSocketPool.close();
+                mSocketPool = null;
             }
         }
     }
 
+    /**
+     * Sets up the transport to a media server, prior to the first command. By default, commands
+     * are sent on a pool of blocking sockets.
+     *
+     * @param socketAddress The host/port pair of the media server.
+     * @param password      The MPD protocol password to pass upon connection, may be null.
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    void openTransport(final InetSocketAddress socketAddress, final String password)
+            throws IOException {
+        synchronized (mLock) {
+            mSocketPool = new SocketPool(socketAddress, password, mReadWriteTimeout,
+                    MIN_SOCKETS, mMaxConnections);
+        }
+        mPipeline = new CommandPipeline(socketAddress, password, mReadWriteTimeout);
+    }
+
     /**
      * Checks a list of available commands generated on connection.
      *
@@ -265,31 +382,16 @@ public abstract class MPDConnection {
     }
 
     /**
-     * Processes the command by setting up the command processor executor.
+     * Checks the result of a processed command, throwing the exception which caused it to fail.
      *
-     * @param command The command to be processed.
-     * @return The response to the processed command.
+     * @param command The processed command.
+     * @param result  The result of the processed command.
      * @throws IOException  Thrown upon a communication error with the server.
      * @throws MPDException Thrown if an error occurs as a result of command execution.
      */
-    private CommandResult processCommand(final MPDCommand command)
+    private void checkResult(final MPDCommand command, final CommandResult result)
             throws IOException, MPDException {
-        final CommandResult result;
-
-        // Bypass thread pool queue if the thread already comes from the pool to avoid deadlock.
-        if (Thread.currentThread().getName().startsWith(POOL_THREAD_NAME_PREFIX)) {
-            result = new CommandProcessor(command).call();
-        } else {
-            try {
-                result = mExecutor.submit(new CommandProcessor(command)).get();
-                // Spam the log with the largest pool size
-                //Log.debug(mTag, "Largest pool size: " + mExecutor.getLargestPoolSize());
-            } catch (final ExecutionException | InterruptedException e) {
-                throw new IOException(e);
-            }
-        }
-
-        if (result.getResult() == null) {
+        if (!result.isCompleted()) {
             if (result.isIOExceptionLast() == null) {
                 /**
                  * This should not occur, and this exception should extend RuntimeException,
@@ -307,10 +409,112 @@ public abstract class MPDConnection {
                 throw result.getMPDException();
             }
         }
+    }
+
+    /**
+     * Processes the command by setting up the command processor executor.
+     *
+     * @param command The command to be processed.
+     * @param handler The handler which will receive the response lines as they are read.
+     * @return The result of the processed command.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private CommandResult processCommand(final MPDCommand command, final ResponseHandler handler)
+            throws IOException, MPDException {
+        final CommandResult result;
+        final CommandProcessor commandProcessor = new CommandProcessor(command, handler);
+
+        result = submitCommand(commandProcessor);
+        checkResult(command, result);
 
         return result;
     }
 
+    /**
+     * Processes a command through the response cache, if any: a cached response is handed to
+     * the handler without contacting the server, otherwise the response is recorded as it is
+     * read, and the responses depending on what the command modifies are dropped.
+     *
+     * @param command The command to be processed.
+     * @param handler The handler which will receive the response lines.
+     * @param request The cache lookup of the command, null to bypass the cache.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private void processCommand(final MPDCommand command, final ResponseHandler handler,
+            final ResponseCache.Request request) throws IOException, MPDException {
+        if (request == null) {
+            processCommand(command, handler);
+        } else if (!request.replay(handler)) {
+            boolean isCompleted = false;
+
+            try {
+                processCommand(command, request.record(handler));
+                isCompleted = true;
+            } finally {
+                request.complete(isCompleted);
+            }
+        }
+    }
+
+    /**
+     * Prepares the cache lookup of a command.
+     *
+     * @param command The command about to be sent.
+     * @return The cache lookup, null if there is no response cache or the command neither reads
+     * nor modifies anything cached.
+     */
+    private ResponseCache.Request newRequest(final MPDCommand command) {
+        final ResponseCache responseCache = mResponseCache;
+        final ResponseCache.Request request;
+
+        if (responseCache == null) {
+            request = null;
+        } else {
+            request = responseCache.newRequest(command);
+        }
+
+        return request;
+    }
+
+    /**
+     * Runs a command processor, which sends the command, retries it if needed and records the
+     * result. By default, the processor runs on the executor of this connection.
+     *
+     * @param commandProcessor The command processor to run.
+     * @return The result of the processed command.
+     * @throws IOException Thrown if the command processor could not be run.
+     */
+    CommandResult submitCommand(final CommandProcessor commandProcessor) throws IOException {
+        final CommandResult result;
+
+        try {
+            result = mExecutor.submit(commandProcessor).get();
+            // Spam the log with the largest pool size
+            //Log.debug(mTag, "Largest pool size: " + mExecutor.getLargestPoolSize());
+        } catch (final ExecutionException | InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Starts processing a command of {@link #sendCommands(List, List)}, concurrently with the
+     * others. By default, the command is processed on the executor of this connection.
+     *
+     * @param command The command to be processed.
+     * @param handler The handler which will receive the response lines as they are read.
+     * @return The {@code Future} of the result of the processed command. Upon failure, the
+     * cause of the {@code ExecutionException} is an {@code IOException} or a {@code
+     * MPDException}.
+     */
+    Future<CommandResult> submitConcurrently(final MPDCommand command,
+            final ResponseHandler handler) {
+        return mExecutor.submit(new CommandProcessor(command, handler));
+    }
+
     /**
      * Communicates with the server by sending a command and receiving the response.
      *
@@ -320,7 +524,70 @@ public abstract class MPDConnection {
      * @throws MPDException Thrown if an error occurs as a result of command execution.
      */
     public List<String> sendCommand(final MPDCommand command) throws IOException, MPDException {
-        return processCommand(command).getResult();
+        final ResponseCache.Request request = newRequest(command);
+        final List<String> lines;
+
+        if (request == null || request.getLines() == null) {
+            final ResponseCollector collector = new ResponseCollector();
+
+            processCommand(command, collector, request);
+            lines = collector.getLines();
+        } else {
+            lines = request.getLines();
+        }
+
+        return lines;
+    }
+
+    /**
+     * Communicates with the server by sending a command and streaming the response to a
+     * {@code ResponseHandler} as it is read from the connection. No intermediate list of the
+     * response is kept, which makes this the preferred method for large responses.
+     *
+     * @param command The command to be sent to the server.
+     * @param handler The handler to receive the response, line by line.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     * @see ResponseHandler
+     */
+    public void sendCommand(final MPDCommand command, final ResponseHandler handler)
+            throws IOException, MPDException {
+        processCommand(command, handler, newRequest(command));
+    }
+
+    /**
+     * Sends a command without waiting for its response. Commands sent this way are written back
+     * to back on a dedicated socket, and their responses are read in order, so a batch of
+     * independent commands costs a single round trip to the server.
+     *
+     * @param command  The command to be sent to the server, other than {@code idle}.
+     * @param callback The callback to notify upon completion, may be null.
+     * @return The {@code Future} of the response to the command. Upon failure, the cause of the
+     * {@code ExecutionException} is an {@code IOException} or a {@code MPDException}.
+     * @see CommandCallback
+     */
+    public Future<List<String>> sendCommandAsync(final MPDCommand command,
+            final CommandCallback<List<String>> callback) {
+        final ResponseCollector collector = new ResponseCollector();
+
+        return submit(new PipelinedCommand<>(command, collector, collector.getLines(), callback));
+    }
+
+    /**
+     * Sends a command without waiting for its response, streaming the response to a {@code
+     * ResponseHandler} from the thread reading the pipelined responses.
+     *
+     * @param command  The command to be sent to the server, other than {@code idle}.
+     * @param handler  The handler to receive the response, line by line.
+     * @param callback The callback to notify upon completion, may be null.
+     * @param <T>      The type of the handler.
+     * @return The {@code Future} of the response, the {@code handler} once the full response has
+     * been read.
+     * @see #sendCommandAsync(MPDCommand, CommandCallback)
+     */
+    public <T extends ResponseHandler> Future<T> sendCommandAsync(final MPDCommand command,
+            final T handler, final CommandCallback<? super T> callback) {
+        return submit(new PipelinedCommand<>(command, handler, handler, callback));
     }
 
     /**
@@ -354,22 +621,227 @@ public abstract class MPDConnection {
         return sendCommand(new MPDCommand(command, nonfatalErrors, args));
     }
 
-    protected abstract void setInputStream(InputStreamReader inputStream);
+    /**
+     * Sends several commands at once, each as by {@link #sendCommand(MPDCommand,
+     * ResponseHandler)}. The commands are processed concurrently on the executor of this
+     * connection, each on its own socket of the pool, so up to the maximum number of sockets of
+     * this connection are in flight at the same time. A {@link MPDConnectionNio} pipelines them
+     * on its socket instead.
+     *
+     * @param commands The commands to be sent to the server.
+     * @param handlers The handler of each command, which will receive its response lines as they
+     *                 are read.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public void sendCommands(final List<MPDCommand> commands,
+            final List<? extends ResponseHandler> handlers) throws IOException, MPDException {
+        final List<Future<CommandResult>> results = new ArrayList<>(commands.size());
+        final List<ResponseCache.Request> requests = new ArrayList<>(commands.size());
+
+        if (commands.size() != handlers.size()) {
+            throw new IllegalArgumentException("Each command requires a handler.");
+        }
 
-    protected abstract void setOutputStream(OutputStreamWriter outputStream);
+        /** Cached responses are handed over at once, the others are read concurrently. */
+        for (int i = 0; i < commands.size(); i++) {
+            final ResponseCache.Request request = newRequest(commands.get(i));
 
-    protected abstract void setSocket(Socket socket);
+            if (request == null) {
+                results.add(submitConcurrently(commands.get(i), handlers.get(i)));
+            } else if (request.replay(handlers.get(i))) {
+                results.add(null);
+            } else {
+                results.add(submitConcurrently(commands.get(i),
+                        request.record(handlers.get(i))));
+            }
+            requests.add(request);
+        }
+
+        int completed = 0;
+        try {
+            for (; completed < commands.size(); completed++) {
+                final Future<CommandResult> future = results.get(completed);
+
+                if (future != null) {
+                    final CommandResult result;
+
+                    try {
+                        result = future.get();
+                    } catch (final ExecutionException e) {
+                        if (e.getCause() instanceof MPDException) {
+                            throw (MPDException) e.getCause();
+                        } else if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new IOException(e);
+                    } catch (final InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    checkResult(commands.get(completed), result);
+                }
+
+                if (requests.get(completed) != null) {
+                    requests.get(completed).complete(true);
+                }
+            }
+        } finally {
+            /** Commands still in flight may modify subsystems, their responses are dropped. */
+            for (int i = completed; i < commands.size(); i++) {
+                if (requests.get(i) != null) {
+                    requests.get(i).complete(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the cache of query responses of this connection. Responses are only cached while
+     * a {@link org.a0z.mpd.MPDStatusMonitor} watches the subsystems they depend on.
+     *
+     * @param responseCache The response cache, null to stop caching responses.
+     * @see ResponseCache
+     */
+    public void setResponseCache(final ResponseCache responseCache) {
+        mResponseCache = responseCache;
+    }
+
+    /**
+     * Submits a command to the pipeline of this connection.
+     *
+     * @param command The command to submit.
+     * @param <T>     The type of the command result.
+     * @return The command, which is the {@code Future} of its result.
+     */
+    <T> Future<T> submit(final PipelinedCommand<T> command) {
+        final CommandPipeline pipeline = mPipeline;
+
+        if (pipeline == null) {
+            command.setFailure(new IOException("Not connected."));
+        } else {
+            pipeline.submit(command);
+        }
+
+        return command;
+    }
+
+    /**
+     * Sends a command once, on a socket of the pool, and reads its response.
+     *
+     * @param command The command to send.
+     * @param handler The handler which will receive the response lines as they are read.
+     * @param result  The result, which records the server greeting and whether the command has
+     *                been sent.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    void transmit(final MPDCommand command, final ResponseHandler handler,
+            final CommandResult result) throws IOException, MPDException {
+        final SocketPool socketPool = mSocketPool;
+        final PooledSocket socket;
+        boolean isSocketUsable = false;
+
+        if (socketPool == null) {
+            throw new IOException("Not connected.");
+        }
+
+        socket = socketPool.borrow();
+        try {
+            result.setConnectionResult(socket.getBanner());
+            // Uncomment for extreme command debugging
+            //Log.debug(mTag, "Sending MPDCommand : " + command);
+            socket.write(command);
+            result.setCommandSent();
+            read(socket.getReader(), command, handler);
+            isSocketUsable = true;
+        } catch (final MPDException e) {
+            /** The error response was read entirely, the socket remains usable. */
+            isSocketUsable = true;
+            throw e;
+        } finally {
+            if (isSocketUsable) {
+                socketPool.release(socket);
+            } else {
+                socketPool.invalidate(socket);
+            }
+        }
+    }
+
+    /**
+     * This method is a place to specify if a ACK is not actually an error message we don't
+     * consider to be a fatal error.
+     *
+     * @param command The command the message is a response to.
+     * @param message The message to check.
+     * @return True if the message indicates a non-fatal error, false otherwise.
+     */
+    private boolean isNonfatalACK(final MPDCommand command, final String message) {
+        final boolean isNonfatalACK;
+        final int errorCode = MPDException.getAckErrorCode(message);
+
+        if (command.isErrorNonfatal(errorCode)) {
+            isNonfatalACK = true;
+            if (DEBUG) {
+                Log.debug(mTag, "Non-fatal ACK emitted, exception suppressed: " + message);
+            }
+        } else {
+            isNonfatalACK = false;
+        }
+
+        return isNonfatalACK;
+    }
+
+    /**
+     * Read the server response after a {@code write()} to the server, handing each line to
+     * the {@code ResponseHandler} as soon as it has been read.
+     *
+     * @throws IOException  Thrown if there was a problem reading from from the media
+     *                      server.
+     * @throws MPDException Thrown if there was a server side error with the command that
+     *                      was sent.
+     */
+    private void read(final BufferedReader in, final MPDCommand command,
+            final ResponseHandler handler) throws MPDException, IOException {
+        boolean serverDataRead = false;
+        handler.onResponseStart();
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            serverDataRead = true;
+
+            if (line.startsWith(MPD_RESPONSE_OK)) {
+                break;
+            }
+
+            if (line.startsWith(MPD_RESPONSE_ERR)) {
+                if (isNonfatalACK(command, line)) {
+                    break;
+                }
+
+                throw new MPDException(line);
+            }
+            handler.onResponseLine(line);
+        }
+
+        if (!serverDataRead) {
+            // Close socket if there is no response...
+            // Something is wrong (e.g. MPD shutdown..)
+            throw new EOFException("Connection lost");
+        }
+    }
 
     /** This class communicates with the server by sending the command and processing the result. */
-    private class CommandProcessor implements Callable<CommandResult> {
+    final class CommandProcessor implements Callable<CommandResult> {
 
         /** The command to be processed. */
         private final MPDCommand mCommand;
 
-        CommandProcessor(final MPDCommand mpdCommand) {
+        /** The handler receiving the response to the command. */
+        private final ResponseHandler mHandler;
+
+        CommandProcessor(final MPDCommand mpdCommand, final ResponseHandler handler) {
             super();
 
             mCommand = mpdCommand;
+            mHandler = handler;
         }
 
         /**
@@ -381,19 +853,20 @@ public abstract class MPDConnection {
         public final CommandResult call() {
             int retryCount = 0;
             final CommandResult result = new CommandResult();
-            boolean isCommandSent = false;
             final String baseCommand = mCommand.getCommand();
 
-            while (result.getResult() == null && retryCount < MAX_REQUEST_RETRY && !mCancelled) {
-                try {
-                    if (getSocket() == null || !getSocket().isConnected() ||
-                            getSocket().isClosed()) {
-                        result.setConnectionResult(innerConnect());
+            while (!result.isCompleted() && retryCount < MAX_REQUEST_RETRY && !mCancelled) {
+                if (retryCount != 0) {
+                    /** Give the server a moment after a failure. */
+                    try {
+                        Thread.sleep(500L);
+                    } catch (final InterruptedException ignored) {
                     }
+                }
 
-                    write();
-                    isCommandSent = true;
-                    result.setResult(read());
+                try {
+                    transmit(mCommand, mHandler, result);
+                    result.setCompleted();
                 } catch (final EOFException ex0) {
                     handleFailure(result, ex0);
 
@@ -401,23 +874,23 @@ public abstract class MPDConnection {
                     // failure robustness). Just send the "changed playlist" result to force the MPD
                     // status to be refreshed.
                     if (MPDCommand.MPD_CMD_IDLE.equals(baseCommand)) {
-                        result.setResult(Collections.singletonList(
-                                "changed: " + MPDStatusMonitor.IDLE_PLAYLIST));
+                        mHandler.onResponseStart();
+                        mHandler.onResponseLine("changed: " + MPDStatusMonitor.IDLE_PLAYLIST);
+                        result.setCompleted();
                     }
                 } catch (final IOException e) {
                     handleFailure(result, e);
                 } catch (final MPDException ex1) {
+                    result.setException(ex1);
                     // Avoid getting in an infinite loop if an error occurred in the password cmd
                     if (ex1.mErrorCode == MPDException.ACK_ERROR_PASSWORD ||
                             ex1.mErrorCode == MPDException.ACK_ERROR_PERMISSION) {
-                        result.setException(ex1);
-                    } else {
-                        handleFailure(result, ex1);
+                        break;
                     }
                 }
 
                 /** On successful send of non-retryable command, break out. */
-                if (!MPDCommand.isRetryable(baseCommand) && isCommandSent) {
+                if (!MPDCommand.isRetryable(baseCommand) && result.isCommandSent()) {
                     break;
                 }
 
@@ -425,7 +898,7 @@ public abstract class MPDConnection {
             }
 
             if (!mCancelled) {
-                if (result.getResult() == null) {
+                if (!result.isCompleted()) {
                     logError(result, baseCommand, retryCount);
                 } else {
                     mIsConnected = true;
@@ -435,118 +908,15 @@ public abstract class MPDConnection {
         }
 
         /**
-         * Used after a server error, sleeps for a small time then tries to reconnect.
+         * Used after a communication error, the socket has been invalidated and the command will
+         * be sent on another one if retried.
          *
          * @param result The {@code CommandResult} which stores the connection failure.
          * @param e      The exception to set.
          */
         private void handleFailure(final CommandResult result, final IOException e) {
-            if (isFailureHandled(result)) {
-                result.setException(e);
-            }
-        }
-
-        /**
-         * Used after a server error, sleeps for a small time then tries to reconnect.
-         *
-         * @param result The {@code CommandResult} which stores the connection failure.
-         * @param e      The exception to set.
-         */
-        private void handleFailure(final CommandResult result, final MPDException e) {
-            if (isFailureHandled(result)) {
-                result.setException(e);
-            }
-        }
-
-        /**
-         * This is the low level media server connection method.
-         *
-         * @return The initial response from the connection.
-         * @throws IOException  Thrown upon a communication error with the server.
-         * @throws MPDException Thrown if an error occurs as a result of command execution.
-         */
-        private String innerConnect() throws IOException, MPDException {
-            final String line;
-
-            // Always release existing socket if any before creating a new one
-            if (getSocket() != null) {
-                try {
-                    innerDisconnect();
-                } catch (final IOException ignored) {
-                }
-            }
-
-            setSocket(new Socket());
-            getSocket().setSoTimeout(mReadWriteTimeout);
-            getSocket().connect(mSocketAddress, CONNECTION_TIMEOUT);
-            setInputStream(new InputStreamReader(getSocket().getInputStream(), "UTF-8"));
-            final BufferedReader in = new BufferedReader(getInputStream(), DEFAULT_BUFFER_SIZE);
-            setOutputStream(new OutputStreamWriter(getSocket().getOutputStream(), "UTF-8"));
-            line = in.readLine();
-
-            if (line == null) {
-                throw new IOException("No response from server.");
-            }
-
-            /** Protocol says OK will begin the session, otherwise assume IO error. */
-            if (!line.startsWith(MPD_RESPONSE_OK)) {
-                throw new IOException("Bogus response from server.");
-            }
-
-            if (mPassword != null) {
-                sendCommand(MPDCommand.MPD_CMD_PASSWORD, mPassword);
-            }
-
-            return line;
-        }
-
-        /**
-         * Used after a server error, sleeps for a small time then tries to reconnect.
-         *
-         * @param result The {@code CommandResult} which stores the connection failure.
-         */
-        private boolean isFailureHandled(final CommandResult result) {
-            boolean failureHandled = false;
             mIsConnected = false;
-
-            try {
-                Thread.sleep(500L);
-            } catch (final InterruptedException ignored) {
-            }
-
-            try {
-                innerConnect();
-                failureHandled = true;
-            } catch (final MPDException me) {
-                result.setException(me);
-            } catch (final IOException ie) {
-                result.setException(ie);
-            }
-
-            return failureHandled;
-        }
-
-        /**
-         * This method is a place to specify if a ACK is not actually an error message we don't
-         * consider to be a fatal error.
-         *
-         * @param message The message to check.
-         * @return True if the message indicates a non-fatal error, false otherwise.
-         */
-        private boolean isNonfatalACK(final String message) {
-            final boolean isNonfatalACK;
-            final int errorCode = MPDException.getAckErrorCode(message);
-
-            if (mCommand.isErrorNonfatal(errorCode)) {
-                isNonfatalACK = true;
-                if (DEBUG) {
-                    Log.debug(mTag, "Non-fatal ACK emitted, exception suppressed: " + message);
-                }
-            } else {
-                isNonfatalACK = false;
-            }
-
-            return isNonfatalACK;
+            result.setException(e);
         }
 
         private void logError(final CommandResult result, final String baseCommand,
@@ -572,58 +942,5 @@ public abstract class MPDConnection {
                 Log.error(mTag, stringBuilder.toString(), result.getMPDException());
             }
         }
-
-        /**
-         * Read the server response after a {@code write()} to the server.
-         *
-         * @return A String list of responses.
-         * @throws IOException  Thrown if there was a problem reading from from the media
-         *                      server.
-         * @throws MPDException Thrown if there was a server side error with the command that
-         *                      was sent.
-         */
-        private List<String> read() throws MPDException, IOException {
-            final List<String> result = new ArrayList<>();
-            final BufferedReader in = new BufferedReader(getInputStream(), DEFAULT_BUFFER_SIZE);
-
-            boolean serverDataRead = false;
-            for (String line = in.readLine(); line != null; line = in.readLine()) {
-                serverDataRead = true;
-
-                if (line.startsWith(MPD_RESPONSE_OK)) {
-                    break;
-                }
-
-                if (line.startsWith(MPD_RESPONSE_ERR)) {
-                    if (isNonfatalACK(line)) {
-                        break;
-                    }
-
-                    throw new MPDException(line);
-                }
-                result.add(line);
-            }
-
-            if (!serverDataRead) {
-                // Close socket if there is no response...
-                // Something is wrong (e.g. MPD shutdown..)
-                throw new EOFException("Connection lost");
-            }
-            return result;
-        }
-
-        /**
-         * Sends the command to the server.
-         *
-         * @throws IOException Thrown upon error transferring command to media server.
-         */
-        private void write() throws IOException {
-            final String cmdString = mCommand.toString();
-
-            // Uncomment for extreme command debugging
-            //Log.debug(mTag, "Sending MPDCommand : " + cmdString);
-            getOutputStream().write(cmdString);
-            getOutputStream().flush();
-        }
     }
 }
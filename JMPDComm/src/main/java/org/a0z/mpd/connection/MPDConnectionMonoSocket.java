@@ -27,52 +27,27 @@
 
 package org.a0z.mpd.connection;
 
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
+import java.util.concurrent.ExecutorService;
 
 /**
- * Class representing a connection to MPD Server.
+ * Class representing a connection to MPD Server, using a single socket. Commands are processed
+ * one at a time, which makes this connection suitable for long running commands such as
+ * {@code idle}.
  */
 public class MPDConnectionMonoSocket extends MPDConnection {
 
-    private InputStreamReader mInputStream;
-
-    private OutputStreamWriter mOutputStream;
-
-    private Socket mSocket;
-
     public MPDConnectionMonoSocket(final int readWriteTimeout) {
         super(readWriteTimeout, 1);
     }
 
-    @Override
-    public InputStreamReader getInputStream() {
-        return mInputStream;
-    }
-
-    @Override
-    public OutputStreamWriter getOutputStream() {
-        return mOutputStream;
-    }
-
-    @Override
-    protected Socket getSocket() {
-        return mSocket;
-    }
-
-    @Override
-    public void setInputStream(final InputStreamReader inputStream) {
-        mInputStream = inputStream;
-    }
-
-    @Override
-    public void setOutputStream(final OutputStreamWriter outputStream) {
-        mOutputStream = outputStream;
-    }
-
-    @Override
-    protected void setSocket(final Socket socket) {
-        mSocket = socket;
+    /**
+     * Constructs a connection processing its commands on the given executor, such as an executor
+     * shared by the connections to several servers.
+     *
+     * @param readWriteTimeout The read write timeout for this connection.
+     * @param executor         The executor processing the commands.
+     */
+    public MPDConnectionMonoSocket(final int readWriteTimeout, final ExecutorService executor) {
+        super(readWriteTimeout, 1, executor);
     }
 }
@@ -27,52 +27,28 @@
 
 package org.a0z.mpd.connection;
 
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
+import java.util.concurrent.ExecutorService;
 
 /**
- * Class representing a connection to MPD Server.
+ * Class representing a connection to MPD Server, using a pool of up to {@code maxConnection}
+ * sockets shared by all commands, so commands from several threads are processed concurrently.
  */
 public class MPDConnectionMultiSocket extends MPDConnection {
 
-    private static final ThreadLocal<InputStreamReader> INPUT_STREAM = new ThreadLocal<>();
-
-    private static final ThreadLocal<OutputStreamWriter> OUTPUT_STREAM = new ThreadLocal<>();
-
-    private static final ThreadLocal<Socket> SOCKET = new ThreadLocal<>();
-
     public MPDConnectionMultiSocket(final int readWriteTimeout, final int maxConnection) {
         super(readWriteTimeout, maxConnection);
     }
 
-    @Override
-    public InputStreamReader getInputStream() {
-        return INPUT_STREAM.get();
-    }
-
-    @Override
-    public OutputStreamWriter getOutputStream() {
-        return OUTPUT_STREAM.get();
-    }
-
-    @Override
-    protected Socket getSocket() {
-        return SOCKET.get();
-    }
-
-    @Override
-    public void setInputStream(final InputStreamReader inputStream) {
-        INPUT_STREAM.set(inputStream);
-    }
-
-    @Override
-    public void setOutputStream(final OutputStreamWriter outputStream) {
-        OUTPUT_STREAM.set(outputStream);
-    }
-
-    @Override
-    protected void setSocket(final Socket socket) {
-        SOCKET.set(socket);
+    /**
+     * Constructs a connection processing its commands on the given executor, such as an executor
+     * shared by the connections to several servers.
+     *
+     * @param readWriteTimeout The read write timeout for this connection.
+     * @param maxConnection    Maximum number of sockets to allow running at one time.
+     * @param executor         The executor processing the commands.
+     */
+    public MPDConnectionMultiSocket(final int readWriteTimeout, final int maxConnection,
+            final ExecutorService executor) {
+        super(readWriteTimeout, maxConnection, executor);
     }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.MPDCommand;
+import org.a0z.mpd.connection.CommandPipeline.PipelinedCommand;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class representing a connection to MPD Server, using a single non-blocking socket driven by a
+ * {@link NioEventLoop}. This connection has no thread of its own: synchronous commands block the
+ * calling thread only, and commands from several threads, as well as asynchronous commands, are
+ * pipelined on the socket. One loop can serve the command and idle connections of many media
+ * servers.
+ *
+ * <p>Handlers of asynchronous commands are called from the loop thread. A synchronous command
+ * sent from the loop thread fails, as its response could never be read.</p>
+ */
+public class MPDConnectionNio extends MPDConnection {
+
+    /**
+     * How often a synchronous command without timeout checks that the event loop is still
+     * running, in milliseconds.
+     */
+    private static final long LOOP_CHECK_INTERVAL = 1000L;
+
+    /** Maximum number of times to attempt an asynchronous command. */
+    private static final int MAX_REQUEST_RETRY = 3;
+
+    /** Guards the event loop, the transport state and the channel. */
+    private final Object mLock = new Object();
+
+    private NioEventLoop mEventLoop;
+
+    /** The current channel, null prior to the first command. */
+    private NioChannel mChannel;
+
+    /** Whether commands may be sent, between connection and disconnection. */
+    private boolean mIsOpen;
+
+    private String mPassword;
+
+    private InetSocketAddress mSocketAddress;
+
+    /**
+     * Constructs a connection using the default event loop.
+     *
+     * @param readWriteTimeout The read write timeout for this connection, zero for none.
+     * @see NioEventLoop#getDefault()
+     */
+    public MPDConnectionNio(final int readWriteTimeout) {
+        this(readWriteTimeout, null);
+    }
+
+    /**
+     * Constructs a connection using the given event loop.
+     *
+     * @param readWriteTimeout The read write timeout for this connection, zero for none.
+     * @param eventLoop        The event loop to run the socket on, null for the default one.
+     */
+    public MPDConnectionNio(final int readWriteTimeout, final NioEventLoop eventLoop) {
+        super(readWriteTimeout);
+
+        mEventLoop = eventLoop;
+    }
+
+    @Override
+    void closeTransport() {
+        final NioChannel channel;
+
+        synchronized (mLock) {
+            mIsOpen = false;
+            channel = mChannel;
+            mChannel = null;
+        }
+
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the channel to the media server, opening a new one if there is none or if the
+     * previous one failed.
+     *
+     * @return A channel to the media server.
+     * @throws IOException Thrown if not connected.
+     */
+    private NioChannel getChannel() throws IOException {
+        synchronized (mLock) {
+            if (!mIsOpen) {
+                throw new IOException("Not connected.");
+            }
+
+            if (mChannel == null || mChannel.isClosed()) {
+                mChannel = new NioChannel(mEventLoop, mSocketAddress, getReadWriteTimeout());
+                mChannel.open(mPassword);
+            }
+
+            return mChannel;
+        }
+    }
+
+    @Override
+    void openTransport(final InetSocketAddress socketAddress, final String password)
+            throws IOException {
+        synchronized (mLock) {
+            if (mEventLoop == null) {
+                mEventLoop = NioEventLoop.getDefault();
+            }
+
+            mSocketAddress = socketAddress;
+            mPassword = password;
+            mIsOpen = true;
+        }
+    }
+
+    /**
+     * Sends an asynchronous command on the current channel.
+     *
+     * @param request The request of the command.
+     */
+    private void send(final AsyncRequest<?> request) {
+        try {
+            getChannel().send(request);
+        } catch (final IOException e) {
+            request.mPipelinedCommand.setFailure(e);
+        }
+    }
+
+    @Override
+    <T> Future<T> submit(final PipelinedCommand<T> command) {
+        if (MPDCommand.MPD_CMD_IDLE.equals(command.getCommand().getCommand())) {
+            throw new IllegalArgumentException("The idle command cannot be pipelined.");
+        }
+
+        send(new AsyncRequest<>(command, 1));
+
+        return command;
+    }
+
+    /**
+     * Processes the command on the calling thread, as it only waits for the response.
+     *
+     * @param commandProcessor The command processor to run.
+     * @return The result of the processed command.
+     */
+    @Override
+    CommandResult submitCommand(final CommandProcessor commandProcessor) {
+        return commandProcessor.call();
+    }
+
+    /**
+     * Pipelines the command on the socket, as an asynchronous command, so the commands of {@link
+     * #sendCommands(java.util.List, java.util.List)} cost a single round trip.
+     *
+     * @param command The command to be processed.
+     * @param handler The handler which will receive the response lines as they are read.
+     * @return The {@code Future} of the result of the processed command.
+     */
+    @Override
+    Future<CommandResult> submitConcurrently(final MPDCommand command,
+            final ResponseHandler handler) {
+        final CommandResult result = new CommandResult();
+
+        /** The future fails rather than returning an incomplete result. */
+        result.setCompleted();
+        return submit(new PipelinedCommand<>(command, handler, result, null));
+    }
+
+    @Override
+    void transmit(final MPDCommand command, final ResponseHandler handler,
+            final CommandResult result) throws IOException, MPDException {
+        final NioChannel channel = getChannel();
+        final BlockingRequest request = new BlockingRequest(command, handler);
+
+        if (mEventLoop.isInLoop()) {
+            throw new IllegalStateException("Synchronous command sent from the event loop.");
+        }
+        channel.send(request);
+        try {
+            request.await(mEventLoop, getReadWriteTimeout());
+        } finally {
+            if (request.mIsSent) {
+                result.setCommandSent();
+            }
+
+            if (channel.getBanner() != null) {
+                result.setConnectionResult(channel.getBanner());
+            }
+        }
+    }
+
+    /** An asynchronous command, resent on a new channel upon a communication error. */
+    private final class AsyncRequest<T> extends NioChannel.Request {
+
+        /** The number of times this command has been sent, including this one. */
+        private final int mAttempt;
+
+        private final PipelinedCommand<T> mPipelinedCommand;
+
+        AsyncRequest(final PipelinedCommand<T> command, final int attempt) {
+            super(command.getCommand(), command.getHandler());
+
+            mPipelinedCommand = command;
+            mAttempt = attempt;
+        }
+
+        @Override
+        void onCompleted() {
+            mPipelinedCommand.setResult();
+        }
+
+        @Override
+        void onFailed(final Exception exception) {
+            if (exception instanceof IOException && mAttempt < MAX_REQUEST_RETRY &&
+                    MPDCommand.isRetryable(mCommand.getCommand())) {
+                send(new AsyncRequest<>(mPipelinedCommand, mAttempt + 1));
+            } else {
+                mPipelinedCommand.setFailure(exception);
+            }
+        }
+    }
+
+    /** A synchronous command, the calling thread waits for its completion. */
+    private static final class BlockingRequest extends NioChannel.Request {
+
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+
+        private Exception mException;
+
+        BlockingRequest(final MPDCommand command, final ResponseHandler handler) {
+            super(command, handler);
+        }
+
+        /**
+         * Waits for the response to be read entirely. The event loop fails the request once the
+         * server has been silent for the timeout, so the wait is only bounded in case the loop
+         * stopped without failing it.
+         *
+         * @param eventLoop The event loop the request was sent on.
+         * @param timeout   The read write timeout of the connection, zero for none.
+         * @throws IOException  Thrown upon a communication error with the server.
+         * @throws MPDException Thrown if an error occurs as a result of command execution.
+         */
+        void await(final NioEventLoop eventLoop, final int timeout)
+                throws IOException, MPDException {
+            final long interval;
+
+            if (timeout > 0) {
+                interval = (long) timeout;
+            } else {
+                interval = LOOP_CHECK_INTERVAL;
+            }
+
+            try {
+                while (!mLatch.await(interval, TimeUnit.MILLISECONDS)) {
+                    if (!eventLoop.isRunning()) {
+                        throw new SocketTimeoutException("Event loop stopped waiting for " +
+                                mCommand.getCommand());
+                    }
+                }
+            } catch (final InterruptedException e) {
+                final InterruptedIOException exception =
+                        new InterruptedIOException("Interrupted waiting for a response.");
+
+                exception.initCause(e);
+                throw exception;
+            }
+
+            if (mException instanceof MPDException) {
+                throw (MPDException) mException;
+            } else if (mException instanceof IOException) {
+                throw (IOException) mException;
+            }
+        }
+
+        @Override
+        void onCompleted() {
+            mLatch.countDown();
+        }
+
+        @Override
+        void onFailed(final Exception exception) {
+            mException = exception;
+            mLatch.countDown();
+        }
+    }
+}
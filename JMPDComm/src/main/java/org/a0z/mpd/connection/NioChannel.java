@@ -0,0 +1,538 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.Log;
+import org.a0z.mpd.MPDCommand;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A non-blocking socket to a media server, driven by a {@link NioEventLoop}. Requests are written
+ * as soon as they are sent, without waiting for the response to the previous ones, and responses
+ * are matched to the requests in the order they were written.
+ *
+ * <p>Bytes are read into a direct buffer and decoded incrementally, so a multi-byte UTF-8
+ * sequence split between two reads is decoded once complete. The state of this channel is only
+ * accessed from the loop thread, other threads only add requests to the outbox.</p>
+ */
+final class NioChannel {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final long CONNECTION_TIMEOUT = TimeUnit.SECONDS.toNanos(10L);
+
+    /** The maximum number of reads per readiness, so other sockets of the loop are not starved. */
+    private static final int MAX_READS = 16;
+
+    private static final String TAG = "NioChannel";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CharBuffer mDecoded = CharBuffer.allocate(BUFFER_SIZE);
+
+    private final CharsetDecoder mDecoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final CharsetEncoder mEncoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final NioEventLoop mEventLoop;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            mIsFlushScheduled.set(false);
+            flush();
+        }
+    };
+
+    private final AtomicBoolean mIsFlushScheduled = new AtomicBoolean();
+
+    /** The line being read, which may span several reads. */
+    private final StringBuilder mLine = new StringBuilder();
+
+    /** Requests sent by any thread, not yet written. */
+    private final Queue<Request> mOutbox = new ConcurrentLinkedQueue<>();
+
+    /** Requests written, awaiting their response. */
+    private final Queue<Request> mPending = new ArrayDeque<>();
+
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final InetSocketAddress mSocketAddress;
+
+    /** The read write timeout, in nanoseconds, zero for none. */
+    private final long mTimeout;
+
+    private final ByteBuffer mWriteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /** The server greeting, null until it has been read. */
+    private volatile String mBanner;
+
+    private SocketChannel mChannel;
+
+    /** The cause of the channel failure, null while the channel is usable. */
+    private volatile Exception mFailure;
+
+    private boolean mIsResponseStarted;
+
+    private SelectionKey mKey;
+
+    /** The time of the last connection, read, or write to an idle channel, in nanoseconds. */
+    private long mLastActivity;
+
+    /** The command being encoded to the write buffer, if it did not fit. */
+    private CharBuffer mWriting;
+
+    /**
+     * The constructor method. This method does not connect to the server.
+     *
+     * @param eventLoop        The event loop to run this channel on.
+     * @param socketAddress    The host/port pair of the media server.
+     * @param readWriteTimeout The read write timeout, in milliseconds, zero for none.
+     */
+    NioChannel(final NioEventLoop eventLoop, final InetSocketAddress socketAddress,
+            final int readWriteTimeout) {
+        super();
+
+        mEventLoop = eventLoop;
+        mSocketAddress = socketAddress;
+        mTimeout = TimeUnit.MILLISECONDS.toNanos((long) readWriteTimeout);
+    }
+
+    /**
+     * Checks for a connection, read or write which has been taking too long.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     */
+    void checkTimeout(final long now) {
+        final long timeout;
+
+        if (mBanner == null) {
+            timeout = CONNECTION_TIMEOUT;
+        } else if (mPending.isEmpty()) {
+            timeout = 0L;
+        } else {
+            timeout = mTimeout;
+        }
+
+        if (timeout > 0L && now - mLastActivity > timeout) {
+            fail(new SocketTimeoutException("Timed out waiting for " + mSocketAddress));
+        }
+    }
+
+    /**
+     * Closes the socket, any request without a response fails, as will any further request.
+     */
+    void close() {
+        try {
+            mEventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fail(new IOException("Connection closed."));
+                }
+            });
+        } catch (final RejectedExecutionException ignored) {
+            /** The loop closed this channel already. */
+        }
+    }
+
+    /**
+     * Closes the socket, then fails every request which has not been entirely processed.
+     *
+     * @param exception The cause of the failure.
+     */
+    void fail(final Exception exception) {
+        if (mFailure == null) {
+            mFailure = exception;
+
+            if (mKey != null) {
+                mKey.cancel();
+            }
+
+            if (mChannel != null) {
+                try {
+                    mChannel.close();
+                } catch (final IOException ignored) {
+                }
+            }
+
+            for (Request request = mPending.poll(); request != null; request = mPending.poll()) {
+                request.onFailed(exception);
+            }
+        }
+
+        for (Request request = mOutbox.poll(); request != null; request = mOutbox.poll()) {
+            request.onFailed(mFailure);
+        }
+    }
+
+    /**
+     * The server greeting, which contains the MPD protocol version.
+     *
+     * @return The server greeting, null if not yet read.
+     */
+    String getBanner() {
+        return mBanner;
+    }
+
+    /**
+     * Whether this channel failed, or has been closed.
+     *
+     * @return True if this channel is no longer usable, false otherwise.
+     */
+    boolean isClosed() {
+        return mFailure != null;
+    }
+
+    /**
+     * Called by the event loop when the socket is ready for connection, reading or writing.
+     *
+     * @param key The selection key of the socket.
+     */
+    void onReady(final SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                mChannel.finishConnect();
+                mLastActivity = System.nanoTime();
+                key.interestOps(SelectionKey.OP_READ);
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                write();
+            }
+        } catch (final IOException e) {
+            if (mFailure == null) {
+                Log.warning(TAG, "Connection to " + mSocketAddress + " failed.", e);
+            }
+            fail(e);
+        } catch (final RuntimeException e) {
+            Log.error(TAG, "Failed to handle a response.", e);
+            fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Connects to the media server. The password, if any, is the first command sent.
+     *
+     * @param password The MPD protocol password to pass upon connection, may be null.
+     */
+    void open(final String password) {
+        if (password != null) {
+            final ResponseCollector collector = new ResponseCollector();
+
+            mOutbox.add(new Request(new MPDCommand(MPDCommand.MPD_CMD_PASSWORD, password),
+                    collector) {
+                @Override
+                void onCompleted() {
+                }
+
+                @Override
+                void onFailed(final Exception exception) {
+                    /** Any command would fail anyway. */
+                    fail(exception);
+                }
+            });
+        }
+
+        try {
+            mEventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    connect();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            mFailure = new IOException(e);
+        }
+    }
+
+    /**
+     * Sends a request, without waiting for the response to the previous requests.
+     *
+     * @param request The request to send.
+     */
+    void send(final Request request) {
+        mOutbox.add(request);
+
+        if (mIsFlushScheduled.compareAndSet(false, true)) {
+            try {
+                mEventLoop.execute(mFlushTask);
+            } catch (final RejectedExecutionException e) {
+                final IOException exception = new IOException(e);
+
+                for (Request rejected = mOutbox.poll(); rejected != null;
+                        rejected = mOutbox.poll()) {
+                    rejected.onFailed(exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes the request whose response has been read entirely.
+     *
+     * @param exception The error the server responded with, null upon success.
+     */
+    private void complete(final MPDException exception) {
+        final Request request = mPending.poll();
+
+        mIsResponseStarted = false;
+        if (exception == null) {
+            request.onCompleted();
+        } else {
+            request.onFailed(exception);
+        }
+    }
+
+    private void connect() {
+        mLastActivity = System.nanoTime();
+
+        try {
+            mChannel = SocketChannel.open();
+            mChannel.configureBlocking(false);
+
+            if (mChannel.connect(mSocketAddress)) {
+                mKey = mEventLoop.register(mChannel, SelectionKey.OP_READ, this);
+            } else {
+                mKey = mEventLoop.register(mChannel, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (final IOException e) {
+            fail(e);
+        } catch (final RuntimeException e) {
+            fail(new IOException(e));
+        }
+    }
+
+    /** Writes the requests of the outbox, once the server greeting has been read. */
+    private void flush() {
+        if (mFailure != null) {
+            fail(mFailure);
+        } else if (mBanner != null) {
+            try {
+                write();
+            } catch (final IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Handles a line of the server greeting, or of the response to the oldest pending request.
+     *
+     * @param line The line read.
+     * @throws IOException Thrown if the line is not expected.
+     */
+    private void onLine(final String line) throws IOException {
+        if (mBanner == null) {
+            if (!line.startsWith(MPDConnection.MPD_RESPONSE_OK)) {
+                throw new IOException("Bogus response from server.");
+            }
+
+            mBanner = line;
+            write();
+        } else {
+            final Request request = mPending.peek();
+
+            if (request == null) {
+                throw new IOException("Unexpected response from server: " + line);
+            }
+
+            if (!mIsResponseStarted) {
+                mIsResponseStarted = true;
+                request.mHandler.onResponseStart();
+            }
+
+            if (line.startsWith(MPDConnection.MPD_RESPONSE_OK)) {
+                complete(null);
+            } else if (line.startsWith(MPDConnection.MPD_RESPONSE_ERR)) {
+                if (request.mCommand.isErrorNonfatal(MPDException.getAckErrorCode(line))) {
+                    complete(null);
+                } else {
+                    complete(new MPDException(line));
+                }
+            } else {
+                request.mHandler.onResponseLine(line);
+            }
+        }
+    }
+
+    /**
+     * Reads what is available from the socket, decoding it and handling each complete line.
+     *
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    private void read() throws IOException {
+        for (int i = 0; i < MAX_READS && mFailure == null; i++) {
+            final int count = mChannel.read(mReadBuffer);
+
+            if (count < 0) {
+                throw new EOFException("Connection lost");
+            }
+
+            if (count == 0) {
+                break;
+            }
+
+            mLastActivity = System.nanoTime();
+            mReadBuffer.flip();
+
+            CoderResult result;
+            do {
+                result = mDecoder.decode(mReadBuffer, mDecoded, false);
+                mDecoded.flip();
+
+                while (mDecoded.hasRemaining() && mFailure == null) {
+                    final char c = mDecoded.get();
+
+                    if (c == '\n') {
+                        final String line = mLine.toString();
+
+                        mLine.setLength(0);
+                        onLine(line);
+                    } else {
+                        mLine.append(c);
+                    }
+                }
+
+                mDecoded.clear();
+            } while (result.isOverflow());
+
+            /** Keeps the bytes of an incomplete character for the next read. */
+            mReadBuffer.compact();
+        }
+    }
+
+    /**
+     * Encodes the requests of the outbox and writes them, until the socket would block.
+     *
+     * @throws IOException Thrown upon error transferring command to media server.
+     */
+    private void write() throws IOException {
+        boolean isDrained = false;
+
+        while (!isDrained) {
+            if (mWriting == null) {
+                final Request request = mOutbox.poll();
+
+                if (request != null) {
+                    if (mPending.isEmpty()) {
+                        mLastActivity = System.nanoTime();
+                    }
+                    mPending.add(request);
+                    request.mIsSent = true;
+                    mWriting = CharBuffer.wrap(request.mCommand.toString());
+                    mEncoder.reset();
+                }
+            }
+
+            if (mWriting != null) {
+                mEncoder.encode(mWriting, mWriteBuffer, true);
+                if (!mWriting.hasRemaining()) {
+                    mWriting = null;
+                }
+            }
+
+            /** Writes when the buffer is full, or once there is nothing left to encode. */
+            if (mWriting != null || mOutbox.isEmpty()) {
+                mWriteBuffer.flip();
+                mChannel.write(mWriteBuffer);
+                final boolean isPartial = mWriteBuffer.hasRemaining();
+                mWriteBuffer.compact();
+
+                if (isPartial) {
+                    break;
+                }
+
+                isDrained = mWriting == null && mOutbox.isEmpty();
+            }
+        }
+
+        if (isDrained) {
+            mKey.interestOps(SelectionKey.OP_READ);
+        } else {
+            mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /** A command sent on a channel, notified upon completion on the loop thread. */
+    abstract static class Request {
+
+        final MPDCommand mCommand;
+
+        final ResponseHandler mHandler;
+
+        /** Whether the command has been written to the server. */
+        volatile boolean mIsSent;
+
+        Request(final MPDCommand command, final ResponseHandler handler) {
+            super();
+
+            mCommand = command;
+            mHandler = handler;
+        }
+
+        /** Called once the response has been read entirely. */
+        abstract void onCompleted();
+
+        /**
+         * Called if the command fails.
+         *
+         * @param exception An {@code MPDException} if the server responded with an error, an
+         *                  {@code IOException} upon a communication error.
+         */
+        abstract void onFailed(Exception exception);
+    }
+}
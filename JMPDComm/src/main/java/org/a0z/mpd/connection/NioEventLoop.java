@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A single thread multiplexing the non-blocking sockets of any number of {@link
+ * MPDConnectionNio} connections, to any number of media servers. Everything happening on a
+ * socket, connection, reading, writing and timeouts, is handled by this thread, so a controller
+ * of many media servers needs a single thread rather than a few per server.
+ *
+ * <p>Response handlers and command callbacks of the connections using this loop run on its
+ * thread, they must not block.</p>
+ */
+public final class NioEventLoop implements Closeable {
+
+    /** The maximum time spent selecting, which is also the interval between timeout checks. */
+    private static final long SELECT_TIMEOUT = 1000L;
+
+    private static final String TAG = "NioEventLoop";
+
+    private static NioEventLoop sDefault;
+
+    private final Selector mSelector;
+
+    /** Tasks submitted by other threads, run by the loop prior to selecting. */
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+
+    private final Thread mThread;
+
+    private volatile boolean mIsClosed;
+
+    /** Whether the loop has exited, tasks submitted from then on are rejected. */
+    private volatile boolean mIsExited;
+
+    /**
+     * Opens a selector and starts its thread.
+     *
+     * @throws IOException Thrown if the selector could not be opened.
+     */
+    public NioEventLoop() throws IOException {
+        super();
+
+        mSelector = Selector.open();
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, TAG);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Returns the event loop shared by the connections which were not given one.
+     *
+     * @return The default event loop.
+     * @throws IOException Thrown if the selector could not be opened.
+     */
+    public static synchronized NioEventLoop getDefault() throws IOException {
+        if (sDefault == null || sDefault.mIsClosed) {
+            sDefault = new NioEventLoop();
+        }
+
+        return sDefault;
+    }
+
+    /**
+     * Stops the loop thread, then closes every socket still registered with it.
+     */
+    @Override
+    public void close() {
+        mIsClosed = true;
+        mSelector.wakeup();
+    }
+
+    /**
+     * Runs a task on the loop thread. Tasks run in order, never from within this call, even on
+     * the loop thread. A task is either run or rejected, never dropped: a task added while the
+     * loop exits is rejected unless the last run of the tasks took it already.
+     *
+     * @param task The task to run.
+     * @throws RejectedExecutionException Thrown if this loop has been closed.
+     */
+    void execute(final Runnable task) {
+        if (mIsClosed) {
+            throw new RejectedExecutionException(TAG + " closed.");
+        }
+
+        mTasks.add(task);
+        if (mIsExited && mTasks.remove(task)) {
+            throw new RejectedExecutionException(TAG + " closed.");
+        }
+
+        if (!isInLoop()) {
+            mSelector.wakeup();
+        }
+    }
+
+    /**
+     * Whether the current thread is the loop thread.
+     *
+     * @return True if called from the loop thread, false otherwise.
+     */
+    boolean isInLoop() {
+        return Thread.currentThread().equals(mThread);
+    }
+
+    /**
+     * Whether the loop thread still runs the tasks and serves the sockets of this loop.
+     *
+     * @return True if this loop is running, false once it has been closed or its thread died.
+     */
+    boolean isRunning() {
+        return !mIsExited && mThread.isAlive();
+    }
+
+    /**
+     * Registers a socket with the selector of this loop, must be called from the loop thread.
+     *
+     * @param channel The socket to register.
+     * @param ops     The initial interest set.
+     * @param owner   The channel notified when the socket is ready.
+     * @return The selection key of the socket.
+     * @throws ClosedChannelException Thrown if the socket has been closed.
+     */
+    SelectionKey register(final SelectableChannel channel, final int ops, final NioChannel owner)
+            throws ClosedChannelException {
+        return channel.register(mSelector, ops, owner);
+    }
+
+    private void closeChannels() {
+        /**
+         * Tasks submitted from now on are rejected, those submitted before run while the
+         * selector is still open, so a socket they register is closed with the others.
+         */
+        mIsExited = true;
+        runTasks();
+
+        for (final SelectionKey key : new ArrayList<>(mSelector.keys())) {
+            ((NioChannel) key.attachment()).fail(new IOException(TAG + " closed."));
+        }
+
+        try {
+            mSelector.close();
+        } catch (final IOException e) {
+            Log.warning(TAG, "Failed to close the selector.", e);
+        }
+    }
+
+    private void runLoop() {
+        long lastTimeoutCheck = System.nanoTime();
+
+        while (!mIsClosed) {
+            runTasks();
+
+            try {
+                if (mTasks.isEmpty()) {
+                    mSelector.select(SELECT_TIMEOUT);
+                } else {
+                    mSelector.selectNow();
+                }
+            } catch (final IOException e) {
+                Log.error(TAG, "Selector failed.", e);
+                mIsClosed = true;
+                break;
+            }
+
+            final Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                final SelectionKey key = iterator.next();
+
+                iterator.remove();
+                ((NioChannel) key.attachment()).onReady(key);
+            }
+
+            final long now = System.nanoTime();
+            if (now - lastTimeoutCheck >= SELECT_TIMEOUT * 1000000L) {
+                lastTimeoutCheck = now;
+                /** A copy, as a timeout may lead to a new socket being registered. */
+                for (final SelectionKey key : new ArrayList<>(mSelector.keys())) {
+                    ((NioChannel) key.attachment()).checkTimeout(now);
+                }
+            }
+        }
+
+        closeChannels();
+    }
+
+    private void runTasks() {
+        for (Runnable task = mTasks.poll(); task != null; task = mTasks.poll()) {
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                Log.error(TAG, "Task failed.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.MPDCommand;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A socket connected to the media server, with its reader and writer, owned by a
+ * {@link SocketPool}. It is used by a single thread at a time, between borrowing it from the pool
+ * and returning it.
+ */
+final class PooledSocket {
+
+    private static final int CONNECTION_TIMEOUT = 10000;
+
+    /** Default buffer size for the socket reader, kept for the lifetime of the socket. */
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final String MPD_RESPONSE_ERR = "ACK";
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final long mCreationTime = System.currentTimeMillis();
+
+    private final int mId = NEXT_ID.incrementAndGet();
+
+    private final Socket mSocket = new Socket();
+
+    private String mBanner;
+
+    /** The time this socket was last borrowed, while in use. */
+    private long mBorrowNanos;
+
+    private volatile long mBusyNanos;
+
+    private volatile long mCommandCount;
+
+    private volatile boolean mIsInUse;
+
+    private volatile long mLastUsedNanos = System.nanoTime();
+
+    private volatile long mLastUsedTime = mCreationTime;
+
+    private BufferedReader mReader;
+
+    private volatile long mUseCount;
+
+    private OutputStreamWriter mWriter;
+
+    /**
+     * Connects to the media server, then sends the password if any.
+     *
+     * @param socketAddress    The host/port pair of the media server.
+     * @param password         The MPD protocol password to pass upon connection, may be null.
+     * @param readWriteTimeout The read write timeout for this socket.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if the password was rejected.
+     */
+    void connect(final InetSocketAddress socketAddress, final String password,
+            final int readWriteTimeout) throws IOException, MPDException {
+        mSocket.setSoTimeout(readWriteTimeout);
+        mSocket.connect(socketAddress, CONNECTION_TIMEOUT);
+
+        // This reader is kept for the lifetime of the socket, so no buffered data is lost.
+        mReader = new BufferedReader(new InputStreamReader(mSocket.getInputStream(), "UTF-8"),
+                DEFAULT_BUFFER_SIZE);
+        mWriter = new OutputStreamWriter(mSocket.getOutputStream(), "UTF-8");
+        mBanner = mReader.readLine();
+
+        if (mBanner == null) {
+            throw new IOException("No response from server.");
+        }
+
+        /** Protocol says OK will begin the session, otherwise assume IO error. */
+        if (!mBanner.startsWith(MPDConnection.MPD_RESPONSE_OK)) {
+            throw new IOException("Bogus response from server.");
+        }
+
+        /**
+         * The password is sent directly, rather than through the connection, as this socket is
+         * not yet available to any command.
+         */
+        if (password != null) {
+            write(new MPDCommand(MPDCommand.MPD_CMD_PASSWORD, password));
+            readEmptyResponse();
+        }
+    }
+
+    void close() {
+        try {
+            mSocket.close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * The initial response from the media server upon connection.
+     *
+     * @return The media server greeting, including the protocol version.
+     */
+    String getBanner() {
+        return mBanner;
+    }
+
+    /**
+     * The time elapsed since this socket was last returned to the pool.
+     *
+     * @return The idle time of this socket, in nanoseconds.
+     */
+    long getIdleNanos() {
+        return System.nanoTime() - mLastUsedNanos;
+    }
+
+    SocketMetrics getMetrics() {
+        long busyNanos = mBusyNanos;
+
+        if (mIsInUse) {
+            busyNanos += System.nanoTime() - mBorrowNanos;
+        }
+
+        return new SocketMetrics(mId, mCreationTime, mLastUsedTime, mUseCount, mCommandCount,
+                TimeUnit.NANOSECONDS.toMillis(busyNanos), mIsInUse);
+    }
+
+    BufferedReader getReader() {
+        return mReader;
+    }
+
+    boolean isClosed() {
+        return mSocket.isClosed();
+    }
+
+    /** Marks this socket as borrowed from the pool. */
+    void onBorrowed() {
+        mBorrowNanos = System.nanoTime();
+        mUseCount++;
+        mIsInUse = true;
+    }
+
+    /** Marks this socket as returned to the pool. */
+    void onReturned() {
+        final long now = System.nanoTime();
+
+        mBusyNanos += now - mBorrowNanos;
+        mLastUsedNanos = now;
+        mLastUsedTime = System.currentTimeMillis();
+        mIsInUse = false;
+    }
+
+    /**
+     * Checks this socket with the {@code ping} command.
+     *
+     * @return True if the media server answered, false otherwise.
+     */
+    boolean ping() {
+        boolean isAlive;
+
+        try {
+            write(new MPDCommand(MPDCommand.MPD_CMD_PING));
+            readEmptyResponse();
+            isAlive = true;
+        } catch (final IOException | MPDException ignored) {
+            isAlive = false;
+        }
+
+        return isAlive;
+    }
+
+    /**
+     * Reads the response to a command which has no response data.
+     *
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if the media server responded with an error.
+     */
+    private void readEmptyResponse() throws IOException, MPDException {
+        final String line = mReader.readLine();
+
+        if (line == null) {
+            throw new IOException("Connection lost");
+        } else if (line.startsWith(MPD_RESPONSE_ERR)) {
+            throw new MPDException(line);
+        } else if (!line.startsWith(MPDConnection.MPD_RESPONSE_OK)) {
+            throw new IOException("Unexpected response from server: " + line);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledSocket " + mId;
+    }
+
+    /**
+     * Sends a command to the server.
+     *
+     * @param command The command to send.
+     * @throws IOException Thrown upon error transferring command to media server.
+     */
+    void write(final MPDCommand command) throws IOException {
+        mCommandCount++;
+        mWriter.write(command.toString());
+        mWriter.flush();
+    }
+}
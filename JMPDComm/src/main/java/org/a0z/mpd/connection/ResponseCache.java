@@ -0,0 +1,559 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.MPDCommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of the responses of database, queue, stored playlist and sticker queries, such as
+ * {@code list}, {@code find}, {@code lsinfo} or {@code count}, so browsing back to a view does
+ * not query the media server again.
+ *
+ * <p>Entries are keyed by the command, as sent to the server, and kept in least recently used
+ * order up to a maximum size, estimated from the length of their response lines. Each entry
+ * depends on the idle subsystems its command reads, and is dropped as soon as one of them
+ * changes, as reported by the {@link org.a0z.mpd.MPDStatusMonitor} through
+ * {@link #invalidate(String)}, or as a command modifying it is sent through the connection.
+ * Responses are only cached for the subsystems the status monitor is watching, as the cache could
+ * not tell when others become stale.</p>
+ *
+ * <p>Commands sent asynchronously, through a command pipeline, bypass the cache.</p>
+ *
+ * @see MPDConnection#setResponseCache(ResponseCache)
+ */
+public class ResponseCache {
+
+    private static final int DATABASE = 1;
+
+    private static final int PLAYLIST = 1 << 1;
+
+    private static final int STICKER = 1 << 2;
+
+    private static final int STORED_PLAYLIST = 1 << 3;
+
+    private static final int ALL_SUBSYSTEMS = DATABASE | PLAYLIST | STICKER | STORED_PLAYLIST;
+
+    private static final String COMMAND_LIST_PREFIX = "command_list_";
+
+    /** The estimated size of an entry, besides its key and lines. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /** The estimated size of a response line, besides its characters. */
+    private static final int LINE_OVERHEAD = 40;
+
+    /** The share of the cache a single entry may take up at most. */
+    private static final int MAX_ENTRY_SHARE = 8;
+
+    /** The subsystems the response of each cacheable command depends on. */
+    private static final Map<String, Integer> READ_COMMANDS = new HashMap<>();
+
+    private static final String STICKER_COMMAND = "sticker";
+
+    /** The subsystems modified by each command which is not itself cacheable. */
+    private static final Map<String, Integer> WRITE_COMMANDS = new HashMap<>();
+
+    /** Entries in access order, the least recently used first. */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long mMaxSize;
+
+    private long mEvictionCount = 0L;
+
+    /** Incremented as entries are invalidated, so responses read meanwhile are not stored. */
+    private long mGeneration = 0L;
+
+    private long mHitCount = 0L;
+
+    private long mInvalidationCount = 0L;
+
+    private long mMissCount = 0L;
+
+    private long mSize = 0L;
+
+    /** The subsystems watched by the status monitor, responses depending on others are not kept. */
+    private int mWatchedSubsystems = 0;
+
+    static {
+        /** Whole database listings are left out, they would only be recorded to be discarded. */
+        for (final String command : new String[]{MPDCommand.MPD_CMD_COUNT,
+                MPDCommand.MPD_CMD_FIND, MPDCommand.MPD_CMD_LIST_TAG, MPDCommand.MPD_CMD_SEARCH}) {
+            READ_COMMANDS.put(command, Integer.valueOf(DATABASE));
+        }
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_LSDIR, Integer.valueOf(DATABASE | STORED_PLAYLIST));
+        for (final String command : new String[]{"playlistfind", "playlistid", "playlistinfo",
+                "playlistsearch"}) {
+            READ_COMMANDS.put(command, Integer.valueOf(PLAYLIST));
+        }
+        for (final String command : new String[]{"listplaylist",
+                MPDCommand.MPD_CMD_PLAYLIST_INFO, MPDCommand.MPD_CMD_LISTPLAYLISTS}) {
+            READ_COMMANDS.put(command, Integer.valueOf(STORED_PLAYLIST));
+        }
+
+        for (final String command : new String[]{"add", "addid", "addtagid", "clear",
+                "cleartagid", "delete", "deleteid", MPDCommand.MPD_CMD_FIND_ADD, "load", "move",
+                "moveid", "prio", "prioid", "rangeid", "searchadd", "shuffle", "swap",
+                "swapid"}) {
+            WRITE_COMMANDS.put(command, Integer.valueOf(PLAYLIST));
+        }
+        for (final String command : new String[]{MPDCommand.MPD_CMD_PLAYLIST_ADD,
+                "playlistclear", MPDCommand.MPD_CMD_PLAYLIST_DEL,
+                MPDCommand.MPD_CMD_PLAYLIST_MOVE, "rename", "rm", "save",
+                MPDCommand.MPD_CMD_SEARCH_ADD_PLAYLIST}) {
+            WRITE_COMMANDS.put(command, Integer.valueOf(STORED_PLAYLIST));
+        }
+    }
+
+    /**
+     * Sole constructor.
+     *
+     * @param maxSize The maximum size of the cached responses, approximately, in bytes.
+     */
+    public ResponseCache(final long maxSize) {
+        super();
+
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Estimates the memory used by a response line.
+     *
+     * @param line The response line.
+     * @return The estimated size of the line, in bytes.
+     */
+    private static long getSize(final String line) {
+        return (long) (line.length() * 2 + LINE_OVERHEAD);
+    }
+
+    /**
+     * Retrieves the bit of an idle subsystem.
+     *
+     * @param subsystem The idle subsystem name, as sent by the media server.
+     * @return The bit of the subsystem, 0 if responses never depend on it.
+     */
+    private static int getSubsystem(final String subsystem) {
+        final int bit;
+
+        switch (subsystem) {
+            case "database":
+                bit = DATABASE;
+                break;
+            case "playlist":
+                bit = PLAYLIST;
+                break;
+            case "sticker":
+                bit = STICKER;
+                break;
+            case "stored_playlist":
+                bit = STORED_PLAYLIST;
+                break;
+            default:
+                bit = 0;
+                break;
+        }
+
+        return bit;
+    }
+
+    /**
+     * Checks whether a {@code sticker} command line only reads stickers.
+     *
+     * @param line The command line.
+     * @return True for {@code sticker get}, {@code sticker list} and {@code sticker find}.
+     */
+    private static boolean isStickerRead(final String line) {
+        final String subcommand = line.substring(STICKER_COMMAND.length()).trim();
+
+        return subcommand.startsWith("\"get\"") || subcommand.startsWith("\"list\"") ||
+                subcommand.startsWith("\"find\"");
+    }
+
+    /**
+     * Drops all entries, such as when idle events may have been missed.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mSize = 0L;
+        mGeneration++;
+    }
+
+    /**
+     * The number of responses dropped to make room for others.
+     *
+     * @return The number of evicted responses.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * The number of commands answered from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * The number of responses dropped as the subsystem they depend on changed.
+     *
+     * @return The number of invalidated responses.
+     */
+    public synchronized long getInvalidationCount() {
+        return mInvalidationCount;
+    }
+
+    /**
+     * The maximum size of the cached responses.
+     *
+     * @return The maximum size, in bytes.
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * The number of cacheable commands sent to the server, as they were not in the cache.
+     *
+     * @return The number of cache misses.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * The number of cached responses.
+     *
+     * @return The number of cached responses.
+     */
+    public synchronized int getResponseCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * The estimated size of the cached responses.
+     *
+     * @return The size of the cached responses, in bytes.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Drops the responses depending on an idle subsystem.
+     *
+     * @param subsystem The idle subsystem which changed, as sent by the media server.
+     */
+    public void invalidate(final String subsystem) {
+        invalidate(getSubsystem(subsystem));
+    }
+
+    private synchronized void invalidate(final int subsystems) {
+        if (subsystems != 0) {
+            final Iterator<Entry> iterator = mEntries.values().iterator();
+
+            while (iterator.hasNext()) {
+                final Entry entry = iterator.next();
+
+                if ((entry.mSubsystems & subsystems) != 0) {
+                    iterator.remove();
+                    mSize -= entry.mSize;
+                    mInvalidationCount++;
+                }
+            }
+            mGeneration++;
+        }
+    }
+
+    /**
+     * Prepares the cache lookup of a command.
+     *
+     * @param command The command about to be sent.
+     * @return The request for the command, null if the command neither reads nor modifies
+     * anything cached.
+     */
+    Request newRequest(final MPDCommand command) {
+        final String key = command.toString();
+        int reads = 0;
+        int writes = 0;
+        boolean isCacheable = true;
+
+        /** A command list is cacheable if all of its commands are. */
+        for (final String line : key.split("\n")) {
+            if (!line.startsWith(COMMAND_LIST_PREFIX)) {
+                final int space = line.indexOf(' ');
+                final String name = space == -1 ? line : line.substring(0, space);
+                Integer read = READ_COMMANDS.get(name);
+                Integer write = WRITE_COMMANDS.get(name);
+
+                if (STICKER_COMMAND.equals(name)) {
+                    if (isStickerRead(line)) {
+                        read = Integer.valueOf(STICKER);
+                    } else {
+                        write = Integer.valueOf(STICKER);
+                    }
+                }
+
+                if (read == null) {
+                    isCacheable = false;
+                } else {
+                    reads |= read.intValue();
+                }
+                if (write != null) {
+                    writes |= write.intValue();
+                }
+            }
+        }
+
+        Request request = null;
+        synchronized (this) {
+            if (isCacheable && (reads & ~mWatchedSubsystems) == 0) {
+                final Entry entry = mEntries.get(key);
+
+                if (entry == null) {
+                    mMissCount++;
+                    request = new Request(key, reads, 0, null, mGeneration);
+                } else {
+                    mHitCount++;
+                    request = new Request(key, reads, 0, entry.mLines, mGeneration);
+                }
+            } else if (writes != 0) {
+                request = new Request(null, 0, writes, null, mGeneration);
+            }
+        }
+
+        return request;
+    }
+
+    /**
+     * Stores a response, evicting the least recently used ones as needed.
+     *
+     * @param request The request the response was read for.
+     * @param lines   The response lines.
+     * @param size    The estimated size of the response lines.
+     */
+    private synchronized void put(final Request request, final List<String> lines,
+            final long size) {
+        /** Subsystems may have changed while the response was read. */
+        if (request.mGeneration == mGeneration &&
+                (request.mReads & ~mWatchedSubsystems) == 0) {
+            final Entry entry = new Entry(Collections.unmodifiableList(lines),
+                    request.mReads, size + (long) (request.mKey.length() * 2 + ENTRY_OVERHEAD));
+            final Entry previous = mEntries.put(request.mKey, entry);
+
+            if (previous != null) {
+                mSize -= previous.mSize;
+            }
+            mSize += entry.mSize;
+
+            final Iterator<Entry> iterator = mEntries.values().iterator();
+            while (mSize > mMaxSize && iterator.hasNext()) {
+                mSize -= iterator.next().mSize;
+                iterator.remove();
+                mEvictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Sets the idle subsystems watched by the status monitor, dropping all entries.
+     *
+     * @param subsystems The watched subsystems, an empty array for all subsystems, null for none.
+     */
+    public void setWatchedSubsystems(final String[] subsystems) {
+        int watched = 0;
+
+        if (subsystems != null && subsystems.length == 0) {
+            watched = ALL_SUBSYSTEMS;
+        } else if (subsystems != null) {
+            for (final String subsystem : subsystems) {
+                watched |= getSubsystem(subsystem);
+            }
+        }
+
+        synchronized (this) {
+            clear();
+            mWatchedSubsystems = watched;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "responses: " + mEntries.size() +
+                ", size: " + mSize +
+                ", maxSize: " + mMaxSize +
+                ", hits: " + mHitCount +
+                ", misses: " + mMissCount +
+                ", evictions: " + mEvictionCount +
+                ", invalidations: " + mInvalidationCount;
+    }
+
+    /** A cached response. */
+    private static final class Entry {
+
+        private final List<String> mLines;
+
+        private final long mSize;
+
+        private final int mSubsystems;
+
+        Entry(final List<String> lines, final int subsystems, final long size) {
+            super();
+
+            mLines = lines;
+            mSubsystems = subsystems;
+            mSize = size;
+        }
+    }
+
+    /**
+     * The cache lookup of a command: the cached response, if any, or the recording of the
+     * response, then the invalidation of the subsystems the command modifies.
+     */
+    final class Request implements ResponseHandler {
+
+        private final long mGeneration;
+
+        /** The cache key, null if the command is not cacheable. */
+        private final String mKey;
+
+        /** The cached response, null if the response is to be read from the server. */
+        private final List<String> mLines;
+
+        private final int mReads;
+
+        private final int mWrites;
+
+        private ResponseHandler mHandler = null;
+
+        /** The lines read so far, null once the response is too large to be cached. */
+        private List<String> mRecordedLines = null;
+
+        private long mRecordedSize = 0L;
+
+        Request(final String key, final int reads, final int writes, final List<String> lines,
+                final long generation) {
+            super();
+
+            mKey = key;
+            mReads = reads;
+            mWrites = writes;
+            mLines = lines;
+            mGeneration = generation;
+        }
+
+        /**
+         * Stores the recorded response, then drops the responses depending on the subsystems
+         * the command modifies. To be called once the command has been processed, or failed.
+         *
+         * @param isCompleted True if the command completed, false if it failed.
+         */
+        void complete(final boolean isCompleted) {
+            if (isCompleted && mRecordedLines != null) {
+                put(this, mRecordedLines, mRecordedSize);
+            }
+
+            /** A failed command list may have modified them partially. */
+            invalidate(mWrites);
+        }
+
+        /**
+         * Returns the cached response.
+         *
+         * @return The cached response lines, null if the response is to be read from the server.
+         */
+        List<String> getLines() {
+            return mLines;
+        }
+
+        @Override
+        public void onResponseLine(final String line) {
+            mHandler.onResponseLine(line);
+
+            if (mRecordedLines != null) {
+                mRecordedSize += getSize(line);
+                if (mRecordedSize > mMaxSize / (long) MAX_ENTRY_SHARE) {
+                    mRecordedLines = null;
+                } else {
+                    mRecordedLines.add(line);
+                }
+            }
+        }
+
+        @Override
+        public void onResponseStart() {
+            mHandler.onResponseStart();
+
+            if (mKey != null) {
+                mRecordedLines = new ArrayList<>();
+                mRecordedSize = 0L;
+            }
+        }
+
+        /**
+         * Sets the handler of the response read from the server, which this request records
+         * the response for.
+         *
+         * @param handler The handler which will receive the response lines as they are read.
+         * @return This request, to be handed the response in place of {@code handler}.
+         */
+        ResponseHandler record(final ResponseHandler handler) {
+            mHandler = handler;
+
+            return this;
+        }
+
+        /**
+         * Hands the cached response to a handler, as if it was read from the server.
+         *
+         * @param handler The handler to receive the response, line by line.
+         * @return True if the response was cached, false if it is to be read from the server.
+         */
+        boolean replay(final ResponseHandler handler) {
+            final boolean isCached = mLines != null;
+
+            if (isCached) {
+                handler.onResponseStart();
+                for (final String line : mLines) {
+                    handler.onResponseLine(line);
+                }
+            }
+
+            return isCached;
+        }
+    }
+}
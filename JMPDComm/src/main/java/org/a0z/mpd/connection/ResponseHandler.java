@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+/**
+ * A visitor for media server responses. Implementations receive each line of a response as soon
+ * as it has been read from the connection, so large responses (such as {@code listallinfo} or
+ * {@code playlistinfo}) can be processed without first storing every line in memory.
+ *
+ * <p>Each call is made from the thread processing the command, prior to
+ * {@link MPDConnection#sendCommand(org.a0z.mpd.MPDCommand, ResponseHandler)} returning, or from
+ * the thread reading the responses of commands sent asynchronously.</p>
+ */
+public interface ResponseHandler {
+
+    /**
+     * Called immediately prior to the first line of a response. If the command is resent after
+     * a communication failure this will be called again, any state stored from the failed
+     * attempt should be discarded.
+     */
+    void onResponseStart();
+
+    /**
+     * Called for every line of the response, in order received, excluding the final
+     * {@code OK} line.
+     *
+     * @param line A line of the media server response.
+     */
+    void onResponseLine(String line);
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+/**
+ * An immutable snapshot of the usage of a socket of a {@link MPDConnection}.
+ *
+ * @see MPDConnection#getSocketMetrics()
+ */
+public final class SocketMetrics {
+
+    private final long mBusyTime;
+
+    private final long mCommandCount;
+
+    private final long mCreationTime;
+
+    private final int mId;
+
+    private final boolean mIsInUse;
+
+    private final long mLastUsedTime;
+
+    private final long mUseCount;
+
+    SocketMetrics(final int id, final long creationTime, final long lastUsedTime,
+            final long useCount, final long commandCount, final long busyTime,
+            final boolean isInUse) {
+        super();
+
+        mId = id;
+        mCreationTime = creationTime;
+        mLastUsedTime = lastUsedTime;
+        mUseCount = useCount;
+        mCommandCount = commandCount;
+        mBusyTime = busyTime;
+        mIsInUse = isInUse;
+    }
+
+    /**
+     * The total time this socket has been borrowed for, in milliseconds.
+     *
+     * @return The time this socket has been in use, in milliseconds.
+     */
+    public long getBusyTime() {
+        return mBusyTime;
+    }
+
+    /**
+     * The number of commands sent on this socket, including health checks.
+     *
+     * @return The number of commands sent on this socket.
+     */
+    public long getCommandCount() {
+        return mCommandCount;
+    }
+
+    /**
+     * The time this socket connected.
+     *
+     * @return The time this socket connected, in milliseconds since the epoch.
+     */
+    public long getCreationTime() {
+        return mCreationTime;
+    }
+
+    /**
+     * An identifier of this socket, unique within the process.
+     *
+     * @return The socket identifier.
+     */
+    public int getId() {
+        return mId;
+    }
+
+    /**
+     * The time this socket was last returned to the pool.
+     *
+     * @return The time this socket was last used, in milliseconds since the epoch.
+     */
+    public long getLastUsedTime() {
+        return mLastUsedTime;
+    }
+
+    /**
+     * The number of times this socket has been borrowed from the pool.
+     *
+     * @return The number of times this socket has been borrowed.
+     */
+    public long getUseCount() {
+        return mUseCount;
+    }
+
+    /**
+     * Whether this socket is currently borrowed from the pool.
+     *
+     * @return True if this socket is in use, false if it is idle.
+     */
+    public boolean isInUse() {
+        return mIsInUse;
+    }
+
+    @Override
+    public String toString() {
+        return "id: " + mId +
+                ", creationTime: " + mCreationTime +
+                ", lastUsedTime: " + mLastUsedTime +
+                ", useCount: " + mUseCount +
+                ", commandCount: " + mCommandCount +
+                ", busyTime: " + mBusyTime +
+                ", inUse: " + mIsInUse;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.Log;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of sockets to a media server, shared by every command of a connection. Sockets
+ * are borrowed for a single command, then returned, or invalidated upon a communication error.
+ *
+ * <p>Sockets idle for longer than {@link #EVICTION_IDLE_TIME} are closed, down to the minimum
+ * socket count, as the media server closes idle connections itself (after a minute, by default).
+ * The eviction is scheduled once a socket beyond the minimum is returned, so sockets opened for a
+ * burst of commands are closed even if no command follows.
+ * Sockets idle for longer than {@link #VALIDATION_IDLE_TIME} are checked with {@code ping} prior
+ * to being borrowed.</p>
+ */
+final class SocketPool {
+
+    /** The idle time after which a socket beyond the minimum socket count is closed. */
+    static final long EVICTION_IDLE_TIME = TimeUnit.SECONDS.toNanos(30L);
+
+    /** The idle time after which a socket is checked prior to being borrowed. */
+    static final long VALIDATION_IDLE_TIME = TimeUnit.SECONDS.toNanos(10L);
+
+    /** The debug flag to enable or disable debug logging output. */
+    private static final boolean DEBUG = false;
+
+    private static final String TAG = "SocketPool";
+
+    /** Runs the evictions of every pool, its thread only lives while an eviction is scheduled. */
+    private static final ScheduledThreadPoolExecutor EVICTION_EXECUTOR = newEvictionExecutor();
+
+    /** Evicts the idle sockets, then schedules the next eviction if needed. */
+    private final Runnable mEvictionTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                mEviction = null;
+                evictIdleSockets();
+                scheduleEviction();
+            }
+        }
+    };
+
+    /** Idle sockets, the most recently used first. */
+    private final Deque<PooledSocket> mIdleSockets = new ArrayDeque<>();
+
+    /** Guards the state of this pool. */
+    private final Object mLock = new Object();
+
+    private final int mMaxSockets;
+
+    private final int mMinSockets;
+
+    private final String mPassword;
+
+    private final int mReadWriteTimeout;
+
+    private final InetSocketAddress mSocketAddress;
+
+    /** Every open socket, borrowed or idle. */
+    private final Collection<PooledSocket> mSockets = new ArrayList<>();
+
+    /** The number of sockets being connected, which count towards the maximum socket count. */
+    private int mConnectingCount;
+
+    /** The next eviction of idle sockets, null if none is scheduled. */
+    private ScheduledFuture<?> mEviction;
+
+    private boolean mIsClosed;
+
+    /**
+     * The constructor method. This method does not connect to the server.
+     *
+     * @param socketAddress    The host/port pair of the media server.
+     * @param password         The MPD protocol password to pass upon connection, may be null.
+     * @param readWriteTimeout The read write timeout for each socket.
+     * @param minSockets       The number of sockets kept open, even if idle.
+     * @param maxSockets       The maximum number of sockets open at one time.
+     */
+    SocketPool(final InetSocketAddress socketAddress, final String password,
+            final int readWriteTimeout, final int minSockets, final int maxSockets) {
+        super();
+
+        if (minSockets < 0 || maxSockets < 1 || minSockets > maxSockets) {
+            throw new IllegalArgumentException("Invalid socket count, min: " + minSockets +
+                    ", max: " + maxSockets);
+        }
+
+        mSocketAddress = socketAddress;
+        mPassword = password;
+        mReadWriteTimeout = readWriteTimeout;
+        mMinSockets = minSockets;
+        mMaxSockets = maxSockets;
+    }
+
+    private static ScheduledThreadPoolExecutor newEvictionExecutor() {
+        final ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, TAG);
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        executor.setKeepAliveTime(EVICTION_IDLE_TIME, TimeUnit.NANOSECONDS);
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Borrows a socket, waiting for one to be returned if the maximum socket count is reached.
+     * The socket must be returned with {@link #release(PooledSocket)} or
+     * {@link #invalidate(PooledSocket)}.
+     *
+     * @return A socket, connected to the media server.
+     * @throws IOException  Thrown upon a communication error with the server, or if the pool is
+     *                      closed.
+     * @throws MPDException Thrown if the password was rejected by the server.
+     */
+    PooledSocket borrow() throws IOException, MPDException {
+        PooledSocket socket = null;
+
+        while (socket == null) {
+            boolean isNewSocket = false;
+
+            synchronized (mLock) {
+                evictIdleSockets();
+
+                while (!mIsClosed && mIdleSockets.isEmpty() &&
+                        mSockets.size() + mConnectingCount >= mMaxSockets) {
+                    try {
+                        mLock.wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for a socket.", e);
+                    }
+                }
+
+                if (mIsClosed) {
+                    throw new IOException("Connection closed.");
+                }
+
+                if (mIdleSockets.isEmpty()) {
+                    mConnectingCount++;
+                    isNewSocket = true;
+                } else {
+                    socket = mIdleSockets.removeFirst();
+                }
+            }
+
+            if (isNewSocket) {
+                socket = connectSocket();
+            } else if (socket.getIdleNanos() > VALIDATION_IDLE_TIME && !socket.ping()) {
+                if (DEBUG) {
+                    Log.debug(TAG, socket + " failed validation.");
+                }
+                invalidate(socket);
+                socket = null;
+            }
+        }
+
+        socket.onBorrowed();
+        return socket;
+    }
+
+    /** Closes every socket, including borrowed ones, any further borrowing fails. */
+    void close() {
+        final List<PooledSocket> sockets;
+
+        synchronized (mLock) {
+            mIsClosed = true;
+            if (mEviction != null) {
+                mEviction.cancel(false);
+                mEviction = null;
+            }
+            sockets = new ArrayList<>(mSockets);
+            mSockets.clear();
+            mIdleSockets.clear();
+            mLock.notifyAll();
+        }
+
+        for (final PooledSocket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Opens a new socket, counted as connecting until done.
+     *
+     * @return The new socket.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if the password was rejected by the server.
+     */
+    private PooledSocket connectSocket() throws IOException, MPDException {
+        final PooledSocket socket = new PooledSocket();
+        boolean isConnected = false;
+
+        try {
+            socket.connect(mSocketAddress, mPassword, mReadWriteTimeout);
+            isConnected = true;
+        } finally {
+            synchronized (mLock) {
+                mConnectingCount--;
+                if (isConnected && !mIsClosed) {
+                    mSockets.add(socket);
+                } else {
+                    isConnected = false;
+                    mLock.notifyAll();
+                }
+            }
+
+            if (!isConnected) {
+                socket.close();
+            }
+        }
+
+        if (DEBUG) {
+            Log.debug(TAG, socket + " connected to " + mSocketAddress);
+        }
+
+        return socket;
+    }
+
+    /** Closes the sockets idle for too long, down to the minimum socket count. */
+    private void evictIdleSockets() {
+        final Iterator<PooledSocket> iterator = mIdleSockets.descendingIterator();
+
+        while (iterator.hasNext() && mSockets.size() > mMinSockets) {
+            final PooledSocket socket = iterator.next();
+
+            if (socket.getIdleNanos() <= EVICTION_IDLE_TIME) {
+                break;
+            }
+
+            if (DEBUG) {
+                Log.debug(TAG, "Evicting idle " + socket);
+            }
+
+            iterator.remove();
+            mSockets.remove(socket);
+            socket.close();
+        }
+    }
+
+    /**
+     * Returns the usage metrics of each open socket.
+     *
+     * @return A list of socket metrics.
+     */
+    List<SocketMetrics> getMetrics() {
+        final List<SocketMetrics> metrics;
+
+        synchronized (mLock) {
+            metrics = new ArrayList<>(mSockets.size());
+            for (final PooledSocket socket : mSockets) {
+                metrics.add(socket.getMetrics());
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Closes a borrowed socket which is no longer usable, such as after a communication error.
+     *
+     * @param socket The borrowed socket.
+     */
+    void invalidate(final PooledSocket socket) {
+        socket.close();
+
+        synchronized (mLock) {
+            mSockets.remove(socket);
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns a borrowed socket to the pool, once the response to its last command has been
+     * entirely read.
+     *
+     * @param socket The borrowed socket.
+     */
+    void release(final PooledSocket socket) {
+        boolean isClosed = false;
+
+        socket.onReturned();
+        synchronized (mLock) {
+            if (mIsClosed || socket.isClosed()) {
+                mSockets.remove(socket);
+                isClosed = true;
+            } else {
+                mIdleSockets.addFirst(socket);
+                evictIdleSockets();
+                scheduleEviction();
+            }
+            mLock.notifyAll();
+        }
+
+        if (isClosed) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Schedules the eviction of the least recently used idle socket, if there are sockets beyond
+     * the minimum socket count and no eviction is scheduled yet. Must be called with the lock.
+     */
+    private void scheduleEviction() {
+        if (!mIsClosed && mEviction == null && mSockets.size() > mMinSockets &&
+                !mIdleSockets.isEmpty()) {
+            final long delay = EVICTION_IDLE_TIME - mIdleSockets.getLast().getIdleNanos();
+
+            mEviction = EVICTION_EXECUTOR.schedule(mEvictionTask,
+                    Math.max(delay, 0L) + TimeUnit.MILLISECONDS.toNanos(1L),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+}
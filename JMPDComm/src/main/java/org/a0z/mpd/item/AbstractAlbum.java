@@ -29,6 +29,7 @@ package org.a0z.mpd.item;
 
 import org.a0z.mpd.Tools;
 
+import java.text.CollationKey;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -47,6 +48,9 @@ public abstract class AbstractAlbum extends Item {
 
     private long mSongCount;
 
+    /** The sort key, cached as albums are sorted repeatedly. */
+    private volatile CachedSortKey mSortKey;
+
     private long mYear;
 
     /**
@@ -220,6 +224,31 @@ public abstract class AbstractAlbum extends Item {
         return mName;
     }
 
+    /**
+     * Returns a key which is equal for the albums {@link #doesNameExist(Item)} matches; albums of
+     * the same name, by an artist of the same name.
+     *
+     * @return The name key of this album, {@code null} if this album has no artist.
+     */
+    @Override
+    public String getNameKey() {
+        String key = null;
+
+        if (mName != null && mArtist != null && mArtist.getName() != null) {
+            key = mName + '\0' + mArtist.getName();
+        }
+
+        return key;
+    }
+
+    @Override
+    public CollationKey getSortKey() {
+        final CachedSortKey sortKey = getSortKey(mSortKey);
+
+        mSortKey = sortKey;
+        return sortKey.getKey();
+    }
+
     public String getPath() {
         return mPath;
     }
@@ -249,6 +278,11 @@ public abstract class AbstractAlbum extends Item {
         return Arrays.hashCode(new Object[]{mName, mArtist});
     }
 
+    @Override
+    boolean isSortKeyCached() {
+        return true;
+    }
+
     public void setDuration(final long duration) {
         mDuration = duration;
     }
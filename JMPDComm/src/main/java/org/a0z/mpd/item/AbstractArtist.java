@@ -29,6 +29,7 @@ package org.a0z.mpd.item;
 
 import org.a0z.mpd.Tools;
 
+import java.text.CollationKey;
 import java.util.Arrays;
 import java.util.Locale;
 
@@ -39,6 +40,9 @@ abstract class AbstractArtist extends Item {
 
     private final String mSort;
 
+    /** The sort key, cached as artists are sorted repeatedly. */
+    private volatile CachedSortKey mSortKey;
+
     AbstractArtist(final AbstractArtist artist) {
         this(artist.mName, artist.mSort);
     }
@@ -98,6 +102,14 @@ abstract class AbstractArtist extends Item {
         return mName;
     }
 
+    @Override
+    public CollationKey getSortKey() {
+        final CachedSortKey sortKey = getSortKey(mSortKey);
+
+        mSortKey = sortKey;
+        return sortKey.getKey();
+    }
+
     /**
      * Returns an integer hash code for this Artist. By contract, any two objects for which
      * {@link #equals} returns {@code true} must return the same hash code value. This means that
@@ -111,6 +123,11 @@ abstract class AbstractArtist extends Item {
         return Arrays.hashCode(new Object[]{mName, mSort});
     }
 
+    @Override
+    boolean isSortKeyCached() {
+        return true;
+    }
+
     @Override
     public String sortText() {
         final String result;
@@ -29,11 +29,16 @@ package org.a0z.mpd.item;
 
 import org.a0z.mpd.Tools;
 
+import java.text.CollationKey;
+
 /** This class is the generic base for the Genre items, abstracted for backend. */
 abstract class AbstractGenre extends Item {
 
     private final String mName;
 
+    /** The sort key, cached as genres are sorted repeatedly. */
+    private volatile CachedSortKey mSortKey;
+
     AbstractGenre(final AbstractGenre genre) {
         super();
         mName = genre.mName;
@@ -84,6 +89,14 @@ abstract class AbstractGenre extends Item {
         return mName;
     }
 
+    @Override
+    public CollationKey getSortKey() {
+        final CachedSortKey sortKey = getSortKey(mSortKey);
+
+        mSortKey = sortKey;
+        return sortKey.getKey();
+    }
+
     /**
      * Returns an integer hash code for this Genre. By contract, any two objects for which
      * {@link #equals} returns {@code true} must return the same hash code value. This means that
@@ -96,4 +109,9 @@ abstract class AbstractGenre extends Item {
     public int hashCode() {
         return mName.hashCode();
     }
+
+    @Override
+    boolean isSortKeyCached() {
+        return true;
+    }
 }
@@ -27,20 +27,15 @@
 
 package org.a0z.mpd.item;
 
+import org.a0z.mpd.KeyValueParser;
 import org.a0z.mpd.Log;
+import org.a0z.mpd.TagPool;
 import org.a0z.mpd.Tools;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static org.a0z.mpd.Tools.KEY;
-import static org.a0z.mpd.Tools.VALUE;
 
 /**
  * Class representing a generic file/music entry in playlist, base for the Genre items, abstracted
@@ -88,13 +83,8 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
                 }
             };
 
-    /**
-     * The date response has it's own delimiter.
-     */
-    private static final Pattern DATE_DELIMITER = Pattern.compile("\\D+");
-
     /** The maximum number of key/value pairs for a music item response. */
-    private static final int MUSIC_ATTRIBUTES = 30;
+    static final int MUSIC_ATTRIBUTES = 30;
 
     private static final String TAG = "Music";
 
@@ -179,6 +169,31 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
     }
 
     static Music build(final Collection<String> response) {
+        return build(response, new KeyValueParser());
+    }
+
+    /**
+     * Builds a {@code Music} object from a media server response.
+     *
+     * @param response The media server response lines for one music item.
+     * @param parser   The parser to use for the response lines.
+     * @return A {@code Music} object built from the response.
+     */
+    static Music build(final Iterable<String> response, final KeyValueParser parser) {
+        return build(response, parser, null);
+    }
+
+    /**
+     * Builds a {@code Music} object from a media server response, sharing the album, artist,
+     * composer and genre tags with the other songs built from the same pool.
+     *
+     * @param response The media server response lines for one music item.
+     * @param parser   The parser to use for the response lines.
+     * @param pool     The pool of tags, null to create new instances.
+     * @return A {@code Music} object built from the response.
+     */
+    static Music build(final Iterable<String> response, final KeyValueParser parser,
+            final TagPool pool) {
         String album = null;
         String artist = null;
         String albumArtist = null;
@@ -195,11 +210,12 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
         int songPos = UNDEFINED_INT;
         String name = null;
 
-        for (final String[] pair : Tools.splitResponse(response)) {
+        for (final String line : response) {
+            parser.setLine(line);
 
-            switch (pair[KEY]) {
+            switch (parser.getKey()) {
                 case "file":
-                    fullPath = pair[VALUE];
+                    fullPath = parser.getValue();
                     if (!fullPath.isEmpty() && fullPath.contains("://")) {
                         final int pos = fullPath.indexOf('#');
                         if (pos > 1) {
@@ -209,44 +225,43 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
                     }
                     break;
                 case "Album":
-                    album = pair[VALUE];
+                    album = getTag(parser, pool);
                     break;
                 case "AlbumArtist":
-                    albumArtist = pair[VALUE];
+                    albumArtist = getTag(parser, pool);
                     break;
                 case "Artist":
-                    artist = pair[VALUE];
+                    artist = getTag(parser, pool);
                     break;
                 case "Composer":
-                    composer = pair[VALUE];
+                    composer = getTag(parser, pool);
                     break;
                 case "Date":
                     try {
-                        final Matcher matcher = DATE_DELIMITER.matcher(pair[VALUE]);
-                        date = Long.parseLong(matcher.replaceAll(""));
+                        date = parser.getDigitsAsLong();
                     } catch (final NumberFormatException e) {
                         Log.warning(TAG, "Not a valid date.", e);
                     }
                     break;
                 case "Disc":
-                    final int discIndex = pair[VALUE].indexOf('/');
+                    final int discIndex = parser.indexOfValue('/');
 
                     try {
                         if (discIndex == -1) {
-                            disc = Integer.parseInt(pair[VALUE]);
+                            disc = parser.getIntValue();
                         } else {
-                            disc = Integer.parseInt(pair[VALUE].substring(0, discIndex));
+                            disc = parser.getIntValue(0, discIndex);
                         }
                     } catch (final NumberFormatException e) {
                         Log.warning(TAG, "Not a valid disc number.", e);
                     }
                     break;
                 case "Genre":
-                    genre = pair[VALUE];
+                    genre = getTag(parser, pool);
                     break;
                 case "Id":
                     try {
-                        songId = Integer.parseInt(pair[VALUE]);
+                        songId = parser.getIntValue();
                     } catch (final NumberFormatException e) {
                         Log.error(TAG, "Not a valid song ID.", e);
                     }
@@ -256,35 +271,36 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
                      * name may already be assigned to the stream name in file conditional
                      */
                     if (name == null) {
-                        name = pair[VALUE];
+                        name = parser.getValue();
                     }
                     break;
                 case "Pos":
                     try {
-                        songPos = Integer.parseInt(pair[VALUE]);
+                        songPos = parser.getIntValue();
                     } catch (final NumberFormatException e) {
                         Log.error(TAG, "Not a valid song position.", e);
                     }
                     break;
                 case "Time":
                     try {
-                        time = Long.parseLong(pair[VALUE]);
+                        time = parser.getLongValue();
                     } catch (final NumberFormatException e) {
                         Log.error(TAG, "Not a valid time number.", e);
                     }
                     break;
                 case "Title":
-                    title = pair[VALUE];
+                    title = parser.getValue();
                     break;
                 case "Track":
-                    final int trackIndex = pair[VALUE].indexOf('/');
+                    final int trackIndex = parser.indexOfValue('/');
 
                     try {
                         if (trackIndex == -1) {
-                            track = Integer.parseInt(pair[VALUE]);
+                            track = parser.getIntValue();
                         } else {
-                            track = Integer.parseInt(pair[VALUE].substring(0, trackIndex));
-                            totalTracks = Integer.parseInt(pair[VALUE].substring(trackIndex + 1));
+                            track = parser.getIntValue(0, trackIndex);
+                            totalTracks = parser.getIntValue(trackIndex + 1,
+                                    parser.getValueLength());
                         }
                     } catch (final NumberFormatException e) {
                         Log.warning(TAG, "Not a valid track number.", e);
@@ -352,36 +368,40 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
 
     public static List<Music> getMusicFromList(final Collection<String> response,
             final boolean sort) {
-        final Collection<String> lineCache = new ArrayList<>(MUSIC_ATTRIBUTES);
         final int size = response.size();
-        final List<Music> result;
+        final MusicResponseHandler handler;
 
         /** This list can be pretty sizable, it's good to give a low estimate of it's size. */
         if (size > MUSIC_ATTRIBUTES) {
-            result = new ArrayList<>(size / MUSIC_ATTRIBUTES);
+            handler = new MusicResponseHandler(size / MUSIC_ATTRIBUTES);
         } else {
-            result = new ArrayList<>(0);
+            handler = new MusicResponseHandler();
         }
 
         for (final String line : response) {
-            if (line.startsWith("file: ")) {
-                if (!lineCache.isEmpty()) {
-                    result.add(build(lineCache));
-                    lineCache.clear();
-                }
-            }
-            lineCache.add(line);
+            handler.onResponseLine(line);
         }
 
-        if (!lineCache.isEmpty()) {
-            result.add(build(lineCache));
-        }
+        return handler.getMusic(sort);
+    }
 
-        if (sort) {
-            Collections.sort(result);
+    /**
+     * Reads the tag value of the current response line.
+     *
+     * @param parser The parser set to the response line.
+     * @param pool   The pool of tags, null to create a new instance.
+     * @return The tag value.
+     */
+    private static String getTag(final KeyValueParser parser, final TagPool pool) {
+        final String tag;
+
+        if (pool == null) {
+            tag = parser.getValue();
+        } else {
+            tag = parser.getValue(pool);
         }
 
-        return result;
+        return tag;
     }
 
     private static boolean isEmpty(final String s) {
@@ -790,4 +810,25 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
     public String mainText() {
         return getTitle();
     }
+
+    /**
+     * Returns this music at another position of the playlist, which spares retrieving it again
+     * from the media server after it has been moved.
+     *
+     * @param songPos The position of the music in the playlist.
+     * @return This music if it is already at {@code songPos}, a copy at {@code songPos}
+     * otherwise.
+     */
+    public Music withSongPos(final int songPos) {
+        final Music music;
+
+        if (mSongPos == songPos) {
+            music = (Music) this;
+        } else {
+            music = new Music(mAlbum, mArtist, mAlbumArtist, mComposer, mFullPath, mDisc, mDate,
+                    mGenre, mTime, mTitle, mTotalTracks, mTrack, mSongId, songPos, mName);
+        }
+
+        return music;
+    }
 }
@@ -27,8 +27,8 @@
 
 package org.a0z.mpd.item;
 
+import org.a0z.mpd.KeyValueParser;
 import org.a0z.mpd.MPDCommand;
-import org.a0z.mpd.Tools;
 import org.a0z.mpd.connection.MPDConnection;
 import org.a0z.mpd.exception.MPDException;
 
@@ -41,9 +41,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 
-import static org.a0z.mpd.Tools.KEY;
-import static org.a0z.mpd.Tools.VALUE;
-
 /**
  * A class representing a MPD protocol directory.
  *
@@ -51,6 +48,9 @@ import static org.a0z.mpd.Tools.VALUE;
  */
 public final class Directory extends Item implements FilesystemTreeEntry {
 
+    /** The prefix of the response line with the last modification time of a directory. */
+    private static final String LAST_MODIFIED_PREFIX = "Last-Modified: ";
+
     /** The MPD protocol directory separator. */
     private static final char MPD_SEPARATOR = '/';
 
@@ -75,6 +75,9 @@ public final class Directory extends Item implements FilesystemTreeEntry {
     /** A map of playlist file entries from the current directory on the media server. */
     private final Map<String, PlaylistFile> mPlaylistEntries;
 
+    /** The last modification time of this directory, as sent by the media server. */
+    private volatile String mLastModified;
+
     static {
         ROOT = new Directory(null, null);
     }
@@ -246,6 +249,18 @@ public final class Directory extends Item implements FilesystemTreeEntry {
         return fullPath;
     }
 
+    /**
+     * Retrieves the last modification time of this directory, which changes as entries are
+     * added to or removed from it, but not as entries of its subdirectories are.
+     *
+     * @return The last modification time, in ISO 8601 format as sent by the media server, null
+     * if the parent of this directory has not been refreshed.
+     * @see #refresh(org.a0z.mpd.connection.MPDConnection)
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
     /**
      * Retrieves the name of this directory.
      *
@@ -349,6 +364,7 @@ public final class Directory extends Item implements FilesystemTreeEntry {
         final List<String> response =
                 connection.sendCommand(MPDCommand.MPD_CMD_LSDIR, getFullPath());
         final Collection<String> lineCache = new ArrayList<>(cacheSize);
+        final KeyValueParser parser = new KeyValueParser();
 
         final Map<String, Directory> directoryEntries = new HashMap<>(mDirectoryEntries.size());
         final Map<String, Music> fileEntries = new HashMap<>(mFileEntries.size());
@@ -359,12 +375,18 @@ public final class Directory extends Item implements FilesystemTreeEntry {
 
             // If we hit anything we know is an item, consume the line cache
             final String line = response.get(i);
-            final String[] pair = Tools.splitResponse(line);
+            parser.setLine(line);
 
-            switch (pair[KEY]) {
+            switch (parser.getKey()) {
                 case "directory":
-                    final Directory dir = ROOT.makeChildDirectory(pair[VALUE]);
+                    final Directory dir = ROOT.makeChildDirectory(parser.getValue());
 
+                    for (final String cachedLine : lineCache) {
+                        if (cachedLine.startsWith(LAST_MODIFIED_PREFIX)) {
+                            dir.mLastModified =
+                                    cachedLine.substring(LAST_MODIFIED_PREFIX.length());
+                        }
+                    }
                     directoryEntries.put(dir.mFilename, dir);
                     lineCache.clear();
                     break;
@@ -374,13 +396,13 @@ public final class Directory extends Item implements FilesystemTreeEntry {
                     // clear immediately when we're parsing a playlist or a directory
                     lineCache.add(line);
 
-                    final Music music = Music.build(lineCache);
+                    final Music music = Music.build(lineCache, parser);
                     fileEntries.put(music.getFilename(), music);
 
                     lineCache.clear();
                     break;
                 case "playlist":
-                    final PlaylistFile playlistFile = new PlaylistFile(pair[VALUE]);
+                    final PlaylistFile playlistFile = new PlaylistFile(parser.getValue());
 
                     playlistEntries.put(playlistFile.getName(), playlistFile);
 
@@ -27,43 +27,175 @@
 
 package org.a0z.mpd.item;
 
+import java.text.CollationKey;
 import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.Set;
 
 public abstract class Item implements Comparable<Item> {
 
-    /*
-     * Merge item lists, for example received by album artist and artist
-     * requests. Sorted lists required!
+    /** Orders sort entries by key, entries without a key last. */
+    private static final Comparator<SortEntry<?>> SORT_ENTRY_ORDER =
+            new Comparator<SortEntry<?>>() {
+                @Override
+                public int compare(final SortEntry<?> lhs, final SortEntry<?> rhs) {
+                    return compareSortKeys(lhs.mKey, rhs.mKey);
+                }
+            };
+
+    /** The collator of {@link #sCollatorLocale}, which sort keys are computed with. */
+    private static volatile Collator sCollator = Collator.getInstance();
+
+    private static volatile Locale sCollatorLocale = Locale.getDefault();
+
+    /**
+     * Compares two sort keys, sorting items without a sort key behind everything else.
+     *
+     * @param lhs The first sort key, null if the item has none.
+     * @param rhs The second sort key, null if the item has none.
+     * @return A negative integer, zero, or a positive integer as the first key is less than,
+     * equal to, or greater than the second.
+     */
+    private static int compareSortKeys(final CollationKey lhs, final CollationKey rhs) {
+        final int comparisonResult;
+
+        if (lhs == null) {
+            if (rhs == null) {
+                comparisonResult = 0;
+            } else {
+                comparisonResult = 1;
+            }
+        } else if (rhs == null) {
+            comparisonResult = -1;
+        } else {
+            comparisonResult = lhs.compareTo(rhs);
+        }
+
+        return comparisonResult;
+    }
+
+    /**
+     * Compares two sort texts with the collator, sorting empty texts behind everything else, as
+     * {@link #compareSortKeys(CollationKey, CollationKey)} does, without computing their keys.
+     *
+     * @param lhs The first sort text, may be null.
+     * @param rhs The second sort text, may be null.
+     * @return A negative integer, zero, or a positive integer as the first text is less than,
+     * equal to, or greater than the second.
+     */
+    private static int compareSortTexts(final String lhs, final String rhs) {
+        final int comparisonResult;
+
+        if (lhs == null || lhs.isEmpty()) {
+            if (rhs == null || rhs.isEmpty()) {
+                comparisonResult = 0;
+            } else {
+                comparisonResult = 1;
+            }
+        } else if (rhs == null || rhs.isEmpty()) {
+            comparisonResult = -1;
+        } else {
+            final Collator collator = getCollator();
+
+            /** Collators are not thread-safe. */
+            synchronized (collator) {
+                comparisonResult = collator.compare(lhs, rhs);
+            }
+        }
+
+        return comparisonResult;
+    }
+
+    /**
+     * Returns the collator of the default locale, creating a new one if the default locale
+     * changed since the last one was created.
+     *
+     * @return The collator the sort keys are computed with.
+     */
+    private static Collator getCollator() {
+        final Locale locale = Locale.getDefault();
+        Collator collator = sCollator;
+
+        if (!locale.equals(sCollatorLocale)) {
+            collator = Collator.getInstance(locale);
+            sCollator = collator;
+            sCollatorLocale = locale;
+        }
+
+        return collator;
+    }
+
+    /**
+     * Merges item lists, for example received by album artist and artist requests. Artists also
+     * found as album artists are dropped, the album artist is kept. The lists are matched by
+     * their {@link #getNameKey() name key} in a hash set, rather than comparing every pair.
+     *
+     * @param albumArtists The items received by album artist.
+     * @param artists      The items received by artist.
+     * @param <T>          The item type.
+     * @return The merged items, sorted.
      */
     public static <T extends Item> List<T> merged(final List<T> albumArtists,
             final List<T> artists) {
-        int jStart = albumArtists.size() - 1;
-        // remove "" from albumArtists, because the Unknown
-        // AlbumArtist would fall back to an Artist, the "Unknown"
-        // Entry must come from the Artists.
-        for (int j = jStart; j >= 0; j--) { // album artists
-            if (albumArtists.get(j).getName().equals("")) {
-                albumArtists.remove(j);
-                jStart--;
+        final List<T> result = new ArrayList<>(albumArtists.size() + artists.size());
+        final Set<String> albumArtistKeys = new HashSet<>(albumArtists.size() * 2);
+
+        for (final T albumArtist : albumArtists) {
+            // remove "" from albumArtists, because the Unknown
+            // AlbumArtist would fall back to an Artist, the "Unknown"
+            // Entry must come from the Artists.
+            if (!"".equals(albumArtist.getName())) {
+                final String key = albumArtist.getNameKey();
+
+                if (key != null) {
+                    albumArtistKeys.add(key);
+                }
+                result.add(albumArtist);
             }
         }
-        for (int i = artists.size() - 1; i >= 0; i--) { // artists
-            for (int j = jStart; j >= 0; j--) { // album artists
-                if (albumArtists.get(j).doesNameExist(artists.get(i))) {
-                    jStart = j;
-                    artists.remove(i);
-                    break;
-                }
+
+        for (final T artist : artists) {
+            final String key = artist.getNameKey();
+
+            if (key == null || !albumArtistKeys.contains(key)) {
+                result.add(artist);
             }
         }
-        artists.addAll(albumArtists);
-        Collections.sort(artists);
-        return artists;
+
+        sortByName(result);
+        return result;
+    }
+
+    /**
+     * Sorts items by name, in the order of {@link #compareTo(Item)}, which most items use as
+     * their natural order. The sort key of each item is retrieved once, then the items are
+     * sorted by key and put back in the list in order.
+     *
+     * @param items The items to sort.
+     * @param <T>   The item type.
+     */
+    public static <T extends Item> void sortByName(final List<T> items) {
+        final List<SortEntry<T>> entries = new ArrayList<>(items.size());
+
+        for (final T item : items) {
+            entries.add(new SortEntry<>(item.getSortKey(), item));
+        }
+
+        Collections.sort(entries, SORT_ENTRY_ORDER);
+
+        final ListIterator<T> iterator = items.listIterator();
+        for (final SortEntry<T> entry : entries) {
+            iterator.next();
+            iterator.set(entry.mItem);
+        }
     }
 
     /**
@@ -77,20 +209,11 @@ public abstract class Item implements Comparable<Item> {
     @Override
     public int compareTo(final Item another) {
         final int comparisonResult;
-        final String sorted = sortText();
-        final String anotherSorted = another.sortText();
 
-        // sort "" behind everything else
-        if (sorted == null || sorted.isEmpty()) {
-            if (anotherSorted == null || anotherSorted.isEmpty()) {
-                comparisonResult = 0;
-            } else {
-                comparisonResult = 1;
-            }
-        } else if (anotherSorted == null || anotherSorted.isEmpty()) {
-            comparisonResult = -1;
+        if (isSortKeyCached() && another.isSortKeyCached()) {
+            comparisonResult = compareSortKeys(getSortKey(), another.getSortKey());
         } else {
-            comparisonResult = Collator.getInstance().compare(sorted, anotherSorted);
+            comparisonResult = compareSortTexts(sortText(), another.sortText());
         }
 
         return comparisonResult;
@@ -109,6 +232,57 @@ public abstract class Item implements Comparable<Item> {
 
     public abstract String getName();
 
+    /**
+     * Returns a key which is equal for the items {@link #doesNameExist(Item)} matches, so items
+     * can be matched by name in a hash table.
+     *
+     * @return The name key of this item, {@code null} if this item doesn't match any item.
+     */
+    public String getNameKey() {
+        return getName();
+    }
+
+    /**
+     * Returns the collation key of the {@link #sortText() sort text} of this item, for the
+     * collator of the default locale. The key is computed on each call, items sorted repeatedly,
+     * such as albums, artists and genres, keep it in a {@link CachedSortKey}.
+     *
+     * @return The sort key of this item, null if the sort text is empty.
+     */
+    public CollationKey getSortKey() {
+        return newSortKey(getCollator());
+    }
+
+    /**
+     * Returns a cached sort key if it was computed with the collator of the default locale,
+     * otherwise computes it again.
+     *
+     * @param cached The sort key cached by this item, null if not computed yet.
+     * @return The sort key of this item for the current collator, to be cached by this item.
+     */
+    final CachedSortKey getSortKey(final CachedSortKey cached) {
+        final Collator collator = getCollator();
+        final CachedSortKey sortKey;
+
+        if (cached != null && cached.mCollator == collator) {
+            sortKey = cached;
+        } else {
+            sortKey = new CachedSortKey(collator, newSortKey(collator));
+        }
+
+        return sortKey;
+    }
+
+    /**
+     * Whether this item caches its sort key, so comparing it by key is cheaper than collating
+     * its sort text.
+     *
+     * @return True if {@link #getSortKey()} returns a cached key, false otherwise.
+     */
+    boolean isSortKeyCached() {
+        return false;
+    }
+
     public boolean isUnknown() {
         final String name = getName();
 
@@ -144,6 +318,26 @@ public abstract class Item implements Comparable<Item> {
         return mainText;
     }
 
+    /**
+     * Computes the collation key of the {@link #sortText() sort text} of this item.
+     *
+     * @param collator The collator to compute the key with.
+     * @return The sort key of this item, null if the sort text is empty.
+     */
+    private CollationKey newSortKey(final Collator collator) {
+        final String sortText = sortText();
+        CollationKey sortKey = null;
+
+        if (sortText != null && !sortText.isEmpty()) {
+            /** Collators are not thread-safe. */
+            synchronized (collator) {
+                sortKey = collator.getCollationKey(sortText);
+            }
+        }
+
+        return sortKey;
+    }
+
     public String sortText() {
         String name = getName();
 
@@ -159,4 +353,37 @@ public abstract class Item implements Comparable<Item> {
         return mainText();
     }
 
+    /** A sort key and the collator it was computed with, which is only valid for that collator. */
+    static final class CachedSortKey {
+
+        private final Collator mCollator;
+
+        private final CollationKey mKey;
+
+        CachedSortKey(final Collator collator, final CollationKey key) {
+            super();
+
+            mCollator = collator;
+            mKey = key;
+        }
+
+        CollationKey getKey() {
+            return mKey;
+        }
+    }
+
+    /** An item decorated with its sort key, for sorting. */
+    private static final class SortEntry<T extends Item> {
+
+        private final T mItem;
+
+        private final CollationKey mKey;
+
+        SortEntry(final CollationKey key, final T item) {
+            super();
+
+            mKey = key;
+            mItem = item;
+        }
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.KeyValueParser;
+import org.a0z.mpd.TagPool;
+import org.a0z.mpd.connection.ResponseHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link ResponseHandler} which builds {@link Music} objects as a song list response is read
+ * from the media server. Only the lines of the song currently being read are kept in memory.
+ */
+public class MusicResponseHandler implements ResponseHandler {
+
+    /** The line which starts every song in a media server song list response. */
+    private static final String FILE_PREFIX = "file: ";
+
+    /** The lines of the song currently being read. */
+    private final Collection<String> mLineCache = new ArrayList<>(AbstractMusic.MUSIC_ATTRIBUTES);
+
+    private final List<Music> mMusic;
+
+    private final KeyValueParser mParser = new KeyValueParser();
+
+    /** The pool of the tags of the songs, null to create new instances. */
+    private final TagPool mPool;
+
+    public MusicResponseHandler() {
+        this(0);
+    }
+
+    /**
+     * Constructor with an expected song count, used to size the resulting list.
+     *
+     * @param expectedSize The number of songs expected in the response.
+     */
+    public MusicResponseHandler(final int expectedSize) {
+        this(expectedSize, null);
+    }
+
+    /**
+     * Constructor sharing the tags of the songs through a pool.
+     *
+     * @param expectedSize The number of songs expected in the response.
+     * @param pool         The pool of the tags of the songs, null to create new instances.
+     */
+    public MusicResponseHandler(final int expectedSize, final TagPool pool) {
+        super();
+
+        mMusic = new ArrayList<>(expectedSize);
+        mPool = pool;
+    }
+
+    /**
+     * Returns the music built from the response.
+     *
+     * @param sort If true, the music will be sorted prior to being returned.
+     * @return The music built from the response.
+     */
+    public List<Music> getMusic(final boolean sort) {
+        /** Build the final song, there is no following file line to delimit it. */
+        if (!mLineCache.isEmpty()) {
+            mMusic.add(AbstractMusic.build(mLineCache, mParser, mPool));
+            mLineCache.clear();
+        }
+
+        if (sort) {
+            Collections.sort(mMusic);
+        }
+
+        //noinspection ReturnOfCollectionOrArrayField
+        return mMusic;
+    }
+
+    @Override
+    public void onResponseLine(final String line) {
+        if (line.startsWith(FILE_PREFIX) && !mLineCache.isEmpty()) {
+            mMusic.add(AbstractMusic.build(mLineCache, mParser, mPool));
+            mLineCache.clear();
+        }
+
+        mLineCache.add(line);
+    }
+
+    @Override
+    public void onResponseStart() {
+        mLineCache.clear();
+        mMusic.clear();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.KeyValueParser;
+import org.a0z.mpd.TagPool;
+import org.a0z.mpd.connection.ResponseHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A {@link ResponseHandler} which hands each song of a song list response to a
+ * {@link MusicConsumer} as soon as it is built. Only the lines of the song currently being read
+ * are kept in memory, whatever the size of the response.
+ *
+ * <p>Directory and playlist entries, as sent by {@code lsinfo} and {@code listallinfo}, are
+ * skipped. If the command is resent after a communication failure, the songs already handed to
+ * the consumer by a previous attempt are not handed again.</p>
+ */
+public class MusicStreamHandler implements ResponseHandler {
+
+    /** The line which starts every directory entry in a media server response. */
+    private static final String DIRECTORY_PREFIX = "directory: ";
+
+    /** The line which starts every song in a media server song list response. */
+    private static final String FILE_PREFIX = "file: ";
+
+    /** The line which starts every playlist entry in a media server response. */
+    private static final String PLAYLIST_PREFIX = "playlist: ";
+
+    /** The number of songs handed to the consumer, across all attempts. */
+    private int mConsumed = 0;
+
+    private final MusicConsumer mConsumer;
+
+    /** The lines of the song currently being read, empty outside of a song entry. */
+    private final Collection<String> mLineCache = new ArrayList<>(AbstractMusic.MUSIC_ATTRIBUTES);
+
+    /** The number of songs built from the current attempt. */
+    private int mParsed = 0;
+
+    private final KeyValueParser mParser = new KeyValueParser();
+
+    /** The pool of the tags of the songs, null to create new instances. */
+    private final TagPool mPool;
+
+    /**
+     * Constructor without a pool of tags.
+     *
+     * @param consumer The consumer to hand each song to.
+     */
+    public MusicStreamHandler(final MusicConsumer consumer) {
+        this(consumer, null);
+    }
+
+    /**
+     * Constructor sharing the tags of the songs through a pool.
+     *
+     * @param consumer The consumer to hand each song to.
+     * @param pool     The pool of the tags of the songs, null to create new instances.
+     */
+    public MusicStreamHandler(final MusicConsumer consumer, final TagPool pool) {
+        super();
+
+        mConsumer = consumer;
+        mPool = pool;
+    }
+
+    /**
+     * Builds the song currently being read, handing it to the consumer unless a previous attempt
+     * did already.
+     */
+    private void consume() {
+        if (!mLineCache.isEmpty()) {
+            final Music music = AbstractMusic.build(mLineCache, mParser, mPool);
+
+            mLineCache.clear();
+            mParsed++;
+            if (mParsed > mConsumed) {
+                mConsumed = mParsed;
+                mConsumer.onMusic(music);
+            }
+        }
+    }
+
+    /**
+     * Hands the last song of the response to the consumer, there is no following entry to
+     * delimit it. To be called once the command has completed.
+     *
+     * @return The number of songs of the response.
+     */
+    public int finish() {
+        consume();
+
+        return mParsed;
+    }
+
+    @Override
+    public void onResponseLine(final String line) {
+        if (line.startsWith(FILE_PREFIX)) {
+            consume();
+            mLineCache.add(line);
+        } else if (line.startsWith(DIRECTORY_PREFIX) || line.startsWith(PLAYLIST_PREFIX)) {
+            /** The lines of these entries are not part of the song before them. */
+            consume();
+        } else if (!mLineCache.isEmpty()) {
+            mLineCache.add(line);
+        }
+    }
+
+    @Override
+    public void onResponseStart() {
+        mLineCache.clear();
+        mParsed = 0;
+    }
+}
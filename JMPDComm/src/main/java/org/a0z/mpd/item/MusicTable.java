@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.a0z.mpd.item;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A compact, columnar table of songs, for operations over a whole library such as indexing,
+ * searching or sorting. Each song is a row of a few arrays rather than an object: the album,
+ * album artist, artist, composer, genre and directory of the songs are stored as ids in a
+ * dictionary of the distinct values of the table, the title and file name as references, and
+ * the numbers as primitives. Songs sharing a value share a single instance of it, however they
+ * were retrieved, and a column can be compared by id without any string comparison.
+ *
+ * <p>Songs are only materialized as {@link Music} on request, with {@link #getMusic(int)}.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+public final class MusicTable implements MusicConsumer {
+
+    public static final int ALBUM = 0;
+
+    public static final int ALBUM_ARTIST = 1;
+
+    public static final int ARTIST = 2;
+
+    public static final int COMPOSER = 3;
+
+    /** The directory of the song, as {@link Music#getPath()}, "" for the root directory. */
+    public static final int DIRECTORY = 4;
+
+    public static final int GENRE = 5;
+
+    /** The id of a missing value. */
+    public static final int NO_VALUE = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** The number of dictionary encoded columns. */
+    private static final int ID_COLUMNS = 6;
+
+    private static final int UNDEFINED_INT = -1;
+
+    private long[] mDates;
+
+    private int[] mDiscs;
+
+    private String[] mFilenames;
+
+    /** The dictionary ids of each column, row after row. */
+    private final int[][] mIds = new int[ID_COLUMNS][];
+
+    /** The number of rows. */
+    private int mSize = 0;
+
+    /** The id of each value of the dictionary plus one, by hash, 0 for an empty slot. */
+    private int[] mSlots;
+
+    private long[] mTimes;
+
+    private String[] mTitles;
+
+    private int[] mTracks;
+
+    /** The number of values of the dictionary. */
+    private int mValueCount = 0;
+
+    /** The dictionary, by id. */
+    private String[] mValues;
+
+    public MusicTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor with an initial capacity.
+     *
+     * @param capacity The number of songs the table initially holds without growing.
+     */
+    public MusicTable(final int capacity) {
+        super();
+
+        final int rows = Math.max(capacity, 1);
+
+        for (int column = 0; column < ID_COLUMNS; column++) {
+            mIds[column] = new int[rows];
+        }
+        mDates = new long[rows];
+        mDiscs = new int[rows];
+        mFilenames = new String[rows];
+        mTimes = new long[rows];
+        mTitles = new String[rows];
+        mTracks = new int[rows];
+
+        mValues = new String[DEFAULT_CAPACITY];
+        mSlots = new int[DEFAULT_CAPACITY * 2];
+    }
+
+    private static int getSlot(final String value, final int mask) {
+        final int hash = value.hashCode();
+
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    /**
+     * Adds a song to the table.
+     *
+     * @param music The song to add.
+     * @return The row of the song.
+     */
+    public int add(final Music music) {
+        final int row = addRow();
+
+        setValue(row, ALBUM, music.getAlbum());
+        setValue(row, ALBUM_ARTIST, music.getAlbumArtist());
+        setValue(row, ARTIST, music.getArtist());
+        setValue(row, COMPOSER, music.getComposer());
+        setValue(row, GENRE, music.getGenre());
+        if (music.getFullPath() != null) {
+            setPath(row, music.getFullPath());
+        }
+        mTitles[row] = music.getTitle();
+        mDates[row] = music.getDate();
+        mTimes[row] = music.getTime();
+        mDiscs[row] = music.getDisc();
+        mTracks[row] = music.getTrack();
+
+        return row;
+    }
+
+    /**
+     * Adds a song without any value to the table, to be set with {@link #setValue(int, int,
+     * String)}, {@link #setDate(int, long)} and {@link #setTime(int, long)}.
+     *
+     * @return The row of the song.
+     */
+    public int addRow() {
+        if (mSize == mDates.length) {
+            grow();
+        }
+
+        final int row = mSize;
+        for (int column = 0; column < ID_COLUMNS; column++) {
+            mIds[column][row] = NO_VALUE;
+        }
+        mFilenames[row] = null;
+        mTitles[row] = null;
+        mDates[row] = -1L;
+        mTimes[row] = -1L;
+        mDiscs[row] = UNDEFINED_INT;
+        mTracks[row] = UNDEFINED_INT;
+        mSize++;
+
+        return row;
+    }
+
+    /**
+     * Adds a value to the dictionary, if absent.
+     *
+     * @param value The value.
+     * @return The id of the value.
+     */
+    private int addValue(final String value) {
+        int id = indexOf(value);
+
+        if (id == NO_VALUE) {
+            if (mValueCount == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mValueCount * 2);
+            }
+
+            id = mValueCount;
+            mValues[id] = value;
+            mValueCount++;
+
+            /** Keep the slots at most half full. */
+            if (mValueCount * 2 > mSlots.length) {
+                rehash(mSlots.length * 2);
+            } else {
+                putSlot(mSlots, id);
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Finds the songs with a value.
+     *
+     * @param column The column of the value, such as {@link #ARTIST}.
+     * @param value  The value to find, null to find the songs missing the value.
+     * @return The rows of the songs, in order.
+     */
+    public int[] find(final int column, final String value) {
+        final int id;
+        int[] rows = new int[0];
+
+        if (value == null) {
+            id = NO_VALUE;
+        } else {
+            id = indexOf(value);
+        }
+
+        if (value == null || id != NO_VALUE) {
+            final int[] ids = mIds[column];
+            int count = 0;
+
+            rows = new int[mSize];
+            for (int row = 0; row < mSize; row++) {
+                if (ids[row] == id) {
+                    rows[count] = row;
+                    count++;
+                }
+            }
+            rows = Arrays.copyOf(rows, count);
+        }
+
+        return rows;
+    }
+
+    public long getDate(final int row) {
+        return mDates[row];
+    }
+
+    public int getDisc(final int row) {
+        return mDiscs[row];
+    }
+
+    public String getFilename(final int row) {
+        return mFilenames[row];
+    }
+
+    /**
+     * Retrieves the full path of a song, its directory and file name.
+     *
+     * @param row The row of the song.
+     * @return The full path of the song, null if its file name is unknown.
+     */
+    public String getFullPath(final int row) {
+        final String directory = getValue(row, DIRECTORY);
+        final String fullPath;
+
+        if (directory == null || directory.isEmpty() || mFilenames[row] == null) {
+            fullPath = mFilenames[row];
+        } else {
+            fullPath = directory + '/' + mFilenames[row];
+        }
+
+        return fullPath;
+    }
+
+    /**
+     * Retrieves the dictionary id of a value of a song.
+     *
+     * @param row    The row of the song.
+     * @param column The column of the value, such as {@link #ARTIST}.
+     * @return The id of the value, {@link #NO_VALUE} if the song misses it.
+     */
+    public int getId(final int row, final int column) {
+        return mIds[column][row];
+    }
+
+    /**
+     * Builds the {@link Music} of a song.
+     *
+     * @param row The row of the song.
+     * @return A new {@code Music} object with the values of the song.
+     */
+    public Music getMusic(final int row) {
+        return new Music(getValue(row, ALBUM), getValue(row, ARTIST),
+                getValue(row, ALBUM_ARTIST), getValue(row, COMPOSER), getFullPath(row),
+                mDiscs[row], mDates[row], getValue(row, GENRE), mTimes[row], mTitles[row],
+                UNDEFINED_INT, mTracks[row], UNDEFINED_INT, UNDEFINED_INT, null);
+    }
+
+    public long getTime(final int row) {
+        return mTimes[row];
+    }
+
+    public String getTitle(final int row) {
+        return mTitles[row];
+    }
+
+    public int getTrack(final int row) {
+        return mTracks[row];
+    }
+
+    /**
+     * Retrieves a value of the dictionary.
+     *
+     * @param id The id of the value.
+     * @return The value, null for {@link #NO_VALUE}.
+     */
+    public String getValue(final int id) {
+        final String value;
+
+        if (id == NO_VALUE) {
+            value = null;
+        } else {
+            value = mValues[id];
+        }
+
+        return value;
+    }
+
+    /**
+     * Retrieves a value of a song.
+     *
+     * @param row    The row of the song.
+     * @param column The column of the value, such as {@link #ARTIST}.
+     * @return The value, null if the song misses it.
+     */
+    public String getValue(final int row, final int column) {
+        return getValue(mIds[column][row]);
+    }
+
+    /**
+     * Retrieves the number of distinct values of the table, across all dictionary encoded
+     * columns.
+     *
+     * @return The number of values of the dictionary.
+     */
+    public int getValueCount() {
+        return mValueCount;
+    }
+
+    private void grow() {
+        final int rows = mDates.length * 2;
+
+        for (int column = 0; column < ID_COLUMNS; column++) {
+            mIds[column] = Arrays.copyOf(mIds[column], rows);
+        }
+        mDates = Arrays.copyOf(mDates, rows);
+        mDiscs = Arrays.copyOf(mDiscs, rows);
+        mFilenames = Arrays.copyOf(mFilenames, rows);
+        mTimes = Arrays.copyOf(mTimes, rows);
+        mTitles = Arrays.copyOf(mTitles, rows);
+        mTracks = Arrays.copyOf(mTracks, rows);
+    }
+
+    /**
+     * Retrieves the dictionary id of a value.
+     *
+     * @param value The value.
+     * @return The id of the value, {@link #NO_VALUE} if no song of the table has it.
+     */
+    public int indexOf(final String value) {
+        final int mask = mSlots.length - 1;
+        int slot = getSlot(value, mask);
+        int id = NO_VALUE;
+
+        while (id == NO_VALUE && mSlots[slot] != 0) {
+            if (mValues[mSlots[slot] - 1].equals(value)) {
+                id = mSlots[slot] - 1;
+            } else {
+                slot = slot + 1 & mask;
+            }
+        }
+
+        return id;
+    }
+
+    @Override
+    public void onMusic(final Music music) {
+        add(music);
+    }
+
+    /**
+     * Puts the id of a value of the dictionary in the first free slot for it.
+     *
+     * @param slots The slots, by hash.
+     * @param id    The id of the value.
+     */
+    private void putSlot(final int[] slots, final int id) {
+        final int mask = slots.length - 1;
+        int slot = getSlot(mValues[id], mask);
+
+        while (slots[slot] != 0) {
+            slot = slot + 1 & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private void rehash(final int slotCount) {
+        mSlots = new int[slotCount];
+        for (int id = 0; id < mValueCount; id++) {
+            putSlot(mSlots, id);
+        }
+    }
+
+    public void setDate(final int row, final long date) {
+        mDates[row] = date;
+    }
+
+    /**
+     * Sets the directory and file name of a song from its full path, as {@link Music#getPath()}
+     * and {@link Music#getFilename()} do. Songs are mostly listed a directory after another, so
+     * the directory of the previous song is reused without creating it again.
+     *
+     * @param row      The row of the song.
+     * @param fullPath The full path of the song.
+     */
+    private void setPath(final int row, final String fullPath) {
+        final int separator = fullPath.lastIndexOf('/');
+
+        if (separator == -1 || separator == fullPath.length() - 1) {
+            setValue(row, DIRECTORY, "");
+            mFilenames[row] = fullPath;
+        } else {
+            final String previous = row == 0 ? null : getValue(row - 1, DIRECTORY);
+
+            if (previous != null && previous.length() == separator &&
+                    fullPath.startsWith(previous)) {
+                mIds[DIRECTORY][row] = mIds[DIRECTORY][row - 1];
+            } else {
+                setValue(row, DIRECTORY, fullPath.substring(0, separator));
+            }
+            mFilenames[row] = fullPath.substring(separator + 1);
+        }
+    }
+
+    public void setTime(final int row, final long time) {
+        mTimes[row] = time;
+    }
+
+    /**
+     * Sets a value of a song.
+     *
+     * @param row    The row of the song.
+     * @param column The column of the value, such as {@link #ARTIST}.
+     * @param value  The value, null if the song misses it.
+     */
+    public void setValue(final int row, final int column, final String value) {
+        if (value == null) {
+            mIds[column][row] = NO_VALUE;
+        } else {
+            mIds[column][row] = addValue(value);
+        }
+    }
+
+    /**
+     * Retrieves the number of songs of the table.
+     *
+     * @return The number of rows.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Sorts the songs by a value. Only the distinct values of the column are compared, once
+     * each, the songs are then ordered by the rank of their value.
+     *
+     * @param column     The column to sort by, such as {@link #ARTIST}.
+     * @param comparator The order of the values.
+     * @return The rows of the songs in order, songs missing the value first, songs with values
+     * equal by the comparator in row order.
+     */
+    public int[] sort(final int column, final Comparator<? super String> comparator) {
+        final int[] ids = mIds[column];
+        final boolean[] isUsed = new boolean[mValueCount];
+        int usedCount = 0;
+
+        for (int row = 0; row < mSize; row++) {
+            if (ids[row] != NO_VALUE && !isUsed[ids[row]]) {
+                isUsed[ids[row]] = true;
+                usedCount++;
+            }
+        }
+
+        final Integer[] used = new Integer[usedCount];
+        usedCount = 0;
+        for (int id = 0; id < mValueCount; id++) {
+            if (isUsed[id]) {
+                used[usedCount] = Integer.valueOf(id);
+                usedCount++;
+            }
+        }
+
+        Arrays.sort(used, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer lhs, final Integer rhs) {
+                return comparator.compare(mValues[lhs.intValue()], mValues[rhs.intValue()]);
+            }
+        });
+
+        /** Rank 0 is for the missing value, equal values share a rank. */
+        final int[] ranks = new int[mValueCount];
+        int rank = 0;
+        for (int i = 0; i < used.length; i++) {
+            if (i == 0 || comparator.compare(mValues[used[i - 1].intValue()],
+                    mValues[used[i].intValue()]) != 0) {
+                rank++;
+            }
+            ranks[used[i].intValue()] = rank;
+        }
+
+        final long[] keys = new long[mSize];
+        for (int row = 0; row < mSize; row++) {
+            final long valueRank = ids[row] == NO_VALUE ? 0L : (long) ranks[ids[row]];
+
+            keys[row] = valueRank << 32 | (long) row;
+        }
+        Arrays.sort(keys);
+
+        final int[] rows = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            rows[i] = (int) keys[i];
+        }
+
+        return rows;
+    }
+}
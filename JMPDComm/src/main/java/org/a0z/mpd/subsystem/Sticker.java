@@ -28,9 +28,9 @@
 package org.a0z.mpd.subsystem;
 
 import org.a0z.mpd.CommandQueue;
+import org.a0z.mpd.KeyValueParser;
 import org.a0z.mpd.Log;
 import org.a0z.mpd.MPDCommand;
-import org.a0z.mpd.Tools;
 import org.a0z.mpd.connection.MPDConnection;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.FilesystemTreeEntry;
@@ -43,9 +43,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static org.a0z.mpd.Tools.KEY;
-import static org.a0z.mpd.Tools.VALUE;
-
 /**
  * A class to manage the <A HREF="http://www.musicpd.org/doc/protocol/stickers.html">sticker</A>
  * subsystem of the <A HREF="http://www.musicpd.org/doc/protocol">MPD protocol</A>. This will query
@@ -164,10 +161,13 @@ public class Sticker {
      */
     private static CommandQueue getMusicCommand(final Collection<String> response) {
         final CommandQueue commandQueue = new CommandQueue();
+        final KeyValueParser parser = new KeyValueParser();
+
+        for (final String line : response) {
+            parser.setLine(line);
 
-        for (final String[] pair : Tools.splitResponse(response)) {
-            if (CMD_RESPONSE_FILE.equals(pair[KEY])) {
-                commandQueue.add(MPDCommand.MPD_CMD_LISTALL, pair[VALUE]);
+            if (parser.isKey(CMD_RESPONSE_FILE)) {
+                commandQueue.add(MPDCommand.MPD_CMD_LISTALL, parser.getValue());
             }
         }
 
@@ -234,21 +234,25 @@ public class Sticker {
             final Map<String, Music> musicPair = getMusicPair(response);
             foundStickers = new HashMap<>(musicPair.size());
             final Map<String, String> currentTrackStickers = new HashMap<>();
+            final KeyValueParser parser = new KeyValueParser();
             Music currentMusic = null;
 
-            for (final String[] sticker : Tools.splitResponse(response)) {
-                if (CMD_RESPONSE_FILE.equals(sticker[KEY])) {
+            for (final String line : response) {
+                parser.setLine(line);
+
+                if (parser.isKey(CMD_RESPONSE_FILE)) {
                     /** Clear the old map, start new! */
                     if (!foundStickers.isEmpty()) {
                         foundStickers.put(currentMusic, currentTrackStickers);
                         currentTrackStickers.clear();
                     }
 
-                    currentMusic = musicPair.get(sticker[VALUE]);
-                } else if (CMD_RESPONSE_STICKER.equals(sticker[KEY])) {
-                    final int delimiterIndex = sticker[VALUE].indexOf('=');
-                    final String stickerKey = sticker[VALUE].substring(0, delimiterIndex);
-                    final String stickerValue = sticker[VALUE].substring(delimiterIndex + 1);
+                    currentMusic = musicPair.get(parser.getValue());
+                } else if (parser.isKey(CMD_RESPONSE_STICKER)) {
+                    final int delimiterIndex = parser.indexOfValue('=');
+                    final String stickerKey = parser.getValue(0, delimiterIndex);
+                    final String stickerValue =
+                            parser.getValue(delimiterIndex + 1, parser.getValueLength());
 
                     currentTrackStickers.put(stickerKey, stickerValue);
                 }
@@ -289,11 +293,15 @@ public class Sticker {
                             entry.getFullPath());
                 }
             } else {
-                for (final String[] sticker : Tools.splitResponse(response)) {
-                    if (CMD_RESPONSE_STICKER.equals(sticker[KEY])) {
-                        final int index = sticker[VALUE].indexOf('=');
+                final KeyValueParser parser = new KeyValueParser();
+
+                for (final String line : response) {
+                    parser.setLine(line);
 
-                        foundSticker = sticker[VALUE].substring(index + 1);
+                    if (parser.isKey(CMD_RESPONSE_STICKER)) {
+                        final int index = parser.indexOfValue('=');
+
+                        foundSticker = parser.getValue(index + 1, parser.getValueLength());
                     }
                 }
             }
@@ -389,11 +397,16 @@ public class Sticker {
             } else {
                 stickers = new HashMap<>(response.size());
 
-                for (final String[] sticker : Tools.splitResponse(response)) {
-                    if (CMD_RESPONSE_STICKER.equals(sticker[KEY])) {
-                        final int delimiterIndex = sticker[VALUE].indexOf('=');
-                        final String stickerKey = sticker[VALUE].substring(0, delimiterIndex);
-                        final String stickerValue = sticker[VALUE].substring(delimiterIndex + 1);
+                final KeyValueParser parser = new KeyValueParser();
+
+                for (final String line : response) {
+                    parser.setLine(line);
+
+                    if (parser.isKey(CMD_RESPONSE_STICKER)) {
+                        final int delimiterIndex = parser.indexOfValue('=');
+                        final String stickerKey = parser.getValue(0, delimiterIndex);
+                        final String stickerValue =
+                                parser.getValue(delimiterIndex + 1, parser.getValueLength());
 
                         stickers.put(stickerKey, stickerValue);
                     }
@@ -255,8 +255,8 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
             }
         }
 
-        Collections.sort(mArtistResults);
-        Collections.sort(mAlbumResults);
+        Item.sortByName(mArtistResults);
+        Item.sortByName(mAlbumResults);
         Collections.sort(mSongResults, Music.COMPARE_WITHOUT_TRACK_NUMBER);
 
         runOnUiThread(new Runnable() {
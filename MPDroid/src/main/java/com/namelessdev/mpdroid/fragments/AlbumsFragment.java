@@ -135,11 +135,7 @@ public class AlbumsFragment extends BrowseFragment {
             }
 
             if (mGenre != null) { // filter albums not in genre
-                for (int i = mItems.size() - 1; i >= 0; i--) {
-                    if (!mApp.oMPDAsyncHelper.oMPD.isAlbumInGenre((Album) mItems.get(i), mGenre)) {
-                        mItems.remove(i);
-                    }
-                }
+                mItems = mApp.oMPDAsyncHelper.oMPD.filterAlbums((List<Album>) mItems, mGenre);
             }
         } catch (final IOException | MPDException e) {
             Log.e(TAG, "Failed to update.", e);
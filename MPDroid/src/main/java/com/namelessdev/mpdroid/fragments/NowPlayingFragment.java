@@ -48,7 +48,6 @@ import android.support.annotation.IdRes;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.widget.PopupMenuCompat;
-import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -68,7 +67,6 @@ import android.widget.SeekBar;
 import android.widget.TextView;
 
 import java.io.IOException;
-import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -129,8 +127,6 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
 
     private View.OnTouchListener mPopupMenuTouchListener = null;
 
-    private Timer mPosTimer = null;
-
     private ImageButton mRepeatButton = null;
 
     private SharedPreferences mSharedPreferences;
@@ -875,7 +871,6 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
         mApp.updateTrackInfo.removeCallback(this);
         mApp.oMPDAsyncHelper.removeStatusChangeListener(this);
         mApp.oMPDAsyncHelper.removeTrackPositionListener(this);
-        stopPosTimer();
         mApp.unsetActivity(this);
     }
 
@@ -958,13 +953,6 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
         }
     }
 
-    private void startPosTimer(final long start, final long total) {
-        stopPosTimer();
-        mPosTimer = new Timer();
-        final TimerTask posTimerTask = new PosTimerTask(start, total);
-        mPosTimer.scheduleAtFixedRate(posTimerTask, 0L, DateUtils.SECOND_IN_MILLIS);
-    }
-
     @Override
     public void stateChanged(final MPDStatus mpdStatus, final int oldState) {
         if (mActivity != null) {
@@ -982,16 +970,9 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
         }
     }
 
-    private void stopPosTimer() {
-        if (null != mPosTimer) {
-            mPosTimer.cancel();
-            mPosTimer = null;
-        }
-    }
-
     /**
-     * Toggle the track progress bar. This should be called only when the track changes, for
-     * position changes, startPosTimer() is sufficient.
+     * Toggle the track progress bar. While playing, this is called upon each tick of the
+     * playback clock, without querying the server.
      *
      * @param status A current {@code MPDStatus} object.
      */
@@ -1002,18 +983,10 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
             mSongRating.setVisibility(View.GONE);
             mTrackTime.setVisibility(View.INVISIBLE);
             mTrackTotalTime.setVisibility(View.INVISIBLE);
-            stopPosTimer();
             mTrackSeekBar.setProgress(0);
             mTrackSeekBar.setEnabled(false);
         } else {
-            final long elapsedTime = status.getElapsedTime();
-
-            if (status.isState(MPDStatus.STATE_PLAYING)) {
-                startPosTimer(elapsedTime, totalTime);
-            } else {
-                stopPosTimer();
-                updateTrackProgress(elapsedTime, totalTime);
-            }
+            updateTrackProgress(status.getElapsedTime(), totalTime);
 
             mTrackSeekBar.setMax((int) totalTime);
 
@@ -1205,37 +1178,6 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
         }
     }
 
-    /**
-     * This class runs a timer to keep the time elapsed since last track elapsed time updated for
-     * the purpose of keeping the track progress up to date without continual server polling.
-     */
-    private class PosTimerTask extends TimerTask {
-
-        private final long mTimerStartTime;
-
-        private long mElapsedTime = 0L;
-
-        private long mStartTrackTime = 0L;
-
-        private long mTotalTrackTime = 0L;
-
-        private PosTimerTask(final long start, final long total) {
-            super();
-            mStartTrackTime = start;
-            mTotalTrackTime = total;
-            mTimerStartTime = new Date().getTime();
-        }
-
-        @Override
-        public void run() {
-            final long elapsedSinceTimerStart = new Date().getTime() - mTimerStartTime;
-
-            mElapsedTime = mStartTrackTime + elapsedSinceTimerStart / DateUtils.SECOND_IN_MILLIS;
-
-            updateTrackProgress(mElapsedTime, mTotalTrackTime);
-        }
-    }
-
     private class RatingChangedHandler implements RatingBar.OnRatingBarChangeListener {
 
         @Override
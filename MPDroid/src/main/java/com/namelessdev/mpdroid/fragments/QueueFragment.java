@@ -643,8 +643,8 @@ public class QueueFragment extends ListFragment implements StatusChangeListener,
         // The position in the song list of the currently played song
         int listPlayingID = -1;
 
-        // Copy list to avoid concurrent exception
-        for (final Music music : new ArrayList<>(musics)) {
+        // The music list is an immutable snapshot, no copy is needed to iterate it
+        for (final Music music : musics) {
             if (music == null) {
                 continue;
             }
@@ -21,52 +21,36 @@ import com.namelessdev.mpdroid.R;
 import com.namelessdev.mpdroid.tools.Tools;
 
 import org.a0z.mpd.exception.MPDException;
-import org.a0z.mpd.item.Music;
 
 import android.util.Log;
 
-import java.io.BufferedOutputStream;
-import java.io.DataInput;
-import java.io.DataOutput;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
+/**
+ * A local cache of the albums of the music library of a server, kept in a {@link LibraryIndex}
+ * file, which is rebuilt when the database of the server is updated.
+ */
 public class AlbumCache {
 
-    static final boolean GZIP = false;
+    /** Previous versions serialized the cache to the file name without this suffix. */
+    private static final String INDEX_SUFFIX = ".index";
 
     private static final String TAG = "AlbumCache";
 
     protected static AlbumCache sInstance = null;
 
-    protected Map<String, AlbumDetails> mAlbumDetails; // "artist///album" ->
-
-    // list of albumname, artist, albumartist including ""
-    protected Set<List<String>> mAlbumSet;
-
     protected boolean mEnabled = true;
 
     protected File mFilesDir;
 
-    protected Date mLastUpdate = null;
+    protected LibraryIndex mIndex = null;
 
     protected CachedMPD mMPD;
 
@@ -115,116 +99,103 @@ public class AlbumCache {
 
     public String cacheInfo() {
         return "AlbumCache: " +
-                mAlbumSet.size() + " album/artist combinations, " +
-                mUniqueAlbumSet.size() + " unique album/artist combinations, " +
-                "Date: " + mLastUpdate;
+                mIndex.getAlbumCount() + " album/artist combinations, " +
+                mIndex.getSongCount() + " songs, " +
+                mIndex.getStringCount() + " distinct tags, " +
+                "Date: " + new Date(mIndex.getLastUpdate());
     }
 
     protected synchronized void deleteFile() {
-        final File file = new File(mFilesDir, getFilename());
+        final File file = getFile();
         Log.d(TAG, "Deleting " + file);
         if (file.exists()) {
             file.delete();
         }
     }
 
-    public Set<String> getAlbumArtists(final String album, final String artist) {
-        final Set<String> aartists = new HashSet<>();
-        for (final List<String> ai : mAlbumSet) {
-            if (ai.get(0).equals(album) &&
-                    ai.get(1).equals(artist)) {
-                aartists.add(ai.get(2));
-            }
-        }
-        return aartists;
+    public List<String> getAlbumArtists(final String album, final String artist) {
+        return mIndex.getAlbumArtists(album, artist);
     }
 
-    public AlbumDetails getAlbumDetails(final String artist, final String album,
+    public LibraryIndex.AlbumDetails getAlbumDetails(final String artist, final String album,
             final boolean isAlbumArtist) {
-        return mAlbumDetails.get(albumCode(artist, album, isAlbumArtist));
+        return mIndex.getAlbumDetails(artist, album, isAlbumArtist);
     }
 
     public Set<List<String>> getAlbumSet() {
-        return mAlbumSet;
+        return mIndex.getAlbumSet();
     }
 
-    public Set<String> getAlbums(final String artist, final boolean albumArtist) {
-        final Set<String> albums = new HashSet<>();
-        for (final List<String> ai : mAlbumSet) {
-            if (albumArtist && ai.get(2).equals(artist) ||
-                    !albumArtist && ai.get(1).equals(artist)) {
-                albums.add(ai.get(0));
-            }
-        }
-        return albums;
+    public List<String> getAlbums(final String artist, final boolean albumArtist) {
+        return mIndex.getAlbums(artist, albumArtist);
     }
 
     public List<String> getArtistsByAlbum(final String album, final boolean albumArtist) {
-        final Set<String> artists = new HashSet<>();
-        for (final List<String> ai : mAlbumSet) {
-            if (ai.get(0).equals(album)) {
-                if (albumArtist) {
-                    artists.add(ai.get(2));
-                } else {
-                    artists.add(ai.get(1));
-                }
-            }
-        }
-        final List<String> result;
-        if (artists != null && !artists.isEmpty()) {
-            result = new ArrayList<>(artists);
-            Collections.sort(result, String.CASE_INSENSITIVE_ORDER);
-        } else {
-            result = new ArrayList<>();
-        }
-        return result;
+        return mIndex.getArtistsByAlbum(album, albumArtist);
     }
 
     public String getDirByArtistAlbum(final String artist, final String album,
             final boolean isAlbumArtist) {
         final String albumCode = albumCode(artist, album, isAlbumArtist);
-        final String result = mAlbumDetails.get(albumCode).mPath;
+        final String result = getAlbumDetails(artist, album, isAlbumArtist).mPath;
         Log.d(TAG, "key " + albumCode + " - " + result);
         return result;
     }
 
+    protected File getFile() {
+        return new File(mFilesDir, getFilename() + INDEX_SUFFIX);
+    }
+
     protected String getFilename() {
         return mServer + '_' + mPort;
     }
 
-    public Set<List<String>> getUniqueAlbumSet() {
+    public synchronized Set<List<String>> getUniqueAlbumSet() {
+        if (mUniqueAlbumSet == null) {
+            makeUniqueAlbumSet();
+        }
         return mUniqueAlbumSet;
     }
 
+    /**
+     * The cache is up to date as long as the database of the server has not been updated
+     * since the library was indexed.
+     *
+     * @return True if the cache is up to date, false otherwise.
+     */
     protected synchronized boolean isUpToDate() {
         final Date mpdlast = mMPD.getStatistics().getDbUpdate();
-        Log.d(TAG, "lastupdate " + mLastUpdate + " mpd date " + mpdlast);
-        return (null != mLastUpdate && null != mpdlast && mLastUpdate.after(mpdlast));
+        final boolean isUpToDate;
+
+        if (mIndex == null || mpdlast == null) {
+            isUpToDate = false;
+        } else {
+            Log.d(TAG, "lastupdate " + new Date(mIndex.getDbUpdate()) + " mpd date " + mpdlast);
+            isUpToDate = mIndex.getDbUpdate() == mpdlast.getTime();
+        }
+
+        return isUpToDate;
     }
 
     protected synchronized boolean load() {
-        final File file = new File(mFilesDir, getFilename() + (GZIP ? ".gz" : ""));
+        final File file = getFile();
+        final File legacyFile = new File(mFilesDir, getFilename());
+        boolean loadedOk = false;
+
+        /** Previous versions serialized the cache, it is rebuilt as an index. */
+        if (legacyFile.exists()) {
+            legacyFile.delete();
+            new File(legacyFile.getAbsolutePath() + ".bak").delete();
+        }
+
         if (!file.exists()) {
             return false;
         }
         Log.d(TAG, "Loading " + file);
-        final ObjectInputStream restore;
-        boolean loadedOk = false;
         try {
-            if (GZIP) {
-                restore = new ObjectInputStream(new GZIPInputStream
-                        (new FileInputStream(file)));
-            } else {
-                restore = new ObjectInputStream(new FileInputStream(file));
-            }
-            mLastUpdate = (Date) restore.readObject();
-            mAlbumDetails = (Map<String, AlbumDetails>) restore.readObject();
-            mAlbumSet = (Set<List<String>>) restore.readObject();
-            restore.close();
-            makeUniqueAlbumSet();
+            setIndex(LibraryIndex.load(file));
             loadedOk = true;
-        } catch (final FileNotFoundException ignored) {
-        } catch (final Exception e) {
+        } catch (final IOException e) {
             Log.e(TAG, "Exception.", e);
         }
         if (loadedOk) {
@@ -236,8 +207,10 @@ public class AlbumCache {
     }
 
     protected void makeUniqueAlbumSet() {
-        mUniqueAlbumSet = new HashSet<>(mAlbumSet.size());
-        for (final List<String> ai : mAlbumSet) {
+        final Set<List<String>> albumSet = mIndex.getAlbumSet();
+
+        mUniqueAlbumSet = new HashSet<>(albumSet.size());
+        for (final List<String> ai : albumSet) {
             final String album = ai.get(2);
             if (album != null && album.isEmpty()) { // no albumartist
                 mUniqueAlbumSet.add(Arrays.asList(ai.get(0), ai.get(1), ""));
@@ -270,117 +243,66 @@ public class AlbumCache {
             return true;
         }
         Log.d(TAG, "Cache is NOT up to date. fetching ...");
-        mLastUpdate = Calendar.getInstance().getTime();
 
         Tools.notifyUser(R.string.updatingLocalAlbumCacheNote);
 
-        final Date oldUpdate = mLastUpdate;
-        mAlbumDetails = new HashMap<>();
-        mAlbumSet = new HashSet<>();
+        /** Retrieved first, an update while the library is listed triggers another refresh. */
+        final Date dbUpdate = mMPD.getStatistics().getDbUpdate();
+        final LibraryIndex.Builder builder = new LibraryIndex.Builder();
 
-        final List<Music> allmusic;
         try {
-            allmusic = mMPD.listAllInfo();
-            Log.d(TAG, "allmusic " + allmusic.size());
+            /** A forced refresh lists every directory again, whether it changed or not. */
+            final int listed = builder.addLibrary(mMPD, force ? null : mIndex);
+            Log.d(TAG, "Listed " + listed + " directories, " + builder.getSongCount() + " songs");
         } catch (final IOException | MPDException e) {
             mEnabled = false;
-            mLastUpdate = null;
+            setIndex(null);
             updateConnection();
             Log.d(TAG, "disabled AlbumCache", e);
-            Tools.notifyUser(
-                    "Error with the 'listallinfo' command. Probably you have to adjust your server's 'max_output_buffer_size'"
-            );
+            Tools.notifyUser("Error while listing the music library of the server.");
             return false;
         }
 
         try {
-            for (final Music music : allmusic) {
-                final String albumArtist = music.getAlbumArtist();
-                final String artist = music.getArtist();
-                String album = music.getAlbum();
-                if (album == null) {
-                    album = "";
-                }
-                final List<String> albumInfo = Arrays.asList
-                        (album, artist == null ? "" : artist,
-                                albumArtist == null ? "" : albumArtist);
-                mAlbumSet.add(albumInfo);
-
-                final boolean isAlbumArtist = albumArtist != null && !albumArtist.isEmpty();
-                final String thisAlbum =
-                        albumCode(isAlbumArtist ? albumArtist : artist, album, isAlbumArtist);
-                final AlbumDetails details;
-                if (mAlbumDetails.containsKey(thisAlbum)) {
-                    details = mAlbumDetails.get(thisAlbum);
-                } else {
-                    details = new AlbumDetails();
-                    mAlbumDetails.put(thisAlbum, details);
-                }
-                if (details.mPath == null) {
-                    details.mPath = music.getPath();
-                }
-                // if (details.times == null)
-                // details.times = new ArrayList<Long>();
-                // details.times.add((Long)m.getTime());
-                details.mNumTracks += 1;
-                details.mTotalTime += music.getTime();
-                if (details.mDate == 0) {
-                    details.mDate = music.getDate();
-                }
-            }
-            Log.d(TAG, "albumDetails: " + mAlbumDetails.size());
-            Log.d(TAG, "albumSet: " + mAlbumSet.size());
-            makeUniqueAlbumSet();
-            Log.d(TAG, "uniqueAlbumSet: " + mUniqueAlbumSet.size());
-            if (!save()) {
-                mLastUpdate = oldUpdate;
+            if (!save(builder, dbUpdate == null ? 0L : dbUpdate.getTime())) {
                 return false;
             }
         } catch (final Exception e) {
             Tools.notifyUser("Error updating Album Cache");
-            mLastUpdate = oldUpdate;
             Log.e(TAG, "Error updating Album Cache.", e);
             return false;
         }
         return true;
     }
 
-    protected synchronized boolean save() {
-        final File file = new File(mFilesDir, getFilename() + (GZIP ? ".gz" : ""));
-        Log.d(TAG, "Saving to " + file);
-        final File backupfile = new File(file.getAbsolutePath() + ".bak");
-        if (file.exists()) {
-            if (backupfile.exists()) {
-                backupfile.delete();
-            }
-            file.renameTo(backupfile);
-        }
-        final ObjectOutputStream save;
+    /**
+     * Writes the library index, then opens it in place of the current one.
+     *
+     * @param builder  The albums of the library.
+     * @param dbUpdate The database update time of the server the albums were retrieved at.
+     * @return True if the index was written and opened, false otherwise.
+     */
+    protected synchronized boolean save(final LibraryIndex.Builder builder, final long dbUpdate) {
+        final File file = getFile();
         boolean error = false;
+
+        Log.d(TAG, "Saving to " + file);
         try {
-            if (GZIP) {
-                save = new ObjectOutputStream(new GZIPOutputStream
-                        (new FileOutputStream(file)));
-            } else {
-                save = new ObjectOutputStream(new BufferedOutputStream
-                        (new FileOutputStream(file)));
-            }
-            save.writeObject(mLastUpdate);
-            save.writeObject(mAlbumDetails);
-            save.writeObject(mAlbumSet);
-            save.close();
+            builder.write(file, dbUpdate, System.currentTimeMillis());
+            setIndex(LibraryIndex.load(file));
             Log.d(TAG, "saved to " + file);
-        } catch (final Exception e) {
+        } catch (final IOException e) {
             error = true;
             Log.e(TAG, "Failed to save.", e);
         }
-        if (error) {
-            file.delete();
-            backupfile.renameTo(file);
-        }
         return !error;
     }
 
+    private void setIndex(final LibraryIndex index) {
+        mIndex = index;
+        mUniqueAlbumSet = null;
+    }
+
     protected void setMPD(final CachedMPD mpd) {
         mEnabled = true;
         try {
@@ -418,36 +340,4 @@ public class AlbumCache {
         }
         return true;
     }
-
-    static class AlbumDetails implements Serializable {
-
-        private static final long serialVersionUID = 2465675380232237273L;
-
-        long mDate = 0;
-
-        // List<Long> times = null;
-        long mNumTracks = 0;
-
-        String mPath = null;
-
-        long mTotalTime = 0;
-
-        private void readObject(final DataInput in)
-                throws IOException, ClassNotFoundException {
-            mPath = in.readUTF();
-            // times = (List<Long>)in.readObject();
-            mNumTracks = in.readLong();
-            mTotalTime = in.readLong();
-            mDate = in.readLong();
-        }
-
-        private void writeObject(final DataOutput out) throws IOException {
-            out.writeUTF(mPath);
-            // out.writeObject(times);
-            out.writeLong(mNumTracks);
-            out.writeLong(mTotalTime);
-            out.writeLong(mDate);
-        }
-    }
-
 }
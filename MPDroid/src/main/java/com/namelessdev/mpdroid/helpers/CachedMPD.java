@@ -20,6 +20,7 @@ import org.a0z.mpd.MPD;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.Album;
 import org.a0z.mpd.item.Artist;
+import org.a0z.mpd.item.Item;
 
 import android.util.Log;
 
@@ -92,7 +93,7 @@ public class CachedMPD extends MPD {
             final Artist artist = album.getArtist();
             final String artistName = getArtistName(artist);
 
-            final AlbumCache.AlbumDetails details =
+            final LibraryIndex.AlbumDetails details =
                     mCache.getAlbumDetails(artistName, album.getName(), album.hasAlbumArtist());
             if (details != null) {
                 album.setPath(details.mPath);
@@ -125,7 +126,7 @@ public class CachedMPD extends MPD {
             for (final Album album : albums) {
                 final Artist artist = album.getArtist();
                 final String artistName = getArtistName(artist);
-                final AlbumCache.AlbumDetails details;
+                final LibraryIndex.AlbumDetails details;
 
                 details =
                         mCache.getAlbumDetails(artistName, album.getName(), album.hasAlbumArtist());
@@ -177,7 +178,7 @@ public class CachedMPD extends MPD {
                 allAlbums = Collections.emptyList();
             } else {
                 allAlbums = new ArrayList<>(albums);
-                Collections.sort(allAlbums);
+                Item.sortByName(allAlbums);
                 getAlbumDetails(allAlbums, true);
             }
         } else {
@@ -213,7 +214,7 @@ public class CachedMPD extends MPD {
             albumArtists = new ArrayList<>(albums.size());
             for (final Album album : albums) {
                 final Artist artist = album.getArtist();
-                final Set<String> albumArtist;
+                final List<String> albumArtist;
                 final String artistName = getArtistName(artist);
 
                 albumArtist = mCache.getAlbumArtists(album.getName(), artistName);
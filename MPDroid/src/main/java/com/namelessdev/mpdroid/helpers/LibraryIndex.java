@@ -0,0 +1,1055 @@
+/*
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.namelessdev.mpdroid.helpers;
+
+import org.a0z.mpd.MPD;
+import org.a0z.mpd.exception.MPDException;
+import org.a0z.mpd.item.Directory;
+import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicConsumer;
+import org.a0z.mpd.item.MusicTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact index of the albums of a music library, written to a file and memory mapped to be
+ * read, so it is ready for queries as soon as it is opened, without deserializing anything.
+ *
+ * <p>The file holds a sorted dictionary of all the tag values of the library. Everything else
+ * refers to the values by their position in the dictionary: the album / artist / album artist
+ * combinations, the album details and the inverted indexes from an artist or album artist to
+ * its albums and from an album to its artists and album artists.</p>
+ *
+ * <p>The songs the albums are built from are kept too, grouped by top level directory with a
+ * fingerprint of the directory, so a later refresh only lists the directories which changed.</p>
+ */
+final class LibraryIndex {
+
+    /** The posting lists of the album artists of each album. */
+    private static final int ALBUM_ALBUM_ARTISTS = 3;
+
+    /** The posting lists of the albums of each album artist. */
+    private static final int ALBUM_ARTIST_ALBUMS = 1;
+
+    /** The posting lists of the artists of each album. */
+    private static final int ALBUM_ARTISTS = 2;
+
+    /** The posting lists of the albums of each artist. */
+    private static final int ARTIST_ALBUMS = 0;
+
+    /** Path, last modification time, first song, song count, counted songs and playtime. */
+    private static final int CHUNK_SIZE = 4 * 4 + 2 * 8;
+
+    /** Album, artist, album artist flag, path, track count, total time and date. */
+    private static final int DETAILS_SIZE = 4 * 4 + 3 * 8;
+
+    /** Magic, version, database update, last update, then the size of each section. */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 6 * 4 + 4 * 4;
+
+    /** The first bytes of an index file, "MPDI". */
+    private static final int MAGIC = 0x4D504449;
+
+    private static final int NO_STRING = -1;
+
+    private static final int POSTINGS_COUNT = 4;
+
+    /** Album, artist, album artist, path, time and date. */
+    private static final int SONG_SIZE = 4 * 4 + 2 * 8;
+
+    /** Album, artist and album artist. */
+    private static final int TUPLE_SIZE = 3 * 4;
+
+    /** The song count or playtime of a directory which could not be counted. */
+    private static final long UNKNOWN = -1L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Incremented whenever the file format changes, older files are then rebuilt. */
+    private static final int VERSION = 2;
+
+    private final ByteBuffer mBuffer;
+
+    private final int mChunkCount;
+
+    private final int mChunks;
+
+    private final long mDbUpdate;
+
+    private final int mDetails;
+
+    private final int mDetailsCount;
+
+    private final long mLastUpdate;
+
+    private final int[] mPostingOffsets = new int[POSTINGS_COUNT];
+
+    private final int[] mPostingValues = new int[POSTINGS_COUNT];
+
+    private final int mSongCount;
+
+    private final int mSongs;
+
+    private final int mStringCount;
+
+    private final int mStringData;
+
+    private final int mStringOffsets;
+
+    /** The strings of the dictionary, decoded as they are first used. */
+    private final String[] mStrings;
+
+    private final int mTupleCount;
+
+    private final int mTuples;
+
+    private LibraryIndex(final ByteBuffer buffer) throws IOException {
+        super();
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a library index.");
+        }
+
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported library index version: " + buffer.getInt(4));
+        }
+
+        mBuffer = buffer;
+        mDbUpdate = buffer.getLong(8);
+        mLastUpdate = buffer.getLong(16);
+        mStringCount = buffer.getInt(24);
+        mTupleCount = buffer.getInt(32);
+        mDetailsCount = buffer.getInt(36);
+        mChunkCount = buffer.getInt(40);
+        mSongCount = buffer.getInt(44);
+        mStrings = new String[mStringCount];
+
+        /** Sizes are summed as longs, a corrupt header could overflow an int. */
+        long position = (long) HEADER_SIZE;
+        mStringOffsets = (int) position;
+        position += (mStringCount + 1L) * 4L;
+        mStringData = (int) position;
+        position += (long) buffer.getInt(28);
+        mTuples = (int) position;
+        position += (long) mTupleCount * (long) TUPLE_SIZE;
+        mDetails = (int) position;
+        position += (long) mDetailsCount * (long) DETAILS_SIZE;
+        mChunks = (int) position;
+        position += (long) mChunkCount * (long) CHUNK_SIZE;
+        mSongs = (int) position;
+        position += (long) mSongCount * (long) SONG_SIZE;
+        for (int i = 0; i < POSTINGS_COUNT; i++) {
+            mPostingOffsets[i] = (int) position;
+            position += (mStringCount + 1L) * 4L;
+            mPostingValues[i] = (int) position;
+            position += (long) buffer.getInt(48 + i * 4) * 4L;
+        }
+
+        if (position != (long) buffer.capacity()) {
+            throw new IOException("Corrupt library index.");
+        }
+    }
+
+    /**
+     * Opens a library index file.
+     *
+     * @param file The file written by {@link Builder#write(File, long, long)}.
+     * @return The library index, mapped from the file.
+     * @throws IOException Thrown if the file cannot be read or is not a valid library index.
+     */
+    static LibraryIndex load(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        final ByteBuffer buffer;
+
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+
+            /** The mapping stays valid once the file is closed. */
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return new LibraryIndex(buffer);
+    }
+
+    /**
+     * Compares the rows of an int table, column by column.
+     *
+     * @param table   The table, row after row.
+     * @param lhs     The offset of the first row.
+     * @param rhs     The offset of the second row.
+     * @param columns The number of columns to compare.
+     * @return A negative integer, zero, or a positive integer as the first row is less than,
+     * equal to, or greater than the second.
+     */
+    private static int compareRows(final int[] table, final int lhs, final int rhs,
+            final int columns) {
+        int result = 0;
+
+        for (int i = 0; result == 0 && i < columns; i++) {
+            result = Integer.compare(table[lhs + i], table[rhs + i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Compares the first columns of a record of the index with a key.
+     *
+     * @param record The position of the record in the index.
+     * @param key    The values of the first columns of the key.
+     * @return A negative integer, zero, or a positive integer as the record is less than, equal
+     * to, or greater than the key.
+     */
+    private int compareRecord(final int record, final int[] key) {
+        int result = 0;
+
+        for (int i = 0; result == 0 && i < key.length; i++) {
+            result = Integer.compare(mBuffer.getInt(record + i * 4), key[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the first record of a sorted section of the index not less than a key.
+     *
+     * @param section The position of the section in the index.
+     * @param count   The number of records of the section.
+     * @param size    The size of each record.
+     * @param key     The values of the first columns of the key.
+     * @return The position of the record in the index, the end of the section if all records
+     * are less than the key.
+     */
+    private int findRecord(final int section, final int count, final int size, final int[] key) {
+        int low = 0;
+        int high = count;
+
+        while (low < high) {
+            final int middle = low + high >>> 1;
+
+            if (compareRecord(section + middle * size, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return section + low * size;
+    }
+
+    /**
+     * Retrieves the album artists of an album by an artist.
+     *
+     * @param album  The album name.
+     * @param artist The artist name.
+     * @return The album artists, including "" if some songs have no album artist.
+     */
+    List<String> getAlbumArtists(final String album, final String artist) {
+        final int[] key = {getId(album), getId(artist)};
+        final List<String> albumArtists = new ArrayList<>();
+
+        if (key[0] >= 0 && key[1] >= 0) {
+            final int end = mTuples + mTupleCount * TUPLE_SIZE;
+
+            for (int row = findRecord(mTuples, mTupleCount, TUPLE_SIZE, key);
+                    row < end && compareRecord(row, key) == 0; row += TUPLE_SIZE) {
+                albumArtists.add(getString(mBuffer.getInt(row + 8)));
+            }
+        }
+
+        return albumArtists;
+    }
+
+    /**
+     * Retrieves the details of an album.
+     *
+     * @param artist        The artist, or album artist, name.
+     * @param album         The album name.
+     * @param isAlbumArtist True if {@code artist} is the album artist.
+     * @return The album details, null if the album is not in the index.
+     */
+    AlbumDetails getAlbumDetails(final String artist, final String album,
+            final boolean isAlbumArtist) {
+        final int[] key = {getId(album), getId(artist), isAlbumArtist ? 1 : 0};
+        AlbumDetails details = null;
+
+        if (key[0] >= 0 && key[1] >= 0) {
+            final int record = findRecord(mDetails, mDetailsCount, DETAILS_SIZE, key);
+
+            if (record < mDetails + mDetailsCount * DETAILS_SIZE &&
+                    compareRecord(record, key) == 0) {
+                details = new AlbumDetails();
+                details.mPath = getNullableString(mBuffer.getInt(record + 12));
+                details.mNumTracks = mBuffer.getLong(record + 16);
+                details.mTotalTime = mBuffer.getLong(record + 24);
+                details.mDate = mBuffer.getLong(record + 32);
+            }
+        }
+
+        return details;
+    }
+
+    /**
+     * Retrieves the number of album / artist / album artist combinations.
+     *
+     * @return The number of album / artist / album artist combinations.
+     */
+    int getAlbumCount() {
+        return mTupleCount;
+    }
+
+    /**
+     * Retrieves the albums of an artist or album artist.
+     *
+     * @param artist      The artist, or album artist, name. With an album artist, ""
+     *                    retrieves the albums with songs without album artist.
+     * @param albumArtist True to retrieve the albums of an album artist.
+     * @return The album names.
+     */
+    List<String> getAlbums(final String artist, final boolean albumArtist) {
+        return getPostings(albumArtist ? ALBUM_ARTIST_ALBUMS : ARTIST_ALBUMS, artist);
+    }
+
+    /**
+     * Retrieves all album / artist / album artist combinations, missing tags being "".
+     *
+     * @return A set of the album, artist and album artist of each combination.
+     */
+    Set<List<String>> getAlbumSet() {
+        final Set<List<String>> albumSet = new HashSet<>(mTupleCount);
+        final int end = mTuples + mTupleCount * TUPLE_SIZE;
+
+        for (int row = mTuples; row < end; row += TUPLE_SIZE) {
+            albumSet.add(Arrays.asList(getString(mBuffer.getInt(row)),
+                    getString(mBuffer.getInt(row + 4)), getString(mBuffer.getInt(row + 8))));
+        }
+
+        return albumSet;
+    }
+
+    /**
+     * Retrieves the artists or album artists of an album.
+     *
+     * @param album       The album name.
+     * @param albumArtist True to retrieve album artists.
+     * @return The artist, or album artist, names sorted without regard to case.
+     */
+    List<String> getArtistsByAlbum(final String album, final boolean albumArtist) {
+        return getPostings(albumArtist ? ALBUM_ALBUM_ARTISTS : ALBUM_ARTISTS, album);
+    }
+
+    /**
+     * Retrieves a top level directory of the library, with its songs.
+     *
+     * @param path The path of the directory, "" for the songs of the root directory.
+     * @return The directory, null if it is not in the index.
+     */
+    Chunk getChunk(final String path) {
+        final int[] key = {getId(path)};
+        Chunk chunk = null;
+
+        if (key[0] >= 0) {
+            final int record = findRecord(mChunks, mChunkCount, CHUNK_SIZE, key);
+
+            if (record < mChunks + mChunkCount * CHUNK_SIZE && compareRecord(record, key) == 0) {
+                final int start = mSongs + mBuffer.getInt(record + 8) * SONG_SIZE;
+                final int end = start + mBuffer.getInt(record + 12) * SONG_SIZE;
+
+                chunk = new Chunk(path, getNullableString(mBuffer.getInt(record + 4)),
+                        mBuffer.getLong(record + 16), mBuffer.getLong(record + 24));
+                for (int row = start; row < end; row += SONG_SIZE) {
+                    final int song = chunk.mSongs.addRow();
+
+                    chunk.mSongs.setValue(song, MusicTable.ALBUM,
+                            getString(mBuffer.getInt(row)));
+                    chunk.mSongs.setValue(song, MusicTable.ARTIST,
+                            getString(mBuffer.getInt(row + 4)));
+                    chunk.mSongs.setValue(song, MusicTable.ALBUM_ARTIST,
+                            getString(mBuffer.getInt(row + 8)));
+                    chunk.mSongs.setValue(song, MusicTable.DIRECTORY,
+                            getNullableString(mBuffer.getInt(row + 12)));
+                    chunk.mSongs.setTime(song, mBuffer.getLong(row + 16));
+                    chunk.mSongs.setDate(song, mBuffer.getLong(row + 24));
+                }
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * The database update time of the server when the library was indexed.
+     *
+     * @return The database update time, in milliseconds since the epoch.
+     */
+    long getDbUpdate() {
+        return mDbUpdate;
+    }
+
+    /**
+     * Looks up a string in the dictionary.
+     *
+     * @param string The string to look up.
+     * @return The position of the string in the dictionary, negative if it isn't found.
+     */
+    private int getId(final String string) {
+        int id = -1;
+
+        if (string != null) {
+            int low = 0;
+            int high = mStringCount - 1;
+
+            while (low <= high && id < 0) {
+                final int middle = low + high >>> 1;
+                final int compare = getString(middle).compareTo(string);
+
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    id = middle;
+                }
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * The time the library was indexed.
+     *
+     * @return The time the library was indexed, in milliseconds since the epoch.
+     */
+    long getLastUpdate() {
+        return mLastUpdate;
+    }
+
+    private String getNullableString(final int id) {
+        final String string;
+
+        if (id == NO_STRING) {
+            string = null;
+        } else {
+            string = getString(id);
+        }
+
+        return string;
+    }
+
+    private List<String> getPostings(final int postings, final String key) {
+        final int id = getId(key);
+        final List<String> values;
+
+        if (id < 0) {
+            values = new ArrayList<>();
+        } else {
+            final int offset = mPostingOffsets[postings] + id * 4;
+            final int start = mBuffer.getInt(offset);
+            final int end = mBuffer.getInt(offset + 4);
+
+            values = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                values.add(getString(mBuffer.getInt(mPostingValues[postings] + i * 4)));
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Retrieves the number of songs of the library.
+     *
+     * @return The number of songs.
+     */
+    int getSongCount() {
+        return mSongCount;
+    }
+
+    private String getString(final int id) {
+        String string = mStrings[id];
+
+        if (string == null) {
+            final int offset = mStringOffsets + id * 4;
+            final int start = mBuffer.getInt(offset);
+            final byte[] bytes = new byte[mBuffer.getInt(offset + 4) - start];
+            final ByteBuffer buffer = mBuffer.duplicate();
+
+            buffer.position(mStringData + start);
+            buffer.get(bytes);
+            string = new String(bytes, UTF_8);
+            mStrings[id] = string;
+        }
+
+        return string;
+    }
+
+    /**
+     * Retrieves the number of distinct tag values in the dictionary.
+     *
+     * @return The number of distinct tag values.
+     */
+    int getStringCount() {
+        return mStringCount;
+    }
+
+    static final class AlbumDetails {
+
+        long mDate = 0L;
+
+        long mNumTracks = 0L;
+
+        String mPath = null;
+
+        long mTotalTime = 0L;
+    }
+
+    /**
+     * Collects the songs of a library, a top level directory at a time, then writes the library
+     * index.
+     */
+    static final class Builder {
+
+        private final List<Chunk> mChunks = new ArrayList<>();
+
+        /**
+         * Adds the album of a song to the album combinations and details.
+         *
+         * @param albumSet The album, artist and album artist combinations.
+         * @param details  The details of each album, by album, artist or album artist, and tag
+         *                 used.
+         * @param songs    The songs of a directory.
+         * @param song     The row of the song to add.
+         */
+        private static void addAlbum(final Set<List<String>> albumSet,
+                final Map<List<String>, AlbumDetails> details, final MusicTable songs,
+                final int song) {
+            final String album = getTag(songs, song, MusicTable.ALBUM);
+            final String artist = getTag(songs, song, MusicTable.ARTIST);
+            final String albumArtist = getTag(songs, song, MusicTable.ALBUM_ARTIST);
+            albumSet.add(Arrays.asList(album, artist, albumArtist));
+
+            final boolean isAlbumArtist = !albumArtist.isEmpty();
+            final List<String> key = Arrays.asList(album,
+                    isAlbumArtist ? albumArtist : artist, isAlbumArtist ? "1" : "0");
+            AlbumDetails albumDetails = details.get(key);
+
+            if (albumDetails == null) {
+                albumDetails = new AlbumDetails();
+                details.put(key, albumDetails);
+            }
+
+            if (albumDetails.mPath == null) {
+                albumDetails.mPath = songs.getValue(song, MusicTable.DIRECTORY);
+            }
+
+            albumDetails.mNumTracks += 1L;
+            albumDetails.mTotalTime += songs.getTime(song);
+            if (albumDetails.mDate == 0L) {
+                albumDetails.mDate = songs.getDate(song);
+            }
+        }
+
+        /**
+         * Builds the posting lists from the {@code key} column to the {@code value} column.
+         *
+         * @param tuples      The album, artist and album artist ids of each combination.
+         * @param key         The column of the keys.
+         * @param value       The column of the values.
+         * @param stringCount The number of strings in the dictionary, the number of keys.
+         * @return The offsets of the posting list of each key, followed by a last offset to the
+         * end of the values, then the values, distinct and sorted by id within each list.
+         */
+        private static int[][] buildPostings(final int[] tuples, final int key, final int value,
+                final int stringCount) {
+            final int tupleCount = tuples.length / 3;
+            final long[] pairs = new long[tupleCount];
+            final int[] offsets = new int[stringCount + 1];
+            int valueCount = 0;
+
+            for (int i = 0; i < tupleCount; i++) {
+                pairs[i] = (long) tuples[i * 3 + key] << 32 | (long) tuples[i * 3 + value];
+            }
+            Arrays.sort(pairs);
+
+            final int[] values = new int[tupleCount];
+            for (int i = 0; i < tupleCount; i++) {
+                if (i == 0 || pairs[i] != pairs[i - 1]) {
+                    offsets[(int) (pairs[i] >>> 32) + 1]++;
+                    values[valueCount] = (int) pairs[i];
+                    valueCount++;
+                }
+            }
+
+            for (int i = 0; i < stringCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            return new int[][]{offsets, Arrays.copyOf(values, valueCount)};
+        }
+
+        private static int getId(final Map<String, Integer> ids, final String string) {
+            final int id;
+
+            if (string == null) {
+                id = NO_STRING;
+            } else {
+                id = ids.get(string).intValue();
+            }
+
+            return id;
+        }
+
+        /**
+         * Retrieves a tag of a song, as indexed.
+         *
+         * @param songs  The songs of a directory.
+         * @param song   The row of the song.
+         * @param column The column of the tag.
+         * @return The tag, "" if the song misses it.
+         */
+        private static String getTag(final MusicTable songs, final int song, final int column) {
+            final String tag = songs.getValue(song, column);
+
+            return tag == null ? "" : tag;
+        }
+
+        /**
+         * Sorts each posting list by its values, without regard to case.
+         *
+         * @param postings The posting lists, as returned by
+         *                 {@link #buildPostings(int[], int, int, int)}.
+         * @param strings  The dictionary.
+         */
+        private static void sortPostings(final int[][] postings, final String[] strings) {
+            final int[] offsets = postings[0];
+            final int[] values = postings[1];
+            final Comparator<Integer> comparator = new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer lhs, final Integer rhs) {
+                    return String.CASE_INSENSITIVE_ORDER.compare(strings[lhs], strings[rhs]);
+                }
+            };
+
+            for (int i = 0; i < strings.length; i++) {
+                final int start = offsets[i];
+                final int end = offsets[i + 1];
+
+                if (end - start > 1) {
+                    final Integer[] list = new Integer[end - start];
+
+                    for (int j = start; j < end; j++) {
+                        list[j - start] = values[j];
+                    }
+                    Arrays.sort(list, comparator);
+                    for (int j = start; j < end; j++) {
+                        values[j] = list[j - start];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sorts the rows of an int table.
+         *
+         * @param table      The table, row after row.
+         * @param columns    The number of columns of each row.
+         * @param keyColumns The number of columns, from the first, to sort on.
+         */
+        private static void sortRows(final int[] table, final int columns,
+                final int keyColumns) {
+            final Integer[] rows = new Integer[table.length / columns];
+            final int[] sorted = new int[table.length];
+
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = Integer.valueOf(i * columns);
+            }
+
+            Arrays.sort(rows, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer lhs, final Integer rhs) {
+                    return compareRows(table, lhs.intValue(), rhs.intValue(), keyColumns);
+                }
+            });
+
+            for (int i = 0; i < rows.length; i++) {
+                System.arraycopy(table, rows[i].intValue(), sorted, i * columns, columns);
+            }
+            System.arraycopy(sorted, 0, table, 0, table.length);
+        }
+
+        /**
+         * Adds a song to the last directory added, to the root directory if there is none.
+         *
+         * @param music The song to add.
+         */
+        void add(final Music music) {
+            if (mChunks.isEmpty()) {
+                addChunk(new Chunk("", null, UNKNOWN, UNKNOWN));
+            }
+
+            mChunks.get(mChunks.size() - 1).onMusic(music);
+        }
+
+        /**
+         * Adds a top level directory, with the songs it already holds, songs added next being
+         * added to it.
+         *
+         * @param chunk The directory to add.
+         */
+        void addChunk(final Chunk chunk) {
+            mChunks.add(chunk);
+        }
+
+        /**
+         * Adds the songs of the library of a server, a top level directory at a time.
+         *
+         * <p>The last modification time of a directory only changes with its own entries, so
+         * the songs of each top level directory are also counted, and those modified since the
+         * previous index are. A directory of which none of these changed is copied from the
+         * previous index, the others are listed, in parallel. Counting requires MPD 0.19, every
+         * directory is listed with older servers.</p>
+         *
+         * @param mpd      The server to retrieve the library from.
+         * @param previous The previous index of the library, null to list every directory.
+         * @return The number of directories listed from the server.
+         * @throws IOException  Thrown upon a communication error with the server.
+         * @throws MPDException Thrown if an error occurs as a result of command execution.
+         */
+        int addLibrary(final MPD mpd, final LibraryIndex previous)
+                throws IOException, MPDException {
+            final Directory root = Directory.getRoot();
+            final List<String> paths = new ArrayList<>();
+            final List<String> lastModified = new ArrayList<>();
+
+            mpd.refreshDirectory(root);
+            for (final Directory directory : root.getDirectories()) {
+                paths.add(directory.getFullPath());
+                lastModified.add(directory.getLastModified());
+            }
+
+            /** The songs of the root directory come with its listing. */
+            addChunk(new Chunk("", null, UNKNOWN, UNKNOWN));
+            for (final Music music : root.getFiles()) {
+                add(music);
+            }
+
+            List<long[]> counts = null;
+            List<long[]> modifiedCounts = null;
+            if (mpd.isProtocolVersionSupported(0, 19)) {
+                counts = mpd.getSongCounts(paths, null);
+                if (previous != null) {
+                    modifiedCounts = mpd.getSongCounts(paths, new Date(previous.getDbUpdate()));
+                }
+            }
+
+            final List<Chunk> changed = new ArrayList<>();
+            final List<String> changedPaths = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++) {
+                final long[] count = counts == null ? new long[]{UNKNOWN, UNKNOWN} : counts.get(i);
+                final Chunk chunk = previous == null ? null : previous.getChunk(paths.get(i));
+
+                if (chunk != null && modifiedCounts != null &&
+                        chunk.isUnchanged(lastModified.get(i), count, modifiedCounts.get(i))) {
+                    addChunk(chunk);
+                } else {
+                    changed.add(new Chunk(paths.get(i), lastModified.get(i), count[0], count[1]));
+                    changedPaths.add(paths.get(i));
+                }
+            }
+
+            /** Songs are kept as they are parsed, without holding the listings in memory. */
+            if (!changedPaths.isEmpty()) {
+                mpd.listAllInfo(changedPaths, changed);
+                mChunks.addAll(changed);
+            }
+
+            return changed.size();
+        }
+
+        /**
+         * Retrieves the number of songs added.
+         *
+         * @return The number of songs.
+         */
+        int getSongCount() {
+            int songCount = 0;
+
+            for (final Chunk chunk : mChunks) {
+                songCount += chunk.mSongs.size();
+            }
+
+            return songCount;
+        }
+
+        /**
+         * Writes the library index. The index is written to a temporary file first, then moved
+         * in place, so a failure leaves a previous index intact.
+         *
+         * @param file       The file to write.
+         * @param dbUpdate   The database update time of the server, in milliseconds since the
+         *                   epoch.
+         * @param lastUpdate The time the library was retrieved, in milliseconds since the epoch.
+         * @throws IOException Thrown if the index cannot be written.
+         */
+        void write(final File file, final long dbUpdate, final long lastUpdate)
+                throws IOException {
+            final Set<List<String>> albumSet = new HashSet<>();
+            final Map<List<String>, AlbumDetails> detailsMap = new HashMap<>();
+            final Set<String> stringSet = new HashSet<>();
+            int songCount = 0;
+
+            Collections.sort(mChunks, new Comparator<Chunk>() {
+                @Override
+                public int compare(final Chunk lhs, final Chunk rhs) {
+                    return lhs.mPath.compareTo(rhs.mPath);
+                }
+            });
+
+            stringSet.add("");
+            for (final Chunk chunk : mChunks) {
+                stringSet.add(chunk.mPath);
+                if (chunk.mLastModified != null) {
+                    stringSet.add(chunk.mLastModified);
+                }
+
+                final MusicTable songs = chunk.mSongs;
+                for (int song = 0; song < songs.size(); song++) {
+                    addAlbum(albumSet, detailsMap, songs, song);
+                    stringSet.add(getTag(songs, song, MusicTable.ALBUM));
+                    stringSet.add(getTag(songs, song, MusicTable.ARTIST));
+                    stringSet.add(getTag(songs, song, MusicTable.ALBUM_ARTIST));
+                    if (songs.getValue(song, MusicTable.DIRECTORY) != null) {
+                        stringSet.add(songs.getValue(song, MusicTable.DIRECTORY));
+                    }
+                }
+                songCount += chunk.mSongs.size();
+            }
+
+            final String[] strings = stringSet.toArray(new String[stringSet.size()]);
+            final Map<String, Integer> ids = new HashMap<>(strings.length);
+            Arrays.sort(strings);
+            for (int i = 0; i < strings.length; i++) {
+                ids.put(strings[i], Integer.valueOf(i));
+            }
+
+            final int[] tuples = new int[albumSet.size() * 3];
+            int row = 0;
+            for (final List<String> albumInfo : albumSet) {
+                for (int i = 0; i < 3; i++) {
+                    tuples[row + i] = ids.get(albumInfo.get(i)).intValue();
+                }
+                row += 3;
+            }
+            sortRows(tuples, 3, 3);
+
+            /** Album, artist, album artist flag, then the position of the details. */
+            final int[] detailKeys = new int[detailsMap.size() * 4];
+            final List<AlbumDetails> details = new ArrayList<>(detailsMap.size());
+            row = 0;
+            for (final Map.Entry<List<String>, AlbumDetails> entry : detailsMap.entrySet()) {
+                final List<String> key = entry.getKey();
+
+                detailKeys[row] = ids.get(key.get(0)).intValue();
+                detailKeys[row + 1] = ids.get(key.get(1)).intValue();
+                detailKeys[row + 2] = "1".equals(key.get(2)) ? 1 : 0;
+                detailKeys[row + 3] = details.size();
+                details.add(entry.getValue());
+                row += 4;
+            }
+            sortRows(detailKeys, 4, 3);
+
+            final int[][][] postings = new int[POSTINGS_COUNT][][];
+            postings[ARTIST_ALBUMS] = buildPostings(tuples, 1, 0, strings.length);
+            postings[ALBUM_ARTIST_ALBUMS] = buildPostings(tuples, 2, 0, strings.length);
+            postings[ALBUM_ARTISTS] = buildPostings(tuples, 0, 1, strings.length);
+            postings[ALBUM_ALBUM_ARTISTS] = buildPostings(tuples, 0, 2, strings.length);
+            sortPostings(postings[ALBUM_ARTISTS], strings);
+            sortPostings(postings[ALBUM_ALBUM_ARTISTS], strings);
+
+            final byte[][] encoded = new byte[strings.length][];
+            int stringBytes = 0;
+            for (int i = 0; i < strings.length; i++) {
+                encoded[i] = strings[i].getBytes(UTF_8);
+                stringBytes += encoded[i].length;
+            }
+
+            final File tempFile = new File(file.getPath() + ".tmp");
+            final DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)));
+            boolean written = false;
+
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(dbUpdate);
+                output.writeLong(lastUpdate);
+                output.writeInt(strings.length);
+                output.writeInt(stringBytes);
+                output.writeInt(tuples.length / 3);
+                output.writeInt(detailKeys.length / 4);
+                output.writeInt(mChunks.size());
+                output.writeInt(songCount);
+                for (final int[][] posting : postings) {
+                    output.writeInt(posting[1].length);
+                }
+
+                int offset = 0;
+                output.writeInt(offset);
+                for (final byte[] bytes : encoded) {
+                    offset += bytes.length;
+                    output.writeInt(offset);
+                }
+                for (final byte[] bytes : encoded) {
+                    output.write(bytes);
+                }
+
+                for (final int id : tuples) {
+                    output.writeInt(id);
+                }
+
+                for (int i = 0; i < detailKeys.length; i += 4) {
+                    final AlbumDetails albumDetails = details.get(detailKeys[i + 3]);
+
+                    output.writeInt(detailKeys[i]);
+                    output.writeInt(detailKeys[i + 1]);
+                    output.writeInt(detailKeys[i + 2]);
+                    output.writeInt(getId(ids, albumDetails.mPath));
+                    output.writeLong(albumDetails.mNumTracks);
+                    output.writeLong(albumDetails.mTotalTime);
+                    output.writeLong(albumDetails.mDate);
+                }
+
+                int firstSong = 0;
+                for (final Chunk chunk : mChunks) {
+                    output.writeInt(getId(ids, chunk.mPath));
+                    output.writeInt(getId(ids, chunk.mLastModified));
+                    output.writeInt(firstSong);
+                    output.writeInt(chunk.mSongs.size());
+                    output.writeLong(chunk.mSongCount);
+                    output.writeLong(chunk.mPlaytime);
+                    firstSong += chunk.mSongs.size();
+                }
+
+                for (final Chunk chunk : mChunks) {
+                    final MusicTable songs = chunk.mSongs;
+
+                    for (int song = 0; song < songs.size(); song++) {
+                        output.writeInt(getId(ids, getTag(songs, song, MusicTable.ALBUM)));
+                        output.writeInt(getId(ids, getTag(songs, song, MusicTable.ARTIST)));
+                        output.writeInt(getId(ids,
+                                getTag(songs, song, MusicTable.ALBUM_ARTIST)));
+                        output.writeInt(getId(ids,
+                                songs.getValue(song, MusicTable.DIRECTORY)));
+                        output.writeLong(songs.getTime(song));
+                        output.writeLong(songs.getDate(song));
+                    }
+                }
+
+                for (final int[][] posting : postings) {
+                    for (final int[] section : posting) {
+                        for (final int value : section) {
+                            output.writeInt(value);
+                        }
+                    }
+                }
+                written = true;
+            } finally {
+                output.close();
+                if (!written) {
+                    tempFile.delete();
+                }
+            }
+
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Failed to move the library index to " + file);
+            }
+        }
+    }
+
+    /**
+     * A top level directory of the library, its songs and a fingerprint of its content.
+     */
+    static final class Chunk implements MusicConsumer {
+
+        /** The last modification time of the directory, null if unknown. */
+        final String mLastModified;
+
+        /** The path of the directory, "" for the songs of the root directory. */
+        final String mPath;
+
+        /** The total duration of the songs of the directory, in seconds, -1 if unknown. */
+        final long mPlaytime;
+
+        /** The number of songs of the directory counted by the server, -1 if unknown. */
+        final long mSongCount;
+
+        /** The songs of the directory, of which the album tags are indexed. */
+        final MusicTable mSongs = new MusicTable();
+
+        Chunk(final String path, final String lastModified, final long songCount,
+                final long playtime) {
+            super();
+
+            mPath = path;
+            mLastModified = lastModified;
+            mSongCount = songCount;
+            mPlaytime = playtime;
+        }
+
+        /**
+         * Checks whether the directory is unchanged since it was indexed.
+         *
+         * @param lastModified  The current last modification time of the directory.
+         * @param count         The current song count and playtime of the directory.
+         * @param modifiedCount The song count of the directory, of songs modified since the
+         *                      directory was indexed.
+         * @return True if the directory is unchanged, false if it may have changed.
+         */
+        boolean isUnchanged(final String lastModified, final long[] count,
+                final long[] modifiedCount) {
+            return mLastModified != null && mLastModified.equals(lastModified) &&
+                    mSongCount != UNKNOWN && mSongCount == count[0] && mPlaytime == count[1] &&
+                    modifiedCount[0] == 0L;
+        }
+
+        @Override
+        public void onMusic(final Music music) {
+            mSongs.add(music);
+        }
+    }
+}
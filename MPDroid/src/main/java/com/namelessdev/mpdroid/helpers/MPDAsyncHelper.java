@@ -23,6 +23,7 @@ import com.namelessdev.mpdroid.tools.WeakLinkedList;
 
 import org.a0z.mpd.MPD;
 import org.a0z.mpd.MPDStatus;
+import org.a0z.mpd.connection.ResponseCache;
 import org.a0z.mpd.event.StatusChangeListener;
 import org.a0z.mpd.event.TrackPositionListener;
 
@@ -69,6 +70,11 @@ public class MPDAsyncHelper implements Handler.Callback {
 
     static final int EVENT_STICKER_CHANGED = LOCAL_UID + 14;
 
+    static final int EVENT_TRACK_POSITION_UPDATE = LOCAL_UID + 15;
+
+    /** The memory bound of the query responses cached for the status monitor's subsystems. */
+    private static final long RESPONSE_CACHE_SIZE = 4L * 1024L * 1024L;
+
     private static final String TAG = "MPDAsyncHelper";
 
     private static int sJobID = 0;
@@ -85,6 +91,9 @@ public class MPDAsyncHelper implements Handler.Callback {
 
     private final Collection<TrackPositionListener> mTrackPositionListeners;
 
+    /** Notified of the track position of status updates only, not of the playback clock ticks. */
+    private final Collection<TrackPositionListener> mTrackPositionUpdateListeners;
+
     private final Handler mWorkerHandler;
 
     private final MPDAsyncWorker oMPDAsyncWorker;
@@ -102,6 +111,7 @@ public class MPDAsyncHelper implements Handler.Callback {
     public MPDAsyncHelper(final boolean cached) {
         super();
         oMPD = new CachedMPD(cached);
+        oMPD.setResponseCache(new ResponseCache(RESPONSE_CACHE_SIZE));
 
         oMPDAsyncWorker = new MPDAsyncWorker(new Handler(this), oMPD);
         mWorkerHandler = oMPDAsyncWorker.startThread();
@@ -112,6 +122,7 @@ public class MPDAsyncHelper implements Handler.Callback {
         mConnectionInfoListeners = new WeakLinkedList<>("ConnectionInfoListener");
         mStatusChangeListeners = new WeakLinkedList<>("StatusChangeListener");
         mTrackPositionListeners = new WeakLinkedList<>("TrackPositionListener");
+        mTrackPositionUpdateListeners = new WeakLinkedList<>("TrackPositionUpdateListener");
     }
 
     public void addAsyncExecListener(final AsyncExecListener listener) {
@@ -144,6 +155,19 @@ public class MPDAsyncHelper implements Handler.Callback {
         }
     }
 
+    /**
+     * Adds a listener notified of the track position read by the status monitor only, rather
+     * than every tick of the playback clock, for a client extrapolating the position itself.
+     *
+     * @param listener The listener to add.
+     * @see #addTrackPositionListener(TrackPositionListener)
+     */
+    public void addTrackPositionUpdateListener(final TrackPositionListener listener) {
+        if (!mTrackPositionUpdateListeners.contains(listener)) {
+            mTrackPositionUpdateListeners.add(listener);
+        }
+    }
+
     public void connect() {
         mWorkerHandler.sendEmptyMessage(MPDAsyncWorker.EVENT_CONNECT);
     }
@@ -254,6 +278,11 @@ public class MPDAsyncHelper implements Handler.Callback {
                         listener.trackPositionChanged((MPDStatus) args[0]);
                     }
                     break;
+                case EVENT_TRACK_POSITION_UPDATE:
+                    for (final TrackPositionListener listener : mTrackPositionUpdateListeners) {
+                        listener.trackPositionChanged((MPDStatus) args[0]);
+                    }
+                    break;
                 case EVENT_STICKER_CHANGED:
                     for (final StatusChangeListener listener : mStatusChangeListeners) {
                         listener.stickerChanged((MPDStatus) args[0]);
@@ -312,6 +341,10 @@ public class MPDAsyncHelper implements Handler.Callback {
         mTrackPositionListeners.remove(listener);
     }
 
+    public void removeTrackPositionUpdateListener(final TrackPositionListener listener) {
+        mTrackPositionUpdateListeners.remove(listener);
+    }
+
     /**
      * Stores the {@code ConnectionInfo} object and sends it to the worker.
      *
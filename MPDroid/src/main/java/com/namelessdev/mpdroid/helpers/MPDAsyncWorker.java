@@ -24,6 +24,7 @@ import com.namelessdev.mpdroid.tools.Tools;
 import org.a0z.mpd.MPD;
 import org.a0z.mpd.MPDStatus;
 import org.a0z.mpd.MPDStatusMonitor;
+import org.a0z.mpd.PlaybackClock;
 import org.a0z.mpd.event.StatusChangeListener;
 import org.a0z.mpd.event.TrackPositionListener;
 import org.a0z.mpd.exception.MPDException;
@@ -64,6 +65,15 @@ public class MPDAsyncWorker implements Handler.Callback,
 
     static final int EVENT_STOP_STATUS_MONITOR = LOCAL_UID + 7;
 
+    /** The longest a server change may be held back while merging a burst, in milliseconds. */
+    private static final long COALESCING_MAXIMUM_LATENCY = 300L;
+
+    /**
+     * The window within which bursts of server changes, such as a bulk queue edit by another
+     * client, are merged into a single refresh, in milliseconds.
+     */
+    private static final long COALESCING_WINDOW = 50L;
+
     private static final String TAG = "MPDAsyncWorker";
 
     /** A handler for the MPDAsyncHelper object. */
@@ -73,11 +83,24 @@ public class MPDAsyncWorker implements Handler.Callback,
 
     private final SharedPreferences mSettings;
 
+    /** Forwards the track position of the status monitor updates, without the clock ticks. */
+    private final TrackPositionListener mTrackPositionUpdateListener =
+            new TrackPositionListener() {
+                @Override
+                public void trackPositionChanged(final MPDStatus status) {
+                    mHelperHandler.obtainMessage(MPDAsyncHelper.EVENT_TRACK_POSITION_UPDATE,
+                            Tools.toObjectArray(status)).sendToTarget();
+                }
+            };
+
     /** A store for the current connection information. */
     private ConnectionInfo mConInfo = new ConnectionInfo();
 
     private String[] mIdleSubsystems;
 
+    /** Ticks the track position while playing, in between status monitor updates. */
+    private PlaybackClock mPlaybackClock;
+
     private MPDStatusMonitor mStatusMonitor;
 
     private Handler mWorkerHandler;
@@ -249,8 +272,12 @@ public class MPDAsyncWorker implements Handler.Callback,
     private void startStatusMonitor() {
         mStatusMonitor =
                 new MPDStatusMonitor(mMPD, DateUtils.SECOND_IN_MILLIS / 2L, mIdleSubsystems);
+        mPlaybackClock = new PlaybackClock(DateUtils.SECOND_IN_MILLIS);
+        mPlaybackClock.addTrackPositionListener(this);
         mStatusMonitor.addStatusChangeListener(this);
-        mStatusMonitor.addTrackPositionListener(this);
+        mStatusMonitor.addTrackPositionListener(mPlaybackClock);
+        mStatusMonitor.addTrackPositionListener(mTrackPositionUpdateListener);
+        mStatusMonitor.setCoalescing(COALESCING_WINDOW, COALESCING_MAXIMUM_LATENCY);
         mStatusMonitor.start();
     }
 
@@ -287,6 +314,10 @@ public class MPDAsyncWorker implements Handler.Callback,
         if (mStatusMonitor != null) {
             mStatusMonitor.giveup();
         }
+
+        if (mPlaybackClock != null) {
+            mPlaybackClock.shutdown();
+        }
     }
 
     @Override
@@ -286,8 +286,7 @@ public class PlaylistEditActivity extends MPDroidActivities.MPDroidActivity
             int listPlayingId = 0;
             int playlistPosition = 0;
 
-            // Copy list to avoid concurrent exception
-            for (final Music music : new ArrayList<>(musics)) {
+            for (final Music music : musics) {
                 final HashMap<String, Object> item = new HashMap<>();
                 if (mIsPlayQueue) {
                     item.put("songid", music.getSongId());
@@ -226,7 +226,7 @@ public class RemoteControlClientHandler implements AlbumCoverHandler.FullSizeCal
      */
     final void stateChanged(final MPDStatus mpdStatus) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-            mSeekBar.updateSeekTime(mpdStatus.getElapsedTime());
+            mSeekBar.updateSeekTime(mpdStatus);
         }
         getRemoteState(mpdStatus.getState());
     }
@@ -26,8 +26,6 @@ import android.media.RemoteControlClient;
 import android.os.Build;
 import android.text.format.DateUtils;
 
-import java.util.Date;
-
 /**
  * A simple class to enable Android's RemoteControlClient
  * seek bar. (Requires Android 4.3 and higher).
@@ -43,14 +41,13 @@ public class RemoteControlSeekBarHandler implements
 
     /**
      * What was the elapsed time (in ms) when the last status refresh happened?
-     * Use this for guessing the elapsed time for the lock screen.
      */
     private long mLastKnownElapsed = 0L;
 
     /**
-     * Last time the status was refreshed, used for track position.
+     * The last status refreshed, which extrapolates the elapsed time for the lock screen.
      */
-    private long mLastStatusRefresh = 0L;
+    private MPDStatus mLastStatus = null;
 
     private int mPlaybackState = -1;
 
@@ -66,7 +63,7 @@ public class RemoteControlSeekBarHandler implements
 
     /**
      * Android's callback that queries us for the elapsed time. Here, we are guessing the
-     * elapsed time using the last time we updated the elapsed time and its value at the time.
+     * elapsed time from the last status, without querying the server.
      *
      * @return The guessed song position
      */
@@ -75,8 +72,8 @@ public class RemoteControlSeekBarHandler implements
         /** If we don't know the position, return a negative value as per the API spec */
         long result = -1L;
 
-        if (mLastStatusRefresh > 0L) {
-            result = mLastKnownElapsed + new Date().getTime() - mLastStatusRefresh;
+        if (mLastStatus != null) {
+            result = mLastStatus.getElapsedTimeMillis();
         }
         return result;
     }
@@ -99,11 +96,12 @@ public class RemoteControlSeekBarHandler implements
     final void start() {
         mRemoteControlClient.setOnGetPlaybackPositionListener(this);
         mRemoteControlClient.setPlaybackPositionUpdateListener(this);
-        MPDroidService.MPD_ASYNC_HELPER.addTrackPositionListener(this);
+        /** Android extrapolates the position, it only needs the position of status updates. */
+        MPDroidService.MPD_ASYNC_HELPER.addTrackPositionUpdateListener(this);
     }
 
     final void stop() {
-        MPDroidService.MPD_ASYNC_HELPER.removeTrackPositionListener(this);
+        MPDroidService.MPD_ASYNC_HELPER.removeTrackPositionUpdateListener(this);
         mRemoteControlClient.setOnGetPlaybackPositionListener(null);
         mRemoteControlClient.setPlaybackPositionUpdateListener(null);
     }
@@ -115,7 +113,7 @@ public class RemoteControlSeekBarHandler implements
      */
     @Override
     public final void trackPositionChanged(final MPDStatus status) {
-        updateSeekTime(status.getElapsedTime());
+        updateSeekTime(status);
     }
 
     /**
@@ -123,11 +121,11 @@ public class RemoteControlSeekBarHandler implements
      * make sure we have initial data, but updateStatus and trackChanged will take care
      * of that afterwards.
      *
-     * @param elapsedTime The current track audio elapsed time.
+     * @param status The current status, containing the current track audio elapsed time.
      */
-    final void updateSeekTime(final long elapsedTime) {
-        mLastStatusRefresh = new Date().getTime();
-        mLastKnownElapsed = elapsedTime * DateUtils.SECOND_IN_MILLIS;
+    final void updateSeekTime(final MPDStatus status) {
+        mLastStatus = status;
+        mLastKnownElapsed = status.getElapsedTimeMillis();
         mRemoteControlClient.setPlaybackState(mPlaybackState, mLastKnownElapsed, 1.0f);
     }
 }
\ No newline at end of file